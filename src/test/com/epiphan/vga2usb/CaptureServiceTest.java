@@ -0,0 +1,200 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.IOException;
+
+/* java.net */
+import java.net.InetAddress;
+
+/* java.util.concurrent.atomic */
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Polls 500 stand-in network devices through a {@link CaptureService}.
+ * The devices are {@link SyntheticGrabber}s with injected latency,
+ * opened through the {@link CaptureService#openGrabber} hook. Checks
+ * that every device delivers frames at about the requested rate, that
+ * no more native calls than the carrier budget run at once, and that a
+ * fleet which fails to open is closed as a whole.
+ * Exits with a non-zero status on failure.
+ */
+public class CaptureServiceTest {
+
+    /** Number of simulated devices */
+    private static final int DEVICES = 500;
+
+    /** Polling rate of each device */
+    private static final float FPS = 2;
+
+    /** Injected latency of each grab, milliseconds */
+    private static final int LATENCY = 5;
+
+    /** Maximum number of native calls at once */
+    private static final int BUDGET = 8;
+
+    /** How long to capture, milliseconds */
+    private static final long CAPTURE_TIME = 3000;
+
+    /** The device whose open fails in the rollback check */
+    private static final int BAD_DEVICE = 250;
+
+    /** Number of native grabs in progress */
+    private static final AtomicInteger activeGrabs = new AtomicInteger();
+
+    /** Maximum number of native grabs seen at once */
+    private static final AtomicInteger maxActiveGrabs = new AtomicInteger();
+
+    /** Number of devices opened and not closed yet */
+    private static final AtomicInteger openDevices = new AtomicInteger();
+
+    /**
+     * A stand-in network device which keeps track of the concurrent grabs.
+     */
+    private static class RemoteDevice extends SyntheticGrabber {
+
+        /**
+         * Creates a device.
+         */
+        RemoteDevice() {
+            super(64, 48, 60);
+            setLatency(LATENCY);
+            openDevices.incrementAndGet();
+        }
+
+        /**
+         * Grabs a frame, counting the grabs in progress.
+         * @param format the pixel format, with the bottom-up flag
+         * @param vm receives the video mode
+         * @param buf receives the pixels
+         * @return Length of the frame.
+         * @throws IOException if an I/O error occurs.
+         */
+        public int grabFrame(int format, int[] vm, byte[] buf)
+            throws IOException {
+            int n = activeGrabs.incrementAndGet();
+            int max;
+            while (n > (max = maxActiveGrabs.get()) &&
+                   !maxActiveGrabs.compareAndSet(max, n)) {
+                // Retry
+            }
+            try {
+                return super.grabFrame(format, vm, buf);
+            } finally {
+                activeGrabs.decrementAndGet();
+            }
+        }
+
+        /**
+         * Closes the device.
+         */
+        public void close() {
+            super.close();
+            openDevices.decrementAndGet();
+        }
+    }
+
+    /**
+     * Opens stand-in devices instead of network grabbers.
+     */
+    private static class TestService extends CaptureService {
+
+        /** The address whose open fails, null if none */
+        private InetAddress badAddress;
+
+        /**
+         * Creates the service.
+         * @param badAddress the address whose open fails, null if none
+         */
+        TestService(InetAddress badAddress) {
+            super(PixelFormat.RGB24, false, FPS, BUDGET);
+            this.badAddress = badAddress;
+        }
+
+        /**
+         * Opens a stand-in device.
+         * @param address the address of the device
+         * @return The opened grabber.
+         * @throws IOException if the address is the bad one
+         */
+        protected Grabber openGrabber(InetAddress address)
+            throws IOException {
+            if (address.equals(badAddress)) {
+                throw new IOException("Can't reach " + address);
+            }
+            return new Grabber(new RemoteDevice());
+        }
+    }
+
+    /**
+     * Entry point
+     * @param args command line arguments (ignored)
+     * @throws Exception if the test fails to run
+     */
+    public static void main(String[] args) throws Exception {
+        InetAddress[] addresses = new InetAddress[DEVICES];
+        for (int i=0; i<DEVICES; i++) {
+            addresses[i] = InetAddress.getByAddress(new byte[] {
+                10, 0, (byte)(i >> 8), (byte)i
+            });
+        }
+        boolean ok = true;
+        System.out.println((CaptureService.isVirtual() ? "virtual" :
+            "platform") + " threads");
+
+        // The whole fleet captures within the budget
+        CaptureService service = new TestService(null);
+        Grabber[] grabbers = service.openAll(addresses);
+        service.start();
+        Thread.sleep(CAPTURE_TIME);
+        long start = System.currentTimeMillis();
+        service.stop();
+        long stopTime = System.currentTimeMillis() - start;
+        int idle = 0;
+        for (int i=0; i<grabbers.length; i++) {
+            if (service.getStats(grabbers[i]).getFrameCount() == 0) {
+                idle++;
+            }
+        }
+        CaptureStats stats = service.getStats();
+        long expected = (long)(DEVICES*FPS*CAPTURE_TIME/1000);
+        System.out.println(stats + ", " + idle + " devices without frames, " +
+            maxActiveGrabs.get() + " grabs at once, stopped in " +
+            stopTime + " ms");
+        if (idle != 0 || stats.getFrameCount() < expected*3/4 ||
+            maxActiveGrabs.get() > BUDGET) {
+            ok = false;
+        }
+        service.close();
+        if (openDevices.get() != 0) {
+            System.out.println(openDevices.get() + " devices left open");
+            ok = false;
+        }
+
+        // A fleet with an unreachable device is not opened at all
+        service = new TestService(addresses[BAD_DEVICE]);
+        try {
+            service.openAll(addresses);
+            System.out.println("open failure lost");
+            ok = false;
+        } catch (IOException x) {
+            System.out.println("open failed: " + x.getMessage() + ", " +
+                service.getGrabbers().length + " devices added, " +
+                openDevices.get() + " left open");
+            if (service.getGrabbers().length != 0 || openDevices.get() != 0) {
+                ok = false;
+            }
+        }
+        service.close();
+
+        System.out.println(ok ? "PASSED" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+}
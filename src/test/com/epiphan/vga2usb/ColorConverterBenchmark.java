@@ -0,0 +1,118 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Measures how long {@link ColorConverter} takes to convert a frame of
+ * each pixel format into RGB24, on the calling thread and in the shared
+ * pool. The frames come from a {@link SyntheticGrabber}. Usage:
+ * <blockquote><pre>
+ * java com.epiphan.vga2usb.ColorConverterBenchmark [width height [frames]]
+ * </pre></blockquote>
+ */
+public class ColorConverterBenchmark {
+
+    /** Default frame width */
+    private static final int WIDTH = 1920;
+
+    /** Default frame height */
+    private static final int HEIGHT = 1080;
+
+    /** Default number of measured conversions */
+    private static final int FRAMES = 200;
+
+    /** Number of conversions to warm up */
+    private static final int WARMUP = 50;
+
+    /** The source formats */
+    private static final PixelFormat[] FORMATS = {
+        PixelFormat.YUYV,
+        PixelFormat.UYVY,
+        PixelFormat.RGB16,
+        PixelFormat.RGB8,
+        PixelFormat.RGB4,
+        PixelFormat.BGR24
+    };
+
+    /**
+     * Entry point
+     * @param args width, height and number of frames (optional)
+     * @throws Exception if the benchmark fails to run
+     */
+    public static void main(String[] args) throws Exception {
+        int w = (args.length >= 2) ? Integer.parseInt(args[0]) : WIDTH;
+        int h = (args.length >= 2) ? Integer.parseInt(args[1]) : HEIGHT;
+        int n = (args.length >= 3) ? Integer.parseInt(args[2]) : FRAMES;
+        SyntheticGrabber device = new SyntheticGrabber(w, h, 60f);
+        device.setFrameRate(0);
+        Grabber grabber = new Grabber(device);
+        ColorConverter serial = new ColorConverter(null, 1);
+        ColorConverter parallel = new ColorConverter();
+        int ncpu = Runtime.getRuntime().availableProcessors();
+        System.out.println(w + "x" + h + " to RGB24, " + n + " frames, " +
+            ncpu + " processor(s), ms per frame");
+        System.out.println(pad("format", 8) + pad("serial", 9) +
+            pad("parallel", 11));
+        for (int i=0; i<FORMATS.length; i++) {
+            RawFrame src = grabber.grabRawFrame(FORMATS[i], false);
+            byte[] dst = new byte[w*h*3];
+            double t1 = measure(serial, src, dst, n);
+            double t2 = measure(parallel, src, dst, n);
+            System.out.println(pad(FORMATS[i].toString(), 8) +
+                pad(format(t1), 9) + pad(format(t2), 11));
+            src.release();
+        }
+        grabber.close();
+    }
+
+    /**
+     * Converts the frame repeatedly.
+     * @param converter the converter
+     * @param src the frame to convert
+     * @param dst receives the pixels
+     * @param n number of measured conversions
+     * @return Average time per conversion in milliseconds.
+     */
+    private static double measure(ColorConverter converter, RawFrame src,
+                                  byte[] dst, int n) {
+        for (int i=0; i<WARMUP; i++) {
+            converter.convert(src, PixelFormat.RGB24, dst, 0);
+        }
+        long start = System.nanoTime();
+        for (int i=0; i<n; i++) {
+            converter.convert(src, PixelFormat.RGB24, dst, 0);
+        }
+        return (System.nanoTime() - start)/1e6/n;
+    }
+
+    /**
+     * Formats a time with two decimals.
+     * @param ms the time in milliseconds
+     * @return The formatted time.
+     */
+    static String format(double ms) {
+        long hundredths = Math.round(ms*100);
+        String frac = String.valueOf(100 + hundredths % 100).substring(1);
+        return (hundredths/100) + "." + frac;
+    }
+
+    /**
+     * Right-aligns a string.
+     * @param s the string
+     * @param width the column width
+     * @return The padded string.
+     */
+    static String pad(String s, int width) {
+        StringBuffer buf = new StringBuffer();
+        for (int i=s.length(); i<width; i++) {
+            buf.append(' ');
+        }
+        return buf.append(s).toString();
+    }
+}
@@ -0,0 +1,95 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.lang.management */
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Checks that a capture loop which releases its frames stops allocating
+ * once warmed up: the frame pool allocates no more frames, and the heap
+ * allocated per grab stays near zero where the JVM can measure it.
+ * Exits with a non-zero status on failure.
+ */
+public class FramePoolTest {
+
+    /** Number of grabs to warm up */
+    private static final int WARMUP = 1000;
+
+    /** Number of measured grabs */
+    private static final int GRABS = 100000;
+
+    /** Maximum average heap allocation per grab, in bytes */
+    private static final long MAX_BYTES_PER_GRAB = 8;
+
+    /**
+     * Entry point
+     * @param args command line arguments (ignored)
+     * @throws Exception if the test fails to run
+     */
+    public static void main(String[] args) throws Exception {
+        StubGrabber device = new StubGrabber(640, 480);
+        Grabber grabber = new Grabber(device);
+        FramePool pool = grabber.getFramePool();
+        boolean ok = true;
+
+        for (int i=0; i<WARMUP; i++) {
+            grab(grabber);
+        }
+        long allocs = pool.getAllocCount();
+        long bytes = getAllocatedBytes();
+        for (int i=0; i<GRABS; i++) {
+            grab(grabber);
+        }
+        long newAllocs = pool.getAllocCount() - allocs;
+        System.out.println(GRABS + " grabs, " + newAllocs +
+            " frames allocated after warm-up");
+        if (newAllocs != 0) {
+            ok = false;
+        }
+        if (bytes >= 0) {
+            long perGrab = (getAllocatedBytes() - bytes)/GRABS;
+            System.out.println(perGrab + " bytes allocated per grab");
+            if (perGrab > MAX_BYTES_PER_GRAB) {
+                ok = false;
+            }
+        }
+        grabber.close();
+        System.out.println(ok ? "PASSED" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Grabs and releases a frame of each class.
+     * @param grabber the grabber
+     * @throws Exception if the grab fails
+     */
+    private static void grab(Grabber grabber) throws Exception {
+        grabber.grabRawFrame(PixelFormat.RGB24, false).release();
+        grabber.grabFrame(PixelFormat.RGB24).release();
+    }
+
+    /**
+     * Gets the number of bytes allocated by the current thread.
+     * @return Number of bytes, -1 if the JVM can't tell.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sun =
+                (com.sun.management.ThreadMXBean)bean;
+            if (sun.isThreadAllocatedMemorySupported()) {
+                return sun.getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
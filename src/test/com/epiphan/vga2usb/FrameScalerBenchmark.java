@@ -0,0 +1,116 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Measures how long {@link FrameScaler} takes to scale an RGB24 frame
+ * with each of the common scaling modes, on the calling thread and in the
+ * shared pool. The output frame is reused, as in a capture loop. The
+ * source frame comes from a {@link SyntheticGrabber}. Usage:
+ * <blockquote><pre>
+ * java com.epiphan.vga2usb.FrameScalerBenchmark [sw sh dw dh [frames]]
+ * </pre></blockquote>
+ */
+public class FrameScalerBenchmark {
+
+    /** Default source size */
+    private static final Size SOURCE = new Size(1920, 1080);
+
+    /** Default target size */
+    private static final Size TARGET = new Size(1280, 720);
+
+    /** Default number of measured frames */
+    private static final int FRAMES = 100;
+
+    /** Number of frames to warm up */
+    private static final int WARMUP = 20;
+
+    /** The measured modes */
+    private static final ScaleMode[] MODES = {
+        ScaleMode.NearestNeighbor,
+        ScaleMode.FastBilinear,
+        ScaleMode.Bilinear,
+        ScaleMode.Bicubic,
+        ScaleMode.Area,
+        ScaleMode.Lanczos
+    };
+
+    /**
+     * Entry point
+     * @param args source and target size, and number of frames (optional)
+     * @throws Exception if the benchmark fails to run
+     */
+    public static void main(String[] args) throws Exception {
+        Size src = SOURCE;
+        Size dst = TARGET;
+        int n = FRAMES;
+        if (args.length >= 4) {
+            src = new Size(Integer.parseInt(args[0]),
+                Integer.parseInt(args[1]));
+            dst = new Size(Integer.parseInt(args[2]),
+                Integer.parseInt(args[3]));
+        }
+        if (args.length >= 5) {
+            n = Integer.parseInt(args[4]);
+        }
+        SyntheticGrabber device = new SyntheticGrabber(src.getWidth(),
+            src.getHeight(), 60f);
+        device.setFrameRate(0);
+        Grabber grabber = new Grabber(device);
+        RawFrame frame = grabber.grabRawFrame(PixelFormat.RGB24, false);
+        FrameScaler serial = new FrameScaler(null, 1);
+        FrameScaler parallel = new FrameScaler();
+        int ncpu = Runtime.getRuntime().availableProcessors();
+        System.out.println(src + " to " + dst + ", " + n + " frames, " +
+            ncpu + " processor(s), ms per frame");
+        System.out.println(pad("mode", 16) + pad("serial", 9) +
+            pad("parallel", 11));
+        for (int i=0; i<MODES.length; i++) {
+            double t1 = measure(serial, frame, dst, MODES[i], n);
+            double t2 = measure(parallel, frame, dst, MODES[i], n);
+            System.out.println(pad(MODES[i].toString(), 16) +
+                pad(ColorConverterBenchmark.format(t1), 9) +
+                pad(ColorConverterBenchmark.format(t2), 11));
+        }
+        frame.release();
+        grabber.close();
+    }
+
+    /**
+     * Scales the frame repeatedly into the same output frame.
+     * @param scaler the scaler
+     * @param src the frame to scale
+     * @param size the target size
+     * @param mode the scaling mode
+     * @param n number of measured frames
+     * @return Average time per frame in milliseconds.
+     */
+    private static double measure(FrameScaler scaler, RawFrame src,
+                                  Size size, ScaleMode mode, int n) {
+        RawFrame out = null;
+        for (int i=0; i<WARMUP; i++) {
+            out = scaler.scale(src, size, mode, out);
+        }
+        long start = System.nanoTime();
+        for (int i=0; i<n; i++) {
+            out = scaler.scale(src, size, mode, out);
+        }
+        return (System.nanoTime() - start)/1e6/n;
+    }
+
+    /**
+     * Right-aligns a column, see {@link ColorConverterBenchmark#pad}.
+     * @param s the text
+     * @param width the column width
+     * @return The padded text.
+     */
+    private static String pad(String s, int width) {
+        return ColorConverterBenchmark.pad(s, width);
+    }
+}
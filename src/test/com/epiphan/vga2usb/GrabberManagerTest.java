@@ -0,0 +1,124 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.IOException;
+
+/**
+ * Drives 64 simulated devices through a {@link GrabberManager}, opened
+ * with {@link SyntheticGrabber}s through the {@link
+ * GrabberManager#openGrabber} hook, and checks that every one of them
+ * delivers frames. Then checks that a probe which fails with something
+ * other than an {@link IOException} is reported by
+ * {@link GrabberManager#openAll} rather than lost.
+ * Exits with a non-zero status on failure.
+ */
+public class GrabberManagerTest {
+
+    /** Number of simulated devices */
+    private static final int DEVICES = 64;
+
+    /** How long to capture, in milliseconds */
+    private static final long CAPTURE_TIME = 2000;
+
+    /** The device id whose probe fails */
+    private static final int BAD_ID = 13;
+
+    /**
+     * Opens synthetic devices. Ids from <code>present</code> on don't
+     * exist, and the probe of {@link #BAD_ID} fails if requested.
+     */
+    private static class SyntheticManager extends GrabberManager {
+
+        /** Number of existing devices */
+        private int present;
+
+        /** Whether the probe of {@link #BAD_ID} fails */
+        private boolean fail;
+
+        /**
+         * Creates the manager.
+         * @param present number of existing devices
+         * @param fail whether the probe of {@link #BAD_ID} fails
+         */
+        SyntheticManager(int present, boolean fail) {
+            super(PixelFormat.RGB24, false);
+            this.present = present;
+            this.fail = fail;
+        }
+
+        /**
+         * Opens a synthetic device.
+         * @param id which device to open
+         * @return The opened grabber.
+         * @throws IOException if there's no such device
+         */
+        protected Grabber openGrabber(int id) throws IOException {
+            if (fail && id == BAD_ID) {
+                throw new IllegalStateException("probe " + id);
+            } else if (id >= present) {
+                throw new IOException("no device " + id);
+            }
+            return new Grabber(new SyntheticGrabber(160, 120, 30));
+        }
+    }
+
+    /**
+     * Entry point
+     * @param args command line arguments (ignored)
+     * @throws Exception if the test fails to run
+     */
+    public static void main(String[] args) throws Exception {
+        boolean ok = true;
+
+        // All devices capture
+        GrabberManager manager = new SyntheticManager(DEVICES, false);
+        int opened = manager.openAll(DEVICES + 8);
+        System.out.println(opened + " devices opened");
+        if (opened != DEVICES) {
+            ok = false;
+        }
+        int started = manager.start();
+        Thread.sleep(CAPTURE_TIME);
+        manager.stop();
+        Grabber[] grabbers = manager.getGrabbers();
+        int idle = 0;
+        for (int i=0; i<grabbers.length; i++) {
+            if (manager.getStats(grabbers[i]).getFrameCount() == 0) {
+                idle++;
+            }
+        }
+        System.out.println(started + " devices started, " + idle +
+            " without frames, " + manager.getStats());
+        if (started != DEVICES || idle != 0) {
+            ok = false;
+        }
+        manager.close();
+
+        // A broken probe is reported, the good devices are still managed
+        manager = new SyntheticManager(DEVICES, true);
+        try {
+            manager.openAll(DEVICES);
+            System.out.println("probe failure lost");
+            ok = false;
+        } catch (IllegalStateException x) {
+            int count = manager.getGrabbers().length;
+            System.out.println("probe failure reported: " + x.getMessage() +
+                ", " + count + " devices opened");
+            if (count != DEVICES - 1) {
+                ok = false;
+            }
+        }
+        manager.close();
+
+        System.out.println(ok ? "PASSED" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -0,0 +1,239 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/* java.net */
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Runs an {@link MjpegServer} over a {@link SyntheticGrabber} and talks
+ * to it through the loopback interface: reads a few images of the
+ * stream and a snapshot, and checks that a client which doesn't send a
+ * request is disconnected after the request timeout.
+ * Exits with a non-zero status on failure.
+ */
+public class MjpegServerTest {
+
+    /** Number of stream images to read */
+    private static final int IMAGES = 10;
+
+    /** Request timeout for the test, milliseconds */
+    private static final long REQUEST_TIMEOUT = 500;
+
+    /** How long an idle client may stay connected, milliseconds */
+    private static final long IDLE_LIMIT = 5000;
+
+    /** Socket read timeout, milliseconds */
+    private static final int READ_TIMEOUT = 10000;
+
+    /**
+     * Entry point
+     * @param args command line arguments (ignored)
+     * @throws Exception if the test fails to run
+     */
+    public static void main(String[] args) throws Exception {
+        Grabber grabber = new Grabber(new SyntheticGrabber(320, 240, 30));
+        MjpegServer server = new MjpegServer(grabber, 0);
+        server.setRequestTimeout(REQUEST_TIMEOUT);
+        server.start();
+        boolean ok = true;
+        try {
+            ok &= checkStream(server.getPort());
+            ok &= checkSnapshot(server.getPort());
+            ok &= checkIdle(server.getPort(), "");
+            ok &= checkIdle(server.getPort(), "GET / HTTP/1.0\r\n");
+            System.out.println(server.getEncodeCount() + " frames encoded, " +
+                server.getSendCount() + " images sent, " +
+                server.getClientCount() + " clients connected");
+        } finally {
+            server.close();
+            grabber.close();
+        }
+        System.out.println(ok ? "PASSED" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Reads images from the stream.
+     * @param port the server port
+     * @return <code>true</code> if the check has passed.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static boolean checkStream(int port) throws IOException {
+        Socket socket = connect(port);
+        try {
+            send(socket, "GET /stream.mjpg HTTP/1.0\r\n\r\n");
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            String status = readLine(in);
+            String type = readHeaders(in, "Content-Type");
+            if (!status.endsWith(" 200 OK") || type == null ||
+                !type.startsWith("multipart/x-mixed-replace")) {
+                System.out.println("stream: " + status + ", " + type);
+                return false;
+            }
+            for (int i=0; i<IMAGES; i++) {
+                String boundary = readLine(in);
+                if (boundary.length() == 0) {
+                    boundary = readLine(in);
+                }
+                String length = readHeaders(in, "Content-Length");
+                if (!boundary.equals("--frame") || length == null ||
+                    !isJpeg(in, Integer.parseInt(length))) {
+                    System.out.println("stream: bad image " + i);
+                    return false;
+                }
+            }
+            System.out.println("stream: " + IMAGES + " images received");
+            return true;
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Requests a snapshot.
+     * @param port the server port
+     * @return <code>true</code> if the check has passed.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static boolean checkSnapshot(int port) throws IOException {
+        Socket socket = connect(port);
+        try {
+            send(socket, "GET /snapshot.jpg HTTP/1.0\r\n\r\n");
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            String status = readLine(in);
+            String length = readHeaders(in, "Content-Length");
+            boolean ok = status.endsWith(" 200 OK") && length != null &&
+                isJpeg(in, Integer.parseInt(length)) && in.read() < 0;
+            System.out.println("snapshot: " + status + ", " + length +
+                " bytes");
+            return ok;
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Connects, sends an incomplete request and waits for the server to
+     * hang up.
+     * @param port the server port
+     * @param request the incomplete request
+     * @return <code>true</code> if the check has passed.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static boolean checkIdle(int port, String request)
+        throws IOException {
+        Socket socket = connect(port);
+        try {
+            long start = System.currentTimeMillis();
+            send(socket, request);
+            socket.setSoTimeout((int)IDLE_LIMIT);
+            int b;
+            try {
+                b = socket.getInputStream().read();
+            } catch (IOException x) {
+                // Timed out or reset, told apart below
+                b = -2;
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            System.out.println("idle client dropped after " + elapsed +
+                " ms");
+            return b < 0 && elapsed >= REQUEST_TIMEOUT &&
+                elapsed < IDLE_LIMIT;
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Connects to the server.
+     * @param port the server port
+     * @return The socket.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static Socket connect(int port) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setSoTimeout(READ_TIMEOUT);
+        return socket;
+    }
+
+    /**
+     * Sends a request.
+     * @param socket the connection
+     * @param request the request
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void send(Socket socket, String request)
+        throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(request.getBytes("ISO-8859-1"));
+        out.flush();
+    }
+
+    /**
+     * Reads a CRLF terminated line.
+     * @param in the input
+     * @return The line without the terminator.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuffer sb = new StringBuffer();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new IOException("Connection closed");
+            } else if (c != '\r') {
+                sb.append((char)c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads the headers up to the empty line.
+     * @param in the input
+     * @param name the header to look for
+     * @return The value of the header, <code>null</code> if missing.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static String readHeaders(InputStream in, String name)
+        throws IOException {
+        String value = null;
+        String line;
+        while ((line = readLine(in)).length() > 0) {
+            if (line.startsWith(name + ": ")) {
+                value = line.substring(name.length() + 2);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Reads an image and checks the JPEG markers.
+     * @param in the input
+     * @param length the image size
+     * @return <code>true</code> if the image looks like a JPEG file.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static boolean isJpeg(DataInputStream in, int length)
+        throws IOException {
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return length > 4 &&
+            (data[0] & 0xff) == 0xff && (data[1] & 0xff) == 0xd8 &&
+            (data[length-2] & 0xff) == 0xff && (data[length-1] & 0xff) == 0xd9;
+    }
+}
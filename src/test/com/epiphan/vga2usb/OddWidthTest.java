@@ -0,0 +1,106 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Checks that frames of an odd width can be grabbed in every pixel format,
+ * and that the grabbed frames are accepted by the components which
+ * compute the frame size on their own. Exits with a non-zero status on
+ * failure.
+ */
+public class OddWidthTest {
+
+    /** Frame width */
+    private static final int WIDTH = 63;
+
+    /** Frame height */
+    private static final int HEIGHT = 17;
+
+    /** All pixel formats */
+    private static final PixelFormat[] FORMATS = {
+        PixelFormat.RGB4,
+        PixelFormat.RGB8,
+        PixelFormat.RGB16,
+        PixelFormat.BGR16,
+        PixelFormat.RGB24,
+        PixelFormat.BGR24,
+        PixelFormat.YUYV,
+        PixelFormat.UYVY
+    };
+
+    /**
+     * Entry point
+     * @param args command line arguments (ignored)
+     * @throws Exception if the test fails to run
+     */
+    public static void main(String[] args) throws Exception {
+        SyntheticGrabber device = new SyntheticGrabber(WIDTH, HEIGHT, 60f);
+        device.setFrameRate(0);
+        Grabber grabber = new Grabber(device);
+        boolean ok = true;
+        for (int i=0; i<FORMATS.length; i++) {
+            if (!check(grabber, FORMATS[i])) {
+                ok = false;
+            }
+        }
+        grabber.close();
+        System.out.println(ok ? "PASSED" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Grabs a frame in the given format and passes it around.
+     * @param grabber the grabber
+     * @param format the pixel format
+     * @return <code>true</code> if the check has passed.
+     * @throws Exception if the check fails to run
+     */
+    private static boolean check(Grabber grabber, PixelFormat format)
+        throws Exception {
+        int size = PixelPacker.getFrameSize(format, WIDTH, HEIGHT);
+        RawFrame frame = grabber.grabRawFrame(format, false);
+        if (frame == null) {
+            System.out.println(format + ": no frame");
+            return false;
+        }
+        try {
+            if (frame.getWidth() != WIDTH || frame.getHeight() != HEIGHT ||
+                frame.getPixelBufferLength() != size) {
+                System.out.println(format + ": " + frame.getWidth() + "x" +
+                    frame.getHeight() + ", " + frame.getPixelBufferLength() +
+                    " bytes, expected " + size);
+                return false;
+            }
+            ChangeDetector detector = new ChangeDetector();
+            detector.detect(frame);
+            detector.detect(frame);
+            RawVideoWriter writer = new RawVideoWriter(
+                new ByteArrayOutputStream(), false);
+            frame.retain();
+            writer.putFrame(frame);
+            writer.close();
+            if (writer.getError() != null || writer.getByteCount() != size) {
+                System.out.println(format + ": wrote " +
+                    writer.getByteCount() + " bytes, expected " + size +
+                    ", error " + writer.getError());
+                return false;
+            }
+        } catch (IllegalArgumentException x) {
+            System.out.println(format + ": " + x);
+            return false;
+        } finally {
+            frame.release();
+        }
+        System.out.println(format + ": " + size + " bytes");
+        return true;
+    }
+}
@@ -0,0 +1,121 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.IOException;
+
+/**
+ * Minimal {@link NativeGrabber} for the tests. Reports a fixed video
+ * mode and returns the frames instantly without touching the pixels, so
+ * that whatever a test measures comes from {@link Grabber} alone.
+ */
+class StubGrabber implements NativeGrabber {
+
+    /** Video mode */
+    private int width, height, vfreq;
+
+    /** Number of grab calls */
+    private long grabCount;
+
+    /**
+     * Creates a stub grabber.
+     * @param width the width of the video mode
+     * @param height the height of the video mode
+     */
+    StubGrabber(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.vfreq = 60000;
+    }
+
+    /**
+     * Gets the number of grab calls.
+     * @return Number of grab calls.
+     */
+    synchronized long getGrabCount() {
+        return grabCount;
+    }
+
+    /* NativeGrabber */
+
+    public void close() {
+    }
+
+    public String getSN() {
+        return "STUB";
+    }
+
+    public synchronized void detectVideoMode(int[] vm) {
+        vm[0] = width;
+        vm[1] = height;
+        vm[2] = vfreq;
+    }
+
+    public synchronized int grabFrame(int format, int[] vm, byte[] pixbuf) {
+        PixelFormat f = PixelFormat.getPixelFormat(
+            format & ~Grabber.GRABFRAME_BOTTOM_UP_FLAG);
+        int len = width*height*f.getBpp()/8;
+        if (pixbuf.length < len) {
+            return 0;
+        }
+        detectVideoMode(vm);
+        grabCount++;
+        return len;
+    }
+
+    public int getDeviceType() {
+        return 0;
+    }
+
+    public String getDeviceName() {
+        return "Stub";
+    }
+
+    public boolean getBooleanProperty(int key) {
+        return false;
+    }
+
+    public String getStringProperty(int key) {
+        return null;
+    }
+
+    public void setStringProperty(int key, String value) {
+    }
+
+    public int getIntProperty(int key) {
+        return 0;
+    }
+
+    public void setIntProperty(int key, int value) {
+    }
+
+    public void getSizeProperty(int key, int [] value) {
+        value[0] = value[1] = 0;
+    }
+
+    public void setSizeProperty(int key, int w, int h) {
+    }
+
+    public void sendPS2(short type, byte [] data) throws IOException {
+        throw new IOException("Not supported");
+    }
+
+    public void getGrabParameters(int [] params) {
+    }
+
+    public void setGrabParameters(int [] params) {
+    }
+
+    public void start() {
+    }
+
+    public void stop() {
+    }
+}
@@ -8,6 +8,9 @@
 
 package com.epiphan.vga2usb;
 
+/* java.util.concurrent.atomic */
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 /**
  * Base class for {@link Frame} and {@link RawFrame}.
  */
@@ -28,6 +31,31 @@ class BasicFrame {
     /** The pixel format. */
     protected PixelFormat format;
 
+    /** Sequence number assigned by the grabber. */
+    long sequence;
+
+    /** Time when the frame was grabbed, in milliseconds since the epoch. */
+    long timestamp;
+
+    /** The video mode in which the frame was grabbed. */
+    VideoMode videoMode;
+
+    /** Whether image lines are in bottom-up order. */
+    boolean bottomUp;
+
+    /** The pool this frame came from, <code>null</code> if none. */
+    FramePool pool;
+
+    /** Frame class index within the pool. */
+    int poolType;
+
+    /** Number of references to this frame. */
+    private volatile int refCount = 1;
+
+    /** Updates the reference count. */
+    private static final AtomicIntegerFieldUpdater REF_COUNT =
+        AtomicIntegerFieldUpdater.newUpdater(BasicFrame.class, "refCount");
+
     /**
      * Creates a new <code>BasicFrame</code>.
      * @param w width of the frame
@@ -59,4 +87,165 @@ class BasicFrame {
     public final int getHeight() {
         return height;
     }
+
+    /**
+     * Returns the sequence number of this frame. The grabber numbers
+     * the frames it returns starting with one, so that gaps in the
+     * sequence show how many frames have been dropped downstream.
+     * @return The frame sequence number.
+     * @since 3.28.1
+     */
+    public final long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the time when this frame was grabbed.
+     * @return The difference, measured in milliseconds, between the time
+     *   the frame was grabbed and midnight, January 1, 1970 UTC.
+     * @since 3.28.1
+     */
+    public final long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the video mode in which this frame was grabbed. The frame
+     * dimensions normally match the video mode, unless the video mode
+     * has changed while the frame was being grabbed.
+     * @return The video mode, or <code>null</code> if unknown.
+     * @since 3.28.1
+     */
+    public final VideoMode getVideoMode() {
+        return videoMode;
+    }
+
+    /**
+     * Tests whether image lines are in bottom-up order.
+     * @return <code>true</code> if the first line in the pixel buffer
+     *   is the bottom line of the image.
+     * @since 3.28.1
+     */
+    public final boolean isBottomUp() {
+        return bottomUp;
+    }
+
+    /**
+     * Copies sequence number, timestamp, video mode and line order from
+     * another frame.
+     * @param that the frame to copy the information from
+     */
+    void copyStamp(BasicFrame that) {
+        sequence = that.sequence;
+        timestamp = that.timestamp;
+        videoMode = that.videoMode;
+        bottomUp = that.bottomUp;
+    }
+
+    /**
+     * Updates frame geometry. Invoked when a pooled frame is reused.
+     * @param w width of the frame
+     * @param h height of the frame
+     * @param len length of the valid pixels
+     */
+    void set(int w, int h, int len) {
+        width = w;
+        height = h;
+        length = len;
+    }
+
+    /**
+     * Gets the pixels as a heap array.
+     * @return The pixel array.
+     */
+    byte[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Returns the size of the pixel buffer.
+     * @return The size of the pixel buffer.
+     */
+    int capacity() {
+        return pixels.length;
+    }
+
+    /**
+     * Clears the state derived from the pixels. Invoked when the frame
+     * is returned to the pool.
+     */
+    void reset() {
+        width = 0;
+        height = 0;
+        length = 0;
+        sequence = 0;
+        timestamp = 0;
+        videoMode = null;
+        bottomUp = false;
+    }
+
+    /**
+     * Resets the reference count of a frame taken from the pool.
+     */
+    void reuse() {
+        refCount = 1;
+    }
+
+    /**
+     * Tests whether the frame has a single holder, so that its pixels
+     * can be overwritten without anyone else seeing it.
+     * @return <code>true</code> if there's exactly one reference.
+     */
+    boolean isExclusive() {
+        return refCount == 1;
+    }
+
+    /**
+     * Adds a reference to this frame. A grabbed frame has one reference,
+     * owned by the caller who got the frame from the grabber. Each call
+     * to <code>retain</code> must be matched by a call to
+     * {@link #release}. The frame gets back to the grabber when the last
+     * reference is released. A frame shared this way must be treated as
+     * read-only by all its holders.
+     *
+     * @throws IllegalStateException if the frame has already been released.
+     * @since 3.28.1
+     */
+    public void retain() {
+        while (true) {
+            int n = refCount;
+            if (n <= 0) {
+                throw new IllegalStateException("Frame already released");
+            }
+            if (REF_COUNT.compareAndSet(this, n, n+1)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Releases a reference to this frame. When the last reference is
+     * released, the frame is returned to the {@link Grabber} that
+     * produced it, so that its pixel buffer can be reused for one of the
+     * subsequent frames. Releasing frames is optional, but a capture loop
+     * which does it doesn't allocate memory in the steady state. The frame
+     * (including its pixel buffer and the {@link java.awt.Image} obtained
+     * from it) must not be used after it has been released.
+     *
+     * @throws IllegalStateException if the frame has already been released.
+     * @see #retain
+     * @since 3.28.1
+     */
+    public void release() {
+        int n = REF_COUNT.decrementAndGet(this);
+        if (n == 0) {
+            FramePool p = pool;
+            if (p != null) {
+                p.recycle(this);
+            }
+        } else if (n < 0) {
+            REF_COUNT.incrementAndGet(this);
+            throw new IllegalStateException("Frame already released");
+        }
+    }
 }
@@ -0,0 +1,390 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/* java.util.concurrent */
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grabs frames on a dedicated thread and hands them over to a
+ * {@link FrameSink}, normally a {@link FrameQueue}. The grab loop never
+ * waits for the consumers, so the device is captured at its native rate
+ * no matter how slow the consumers are. Frames that the consumers can't
+ * keep up with are dropped by the queue according to its
+ * {@link DropPolicy}.
+ * <p>
+ * Typical usage:
+ * <blockquote><pre>
+ * CaptureEngine engine = new CaptureEngine(grabber, PixelFormat.RGB24,
+ *     false, 4, DropPolicy.DROP_OLDEST);
+ * engine.start();
+ * while (...) {
+ *     RawFrame frame = engine.getQueue().take();
+ *     ...
+ *     frame.release();
+ * }
+ * engine.stop();
+ * </pre></blockquote>
+ * With a {@link #setGrabTimeout grab timeout}, the engine never waits
+ * for a hung device longer than the timeout and can be
+ * {@link #cancel cancelled} at any moment.
+ *
+ * @see FrameQueue
+ * @since 3.28.1
+ */
+public class CaptureEngine implements Runnable {
+
+    /** How long to wait before retrying if there's no signal */
+    private static final long NO_SIGNAL_DELAY = 500;
+
+    /** The grabber */
+    private Grabber grabber;
+
+    /** The pixel format */
+    private PixelFormat format;
+
+    /** Bottom-up flag */
+    private boolean bottomUp;
+
+    /** Receives the frames */
+    private FrameSink sink;
+
+    /** The queue, if this engine created one */
+    private FrameQueue queue;
+
+    /** The capture thread */
+    private Thread thread;
+
+    /** Creates the capture thread, null for the default */
+    private ThreadFactory threadFactory;
+
+    /** Grab timeout in nanoseconds, zero if none */
+    private volatile long grabTimeout;
+
+    /** Limits the frame rate, null if unlimited */
+    private volatile FrameRateLimiter rateLimiter;
+
+    /** Set to false to stop the capture thread */
+    private volatile boolean running;
+
+    /** The current or the last run, replaced when the capture starts */
+    private volatile CaptureRun current = new CaptureRun(0);
+
+    /**
+     * The state of a single run of the capture thread. Each run updates
+     * its own state, so that a thread left behind by {@link #cancel}
+     * doesn't spoil the statistics of the run started after it.
+     */
+    private static final class CaptureRun {
+
+        /** Number of grabbed frames */
+        volatile long frameCount;
+
+        /** Number of grabbed bytes */
+        volatile long byteCount;
+
+        /** Number of grab attempts which found no signal */
+        volatile long noSignalCount;
+
+        /** Number of grabs which have timed out */
+        volatile long timeoutCount;
+
+        /** When the capture has started, zero if it never has */
+        final long startTime;
+
+        /** When the capture has stopped, zero if it's still running */
+        volatile long stopTime;
+
+        /** The error which has stopped the capture thread */
+        volatile IOException error;
+
+        /**
+         * Creates the state of a run.
+         * @param startTime when the capture has started
+         */
+        CaptureRun(long startTime) {
+            this.startTime = startTime;
+        }
+    }
+
+    /**
+     * Creates a capture engine which puts the frames into a new
+     * {@link FrameQueue}.
+     * @param grabber the grabber to capture from
+     * @param format the pixel format
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     *   bottom-up order (default is up-down).
+     * @param depth maximum number of queued frames
+     * @param policy the policy applied when the queue is full
+     * @see #getQueue
+     */
+    public CaptureEngine(Grabber grabber, PixelFormat format, boolean bottomUp,
+                         int depth, DropPolicy policy) {
+        this(grabber, format, bottomUp, new FrameQueue(depth, policy));
+        queue = (FrameQueue)sink;
+    }
+
+    /**
+     * Creates a capture engine which passes the frames to the specified
+     * sink.
+     * @param grabber the grabber to capture from
+     * @param format the pixel format
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     *   bottom-up order (default is up-down).
+     * @param sink receives the frames
+     */
+    public CaptureEngine(Grabber grabber, PixelFormat format, boolean bottomUp,
+                         FrameSink sink) {
+        if (grabber == null) throw new NullPointerException("grabber");
+        if (format == null) throw new NullPointerException("format");
+        if (sink == null) throw new NullPointerException("sink");
+        this.grabber = grabber;
+        this.format = format;
+        this.bottomUp = bottomUp;
+        this.sink = sink;
+    }
+
+    /**
+     * Gets the grabber this engine captures from.
+     * @return The grabber.
+     */
+    public Grabber getGrabber() {
+        return grabber;
+    }
+
+    /**
+     * Gets the queue created by this engine.
+     * @return The queue, <code>null</code> if the engine was created
+     *   with a custom {@link FrameSink}.
+     */
+    public FrameQueue getQueue() {
+        return queue;
+    }
+
+    /**
+     * Gets the number of frames grabbed since the capture was started.
+     * @return Number of grabbed frames.
+     */
+    public long getFrameCount() {
+        return current.frameCount;
+    }
+
+    /**
+     * Gets the number of grab attempts which found no signal since the
+     * capture was started.
+     * @return Number of grab attempts without signal.
+     */
+    public long getNoSignalCount() {
+        return current.noSignalCount;
+    }
+
+    /**
+     * Gets the number of grabs which have timed out since the capture
+     * was started.
+     * @return Number of timed out grabs.
+     * @see #setGrabTimeout
+     */
+    public long getTimeoutCount() {
+        return current.timeoutCount;
+    }
+
+    /**
+     * Gets the throughput of this engine since the capture was started.
+     * @return The capture statistics.
+     */
+    public CaptureStats getStats() {
+        CaptureRun r = current;
+        long end = r.stopTime;
+        if (end == 0) end = System.currentTimeMillis();
+        long elapsed = (r.startTime == 0) ? 0 : (end - r.startTime);
+        return new CaptureStats(r.frameCount, r.byteCount, r.noSignalCount,
+            elapsed);
+    }
+
+    /**
+     * Sets the factory which creates the capture thread. Takes effect the
+     * next time the capture is started.
+     * @param factory the thread factory, <code>null</code> to create
+     *   a daemon thread.
+     */
+    public synchronized void setThreadFactory(ThreadFactory factory) {
+        threadFactory = factory;
+    }
+
+    /**
+     * Sets the limiter which caps the frame rate of this engine. The same
+     * limiter can be shared by several engines to cap their total frame
+     * rate.
+     * @param limiter the rate limiter, <code>null</code> for no limit.
+     */
+    public void setRateLimiter(FrameRateLimiter limiter) {
+        rateLimiter = limiter;
+    }
+
+    /**
+     * Sets the maximum time to wait for a frame. A grab which times out
+     * is abandoned and counted, and the capture goes on with the next
+     * grab. Without a timeout the capture thread waits for the device
+     * as long as it takes, and can only stop when the grab returns.
+     * @param timeout the grab timeout, zero for none
+     * @param unit the unit of <code>timeout</code>
+     * @throws IllegalArgumentException if the timeout is negative.
+     * @see Grabber#grabRawFrame(PixelFormat,boolean,long)
+     */
+    public void setGrabTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException(String.valueOf(timeout));
+        }
+        grabTimeout = unit.toNanos(timeout);
+    }
+
+    /**
+     * Gets the error which has stopped the capture.
+     * @return The error, <code>null</code> if none.
+     */
+    public IOException getError() {
+        return current.error;
+    }
+
+    /**
+     * Tests whether the capture thread is running.
+     * @return <code>true</code> if the capture is running.
+     */
+    public synchronized boolean isRunning() {
+        return thread != null && thread.isAlive();
+    }
+
+    /**
+     * Starts the capture thread. Does nothing if it's already running.
+     * @throws IOException if the grabber fails to start.
+     */
+    public synchronized void start() throws IOException {
+        if (thread == null) {
+            grabber.start();
+            running = true;
+            current = new CaptureRun(System.currentTimeMillis());
+            if (threadFactory != null) {
+                thread = threadFactory.newThread(this);
+            } else {
+                thread = new Thread(this, "CaptureEngine-" + grabber);
+                thread.setDaemon(true);
+            }
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the capture thread and waits for it to exit. If the engine
+     * has created the queue, the frames remaining in the queue stay there.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void stop() throws InterruptedException {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+            running = false;
+        }
+        if (t != null) {
+            t.interrupt();
+            t.join();
+            try { grabber.stop(); }
+            catch (IOException x) {}
+        }
+    }
+
+    /**
+     * Stops the capture without waiting for the capture thread. The
+     * grab in progress is abandoned if there's a
+     * {@link #setGrabTimeout grab timeout}, and the grabber is left
+     * started, so that it can be closed right away by the caller even
+     * if the device hangs; see {@link Grabber#close}.
+     */
+    public void cancel() {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+            running = false;
+        }
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    /**
+     * Tests whether the current thread is the capture thread. A thread
+     * left behind by {@link #cancel} must exit even if the capture has
+     * been restarted in the meantime.
+     * @return <code>true</code> if this is the current capture thread.
+     */
+    private synchronized boolean isCaptureThread() {
+        return thread == Thread.currentThread();
+    }
+
+    /**
+     * Gets the run started for the current thread.
+     * @return The run, <code>null</code> if this is not the capture
+     *   thread.
+     */
+    private synchronized CaptureRun getCaptureRun() {
+        return (thread == Thread.currentThread()) ? current : null;
+    }
+
+    /**
+     * The grab loop. Invoked on the capture thread.
+     */
+    public void run() {
+        CaptureRun r = getCaptureRun();
+        if (r == null) {
+            return;
+        }
+        try {
+            while (running && isCaptureThread()) {
+                FrameRateLimiter limiter = rateLimiter;
+                if (limiter != null) {
+                    try { limiter.acquire(); }
+                    catch (InterruptedException x) { continue; }
+                }
+                RawFrame frame;
+                long timeout = grabTimeout;
+                if (timeout > 0) {
+                    try {
+                        frame = grabber.grabRawFrame(format, bottomUp,
+                            System.nanoTime() + timeout);
+                    } catch (InterruptedIOException x) {
+                        // Timed out, or interrupted by stop or cancel
+                        if (!Thread.interrupted()) r.timeoutCount++;
+                        continue;
+                    }
+                } else {
+                    frame = grabber.grabRawFrame(format, bottomUp);
+                }
+                if (frame != null) {
+                    r.frameCount++;
+                    r.byteCount += frame.getPixelBufferLength();
+                    sink.putFrame(frame);
+                } else {
+                    r.noSignalCount++;
+                    try { Thread.sleep(NO_SIGNAL_DELAY); }
+                    catch (InterruptedException x) {}
+                }
+            }
+        } catch (IOException x) {
+            r.error = x;
+        } finally {
+            r.stopTime = System.currentTimeMillis();
+        }
+    }
+}
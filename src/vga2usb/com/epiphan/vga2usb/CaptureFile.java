@@ -0,0 +1,124 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.File;
+
+/**
+ * Layout of the capture files written by {@link FrameRecorder}. A
+ * recording consists of one or more segment files and an index file,
+ * all named after the recording:
+ * <blockquote><pre>
+ * name.000, name.001, ...   segments
+ * name.idx                  index
+ * </pre></blockquote>
+ * Each segment starts with a header:
+ * <blockquote><pre>
+ *  0  long  magic "V2UCAP01"
+ *  8  int   version
+ * 12  int   header size
+ * 16  int   segment number
+ * 20  int   reserved
+ * 24  long  end of the committed data
+ * 32  long  number of committed frames
+ * 40        reserved up to the header size
+ * </pre></blockquote>
+ * followed by the frame records. Each record is aligned at 8 bytes and
+ * consists of a header and the pixels:
+ * <blockquote><pre>
+ *  0  int   magic "FRAM"
+ *  4  int   header size
+ *  8  long  sequence number
+ * 16  long  timestamp, milliseconds since the epoch
+ * 24  int   width
+ * 28  int   height
+ * 32  int   refresh rate, mHz (zero if unknown)
+ * 36  int   pixel format, with the bottom-up flag
+ * 40  int   number of pixel bytes
+ * 44  int   reserved
+ * </pre></blockquote>
+ * The index file contains a header (magic "V2UIDX01", version, reserved,
+ * number of entries) and one 32 byte entry per frame: sequence number,
+ * timestamp, segment number, reserved, offset of the record within the
+ * segment. All numbers are big-endian.
+ */
+final class CaptureFile {
+
+    /** Segment header magic */
+    static final long SEGMENT_MAGIC = 0x5632554341503031L;
+
+    /** Index file magic */
+    static final long INDEX_MAGIC = 0x5632554944583031L;
+
+    /** Frame record magic */
+    static final int FRAME_MAGIC = 0x4652414d;
+
+    /** Format version */
+    static final int VERSION = 1;
+
+    /** Size of the segment header */
+    static final int SEGMENT_HEADER_SIZE = 64;
+
+    /** Offset of the committed data end in the segment header */
+    static final int SEGMENT_END_OFFSET = 24;
+
+    /** Offset of the committed frame count in the segment header */
+    static final int SEGMENT_COUNT_OFFSET = 32;
+
+    /** Size of the frame record header */
+    static final int FRAME_HEADER_SIZE = 48;
+
+    /** Size of the index file header */
+    static final int INDEX_HEADER_SIZE = 24;
+
+    /** Size of the index entry */
+    static final int INDEX_ENTRY_SIZE = 32;
+
+    /** Record alignment */
+    static final int ALIGNMENT = 8;
+
+    /**
+     * Constructor is disabled.
+     */
+    private CaptureFile() {
+        throw new Error("CaptureFile is a collection of static methods");
+    }
+
+    /**
+     * Gets the segment file.
+     * @param base the recording
+     * @param segment the segment number
+     * @return The segment file.
+     */
+    static File getSegmentFile(File base, int segment) {
+        String suffix = Integer.toString(segment);
+        while (suffix.length() < 3) suffix = "0" + suffix;
+        return new File(base.getPath() + "." + suffix);
+    }
+
+    /**
+     * Gets the index file.
+     * @param base the recording
+     * @return The index file.
+     */
+    static File getIndexFile(File base) {
+        return new File(base.getPath() + ".idx");
+    }
+
+    /**
+     * Gets the size of the frame record, including the alignment padding.
+     * @param length number of pixel bytes
+     * @return The record size.
+     */
+    static long getRecordSize(int length) {
+        long size = FRAME_HEADER_SIZE + (long)length;
+        return (size + ALIGNMENT - 1) & ~((long)ALIGNMENT - 1);
+    }
+}
@@ -0,0 +1,400 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/* java.nio */
+import java.nio.ByteBuffer;
+
+/* java.nio.channels */
+import java.nio.channels.FileChannel;
+
+/**
+ * Locates the frames of a recording made by {@link FrameRecorder}. The
+ * entries are kept in the recording order, in which both the sequence
+ * numbers and the timestamps grow, so a frame can be found by either of
+ * them with a binary search. The index may be queried while the recorder
+ * is still appending to it.
+ * <p>
+ * The index file is written when the recorder is closed. If the recorder
+ * didn't get that far, e.g. because the process has crashed, the index
+ * is {@link #rebuild rebuilt} from the frame records committed to the
+ * segments.
+ *
+ * @see FrameRecorder
+ * @since 3.28.1
+ */
+public class CaptureIndex {
+
+    /** Initial capacity */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** Sequence numbers */
+    private long[] sequences;
+
+    /** Timestamps */
+    private long[] timestamps;
+
+    /** Segment numbers */
+    private int[] segments;
+
+    /** Offsets of the frame records within the segments */
+    private long[] offsets;
+
+    /** Number of entries */
+    private int count;
+
+    /**
+     * Creates an empty index.
+     */
+    public CaptureIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an empty index.
+     * @param capacity initial capacity
+     */
+    private CaptureIndex(int capacity) {
+        capacity = Math.max(capacity, 1);
+        sequences = new long[capacity];
+        timestamps = new long[capacity];
+        segments = new int[capacity];
+        offsets = new long[capacity];
+    }
+
+    /**
+     * Reads the index of the recording. If the index file is missing or
+     * truncated, the index is {@link #rebuild rebuilt} from the segments.
+     * @param base the recording, as passed to {@link FrameRecorder}
+     * @return The index.
+     * @throws IOException if the index file can't be read or is corrupted,
+     *   or the index can't be rebuilt.
+     */
+    public static CaptureIndex read(File base) throws IOException {
+        File file = CaptureFile.getIndexFile(base);
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        } catch (FileNotFoundException x) {
+            if (file.exists()) {
+                throw x;
+            }
+            return rebuild(base);
+        }
+        try {
+            if (in.readLong() != CaptureFile.INDEX_MAGIC) {
+                throw new IOException("Not a capture index: " + file);
+            }
+            int version = in.readInt();
+            if (version != CaptureFile.VERSION) {
+                throw new IOException("Unsupported version " + version);
+            }
+            in.readInt();
+            long n = in.readLong();
+            if (n < 0 || n > Integer.MAX_VALUE) {
+                throw new IOException("Corrupted index: " + file);
+            }
+            CaptureIndex index = new CaptureIndex((int)n);
+            for (long i=0; i<n; i++) {
+                long sequence = in.readLong();
+                long timestamp = in.readLong();
+                int segment = in.readInt();
+                in.readInt();
+                long offset = in.readLong();
+                index.add(sequence, timestamp, segment, offset);
+            }
+            return index;
+        } catch (EOFException x) {
+            return rebuild(base);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Rebuilds the index of the recording from the frame record headers
+     * in the segments. Only the frames committed to the segment headers
+     * are indexed, so a recording whose recorder has crashed is indexed
+     * up to its last committed batch.
+     * @param base the recording, as passed to {@link FrameRecorder}
+     * @return The index.
+     * @throws IOException if there are no segments, or they are corrupted.
+     */
+    public static CaptureIndex rebuild(File base) throws IOException {
+        CaptureIndex index = new CaptureIndex();
+        ByteBuffer header = ByteBuffer.allocate(
+            CaptureFile.SEGMENT_HEADER_SIZE);
+        for (int n=0; ; n++) {
+            File file = CaptureFile.getSegmentFile(base, n);
+            if (!file.exists()) {
+                if (n == 0) {
+                    throw new FileNotFoundException(file.getPath());
+                }
+                break;
+            }
+            RandomAccessFile f = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = f.getChannel();
+                header.clear();
+                header.limit(CaptureFile.SEGMENT_HEADER_SIZE);
+                readFully(channel, header, 0);
+                if (header.getLong(0) != CaptureFile.SEGMENT_MAGIC ||
+                    header.getInt(16) != n) {
+                    throw new IOException("Not a capture segment: " + file);
+                }
+                int version = header.getInt(8);
+                if (version != CaptureFile.VERSION) {
+                    throw new IOException("Unsupported version " + version);
+                }
+                long end = header.getLong(CaptureFile.SEGMENT_END_OFFSET);
+                long frames = header.getLong(CaptureFile.SEGMENT_COUNT_OFFSET);
+                if (end > channel.size()) {
+                    throw new IOException("Corrupted segment " + n);
+                }
+                long offset = header.getInt(12);
+                long count = 0;
+                while (offset < end) {
+                    header.clear();
+                    header.limit(CaptureFile.FRAME_HEADER_SIZE);
+                    readFully(channel, header, offset);
+                    int length = header.getInt(40);
+                    long next = offset + CaptureFile.getRecordSize(length);
+                    if (header.getInt(0) != CaptureFile.FRAME_MAGIC ||
+                        length < 0 || next > end) {
+                        throw new IOException("Corrupted segment " + n);
+                    }
+                    index.add(header.getLong(8), header.getLong(16), n,
+                        offset);
+                    offset = next;
+                    count++;
+                }
+                if (count != frames) {
+                    throw new IOException("Corrupted segment " + n);
+                }
+            } finally {
+                f.close();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Fills the buffer from the channel.
+     * @param channel the channel to read from
+     * @param buf the buffer to fill
+     * @param position where to start reading
+     * @throws IOException if an I/O error occurs, or the channel ends
+     *   before the buffer is full.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buf,
+                                  long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * Writes this index next to the recording.
+     * @param base the recording, as passed to {@link FrameRecorder}
+     * @throws IOException if an I/O error occurs.
+     */
+    public synchronized void write(File base) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(CaptureFile.getIndexFile(base))));
+        try {
+            out.writeLong(CaptureFile.INDEX_MAGIC);
+            out.writeInt(CaptureFile.VERSION);
+            out.writeInt(0);
+            out.writeLong(count);
+            for (int i=0; i<count; i++) {
+                out.writeLong(sequences[i]);
+                out.writeLong(timestamps[i]);
+                out.writeInt(segments[i]);
+                out.writeInt(0);
+                out.writeLong(offsets[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Appends an entry.
+     * @param sequence sequence number of the frame
+     * @param timestamp timestamp of the frame
+     * @param segment number of the segment containing the frame
+     * @param offset offset of the frame record within the segment
+     */
+    synchronized void add(long sequence, long timestamp, int segment,
+                          long offset) {
+        if (count == sequences.length) {
+            int capacity = 2*count;
+            sequences = grow(sequences, capacity);
+            timestamps = grow(timestamps, capacity);
+            offsets = grow(offsets, capacity);
+            int[] newSegments = new int[capacity];
+            System.arraycopy(segments, 0, newSegments, 0, count);
+            segments = newSegments;
+        }
+        sequences[count] = sequence;
+        timestamps[count] = timestamp;
+        segments[count] = segment;
+        offsets[count] = offset;
+        count++;
+    }
+
+    /**
+     * Gets the number of indexed frames.
+     * @return The number of entries.
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Gets the sequence number of the frame.
+     * @param i entry index
+     * @return The sequence number.
+     * @throws IndexOutOfBoundsException if there's no such entry.
+     */
+    public synchronized long getSequence(int i) {
+        check(i);
+        return sequences[i];
+    }
+
+    /**
+     * Gets the timestamp of the frame.
+     * @param i entry index
+     * @return The timestamp, milliseconds since the epoch.
+     * @throws IndexOutOfBoundsException if there's no such entry.
+     */
+    public synchronized long getTimestamp(int i) {
+        check(i);
+        return timestamps[i];
+    }
+
+    /**
+     * Gets the number of the segment containing the frame.
+     * @param i entry index
+     * @return The segment number.
+     * @throws IndexOutOfBoundsException if there's no such entry.
+     */
+    public synchronized int getSegment(int i) {
+        check(i);
+        return segments[i];
+    }
+
+    /**
+     * Gets the offset of the frame record within its segment.
+     * @param i entry index
+     * @return The offset of the frame record.
+     * @throws IndexOutOfBoundsException if there's no such entry.
+     */
+    public synchronized long getOffset(int i) {
+        check(i);
+        return offsets[i];
+    }
+
+    /**
+     * Finds the frame with the specified sequence number.
+     * @param sequence the sequence number
+     * @return index of the entry, if there is one; otherwise,
+     *   <tt>(-(<i>insertion point</i>) - 1)</tt>.
+     */
+    public synchronized int findSequence(long sequence) {
+        int low = 0;
+        int high = count-1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long val = sequences[mid];
+            if (val < sequence) {
+                low = mid + 1;
+            } else if (val > sequence) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Finds the frame which was current at the specified time, i.e. the
+     * last frame grabbed at or before that time.
+     * @param time milliseconds since the epoch
+     * @return index of the entry, -1 if the time precedes the first frame.
+     */
+    public synchronized int findTime(long time) {
+        int low = 0;
+        int high = count-1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Checks the entry index.
+     * @param i entry index
+     * @throws IndexOutOfBoundsException if there's no such entry.
+     */
+    private void check(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException(String.valueOf(i));
+        }
+    }
+
+    /**
+     * Grows an array.
+     * @param array the array to grow
+     * @param capacity the new capacity
+     * @return The new array.
+     */
+    private long[] grow(long[] array, int capacity) {
+        long[] newArray = new long[capacity];
+        System.arraycopy(array, 0, newArray, 0, count);
+        return newArray;
+    }
+
+    /**
+     * Returns a string representation of this object. This method
+     * is intended to be used only for debugging purposes, and the
+     * content and format of the returned string may vary between
+     * implementations. The returned string may be empty but may not
+     * be <code>null</code>.
+     *
+     * @return  A string representation of this object.
+     */
+    public synchronized String toString() {
+        return "CaptureIndex[" + count + " frames]";
+    }
+}
@@ -0,0 +1,651 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.IOException;
+
+/* java.net */
+import java.net.InetAddress;
+
+/* java.util */
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* java.util.concurrent */
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Polls a large number of network frame grabbers at a low frame rate.
+ * Network grabbers spend most of the time waiting for the network, so
+ * a thread per device would be mostly idle. Where the Java runtime
+ * supports virtual threads, each device gets its own virtual thread;
+ * elsewhere the devices are polled by a small pool of scheduler threads.
+ * Either way, the number of devices in a native call at any moment is
+ * capped by the <i>carrier budget</i>. A native call occupies the thread
+ * that carries the virtual thread for as long as it runs, so the budget
+ * should not exceed the number of carrier threads, which by default is
+ * the number of processors.
+ * <p>
+ * The devices are opened and closed as a group: {@link #openAll} either
+ * opens all the devices or none of them. The frames are passed to a
+ * per-device {@link FrameBroadcaster}, to which the consumers subscribe.
+ * <p>
+ * Typical usage:
+ * <blockquote><pre>
+ * CaptureService service = new CaptureService(PixelFormat.RGB24, false, 1);
+ * Grabber[] grabbers = service.openAll(addresses);
+ * for (int i=0; i&lt;grabbers.length; i++) {
+ *     FrameQueue queue = service.getBroadcaster(grabbers[i]).subscribe(
+ *         2, DropPolicy.DROP_OLDEST, 1);
+ *     ...
+ * }
+ * service.start();
+ * ...
+ * service.close();
+ * </pre></blockquote>
+ *
+ * @see GrabberManager
+ * @since 3.28.1
+ */
+public class CaptureService {
+
+    /** Maximum number of devices opened in parallel by platform threads */
+    private static final int MAX_OPEN_THREADS = 16;
+
+    /** Creates virtual threads, null if not supported */
+    private static final ThreadFactory VIRTUAL_THREADS =
+        createVirtualThreadFactory();
+
+    /** The pixel format */
+    private PixelFormat format;
+
+    /** Bottom-up flag */
+    private boolean bottomUp;
+
+    /** Polling interval in nanoseconds */
+    private long interval;
+
+    /** Number of native calls allowed at once */
+    private int carrierBudget;
+
+    /** Permits for the native calls */
+    private Semaphore budget;
+
+    /** Polls the devices if virtual threads are not supported */
+    private ScheduledThreadPoolExecutor scheduler;
+
+    /** Managed devices in the order they have been added */
+    private List devices = new ArrayList();
+
+    /** Maps grabbers to devices */
+    private Map deviceMap = new HashMap();
+
+    /** Whether the capture is running */
+    private boolean started;
+
+    /**
+     * A managed device.
+     */
+    private final class Device implements Runnable {
+
+        /** The grabber */
+        Grabber grabber;
+
+        /** Distributes the frames to the consumers */
+        FrameBroadcaster broadcaster = new FrameBroadcaster();
+
+        /** The polling thread, if polled by a virtual thread */
+        Thread thread;
+
+        /** The polling task, if polled by the scheduler */
+        Future task;
+
+        /** Set to false to stop polling */
+        volatile boolean running;
+
+        /**
+         * Serializes the polls. A lock rather than a monitor, so that a
+         * virtual thread waiting for it doesn't pin its carrier.
+         */
+        final ReentrantLock pollLock = new ReentrantLock();
+
+        /** Whether the grabber has been started, protected by pollLock */
+        boolean grabberStarted;
+
+        /** Number of grabbed frames */
+        volatile long frameCount;
+
+        /** Number of grabbed bytes */
+        volatile long byteCount;
+
+        /** Number of polls which found no signal */
+        volatile long noSignalCount;
+
+        /** When the capture has started */
+        volatile long startTime;
+
+        /** When the capture has stopped, zero if it's still running */
+        volatile long stopTime;
+
+        /** The error which has stopped the polling */
+        volatile IOException error;
+
+        /**
+         * Creates a managed device.
+         * @param grabber the grabber
+         */
+        Device(Grabber grabber) {
+            this.grabber = grabber;
+        }
+
+        /**
+         * Polls the device. On a virtual thread, loops until stopped;
+         * on a scheduler thread, grabs a single frame.
+         */
+        public void run() {
+            if (thread == null) {
+                if (running && !poll()) {
+                    // Suppresses the subsequent executions
+                    throw new IllegalStateException("Polling stopped");
+                }
+                return;
+            }
+            long next = System.nanoTime();
+            Thread self = Thread.currentThread();
+            while (running && !self.isInterrupted() && poll()) {
+                next += interval;
+                long delay = next - System.nanoTime();
+                if (delay > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(delay);
+                    } catch (InterruptedException x) {
+                        // Ends the loop
+                        self.interrupt();
+                    }
+                } else {
+                    // Fell behind, don't try to catch up
+                    next = System.nanoTime();
+                }
+            }
+        }
+
+        /**
+         * Grabs a frame and passes it to the broadcaster. The permit is
+         * taken before the poll lock, and neither is a monitor, so a
+         * virtual thread waiting for either of them unmounts from its
+         * carrier.
+         * @return <code>false</code> if the device has failed.
+         */
+        boolean poll() {
+            try {
+                budget.acquire();
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                return running;
+            }
+            RawFrame frame;
+            pollLock.lock();
+            try {
+                if (!grabberStarted) {
+                    grabber.start();
+                    grabberStarted = true;
+                }
+                frame = grabber.grabRawFrame(format, bottomUp);
+            } catch (IOException x) {
+                error = x;
+                stopTime = System.currentTimeMillis();
+                return false;
+            } finally {
+                pollLock.unlock();
+                budget.release();
+            }
+            if (frame != null) {
+                frameCount++;
+                byteCount += frame.getPixelBufferLength();
+                broadcaster.putFrame(frame);
+            } else {
+                noSignalCount++;
+            }
+            return true;
+        }
+
+        /**
+         * Starts polling the device.
+         */
+        void start() {
+            running = true;
+            error = null;
+            startTime = System.currentTimeMillis();
+            stopTime = 0;
+            if (VIRTUAL_THREADS != null) {
+                thread = VIRTUAL_THREADS.newThread(this);
+                thread.start();
+            } else {
+                task = scheduler.scheduleAtFixedRate(this, 0, interval,
+                    TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Stops polling the device and waits for the poll in progress.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        void stop() throws InterruptedException {
+            running = false;
+            if (thread != null) {
+                thread.interrupt();
+                thread.join();
+                thread = null;
+            } else if (task != null) {
+                task.cancel(false);
+                task = null;
+                // Wait for the poll in progress to complete
+                pollLock.lock();
+                pollLock.unlock();
+            }
+            if (stopTime == 0) {
+                stopTime = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Runs a native call on a device under the carrier budget.
+     */
+    private abstract class DeviceCall implements Callable {
+
+        /**
+         * Makes the call.
+         * @return The result.
+         * @throws Exception if the call has failed.
+         */
+        public Object call() throws Exception {
+            budget.acquire();
+            try {
+                return invoke();
+            } finally {
+                budget.release();
+            }
+        }
+
+        /**
+         * Makes the native call, holding a permit.
+         * @return The result.
+         * @throws Exception if the call has failed.
+         */
+        abstract Object invoke() throws Exception;
+    }
+
+    /**
+     * Creates a service with the default carrier budget, which is the
+     * number of processors.
+     * @param format the pixel format to capture in
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     *   bottom-up order (default is up-down).
+     * @param fps how many times per second each device is polled
+     * @throws IllegalArgumentException if <code>fps</code> is not positive.
+     */
+    public CaptureService(PixelFormat format, boolean bottomUp, float fps) {
+        this(format, bottomUp, fps, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a service.
+     * @param format the pixel format to capture in
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     *   bottom-up order (default is up-down).
+     * @param fps how many times per second each device is polled
+     * @param carrierBudget maximum number of native calls at once
+     * @throws IllegalArgumentException if <code>fps</code> or
+     *   <code>carrierBudget</code> is not positive.
+     */
+    public CaptureService(PixelFormat format, boolean bottomUp, float fps,
+                          int carrierBudget) {
+        if (format == null) throw new NullPointerException("format");
+        if (!(fps > 0)) {
+            throw new IllegalArgumentException(String.valueOf(fps));
+        }
+        if (carrierBudget <= 0) {
+            throw new IllegalArgumentException(String.valueOf(carrierBudget));
+        }
+        this.format = format;
+        this.bottomUp = bottomUp;
+        this.interval = (long)(1000000000L/fps);
+        this.carrierBudget = carrierBudget;
+        this.budget = new Semaphore(carrierBudget);
+        if (VIRTUAL_THREADS == null) {
+            scheduler = new ScheduledThreadPoolExecutor(carrierBudget,
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "CaptureService");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+    }
+
+    /**
+     * Tests whether the devices are polled by virtual threads. Requires
+     * Java 21 or later.
+     * @return <code>true</code> if virtual threads are used.
+     */
+    public static boolean isVirtual() {
+        return VIRTUAL_THREADS != null;
+    }
+
+    /**
+     * Gets the maximum number of native calls made at once.
+     * @return The carrier budget.
+     */
+    public int getCarrierBudget() {
+        return carrierBudget;
+    }
+
+    /**
+     * Opens a network device. Subclasses may override this method to
+     * open other kinds of devices, for example a {@link Grabber} over a
+     * {@link SyntheticGrabber} with some latency for testing.
+     * @param address the address of the device
+     * @return The opened grabber.
+     * @throws IOException if the device can't be opened
+     */
+    protected Grabber openGrabber(InetAddress address) throws IOException {
+        return new Grabber(address);
+    }
+
+    /**
+     * Opens the network devices concurrently and adds them to this
+     * service. If any of the devices fails to open, the ones which have
+     * been opened are closed and none is added.
+     * @param addresses the addresses of the devices
+     * @return The opened grabbers, in the order of the addresses.
+     * @throws IOException the first error, if a device can't be opened.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public Grabber[] openAll(InetAddress[] addresses)
+        throws IOException, InterruptedException {
+        List tasks = new ArrayList(addresses.length);
+        for (int i=0; i<addresses.length; i++) {
+            final InetAddress address = addresses[i];
+            tasks.add(new DeviceCall() {
+                Object invoke() throws IOException {
+                    return openGrabber(address);
+                }
+            });
+        }
+        List results = invokeAll(tasks);
+        Grabber[] grabbers = new Grabber[addresses.length];
+        Throwable error = null;
+        for (int i=0; i<grabbers.length; i++) {
+            try {
+                grabbers[i] = (Grabber)((Future)results.get(i)).get();
+            } catch (ExecutionException x) {
+                if (error == null) error = x.getCause();
+            }
+        }
+        if (error != null) {
+            closeAll(grabbers);
+            if (error instanceof IOException) {
+                throw (IOException)error;
+            } else if (error instanceof RuntimeException) {
+                throw (RuntimeException)error;
+            } else {
+                throw (Error)error;
+            }
+        }
+        for (int i=0; i<grabbers.length; i++) {
+            add(grabbers[i]);
+        }
+        return grabbers;
+    }
+
+    /**
+     * Adds an opened grabber to this service. If the capture is running,
+     * it's started for this grabber too.
+     * @param grabber the grabber to add
+     * @throws IllegalArgumentException if the grabber is already managed.
+     */
+    public synchronized void add(Grabber grabber) {
+        if (deviceMap.containsKey(grabber)) {
+            throw new IllegalArgumentException(String.valueOf(grabber));
+        }
+        Device device = new Device(grabber);
+        devices.add(device);
+        deviceMap.put(grabber, device);
+        if (started) {
+            device.start();
+        }
+    }
+
+    /**
+     * Gets the managed grabbers.
+     * @return The managed grabbers, in the order they have been added.
+     */
+    public synchronized Grabber[] getGrabbers() {
+        Grabber[] grabbers = new Grabber[devices.size()];
+        for (int i=0; i<grabbers.length; i++) {
+            grabbers[i] = ((Device)devices.get(i)).grabber;
+        }
+        return grabbers;
+    }
+
+    /**
+     * Gets the broadcaster for the specified grabber. Consumers subscribe
+     * to it to receive the frames.
+     * @param grabber a managed grabber
+     * @return The broadcaster.
+     * @throws IllegalArgumentException if the grabber is not managed.
+     */
+    public FrameBroadcaster getBroadcaster(Grabber grabber) {
+        return getDevice(grabber).broadcaster;
+    }
+
+    /**
+     * Gets the error which has stopped polling the specified device.
+     * @param grabber a managed grabber
+     * @return The error, <code>null</code> if none.
+     * @throws IllegalArgumentException if the grabber is not managed.
+     */
+    public IOException getError(Grabber grabber) {
+        return getDevice(grabber).error;
+    }
+
+    /**
+     * Starts polling all managed devices. Does nothing if already started.
+     */
+    public synchronized void start() {
+        if (!started) {
+            started = true;
+            for (int i=0; i<devices.size(); i++) {
+                ((Device)devices.get(i)).start();
+            }
+        }
+    }
+
+    /**
+     * Stops polling all managed devices and waits for the polls in
+     * progress to complete.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void stop() throws InterruptedException {
+        Device[] all;
+        synchronized (this) {
+            if (!started) {
+                return;
+            }
+            started = false;
+            all = (Device[])devices.toArray(new Device[devices.size()]);
+        }
+        for (int i=0; i<all.length; i++) {
+            all[i].stop();
+        }
+    }
+
+    /**
+     * Stops polling and closes all managed devices concurrently. The
+     * service can't be restarted once it's closed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void close() throws InterruptedException {
+        stop();
+        Device[] all;
+        synchronized (this) {
+            all = (Device[])devices.toArray(new Device[devices.size()]);
+            devices.clear();
+            deviceMap.clear();
+        }
+        Grabber[] grabbers = new Grabber[all.length];
+        for (int i=0; i<all.length; i++) {
+            grabbers[i] = all[i].grabber;
+        }
+        closeAll(grabbers);
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Gets the throughput of the specified device.
+     * @param grabber a managed grabber
+     * @return The capture statistics of the device.
+     * @throws IllegalArgumentException if the grabber is not managed.
+     */
+    public CaptureStats getStats(Grabber grabber) {
+        return getStats(getDevice(grabber));
+    }
+
+    /**
+     * Gets the aggregate throughput of all managed devices.
+     * @return The combined capture statistics.
+     */
+    public synchronized CaptureStats getStats() {
+        CaptureStats total = new CaptureStats(0, 0, 0, 0);
+        for (int i=0; i<devices.size(); i++) {
+            total = total.add(getStats((Device)devices.get(i)));
+        }
+        return total;
+    }
+
+    /**
+     * Gets the throughput of a device.
+     * @param device the device
+     * @return The capture statistics of the device.
+     */
+    private static CaptureStats getStats(Device device) {
+        long start = device.startTime;
+        long end = device.stopTime;
+        if (end == 0) end = System.currentTimeMillis();
+        long elapsed = (start == 0) ? 0 : (end - start);
+        return new CaptureStats(device.frameCount, device.byteCount,
+            device.noSignalCount, elapsed);
+    }
+
+    /**
+     * Closes the grabbers concurrently and waits until all of them are
+     * closed.
+     * @param grabbers the grabbers to close, may contain nulls
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void closeAll(Grabber[] grabbers) throws InterruptedException {
+        List tasks = new ArrayList(grabbers.length);
+        for (int i=0; i<grabbers.length; i++) {
+            final Grabber grabber = grabbers[i];
+            if (grabber != null) {
+                tasks.add(new DeviceCall() {
+                    Object invoke() {
+                        grabber.close();
+                        return null;
+                    }
+                });
+            }
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * Runs the device calls concurrently, each on its own virtual thread
+     * if supported, and waits until all of them have completed.
+     * @param tasks the calls
+     * @return The futures of the calls.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private List invokeAll(List tasks) throws InterruptedException {
+        if (tasks.isEmpty()) {
+            return tasks;
+        }
+        int nthreads = tasks.size();
+        ThreadFactory factory = VIRTUAL_THREADS;
+        if (factory == null) {
+            nthreads = Math.min(nthreads, MAX_OPEN_THREADS);
+            factory = new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "CaptureService-open");
+                    t.setDaemon(true);
+                    return t;
+                }
+            };
+        }
+        ExecutorService executor = new ThreadPoolExecutor(nthreads, nthreads,
+            0, TimeUnit.SECONDS, new LinkedBlockingQueue(), factory);
+        try {
+            return executor.invokeAll(tasks);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Finds the device for the specified grabber.
+     * @param grabber a managed grabber
+     * @return The device.
+     * @throws IllegalArgumentException if the grabber is not managed.
+     */
+    private synchronized Device getDevice(Grabber grabber) {
+        Device device = (Device)deviceMap.get(grabber);
+        if (device == null) {
+            throw new IllegalArgumentException(String.valueOf(grabber));
+        }
+        return device;
+    }
+
+    /**
+     * Creates the factory of virtual threads. Virtual threads are looked
+     * up by reflection, so that this class still runs on older Java.
+     * @return The thread factory, <code>null</code> if not supported.
+     */
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Class builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual",
+                new Class[0]).invoke(null, new Object[0]);
+            builder = builderClass.getMethod("name",
+                new Class[] { String.class, Long.TYPE }).invoke(builder,
+                new Object[] { "CaptureService-", Long.valueOf(0) });
+            return (ThreadFactory)builderClass.getMethod("factory",
+                new Class[0]).invoke(builder, new Object[0]);
+        } catch (Exception x) {
+            // Not supported, or a preview feature which is not enabled
+            return null;
+        }
+    }
+}
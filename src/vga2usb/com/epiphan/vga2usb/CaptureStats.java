@@ -0,0 +1,115 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Throughput of one or more {@link CaptureEngine}s, as of the moment
+ * this object was created.
+ *
+ * @see CaptureEngine#getStats
+ * @see GrabberManager#getStats()
+ * @since 3.28.1
+ */
+public final class CaptureStats {
+
+    private long frameCount;
+    private long byteCount;
+    private long noSignalCount;
+    private long elapsed;
+
+    /**
+     * Creates a <code>CaptureStats</code> object.
+     * @param frames number of grabbed frames
+     * @param bytes number of grabbed bytes
+     * @param noSignal number of grab attempts which found no signal
+     * @param elapsed capture time in milliseconds
+     */
+    CaptureStats(long frames, long bytes, long noSignal, long elapsed) {
+        this.frameCount = frames;
+        this.byteCount = bytes;
+        this.noSignalCount = noSignal;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Combines this object with another. The elapsed time of the result
+     * is the longer of the two, since the engines run in parallel.
+     * @param that the statistics to add
+     * @return The combined statistics.
+     */
+    CaptureStats add(CaptureStats that) {
+        return new CaptureStats(
+            frameCount + that.frameCount,
+            byteCount + that.byteCount,
+            noSignalCount + that.noSignalCount,
+            Math.max(elapsed, that.elapsed));
+    }
+
+    /**
+     * Gets the number of grabbed frames.
+     * @return The number of grabbed frames.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the number of grabbed bytes.
+     * @return The number of grabbed bytes.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Gets the number of grab attempts which found no signal.
+     * @return The number of grab attempts without signal.
+     */
+    public long getNoSignalCount() {
+        return noSignalCount;
+    }
+
+    /**
+     * Gets the capture time.
+     * @return The capture time in milliseconds.
+     */
+    public long getElapsedTime() {
+        return elapsed;
+    }
+
+    /**
+     * Gets the average number of frames per second.
+     * @return Frames per second, zero if nothing has been captured.
+     */
+    public float getFrameRate() {
+        return (elapsed > 0) ? (frameCount * 1000.0f) / elapsed : 0;
+    }
+
+    /**
+     * Gets the average number of bytes per second.
+     * @return Bytes per second, zero if nothing has been captured.
+     */
+    public float getByteRate() {
+        return (elapsed > 0) ? (byteCount * 1000.0f) / elapsed : 0;
+    }
+
+    /**
+     * Returns a string representation of this object. This method
+     * is intended to be used only for debugging purposes, and the
+     * content and format of the returned string may vary between
+     * implementations. The returned string may be empty but may not
+     * be <code>null</code>.
+     *
+     * @return  A string representation of this object.
+     */
+    public String toString() {
+        return frameCount + " frames, " + byteCount + " bytes, " +
+            elapsed + " ms";
+    }
+}
@@ -0,0 +1,181 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.util */
+import java.util.Arrays;
+
+/**
+ * Finds the parts of a frame that have changed since the previous frame.
+ * For screen capture most consecutive frames are identical, and the ones
+ * that aren't usually differ in a few small areas. The detector lets the
+ * consumers skip the unchanged frames or only process the changed tiles.
+ * <p>
+ * The detector keeps a copy of the previous frame. An unchanged frame
+ * costs one comparison of the pixel buffers. Otherwise the comparison
+ * jumps from one difference to the next, scanning only the lines of the
+ * tile rows which contain differences and skipping the rest of a tile
+ * once a difference has been found in it. Only the changed tiles are
+ * copied. The comparison is done with {@link Arrays#mismatch(byte[],
+ * int, int, byte[], int, int) Arrays.mismatch} which the JVM compares
+ * many bytes at a time. All pixel formats are supported.
+ * <p>
+ * Typical usage:
+ * <blockquote><pre>
+ * ChangeDetector detector = new ChangeDetector();
+ * while (...) {
+ *     RawFrame frame = grabber.grabRawFrame(PixelFormat.RGB24, false);
+ *     ChangeMap changes = detector.detect(frame);
+ *     if (!changes.isUnchanged()) {
+ *         ...
+ *     }
+ *     frame.release();
+ * }
+ * </pre></blockquote>
+ *
+ * @see ChangeMap
+ * @since 3.28.1
+ */
+public class ChangeDetector {
+
+    /** Default tile size */
+    public static final int DEFAULT_TILE_SIZE = 32;
+
+    /** The tile size in pixels */
+    private int tileSize;
+
+    /** Copy of the previous frame */
+    private byte[] previous;
+
+    /** Width of the previous frame */
+    private int width;
+
+    /** Height of the previous frame */
+    private int height;
+
+    /** Format of the previous frame, null if none */
+    private PixelFormat format;
+
+    /**
+     * Creates a detector with 32x32 tiles.
+     */
+    public ChangeDetector() {
+        this(DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Creates a detector.
+     * @param tileSize width and height of the tiles, in pixels
+     * @throws IllegalArgumentException if the tile size is not a positive
+     *   even number.
+     */
+    public ChangeDetector(int tileSize) {
+        if (tileSize <= 0 || (tileSize & 1) != 0) {
+            throw new IllegalArgumentException(String.valueOf(tileSize));
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Gets the tile size.
+     * @return The width and height of the tiles, in pixels.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Forgets the previous frame. The next frame will be reported as
+     * entirely new.
+     */
+    public synchronized void reset() {
+        format = null;
+    }
+
+    /**
+     * Compares the frame with the previous one and remembers it for the
+     * next comparison. The frame itself is not retained.
+     * @param frame the new frame
+     * @return The changes.
+     */
+    public synchronized ChangeMap detect(RawFrame frame) {
+        int w = frame.getWidth();
+        int h = frame.getHeight();
+        PixelFormat f = frame.getPixelFormat();
+        byte[] pixels = frame.getPixelBuffer();
+        int lineSize = PixelPacker.getLineSize(f, w);
+        int size = lineSize*h;
+        if (size > frame.getPixelBufferLength()) {
+            throw new IllegalArgumentException("Incomplete frame");
+        }
+
+        int columns = (w + tileSize - 1)/tileSize;
+        int rows = (h + tileSize - 1)/tileSize;
+        ChangeMap map = new ChangeMap(tileSize, columns, rows);
+        if (f != format || w != width || h != height) {
+            if (previous == null || previous.length < size) {
+                previous = new byte[size];
+            }
+            System.arraycopy(pixels, 0, previous, 0, size);
+            format = f;
+            width = w;
+            height = h;
+            map.setReset();
+            return map;
+        }
+
+        // Jump to the next difference, then scan the rest of its tile row
+        // line by line. An unchanged frame takes a single comparison.
+        int tileBytes = tileSize*f.getBpp()/8;
+        int pos = 0;
+        while (pos < size) {
+            int m = Arrays.mismatch(pixels, pos, size, previous, pos, size);
+            if (m < 0) break;
+            int y = (pos + m)/lineSize;
+            int row = y/tileSize;
+            int y1 = Math.min((row + 1)*tileSize, h);
+            for (; y<y1; y++) {
+                int base = y*lineSize;
+                int off = 0;
+                while (off < lineSize) {
+                    m = Arrays.mismatch(pixels, base + off, base + lineSize,
+                        previous, base + off, base + lineSize);
+                    if (m < 0) break;
+                    int col = (off + m)/tileBytes;
+                    map.setDirty(col, row);
+                    off = (col + 1)*tileBytes;
+                }
+            }
+            pos = y1*lineSize;
+        }
+        if (map.isUnchanged()) {
+            return map;
+        }
+
+        // Update the changed tiles of the copy, a run of tiles at a time
+        for (int row=0; row<rows; row++) {
+            int y1 = Math.min((row + 1)*tileSize, h);
+            int col = 0;
+            while (col < columns) {
+                if (!map.isDirty(col, row)) {
+                    col++;
+                    continue;
+                }
+                int start = col*tileBytes;
+                while (col < columns && map.isDirty(col, row)) col++;
+                int len = Math.min(col*tileBytes, lineSize) - start;
+                for (int y=row*tileSize; y<y1; y++) {
+                    int p = y*lineSize + start;
+                    System.arraycopy(pixels, p, previous, p, len);
+                }
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,160 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Tells which parts of a frame have changed since the previous frame.
+ * The frame is divided into square tiles; the tiles on the right and
+ * bottom edges may be smaller. Tile rows follow the order of the lines
+ * in the pixel buffer, so for bottom-up frames tile row zero is at the
+ * bottom of the picture.
+ *
+ * @see ChangeDetector
+ * @since 3.28.1
+ */
+public final class ChangeMap {
+
+    private int tileSize;
+    private int columns;
+    private int rows;
+    private long[] bits;
+    private int dirtyCount;
+    private boolean reset;
+
+    /**
+     * Creates a <code>ChangeMap</code> object with no dirty tiles.
+     * @param tileSize the tile size in pixels
+     * @param columns number of tile columns
+     * @param rows number of tile rows
+     */
+    ChangeMap(int tileSize, int columns, int rows) {
+        this.tileSize = tileSize;
+        this.columns = columns;
+        this.rows = rows;
+        this.bits = new long[(columns*rows + 63)/64];
+    }
+
+    /**
+     * Marks a tile as dirty.
+     * @param col tile column
+     * @param row tile row
+     */
+    void setDirty(int col, int row) {
+        int i = row*columns + col;
+        long mask = 1L << (i & 63);
+        if ((bits[i >> 6] & mask) == 0) {
+            bits[i >> 6] |= mask;
+            dirtyCount++;
+        }
+    }
+
+    /**
+     * Marks all tiles as dirty, because there's no previous frame to
+     * compare with.
+     */
+    void setReset() {
+        reset = true;
+        for (int row=0; row<rows; row++) {
+            for (int col=0; col<columns; col++) {
+                setDirty(col, row);
+            }
+        }
+    }
+
+    /**
+     * Gets the tile size.
+     * @return The width and height of a tile, in pixels.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Gets the number of tile columns.
+     * @return The number of tile columns.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Gets the number of tile rows.
+     * @return The number of tile rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Tests whether the frame is identical to the previous one.
+     * @return <code>true</code> if nothing has changed.
+     */
+    public boolean isUnchanged() {
+        return dirtyCount == 0;
+    }
+
+    /**
+     * Tests whether there was no previous frame to compare with, because
+     * this is the first frame or the size or the format has changed. All
+     * tiles are dirty in this case.
+     * @return <code>true</code> if the whole frame is new.
+     */
+    public boolean isReset() {
+        return reset;
+    }
+
+    /**
+     * Tests whether a tile has changed.
+     * @param col tile column
+     * @param row tile row
+     * @return <code>true</code> if any pixel of the tile has changed.
+     * @throws IndexOutOfBoundsException if there's no such tile.
+     */
+    public boolean isDirty(int col, int row) {
+        if (col < 0 || col >= columns) {
+            throw new IndexOutOfBoundsException(String.valueOf(col));
+        }
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException(String.valueOf(row));
+        }
+        int i = row*columns + col;
+        return (bits[i >> 6] & (1L << (i & 63))) != 0;
+    }
+
+    /**
+     * Gets the number of changed tiles.
+     * @return The number of dirty tiles.
+     */
+    public int getDirtyCount() {
+        return dirtyCount;
+    }
+
+    /**
+     * Gets the fraction of the tiles which have changed.
+     * @return The number of dirty tiles divided by the number of tiles.
+     */
+    public float getDirtyFraction() {
+        int total = columns*rows;
+        return (total > 0) ? (float)dirtyCount/total : 0;
+    }
+
+    /**
+     * Returns a string representation of this object. This method
+     * is intended to be used only for debugging purposes, and the
+     * content and format of the returned string may vary between
+     * implementations. The returned string may be empty but may not
+     * be <code>null</code>.
+     *
+     * @return  A string representation of this object.
+     */
+    public String toString() {
+        return dirtyCount + "/" + (columns*rows) + " tiles changed" +
+            (reset ? " (reset)" : "");
+    }
+}
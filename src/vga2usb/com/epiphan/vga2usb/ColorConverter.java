@@ -0,0 +1,444 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.util.concurrent */
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Converts raw frames to RGB. Any {@link PixelFormat} can be converted
+ * into RGB24, BGR24 or 0xRRGGBB integers (the layout of
+ * {@link java.awt.image.BufferedImage#TYPE_INT_RGB}). This allows to
+ * capture in one of the 16 bpp YUV formats, which takes a third less
+ * bandwidth than RGB24, and only convert the frames that actually need
+ * to be displayed or processed as RGB.
+ * <p>
+ * YUV is converted according to ITU-R BT.601 (studio range) using
+ * precomputed fixed point tables, so the inner loops consist of table
+ * lookups and additions. The palette formats use the palettes documented
+ * in {@link PixelFormat}. Large frames are split into bands of rows which
+ * are converted in parallel.
+ * <p>
+ * Typical usage:
+ * <blockquote><pre>
+ * ColorConverter converter = new ColorConverter();
+ * RawFrame yuv = grabber.grabRawFrame(PixelFormat.YUYV, false);
+ * RawFrame rgb = converter.convert(yuv, PixelFormat.RGB24);
+ * yuv.release();
+ * </pre></blockquote>
+ *
+ * @since 3.28.1
+ */
+public class ColorConverter {
+
+    /** Destination layouts */
+    private static final int DST_INT = 0;
+    private static final int DST_RGB = 1;
+    private static final int DST_BGR = 2;
+
+    /** Frames with fewer pixels are converted on the calling thread */
+    private static final int PARALLEL_THRESHOLD = 320*240;
+
+    /** Minimum number of rows per band */
+    private static final int MIN_BAND_HEIGHT = 32;
+
+    /** Fixed point precision of the YUV tables */
+    private static final int SHIFT = 16;
+
+    /** Offset of zero in the clipping table */
+    private static final int CLIP_OFFSET = 384;
+
+    /** Luma contribution, including the rounding */
+    private static final int[] Y_TABLE = new int[256];
+
+    /** V contribution to red */
+    private static final int[] RV_TABLE = new int[256];
+
+    /** U contribution to green */
+    private static final int[] GU_TABLE = new int[256];
+
+    /** V contribution to green */
+    private static final int[] GV_TABLE = new int[256];
+
+    /** U contribution to blue */
+    private static final int[] BU_TABLE = new int[256];
+
+    /** Clips the components to the [0,255] range */
+    private static final byte[] CLIP = new byte[CLIP_OFFSET*2 + 256];
+
+    /** RGB4 palette */
+    private static final int[] PALETTE4 = new int[16];
+
+    /** RGB8 palette */
+    private static final int[] PALETTE8 = new int[256];
+
+    /** Converts the bands, null to convert on the calling thread */
+    private ExecutorService executor;
+
+    /** Maximum number of bands */
+    private int parallelism;
+
+    static {
+        double one = 1 << SHIFT;
+        for (int i=0; i<256; i++) {
+            Y_TABLE[i] = (int)Math.round(1.164*(i-16)*one) + (1 << (SHIFT-1));
+            RV_TABLE[i] = (int)Math.round(1.596*(i-128)*one);
+            GU_TABLE[i] = (int)Math.round(-0.391*(i-128)*one);
+            GV_TABLE[i] = (int)Math.round(-0.813*(i-128)*one);
+            BU_TABLE[i] = (int)Math.round(2.018*(i-128)*one);
+        }
+        for (int i=0; i<CLIP.length; i++) {
+            CLIP[i] = (byte)Math.min(Math.max(i - CLIP_OFFSET, 0), 255);
+        }
+        for (int i=0; i<PALETTE4.length; i++) {
+            int r = ((i & 1) != 0) ? 0xff : 0;
+            int g = ((i >> 1) & 3)*0x55;
+            int b = ((i & 8) != 0) ? 0xff : 0;
+            PALETTE4[i] = (r << 16) | (g << 8) | b;
+        }
+        for (int i=0; i<PALETTE8.length; i++) {
+            int r = ((i >> 6) & 3)*0x55;
+            int g = ((i >> 3) & 7)*0xff/7;
+            int b = (i & 7)*0xff/7;
+            PALETTE8[i] = (r << 16) | (g << 8) | b;
+        }
+    }
+
+    /**
+     * Converts a band of rows, see {@link ColorConverter#convert(BasicFrame,
+     * Object, int, int)}.
+     */
+    private static final class Band implements Runnable {
+        BasicFrame src;
+        Object dst;
+        int dstOffset;
+        int dstFormat;
+        int y0, y1;
+        Band(BasicFrame src, Object dst, int dstOffset, int dstFormat,
+             int y0, int y1) {
+            this.src = src;
+            this.dst = dst;
+            this.dstOffset = dstOffset;
+            this.dstFormat = dstFormat;
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+        public void run() {
+            convertRows(src, dst, dstOffset, dstFormat, y0, y1);
+        }
+    }
+
+    /**
+     * Creates a converter which converts large frames in parallel in
+     * the common {@link java.util.concurrent.ForkJoinPool}.
+     */
+    public ColorConverter() {
+        this(RowTasks.getSharedExecutor(),
+            Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a converter.
+     * @param executor converts the bands of large frames, <code>null</code>
+     *   to convert everything on the calling thread
+     * @param parallelism maximum number of bands a frame is split into
+     */
+    public ColorConverter(ExecutorService executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = (executor == null) ? 1 : Math.max(parallelism, 1);
+    }
+
+    /**
+     * Gets the palette of an indexed format.
+     * @param format {@link PixelFormat#RGB4} or {@link PixelFormat#RGB8}
+     * @return The palette, 0xRRGGBB entries. Must not be modified.
+     */
+    static int[] getPalette(PixelFormat format) {
+        if (format == PixelFormat.RGB4) {
+            return PALETTE4;
+        } else if (format == PixelFormat.RGB8) {
+            return PALETTE8;
+        } else {
+            throw new IllegalArgumentException(String.valueOf(format));
+        }
+    }
+
+    /**
+     * Converts the frame into a new frame. The source frame is left
+     * intact and still needs to be released by the caller. The line order,
+     * sequence number, timestamp and video mode are preserved.
+     * @param src the frame to convert
+     * @param format {@link PixelFormat#RGB24} or {@link PixelFormat#BGR24}
+     * @return The converted frame.
+     * @throws IllegalArgumentException if the destination format is not
+     *   supported.
+     */
+    public RawFrame convert(RawFrame src, PixelFormat format) {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        byte[] pixels = new byte[w*h*3];
+        convert(src, format, pixels, 0);
+        RawFrame dst = new RawFrame(w, h, format, pixels, pixels.length);
+        dst.copyStamp(src);
+        return dst;
+    }
+
+    /**
+     * Converts the frame into 24 bpp pixels.
+     * @param src the frame to convert
+     * @param format {@link PixelFormat#RGB24} or {@link PixelFormat#BGR24}
+     * @param dst receives the pixels, <code>width*height*3</code> bytes
+     * @param offset offset of the first pixel in <code>dst</code>
+     * @throws IllegalArgumentException if the destination format is not
+     *   supported.
+     * @throws IndexOutOfBoundsException if the destination is too small.
+     */
+    public void convert(RawFrame src, PixelFormat format, byte[] dst,
+                        int offset) {
+        int layout;
+        if (format == PixelFormat.RGB24) {
+            layout = DST_RGB;
+        } else if (format == PixelFormat.BGR24) {
+            layout = DST_BGR;
+        } else {
+            throw new IllegalArgumentException(String.valueOf(format));
+        }
+        long size = (long)src.getWidth()*src.getHeight()*3;
+        if (offset < 0 || offset + size > dst.length) {
+            throw new IndexOutOfBoundsException(String.valueOf(offset));
+        }
+        convert(src, dst, offset, layout);
+    }
+
+    /**
+     * Converts the frame into 0xRRGGBB pixels.
+     * @param src the frame to convert
+     * @param dst receives the pixels, <code>width*height</code> integers
+     * @param offset offset of the first pixel in <code>dst</code>
+     * @throws IndexOutOfBoundsException if the destination is too small.
+     */
+    public void convert(RawFrame src, int[] dst, int offset) {
+        convertFrame(src, dst, offset);
+    }
+
+    /**
+     * Converts any frame into 0xRRGGBB pixels.
+     * @param src the frame to convert
+     * @param dst receives the pixels, <code>width*height</code> integers
+     * @param offset offset of the first pixel in <code>dst</code>
+     * @throws IndexOutOfBoundsException if the destination is too small.
+     */
+    void convertFrame(BasicFrame src, int[] dst, int offset) {
+        long size = (long)src.getWidth()*src.getHeight();
+        if (offset < 0 || offset + size > dst.length) {
+            throw new IndexOutOfBoundsException(String.valueOf(offset));
+        }
+        convert(src, dst, offset, DST_INT);
+    }
+
+    /**
+     * Splits the frame into bands and converts them.
+     * @param src the frame to convert
+     * @param dst destination array, byte[] or int[]
+     * @param offset offset of the first pixel in <code>dst</code>
+     * @param layout destination layout
+     */
+    private void convert(BasicFrame src, Object dst, int offset, int layout) {
+        int w = src.width;
+        int h = src.height;
+        long lineSize = PixelPacker.getLineSize(src.format, w);
+        if (lineSize*h > src.length) {
+            throw new IllegalArgumentException("Incomplete frame");
+        }
+
+        int nbands = RowTasks.getBandCount(parallelism, (long)w*h, h,
+            PARALLEL_THRESHOLD, MIN_BAND_HEIGHT);
+        Runnable[] bands = new Runnable[nbands];
+        for (int i=0; i<nbands; i++) {
+            bands[i] = new Band(src, dst, offset, layout,
+                h*i/nbands, h*(i+1)/nbands);
+        }
+        RowTasks.run(executor, bands);
+    }
+
+    /**
+     * Converts a range of rows.
+     * @param src the frame to convert
+     * @param dst destination array, byte[] or int[]
+     * @param offset offset of the first pixel in <code>dst</code>
+     * @param layout destination layout
+     * @param y0 first row
+     * @param y1 row after the last one
+     */
+    private static void convertRows(BasicFrame src, Object dst, int offset,
+                                    int layout, int y0, int y1) {
+        PixelFormat format = src.format;
+        byte[] pix = src.getPixels();
+        int w = src.width;
+        int lineSize = PixelPacker.getLineSize(format, w);
+        int[] line = null;
+        for (int y=y0; y<y1; y++) {
+            int s = y*lineSize;
+            if (layout == DST_INT) {
+                toInt(format, pix, s, w, (int[])dst, offset + y*w);
+            } else {
+                byte[] out = (byte[])dst;
+                int d = offset + y*w*3;
+                boolean bgr = (layout == DST_BGR);
+                if (format == PixelFormat.YUYV) {
+                    yuvToBytes(pix, s, 0, w, bgr, out, d);
+                } else if (format == PixelFormat.UYVY) {
+                    yuvToBytes(pix, s, 1, w, bgr, out, d);
+                } else if (format == PixelFormat.RGB24 ||
+                           format == PixelFormat.BGR24) {
+                    if ((format == PixelFormat.BGR24) == bgr) {
+                        System.arraycopy(pix, s, out, d, w*3);
+                    } else {
+                        for (int x=0; x<w; x++, s+=3, d+=3) {
+                            out[d] = pix[s+2];
+                            out[d+1] = pix[s+1];
+                            out[d+2] = pix[s];
+                        }
+                    }
+                } else {
+                    if (line == null) line = new int[w];
+                    toInt(format, pix, s, w, line, 0);
+                    for (int x=0; x<w; x++, d+=3) {
+                        int p = line[x];
+                        out[d] = (byte)(bgr ? p : (p >> 16));
+                        out[d+1] = (byte)(p >> 8);
+                        out[d+2] = (byte)(bgr ? (p >> 16) : p);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a line of YUV 4:2:2 pixels into 24 bpp pixels.
+     * @param src the source pixels
+     * @param s offset of the line in <code>src</code>
+     * @param luma offset of the first luma sample within a pixel pair,
+     *   0 for YUYV, 1 for UYVY
+     * @param w number of pixels
+     * @param bgr <code>true</code> for BGR24, <code>false</code> for RGB24
+     * @param dst receives the pixels
+     * @param d offset of the line in <code>dst</code>
+     */
+    private static void yuvToBytes(byte[] src, int s, int luma, int w,
+                                   boolean bgr, byte[] dst, int d) {
+        int chroma = 1 - luma;
+        int ri = bgr ? 2 : 0;
+        int bi = bgr ? 0 : 2;
+        for (int x=0; x<w; x+=2, s+=4) {
+            int u = src[s + chroma] & 0xff;
+            int v = src[s + chroma + 2] & 0xff;
+            int rv = RV_TABLE[v];
+            int guv = GU_TABLE[u] + GV_TABLE[v];
+            int bu = BU_TABLE[u];
+
+            int y = Y_TABLE[src[s + luma] & 0xff];
+            dst[d+ri] = CLIP[((y + rv) >> SHIFT) + CLIP_OFFSET];
+            dst[d+1] = CLIP[((y + guv) >> SHIFT) + CLIP_OFFSET];
+            dst[d+bi] = CLIP[((y + bu) >> SHIFT) + CLIP_OFFSET];
+            d += 3;
+
+            if (x+1 < w) {
+                y = Y_TABLE[src[s + luma + 2] & 0xff];
+                dst[d+ri] = CLIP[((y + rv) >> SHIFT) + CLIP_OFFSET];
+                dst[d+1] = CLIP[((y + guv) >> SHIFT) + CLIP_OFFSET];
+                dst[d+bi] = CLIP[((y + bu) >> SHIFT) + CLIP_OFFSET];
+                d += 3;
+            }
+        }
+    }
+
+    /**
+     * Converts a line of pixels into 0xRRGGBB form.
+     * @param format the source pixel format
+     * @param src the source pixels
+     * @param s offset of the line in <code>src</code>
+     * @param w number of pixels
+     * @param dst receives the pixels
+     * @param d offset of the line in <code>dst</code>
+     */
+    static void toInt(PixelFormat format, byte[] src, int s, int w,
+                      int[] dst, int d) {
+        if (format == PixelFormat.YUYV || format == PixelFormat.UYVY) {
+            int luma = (format == PixelFormat.YUYV) ? 0 : 1;
+            int chroma = 1 - luma;
+            for (int x=0; x<w; x+=2, s+=4) {
+                int u = src[s + chroma] & 0xff;
+                int v = src[s + chroma + 2] & 0xff;
+                int rv = RV_TABLE[v];
+                int guv = GU_TABLE[u] + GV_TABLE[v];
+                int bu = BU_TABLE[u];
+                int y = Y_TABLE[src[s + luma] & 0xff];
+                dst[d++] = rgb(y, rv, guv, bu);
+                if (x+1 < w) {
+                    y = Y_TABLE[src[s + luma + 2] & 0xff];
+                    dst[d++] = rgb(y, rv, guv, bu);
+                }
+            }
+        } else if (format == PixelFormat.RGB24) {
+            for (int x=0; x<w; x++, s+=3) {
+                dst[d++] = ((src[s] & 0xff) << 16) |
+                    ((src[s+1] & 0xff) << 8) | (src[s+2] & 0xff);
+            }
+        } else if (format == PixelFormat.BGR24) {
+            for (int x=0; x<w; x++, s+=3) {
+                dst[d++] = ((src[s+2] & 0xff) << 16) |
+                    ((src[s+1] & 0xff) << 8) | (src[s] & 0xff);
+            }
+        } else if (format == PixelFormat.RGB16 ||
+                   format == PixelFormat.BGR16) {
+            boolean bgr = (format == PixelFormat.BGR16);
+            for (int x=0; x<w; x++, s+=2) {
+                int p = (src[s] & 0xff) | ((src[s+1] & 0xff) << 8);
+                int hi = (p >> 11) & 0x1f;
+                int g = (p >> 5) & 0x3f;
+                int lo = p & 0x1f;
+                hi = (hi << 3) | (hi >> 2);
+                g = (g << 2) | (g >> 4);
+                lo = (lo << 3) | (lo >> 2);
+                dst[d++] = bgr ? ((lo << 16) | (g << 8) | hi) :
+                                 ((hi << 16) | (g << 8) | lo);
+            }
+        } else if (format == PixelFormat.RGB8) {
+            for (int x=0; x<w; x++) {
+                dst[d++] = PALETTE8[src[s++] & 0xff];
+            }
+        } else if (format == PixelFormat.RGB4) {
+            for (int x=0; x<w; x+=2) {
+                int p = src[s++];
+                dst[d++] = PALETTE4[(p >> 4) & 0xf];
+                if (x+1 < w) {
+                    dst[d++] = PALETTE4[p & 0xf];
+                }
+            }
+        } else {
+            throw new IllegalArgumentException(String.valueOf(format));
+        }
+    }
+
+    /**
+     * Combines the YUV table values into a 0xRRGGBB pixel.
+     * @param y luma contribution
+     * @param rv V contribution to red
+     * @param guv U and V contribution to green
+     * @param bu U contribution to blue
+     * @return The pixel.
+     */
+    private static int rgb(int y, int rv, int guv, int bu) {
+        int r = CLIP[((y + rv) >> SHIFT) + CLIP_OFFSET] & 0xff;
+        int g = CLIP[((y + guv) >> SHIFT) + CLIP_OFFSET] & 0xff;
+        int b = CLIP[((y + bu) >> SHIFT) + CLIP_OFFSET] & 0xff;
+        return (r << 16) | (g << 8) | b;
+    }
+}
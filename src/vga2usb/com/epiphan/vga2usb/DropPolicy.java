@@ -0,0 +1,47 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Typesafe enumeration of the policies applied by {@link FrameQueue}
+ * when a new frame arrives and the queue is full.
+ *
+ * @see FrameQueue
+ * @since 3.28.1
+ */
+public final class DropPolicy extends Enum {
+
+    /**
+     * The oldest queued frame is dropped to make room for the new one.
+     * The consumer sees the most recent frames, with gaps.
+     */
+    public static final DropPolicy DROP_OLDEST = new DropPolicy("DropOldest");
+
+    /**
+     * The new frame is dropped. The consumer sees contiguous runs of
+     * frames, but they may be behind the live signal by the depth of
+     * the queue.
+     */
+    public static final DropPolicy DROP_NEWEST = new DropPolicy("DropNewest");
+
+    /**
+     * Only the most recent frame is kept. This is the same as
+     * {@link #DROP_OLDEST} with the queue depth of one. Best suited for
+     * live preview.
+     */
+    public static final DropPolicy LATEST_ONLY = new DropPolicy("LatestOnly");
+
+    /**
+     * Creates a new <code>DropPolicy</code> instance.
+     * @param description description string
+     */
+    private DropPolicy(String description) {
+        super(description);
+    }
+}
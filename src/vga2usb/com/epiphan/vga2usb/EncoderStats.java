@@ -0,0 +1,115 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Throughput of a {@link JpegEncoder}, as of the moment this object was
+ * created.
+ *
+ * @see JpegEncoder#getStats
+ * @since 3.28.1
+ */
+public final class EncoderStats {
+
+    private long frameCount;
+    private long byteCount;
+    private long dropCount;
+    private long encodeTime;
+    private long elapsed;
+
+    /**
+     * Creates an <code>EncoderStats</code> object.
+     * @param frames number of encoded frames
+     * @param bytes number of bytes produced
+     * @param drops number of frames dropped because the encoder was busy
+     * @param encodeTime total encoding time in nanoseconds
+     * @param elapsed time since the encoder was created, in milliseconds
+     */
+    EncoderStats(long frames, long bytes, long drops, long encodeTime,
+                 long elapsed) {
+        this.frameCount = frames;
+        this.byteCount = bytes;
+        this.dropCount = drops;
+        this.encodeTime = encodeTime;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Gets the number of encoded frames.
+     * @return The number of encoded frames.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the number of bytes produced.
+     * @return The total size of the encoded images.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Gets the number of frames dropped because the encoder was busy.
+     * @return The number of dropped frames.
+     */
+    public long getDropCount() {
+        return dropCount;
+    }
+
+    /**
+     * Gets the time elapsed since the encoder was created.
+     * @return The elapsed time in milliseconds.
+     */
+    public long getElapsedTime() {
+        return elapsed;
+    }
+
+    /**
+     * Gets the average time it takes to encode a frame. Frames encoded in
+     * parallel are counted separately, so this is the CPU cost of a frame
+     * rather than the latency.
+     * @return The average encoding time in milliseconds, zero if nothing
+     *   has been encoded.
+     */
+    public float getAverageEncodeTime() {
+        return (frameCount > 0) ? encodeTime / (frameCount * 1e6f) : 0;
+    }
+
+    /**
+     * Gets the average number of frames encoded per second.
+     * @return Frames per second, zero if nothing has been encoded.
+     */
+    public float getFrameRate() {
+        return (elapsed > 0) ? (frameCount * 1000.0f) / elapsed : 0;
+    }
+
+    /**
+     * Gets the average number of bytes produced per second.
+     * @return Bytes per second, zero if nothing has been encoded.
+     */
+    public float getByteRate() {
+        return (elapsed > 0) ? (byteCount * 1000.0f) / elapsed : 0;
+    }
+
+    /**
+     * Returns a string representation of this object. This method
+     * is intended to be used only for debugging purposes, and the
+     * content and format of the returned string may vary between
+     * implementations. The returned string may be empty but may not
+     * be <code>null</code>.
+     *
+     * @return  A string representation of this object.
+     */
+    public String toString() {
+        return frameCount + " frames, " + byteCount + " bytes, " +
+            dropCount + " dropped, " + getAverageEncodeTime() + " ms/frame";
+    }
+}
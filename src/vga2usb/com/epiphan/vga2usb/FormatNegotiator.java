@@ -0,0 +1,204 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Picks the wire format according to a {@link FormatPolicy}. The grabber
+ * reports every grab; once per measurement period the negotiator compares
+ * the achieved frame rate with the target. If the target is missed while
+ * the grabber spends most of its time grabbing, the link is the
+ * bottleneck and the best format which the measured link throughput can
+ * carry at the target rate is selected. If the target is met, a better
+ * format is tried, unless it has recently failed. Not thread safe, the
+ * grabber invokes it under its grab lock.
+ */
+final class FormatNegotiator {
+
+    /** Measurement period, nanoseconds */
+    private static final long PERIOD = 1000000000L;
+
+    /** How long a format which failed to sustain the target is avoided */
+    private static final long HOLD = 10*PERIOD;
+
+    /** Fraction of the target frame rate considered good enough */
+    private static final float TOLERANCE = 0.9f;
+
+    /** Fraction of time spent grabbing which indicates a busy link */
+    private static final float BUSY = 0.5f;
+
+    /** The policy */
+    private FormatPolicy policy;
+
+    /** Whether the device compresses the frames on board */
+    private boolean compressed;
+
+    /** Rank of the current format */
+    private int rank;
+
+    /** Rank of the cheapest acceptable format */
+    private int minRank;
+
+    /** When each format may be tried again, System.nanoTime() */
+    private long[] holdUntil = new long[FormatPolicy.FORMATS.length];
+
+    /** When the current period has started, zero if not yet */
+    private long periodStart;
+
+    /** Frames grabbed in the current period */
+    private int frames;
+
+    /** Bytes grabbed in the current period */
+    private long bytes;
+
+    /** Time spent grabbing in the current period, nanoseconds */
+    private long busy;
+
+    /** Frame rate measured in the last period */
+    private float frameRate;
+
+    /** Link throughput measured in the last period */
+    private float linkRate;
+
+    /** Why the current format has been chosen */
+    private String reason = "initial";
+
+    /** Number of format changes */
+    private int switchCount;
+
+    /**
+     * Creates a negotiator. The best acceptable format is tried first.
+     * @param policy the policy
+     * @param caps device capabilities, see {@link PropertyKey#DeviceCaps}
+     */
+    FormatNegotiator(FormatPolicy policy, int caps) {
+        this.policy = policy;
+        this.minRank = FormatPolicy.getRank(policy.getMinQuality());
+        this.compressed = (caps & VGA2USB.CAPS_HW_COMPRESSION) != 0;
+        if (compressed) {
+            // Bytes on the wire don't depend on the pixel format
+            reason = "on-board compression";
+        }
+    }
+
+    /**
+     * Gets the policy.
+     * @return The policy.
+     */
+    FormatPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gets the format to grab the next frame in.
+     * @return The wire format.
+     */
+    PixelFormat getFormat() {
+        return FormatPolicy.FORMATS[rank];
+    }
+
+    /**
+     * Gets the current state.
+     * @return The negotiation statistics.
+     */
+    FormatStats getStats() {
+        return new FormatStats(getFormat(), reason, frameRate, linkRate,
+            switchCount);
+    }
+
+    /**
+     * Accounts for a grab in the current format.
+     * @param length number of grabbed bytes, zero if there was no signal
+     * @param nanos time spent grabbing
+     * @param vm the current video mode, <code>null</code> if unknown
+     */
+    void frameGrabbed(int length, long nanos, VideoMode vm) {
+        long now = System.nanoTime();
+        if (periodStart == 0) {
+            periodStart = now - nanos;
+        }
+        if (length > 0) {
+            frames++;
+            bytes += length;
+        }
+        busy += nanos;
+        if (now - periodStart >= PERIOD) {
+            if (vm != null && !compressed) {
+                evaluate(now, vm);
+            }
+            periodStart = now;
+            frames = 0;
+            bytes = 0;
+            busy = 0;
+        }
+    }
+
+    /**
+     * Evaluates the last period and switches the format if necessary.
+     * @param now the current time, System.nanoTime()
+     * @param vm the current video mode
+     */
+    private void evaluate(long now, VideoMode vm) {
+        long elapsed = now - periodStart;
+        frameRate = frames*1e9f/elapsed;
+        linkRate = (busy > 0) ? bytes*1e9f/busy : 0;
+        float goal = policy.getTargetFps();
+        if (vm.getRefreshRate() > 0) {
+            goal = Math.min(goal, vm.getRefreshRate());
+        }
+        int pixels = vm.getWidth()*vm.getHeight();
+
+        if (frameRate >= goal*TOLERANCE) {
+            if (rank > 0 && now - holdUntil[rank-1] >= 0) {
+                setRank(rank-1);
+                reason = "probing, " + round(frameRate) + " fps in " +
+                    FormatPolicy.FORMATS[rank+1];
+            } else {
+                reason = "meets " + round(goal) + " fps target";
+            }
+        } else if (busy < elapsed*BUSY) {
+            // Not the link, most likely the consumer
+            reason = round(frameRate) + " fps, grabber idle " +
+                (100 - busy*100/elapsed) + "% of the time";
+        } else if (rank < minRank) {
+            holdUntil[rank] = now + HOLD;
+            int r = rank + 1;
+            while (r < minRank) {
+                int size = pixels*FormatPolicy.FORMATS[r].getBpp()/8;
+                if (linkRate/size >= goal) break;
+                r++;
+            }
+            reason = round(frameRate) + " fps in " + getFormat() +
+                " below " + round(goal) + " fps target, link " +
+                Math.round(linkRate/1024) + " KB/s";
+            setRank(r);
+        } else {
+            reason = round(frameRate) + " fps at minimum quality";
+        }
+    }
+
+    /**
+     * Switches the format.
+     * @param r rank of the new format
+     */
+    private void setRank(int r) {
+        if (r != rank) {
+            rank = r;
+            switchCount++;
+        }
+    }
+
+    /**
+     * Rounds a rate to one decimal digit, for display.
+     * @param rate the rate to round
+     * @return The rounded rate.
+     */
+    private static float round(float rate) {
+        return Math.round(rate*10)/10f;
+    }
+}
@@ -0,0 +1,102 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Tells {@link Grabber} how to trade image quality for frame rate when
+ * the link to the device can't carry full color frames fast enough.
+ * The candidate wire formats, from the best to the cheapest, are:
+ * <blockquote><pre>
+ * RGB24  24 bpp
+ * YUYV   16 bpp, full resolution luma, half resolution chroma
+ * RGB16  16 bpp, 5-6-5 bits per component
+ * RGB8    8 bpp, 3-3-2 palette
+ * RGB4    4 bpp, 1-2-1 palette
+ * </pre></blockquote>
+ * The grabber uses the best format which sustains the target frame rate
+ * and is not worse than the minimum quality.
+ *
+ * @see Grabber#setFormatPolicy
+ * @see FormatStats
+ * @since 3.28.1
+ */
+public final class FormatPolicy {
+
+    /** Candidate formats, the best first */
+    static final PixelFormat[] FORMATS = {
+        PixelFormat.RGB24, PixelFormat.YUYV, PixelFormat.RGB16,
+        PixelFormat.RGB8, PixelFormat.RGB4
+    };
+
+    private float targetFps;
+    private PixelFormat minQuality;
+
+    /**
+     * Creates a <code>FormatPolicy</code> object.
+     * @param targetFps the frame rate to sustain; the refresh rate of the
+     *   signal if it's lower
+     * @param minQuality the cheapest acceptable format, one of the
+     *   candidate formats
+     * @throws IllegalArgumentException if the target frame rate is not
+     *   positive or the format is not a candidate.
+     */
+    public FormatPolicy(float targetFps, PixelFormat minQuality) {
+        if (!(targetFps > 0)) {
+            throw new IllegalArgumentException(String.valueOf(targetFps));
+        }
+        if (getRank(minQuality) < 0) {
+            throw new IllegalArgumentException(String.valueOf(minQuality));
+        }
+        this.targetFps = targetFps;
+        this.minQuality = minQuality;
+    }
+
+    /**
+     * Gets the frame rate to sustain.
+     * @return Frames per second.
+     */
+    public float getTargetFps() {
+        return targetFps;
+    }
+
+    /**
+     * Gets the cheapest acceptable format.
+     * @return The pixel format.
+     */
+    public PixelFormat getMinQuality() {
+        return minQuality;
+    }
+
+    /**
+     * Gets the position of the format in the list of candidates.
+     * @param format the pixel format
+     * @return Zero for the best format, -1 if not a candidate.
+     */
+    static int getRank(PixelFormat format) {
+        for (int i=0; i<FORMATS.length; i++) {
+            if (FORMATS[i] == format) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a string representation of this object. This method
+     * is intended to be used only for debugging purposes, and the
+     * content and format of the returned string may vary between
+     * implementations. The returned string may be empty but may not
+     * be <code>null</code>.
+     *
+     * @return  A string representation of this object.
+     */
+    public String toString() {
+        return targetFps + " fps, " + minQuality + " or better";
+    }
+}
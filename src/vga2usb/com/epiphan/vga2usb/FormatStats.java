@@ -0,0 +1,98 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Outcome of the wire format negotiation, as of the moment this object
+ * was created.
+ *
+ * @see Grabber#getFormatStats
+ * @see FormatPolicy
+ * @since 3.28.1
+ */
+public final class FormatStats {
+
+    private PixelFormat format;
+    private String reason;
+    private float frameRate;
+    private float linkRate;
+    private int switchCount;
+
+    /**
+     * Creates a <code>FormatStats</code> object.
+     * @param format the current wire format
+     * @param reason why the format has been chosen
+     * @param frameRate measured frames per second
+     * @param linkRate measured bytes per second while grabbing
+     * @param switchCount number of format changes
+     */
+    FormatStats(PixelFormat format, String reason, float frameRate,
+                float linkRate, int switchCount) {
+        this.format = format;
+        this.reason = reason;
+        this.frameRate = frameRate;
+        this.linkRate = linkRate;
+        this.switchCount = switchCount;
+    }
+
+    /**
+     * Gets the format the frames are currently grabbed in.
+     * @return The wire format.
+     */
+    public PixelFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Gets the human readable reason why the current format has been
+     * chosen.
+     * @return The reason.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Gets the frame rate measured in the last period.
+     * @return Frames per second, zero if not measured yet.
+     */
+    public float getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * Gets the link throughput measured in the last period, i.e. the
+     * number of bytes grabbed per second spent grabbing.
+     * @return Bytes per second, zero if not measured yet.
+     */
+    public float getLinkRate() {
+        return linkRate;
+    }
+
+    /**
+     * Gets the number of times the format has changed.
+     * @return The number of format changes.
+     */
+    public int getSwitchCount() {
+        return switchCount;
+    }
+
+    /**
+     * Returns a string representation of this object. This method
+     * is intended to be used only for debugging purposes, and the
+     * content and format of the returned string may vary between
+     * implementations. The returned string may be empty but may not
+     * be <code>null</code>.
+     *
+     * @return  A string representation of this object.
+     */
+    public String toString() {
+        return format + " (" + reason + ")";
+    }
+}
@@ -18,9 +18,15 @@ import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.SampleModel;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
 import java.awt.image.WritableRaster;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DirectColorModel;
 import java.awt.image.ComponentColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
 
 /* java.awt.color */
 import java.awt.color.ColorSpace;
@@ -34,6 +40,41 @@ import java.awt.color.ColorSpace;
  */
 public final class Frame extends BasicFrame {
 
+    /** Color model for RGB24 and BGR24 */
+    private static final ColorModel COMPONENT_MODEL = new ComponentColorModel(
+        ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[] {8,8,8},
+        false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+
+    /** Color model for RGB16 */
+    private static final DirectColorModel RGB16_MODEL =
+        new DirectColorModel(16, 0xf800, 0x07e0, 0x001f);
+
+    /** Color model for BGR16 */
+    private static final DirectColorModel BGR16_MODEL =
+        new DirectColorModel(16, 0x001f, 0x07e0, 0xf800);
+
+    /** Masks of the 0xRRGGBB pixels */
+    private static final int[] RGB_MASKS = { 0xff0000, 0x00ff00, 0x0000ff };
+
+    /** Color model for the YUV formats, which are converted to RGB */
+    private static final DirectColorModel RGB_MODEL =
+        new DirectColorModel(24, RGB_MASKS[0], RGB_MASKS[1], RGB_MASKS[2]);
+
+    /** Band offsets of RGB24 */
+    private static final int[] RGB24_OFFSETS = {0, 1, 2};
+
+    /** Band offsets of BGR24 */
+    private static final int[] BGR24_OFFSETS = {2, 1, 0};
+
+    /** Color model for RGB4, created on demand */
+    private static IndexColorModel rgb4Model;
+
+    /** Color model for RGB8, created on demand */
+    private static IndexColorModel rgb8Model;
+
+    /** Converts the YUV formats, created on demand */
+    private static ColorConverter converter;
+
     private Image image;
 
     /**
@@ -60,21 +101,94 @@ public final class Frame extends BasicFrame {
     }
 
     /**
-     * Creates a new image from frame pixels
+     * Clears the cached image. Invoked when the frame is returned to the
+     * pool.
+     */
+    void reset() {
+        super.reset();
+        image = null;
+    }
+
+    /**
+     * Creates a new image from frame pixels. The image shares the pixels
+     * with this frame, except for the YUV formats which Java2D doesn't
+     * support; those are converted to RGB.
      * @return The created image
      */
     private Image createImage() {
+        if (format == PixelFormat.YUYV || format == PixelFormat.UYVY) {
+            int[] rgb = new int[width*height];
+            getConverter().convertFrame(this, rgb, 0);
+            return new BufferedImage(RGB_MODEL, Raster.createPackedRaster(
+                new DataBufferInt(rgb, rgb.length), width, height, width,
+                RGB_MASKS, null), false, null);
+        }
+
         ColorModel cm;
-        if (format == PixelFormat.RGB24) {
-           cm = new ComponentColorModel(
-                ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[] {8,8,8},
-                false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        SampleModel sm;
+        DataBuffer db;
+        if (format == PixelFormat.RGB24 || format == PixelFormat.BGR24) {
+            cm = COMPONENT_MODEL;
+            int[] offsets = (format == PixelFormat.RGB24) ?
+                RGB24_OFFSETS : BGR24_OFFSETS;
+            sm = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE,
+                width, height, 3, 3*width, offsets);
+            db = new DataBufferByte(pixels, length);
+        } else if (format == PixelFormat.RGB16 ||
+                   format == PixelFormat.BGR16) {
+            DirectColorModel dcm = (format == PixelFormat.RGB16) ?
+                RGB16_MODEL : BGR16_MODEL;
+            cm = dcm;
+            sm = new SinglePixelPackedSampleModel(DataBuffer.TYPE_USHORT,
+                width, height, dcm.getMasks());
+            db = new ShortByteDataBuffer(pixels, length/2);
+        } else if (format == PixelFormat.RGB8) {
+            cm = getIndexModel(format);
+            sm = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE,
+                width, height, 1, width, new int[] {0});
+            db = new DataBufferByte(pixels, length);
+        } else if (format == PixelFormat.RGB4) {
+            cm = getIndexModel(format);
+            sm = new MultiPixelPackedSampleModel(DataBuffer.TYPE_BYTE,
+                width, height, 4);
+            db = new DataBufferByte(pixels, length);
         } else {
-            throw new UnsupportedOperationException();
+            throw new UnsupportedOperationException(String.valueOf(format));
         }
-        SampleModel sm = cm.createCompatibleSampleModel(width, height);
-        DataBuffer db = new DataBufferByte(pixels, length);
         WritableRaster raster = Raster.createWritableRaster(sm, db, null);
         return new BufferedImage(cm, raster, false, null);
     }
+
+    /**
+     * Gets the shared color converter, creating it if necessary.
+     * @return The color converter.
+     */
+    private static synchronized ColorConverter getConverter() {
+        if (converter == null) {
+            converter = new ColorConverter();
+        }
+        return converter;
+    }
+
+    /**
+     * Gets the color model of an indexed format, creating it if necessary.
+     * @param format {@link PixelFormat#RGB4} or {@link PixelFormat#RGB8}
+     * @return The color model.
+     */
+    private static synchronized IndexColorModel getIndexModel(
+        PixelFormat format) {
+        int bits = format.getBpp();
+        IndexColorModel cm = (bits == 4) ? rgb4Model : rgb8Model;
+        if (cm == null) {
+            int[] palette = ColorConverter.getPalette(format);
+            cm = new IndexColorModel(bits, palette.length, palette, 0,
+                false, -1, DataBuffer.TYPE_BYTE);
+            if (bits == 4) {
+                rgb4Model = cm;
+            } else {
+                rgb8Model = cm;
+            }
+        }
+        return cm;
+    }
 }
@@ -0,0 +1,178 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Shares the frames grabbed from one device between several consumers.
+ * Each frame is grabbed once and the same frame object is passed to all
+ * subscribers, with the reference count incremented for each of them.
+ * The frame gets back to the grabber when the last subscriber has
+ * {@link RawFrame#release released} it. Since the frames are shared,
+ * subscribers must not modify the pixels; the buffers returned by
+ * {@link RawFrame#getByteBuffer} are read-only.
+ * <p>
+ * Each subscriber gets its own {@link FrameQueue} with its own depth and
+ * {@link DropPolicy}, and may only want every n-th frame. A slow
+ * subscriber only loses its own frames, it doesn't affect the others.
+ * <p>
+ * Typical usage:
+ * <blockquote><pre>
+ * FrameBroadcaster broadcaster = new FrameBroadcaster();
+ * FrameQueue recorder = broadcaster.subscribe(16, DropPolicy.DROP_NEWEST, 1);
+ * FrameQueue preview = broadcaster.subscribe(1, DropPolicy.LATEST_ONLY, 1);
+ * FrameQueue thumbnails = broadcaster.subscribe(1, DropPolicy.DROP_OLDEST, 30);
+ * new CaptureEngine(grabber, PixelFormat.RGB24, false, broadcaster).start();
+ * </pre></blockquote>
+ *
+ * @see CaptureEngine
+ * @since 3.28.1
+ */
+public class FrameBroadcaster implements FrameSink {
+
+    /** No subscriptions */
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    /** Current subscriptions, replaced (not modified) on change */
+    private volatile Subscription[] subscriptions = NO_SUBSCRIPTIONS;
+
+    /**
+     * A single subscriber.
+     */
+    private static final class Subscription {
+
+        /** The subscriber's queue */
+        FrameQueue queue;
+
+        /** Deliver every n-th frame */
+        int decimation;
+
+        /** Frames skipped since the last delivered one */
+        int skipped;
+
+        /** Set when the subscriber has been removed */
+        volatile boolean closed;
+
+        /**
+         * Creates a subscription.
+         * @param queue the subscriber's queue
+         * @param decimation deliver every n-th frame
+         */
+        Subscription(FrameQueue queue, int decimation) {
+            this.queue = queue;
+            this.decimation = decimation;
+            this.skipped = decimation - 1;
+        }
+
+        /**
+         * Decides whether the next frame goes to this subscriber.
+         * Invoked on the producer thread.
+         * @return <code>true</code> to deliver the frame.
+         */
+        boolean accept() {
+            if (++skipped >= decimation) {
+                skipped = 0;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Creates a broadcaster without subscribers.
+     */
+    public FrameBroadcaster() {
+    }
+
+    /**
+     * Adds a subscriber.
+     * @param depth maximum number of frames queued for the subscriber
+     * @param policy the policy applied when the subscriber's queue is full
+     * @param decimation deliver every n-th frame, one to deliver all frames
+     * @return The queue from which the subscriber takes its frames.
+     * @throws IllegalArgumentException if <code>decimation</code> is less
+     *   than one, or the queue can't be created with these parameters.
+     */
+    public FrameQueue subscribe(int depth, DropPolicy policy, int decimation) {
+        if (decimation < 1) throw new IllegalArgumentException("decimation");
+        FrameQueue queue = new FrameQueue(depth, policy);
+        synchronized (this) {
+            Subscription[] subs = subscriptions;
+            Subscription[] newSubs = new Subscription[subs.length + 1];
+            System.arraycopy(subs, 0, newSubs, 0, subs.length);
+            newSubs[subs.length] = new Subscription(queue, decimation);
+            subscriptions = newSubs;
+        }
+        return queue;
+    }
+
+    /**
+     * Removes a subscriber. Frames remaining in its queue are released,
+     * including a frame which the producer is putting into the queue
+     * concurrently.
+     * @param queue the queue returned by {@link #subscribe subscribe}
+     * @return <code>true</code> if the subscriber has been removed,
+     *   <code>false</code> if there was no such subscriber.
+     */
+    public boolean unsubscribe(FrameQueue queue) {
+        synchronized (this) {
+            Subscription[] subs = subscriptions;
+            int index = -1;
+            for (int i=0; i<subs.length && index < 0; i++) {
+                if (subs[i].queue == queue) {
+                    index = i;
+                }
+            }
+            if (index < 0) {
+                return false;
+            }
+            subs[index].closed = true;
+            Subscription[] newSubs = NO_SUBSCRIPTIONS;
+            if (subs.length > 1) {
+                newSubs = new Subscription[subs.length - 1];
+                System.arraycopy(subs, 0, newSubs, 0, index);
+                System.arraycopy(subs, index+1, newSubs, index,
+                    subs.length-index-1);
+            }
+            subscriptions = newSubs;
+        }
+        queue.clear();
+        return true;
+    }
+
+    /**
+     * Gets the number of subscribers.
+     * @return The number of subscribers.
+     */
+    public int getSubscriberCount() {
+        return subscriptions.length;
+    }
+
+    /**
+     * Passes the frame to all subscribers that want it. Must only be
+     * invoked by one thread at a time.
+     * @param frame the frame to share
+     */
+    public void putFrame(RawFrame frame) {
+        Subscription[] subs = subscriptions;
+        frame.setShared(true);
+        for (int i=0; i<subs.length; i++) {
+            Subscription sub = subs[i];
+            if (!sub.closed && sub.accept()) {
+                frame.retain();
+                sub.queue.putFrame(frame);
+                if (sub.closed) {
+                    // Unsubscribed meanwhile, the queue may have been
+                    // cleared before the frame got there
+                    sub.queue.clear();
+                }
+            }
+        }
+        frame.release();
+    }
+}
@@ -0,0 +1,127 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Describes a frame grabbed into a buffer owned by the caller. Returned
+ * by {@link Grabber#grabRawFrameInto Grabber.grabRawFrameInto}. If the
+ * buffer was too small for the current video mode, nothing is written
+ * into it, {@link #getLength} returns zero and {@link #getRequiredLength}
+ * tells the caller how large the buffer has to be. The object can be
+ * reused for subsequent grabs.
+ *
+ * @see Grabber#grabRawFrameInto(PixelFormat,boolean,byte[],int,FrameInfo)
+ * @since 3.28.1
+ */
+public final class FrameInfo implements Cloneable {
+
+    private int width;
+    private int height;
+    private PixelFormat format;
+    private int length;
+    private int requiredLength;
+
+    /**
+     * Creates an empty <code>FrameInfo</code> object.
+     */
+    public FrameInfo() {}
+
+    /**
+     * Updates the frame description.
+     * @param f the pixel format
+     * @param w width of the frame
+     * @param h height of the frame
+     * @param len number of bytes written into the buffer
+     * @param required number of bytes required to hold the frame
+     */
+    void set(PixelFormat f, int w, int h, int len, int required) {
+        format = f;
+        width = w;
+        height = h;
+        length = len;
+        requiredLength = required;
+    }
+
+    /**
+     * Gets the width of the frame.
+     * @return The frame width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the frame.
+     * @return The frame height.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the pixel format.
+     * @return The pixel format.
+     */
+    public PixelFormat getPixelFormat() {
+        return format;
+    }
+
+    /**
+     * Gets the number of bytes written into the caller's buffer.
+     * @return Number of bytes written, zero if the buffer was too small.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the number of bytes required to hold the frame in the current
+     * video mode. If the frame was written, this is the same as
+     * {@link #getLength}.
+     * @return The required buffer size in bytes.
+     */
+    public int getRequiredLength() {
+        return requiredLength;
+    }
+
+    /**
+     * Tests whether the frame has been written into the buffer.
+     * @return <code>true</code> if the frame has been written,
+     *         <code>false</code> if the buffer was too small.
+     */
+    public boolean isComplete() {
+        return length > 0;
+    }
+
+    /**
+     * Clones this object.
+     * @return The clone of this object
+     */
+    public Object clone() {
+        try {
+            return super.clone();
+        } catch (CloneNotSupportedException x) {
+            throw new Error("FrameInfo is Cloneable!");
+        }
+    }
+
+    /**
+     * Returns a string representation of this object. This method
+     * is intended to be used only for debugging purposes, and the
+     * content and format of the returned string may vary between
+     * implementations. The returned string may be empty but may not
+     * be <code>null</code>.
+     *
+     * @return  A string representation of this object.
+     */
+    public String toString() {
+        return width + "x" + height + " " + format + " " +
+            length + "/" + requiredLength;
+    }
+}
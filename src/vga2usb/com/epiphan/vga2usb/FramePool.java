@@ -0,0 +1,189 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.nio */
+import java.nio.ByteBuffer;
+
+/* java.util */
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of frame objects and their pixel buffers. Each {@link Grabber}
+ * owns one. Frames are pooled by frame class, {@link PixelFormat} and
+ * buffer size, so that once the video mode settles down the capture
+ * loop stops allocating memory. Frames get back into the pool when the
+ * client calls {@link BasicFrame#release}. Unreleased frames are simply
+ * garbage collected, the pool doesn't keep track of them.
+ */
+final class FramePool {
+
+    /** Pool index for {@link RawFrame} objects */
+    static final int RAW_FRAME = 0;
+
+    /** Pool index for {@link Frame} objects */
+    static final int FRAME = 1;
+
+    /** Pool index for direct {@link RawFrame} objects */
+    static final int DIRECT_FRAME = 2;
+
+    /** Number of frame classes */
+    private static final int FRAME_CLASS_COUNT = 3;
+
+    /** Default number of idle frames kept per bucket */
+    static final int DEFAULT_DEPTH = 4;
+
+    /** Buckets, one map (PixelFormat -> Bucket) per frame class */
+    private Map[] buckets;
+
+    /** Maximum number of idle frames kept per bucket */
+    private int depth;
+
+    /** Number of frames allocated by this pool */
+    private long allocCount;
+
+    /**
+     * Idle frames of the same class, format and buffer size.
+     */
+    private static final class Bucket {
+
+        /** Size of the pixel buffers in this bucket */
+        int size;
+
+        /** Idle frames */
+        BasicFrame[] frames;
+
+        /** Number of idle frames */
+        int count;
+
+        /**
+         * Creates an empty bucket.
+         * @param size the buffer size
+         * @param depth maximum number of idle frames
+         */
+        Bucket(int size, int depth) {
+            this.size = size;
+            this.frames = new BasicFrame[depth];
+        }
+    }
+
+    /**
+     * Creates a frame pool with the default depth.
+     */
+    FramePool() {
+        this(DEFAULT_DEPTH);
+    }
+
+    /**
+     * Creates a frame pool.
+     * @param depth maximum number of idle frames kept per format
+     */
+    FramePool(int depth) {
+        if (depth < 0) throw new IllegalArgumentException("depth");
+        this.depth = depth;
+        buckets = new Map[FRAME_CLASS_COUNT];
+        for (int i=0; i<FRAME_CLASS_COUNT; i++) {
+            buckets[i] = new HashMap();
+        }
+    }
+
+    /**
+     * Gets a frame from the pool or allocates a new one.
+     * @param type frame class, {@link #RAW_FRAME}, {@link #FRAME} or
+     * {@link #DIRECT_FRAME}
+     * @param format the pixel format
+     * @param size the required buffer size in bytes
+     * @return A frame with exactly <code>size</code> bytes of pixel buffer.
+     */
+    synchronized BasicFrame get(int type, PixelFormat format, int size) {
+        Bucket bucket = getBucket(type, format, size);
+        BasicFrame frame;
+        if (bucket.count > 0) {
+            frame = bucket.frames[--bucket.count];
+            bucket.frames[bucket.count] = null;
+        } else {
+            if (type == DIRECT_FRAME) {
+                ByteBuffer buf = ByteBuffer.allocateDirect(size);
+                frame = new RawFrame(0, 0, format, buf, 0);
+            } else if (type == FRAME) {
+                frame = new Frame(0, 0, format, new byte[size], 0);
+            } else {
+                frame = new RawFrame(0, 0, format, new byte[size], 0);
+            }
+            allocCount++;
+        }
+        frame.pool = this;
+        frame.poolType = type;
+        frame.reuse();
+        return frame;
+    }
+
+    /**
+     * Returns the frame back to the pool. Invoked when the last reference
+     * to the frame is released. The frame is dropped if its
+     * buffer size doesn't match the current size for this format (i.e.
+     * video mode has changed since the frame was grabbed) or if the pool
+     * is full.
+     * @param frame the frame to recycle
+     */
+    synchronized void recycle(BasicFrame frame) {
+        Bucket bucket = (Bucket)buckets[frame.poolType].get(frame.format);
+        if (bucket != null &&
+            bucket.size == frame.capacity() &&
+            bucket.count < bucket.frames.length) {
+            frame.reset();
+            bucket.frames[bucket.count++] = frame;
+        }
+    }
+
+    /**
+     * Drops all idle frames.
+     */
+    synchronized void clear() {
+        for (int i=0; i<FRAME_CLASS_COUNT; i++) {
+            buckets[i].clear();
+        }
+    }
+
+    /**
+     * Returns number of frames allocated by this pool. Once the video mode
+     * has settled and the frames are being released, this number stops
+     * growing.
+     * @return Number of frames allocated by this pool.
+     */
+    synchronized long getAllocCount() {
+        return allocCount;
+    }
+
+    /**
+     * Finds or creates the bucket for the specified class, format and
+     * size. If the format was used with a different size, the idle frames
+     * are dropped.
+     * @param type frame class
+     * @param format the pixel format
+     * @param size the buffer size
+     * @return The bucket.
+     */
+    private Bucket getBucket(int type, PixelFormat format, int size) {
+        Map map = buckets[type];
+        Bucket bucket = (Bucket)map.get(format);
+        if (bucket == null) {
+            bucket = new Bucket(size, depth);
+            map.put(format, bucket);
+        } else if (bucket.size != size) {
+            // Video mode has changed
+            while (bucket.count > 0) {
+                bucket.frames[--bucket.count] = null;
+            }
+            bucket.size = size;
+        }
+        return bucket;
+    }
+}
@@ -0,0 +1,468 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.IOException;
+
+/* java.util.concurrent */
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the frames of a grabber as a {@link Flow.Publisher} of
+ * {@link RawFrame}s. The capture is driven by the demand of the
+ * subscribers: a frame is grabbed only when at least one subscriber
+ * has {@link Flow.Subscription#request requested} one, and each grabbed
+ * frame goes to every subscriber which has outstanding demand at the
+ * time. The grab is shared the same way as by {@link FrameBroadcaster}:
+ * every subscriber gets the same frame object with the reference count
+ * incremented, and must {@link RawFrame#release release} it. Subscribers
+ * must not modify the pixels; the buffers returned by
+ * {@link RawFrame#getByteBuffer} are read-only.
+ * <p>
+ * All the signals except <code>onSubscribe</code> are delivered on the
+ * capture thread of the publisher, which is created when the first
+ * subscriber subscribes and exits when the publisher is closed or the
+ * grabber fails. Interrupting the capture thread closes the publisher.
+ * The thread then exits with the interrupt status still set. A subscriber which blocks in <code>onNext</code> holds
+ * up the capture for all subscribers.
+ * <p>
+ * Typical usage:
+ * <blockquote><pre>
+ * FramePublisher publisher = new FramePublisher(grabber, PixelFormat.RGB24,
+ *     false);
+ * publisher.subscribe(subscriber);
+ * ...
+ * publisher.close();
+ * </pre></blockquote>
+ *
+ * @see FrameBroadcaster
+ * @since 3.28.1
+ */
+public class FramePublisher implements Flow.Publisher<RawFrame> {
+
+    /** How long to wait before retrying if there's no signal */
+    private static final long NO_SIGNAL_DELAY = 500;
+
+    /** No subscriptions */
+    private static final FrameSubscription[] NO_SUBSCRIPTIONS =
+        new FrameSubscription[0];
+
+    /** The grabber */
+    private Grabber grabber;
+
+    /** The pixel format */
+    private PixelFormat format;
+
+    /** Bottom-up flag */
+    private boolean bottomUp;
+
+    /** Creates the capture thread, null for the default */
+    private ThreadFactory threadFactory;
+
+    /** Current subscriptions, replaced (not modified) on change */
+    private volatile FrameSubscription[] subscriptions = NO_SUBSCRIPTIONS;
+
+    /** The capture thread, null until the first subscription */
+    private Thread thread;
+
+    /** Set when the publisher has been closed */
+    private boolean closed;
+
+    /** The error which has stopped the capture */
+    private volatile IOException error;
+
+    /** Set when a subscription needs the attention of the capture thread */
+    private boolean signalled;
+
+    /** Number of native grabs */
+    private volatile long grabCount;
+
+    /** Number of frames delivered to the subscribers */
+    private volatile long deliveryCount;
+
+    /**
+     * A single subscriber.
+     */
+    private final class FrameSubscription implements Flow.Subscription {
+
+        /** The subscriber */
+        Flow.Subscriber<? super RawFrame> subscriber;
+
+        /** Outstanding demand, Long.MAX_VALUE if unbounded */
+        AtomicLong demand = new AtomicLong();
+
+        /** Set when the subscription has been cancelled */
+        volatile boolean cancelled;
+
+        /** Invalid request to report, null if none */
+        volatile Throwable failure;
+
+        /**
+         * Creates a subscription.
+         * @param subscriber the subscriber
+         */
+        FrameSubscription(Flow.Subscriber<? super RawFrame> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Adds demand. A non-positive request fails the subscription.
+         * @param n number of frames requested
+         */
+        public void request(long n) {
+            if (n <= 0) {
+                failure = new IllegalArgumentException(String.valueOf(n));
+                wakeUp();
+                return;
+            }
+            long d, next;
+            do {
+                d = demand.get();
+                if (d == Long.MAX_VALUE) return;
+                next = d + n;
+                if (next < 0) next = Long.MAX_VALUE;
+            } while (!demand.compareAndSet(d, next));
+            if (d == 0) {
+                wakeUp();
+            }
+        }
+
+        /**
+         * Stops the delivery of frames to this subscriber.
+         */
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                wakeUp();
+            }
+        }
+
+        /**
+         * Takes one unit of demand. Invoked on the capture thread.
+         * @return <code>true</code> if the subscriber wants the frame.
+         */
+        boolean take() {
+            long d;
+            do {
+                d = demand.get();
+                if (d == 0) return false;
+                if (d == Long.MAX_VALUE) return true;
+            } while (!demand.compareAndSet(d, d - 1));
+            return true;
+        }
+    }
+
+    /**
+     * Creates a publisher.
+     * @param grabber the grabber to capture from
+     * @param format the pixel format
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     *   bottom-up order (default is up-down).
+     */
+    public FramePublisher(Grabber grabber, PixelFormat format,
+                          boolean bottomUp) {
+        if (grabber == null) throw new NullPointerException("grabber");
+        if (format == null) throw new NullPointerException("format");
+        this.grabber = grabber;
+        this.format = format;
+        this.bottomUp = bottomUp;
+    }
+
+    /**
+     * Sets the factory which creates the capture thread. Must be invoked
+     * before the first subscription.
+     * @param factory the thread factory, <code>null</code> to create
+     *   a daemon thread.
+     */
+    public synchronized void setThreadFactory(ThreadFactory factory) {
+        threadFactory = factory;
+    }
+
+    /**
+     * Adds a subscriber. The subscriber receives the frames grabbed
+     * after it has requested them. If the publisher has been closed, the
+     * subscriber is completed right away; if the capture has failed, it
+     * gets the error.
+     * @param subscriber the subscriber
+     */
+    public void subscribe(Flow.Subscriber<? super RawFrame> subscriber) {
+        if (subscriber == null) throw new NullPointerException("subscriber");
+        FrameSubscription sub = new FrameSubscription(subscriber);
+        subscriber.onSubscribe(sub);
+        boolean done;
+        synchronized (this) {
+            done = closed || error != null;
+            if (!done) {
+                FrameSubscription[] subs = subscriptions;
+                FrameSubscription[] newSubs =
+                    new FrameSubscription[subs.length + 1];
+                System.arraycopy(subs, 0, newSubs, 0, subs.length);
+                newSubs[subs.length] = sub;
+                subscriptions = newSubs;
+                signalled = true;
+                startThread();
+                notifyAll();
+            }
+        }
+        if (done) {
+            sub.cancelled = true;
+            IOException x = error;
+            if (x != null) {
+                subscriber.onError(x);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of subscribers.
+     * @return Number of subscribers.
+     */
+    public int getSubscriberCount() {
+        return subscriptions.length;
+    }
+
+    /**
+     * Gets the number of frames grabbed so far. Each grabbed frame may
+     * have been delivered to several subscribers.
+     * @return Number of native grabs.
+     */
+    public long getGrabCount() {
+        return grabCount;
+    }
+
+    /**
+     * Gets the number of frames delivered to the subscribers so far.
+     * @return Number of <code>onNext</code> signals.
+     */
+    public long getDeliveryCount() {
+        return deliveryCount;
+    }
+
+    /**
+     * Gets the error which has stopped the capture.
+     * @return The error, <code>null</code> if none.
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * Closes the publisher. The subscribers are completed by the capture
+     * thread once the grab in progress, if any, returns. The grabber is
+     * stopped but not closed.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Starts the capture thread if it's not running yet. Invoked under
+     * the publisher lock.
+     */
+    private void startThread() {
+        if (thread == null) {
+            Runnable capture = new Runnable() {
+                public void run() {
+                    capture();
+                }
+            };
+            if (threadFactory != null) {
+                thread = threadFactory.newThread(capture);
+            } else {
+                thread = new Thread(capture, "FramePublisher-" + grabber);
+                thread.setDaemon(true);
+            }
+            thread.start();
+        }
+    }
+
+    /**
+     * Wakes up the capture thread.
+     */
+    private synchronized void wakeUp() {
+        signalled = true;
+        notifyAll();
+    }
+
+    /**
+     * The capture loop. Invoked on the capture thread.
+     */
+    private void capture() {
+        IOException failure = null;
+        boolean grabberStarted = false;
+        try {
+            while (awaitDemand()) {
+                if (!grabberStarted) {
+                    grabber.start();
+                    grabberStarted = true;
+                }
+                RawFrame frame = grabber.grabRawFrame(format, bottomUp);
+                if (frame != null) {
+                    grabCount++;
+                    deliver(frame);
+                } else {
+                    synchronized (this) {
+                        if (!closed) {
+                            try { wait(NO_SIGNAL_DELAY); }
+                            catch (InterruptedException x) {
+                                closeOnInterrupt();
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException x) {
+            failure = x;
+        }
+        FrameSubscription[] subs;
+        synchronized (this) {
+            error = failure;
+            subs = subscriptions;
+            subscriptions = NO_SUBSCRIPTIONS;
+        }
+        for (int i=0; i<subs.length; i++) {
+            if (!subs[i].cancelled) {
+                subs[i].cancelled = true;
+                if (failure != null) {
+                    subs[i].subscriber.onError(failure);
+                } else {
+                    subs[i].subscriber.onComplete();
+                }
+            }
+        }
+        if (grabberStarted) {
+            try { grabber.stop(); }
+            catch (IOException x) {}
+        }
+    }
+
+    /**
+     * Closes the publisher because the capture thread has been
+     * interrupted, keeping the interrupt status set. Invoked on the
+     * capture thread under the publisher lock.
+     */
+    private void closeOnInterrupt() {
+        Thread.currentThread().interrupt();
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Waits until a subscriber has requested a frame. Meanwhile drops the
+     * cancelled subscriptions and fails the ones with invalid requests.
+     * @return <code>false</code> if the publisher has been closed, or
+     *   the capture thread has been interrupted.
+     */
+    private boolean awaitDemand() {
+        while (true) {
+            FrameSubscription[] subs;
+            synchronized (this) {
+                if (Thread.currentThread().isInterrupted()) {
+                    closeOnInterrupt();
+                }
+                while (!closed && !signalled && !hasDemand()) {
+                    try { wait(); }
+                    catch (InterruptedException x) {
+                        closeOnInterrupt();
+                    }
+                }
+                if (closed) {
+                    return false;
+                }
+                signalled = false;
+                subs = subscriptions;
+            }
+            removeCancelled(subs);
+            if (hasDemand()) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Tests whether any subscriber has outstanding demand.
+     * @return <code>true</code> if a frame should be grabbed.
+     */
+    private boolean hasDemand() {
+        FrameSubscription[] subs = subscriptions;
+        for (int i=0; i<subs.length; i++) {
+            if (!subs[i].cancelled && subs[i].demand.get() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the cancelled subscriptions, after failing those with invalid
+     * requests. Invoked on the capture thread.
+     * @param subs the current subscriptions
+     */
+    private void removeCancelled(FrameSubscription[] subs) {
+        int n = 0;
+        for (int i=0; i<subs.length; i++) {
+            FrameSubscription sub = subs[i];
+            if (!sub.cancelled && sub.failure != null) {
+                sub.cancelled = true;
+                sub.subscriber.onError(sub.failure);
+            }
+            if (sub.cancelled) n++;
+        }
+        if (n > 0) {
+            synchronized (this) {
+                FrameSubscription[] current = subscriptions;
+                FrameSubscription[] newSubs = NO_SUBSCRIPTIONS;
+                int count = 0;
+                for (int i=0; i<current.length; i++) {
+                    if (!current[i].cancelled) count++;
+                }
+                if (count > 0) {
+                    newSubs = new FrameSubscription[count];
+                    count = 0;
+                    for (int i=0; i<current.length; i++) {
+                        if (!current[i].cancelled) {
+                            newSubs[count++] = current[i];
+                        }
+                    }
+                }
+                subscriptions = newSubs;
+            }
+        }
+    }
+
+    /**
+     * Passes the frame to all subscribers with outstanding demand. A
+     * subscriber which throws from <code>onNext</code> is cancelled.
+     * Invoked on the capture thread.
+     * @param frame the frame to share
+     */
+    private void deliver(RawFrame frame) {
+        FrameSubscription[] subs = subscriptions;
+        frame.setShared(true);
+        for (int i=0; i<subs.length; i++) {
+            FrameSubscription sub = subs[i];
+            if (!sub.cancelled && sub.take()) {
+                frame.retain();
+                deliveryCount++;
+                try {
+                    sub.subscriber.onNext(frame);
+                } catch (RuntimeException x) {
+                    sub.cancel();
+                }
+            }
+        }
+        frame.release();
+    }
+}
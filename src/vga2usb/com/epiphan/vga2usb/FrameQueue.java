@@ -0,0 +1,230 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.util.concurrent.atomic */
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded queue of grabbed frames. Frames are put into the queue by a
+ * single producer thread (normally, the capture thread of
+ * {@link CaptureEngine}) and taken by any number of consumer threads.
+ * Neither putting nor taking a frame requires a lock, so a slow consumer
+ * never holds up the producer. When the queue is full, frames are
+ * dropped according to the {@link DropPolicy}. Dropped frames are
+ * released back to the grabber.
+ *
+ * @see CaptureEngine
+ * @see DropPolicy
+ * @since 3.28.1
+ */
+public class FrameQueue implements FrameSink {
+
+    /** The ring */
+    private AtomicReferenceArray slots;
+
+    /** Queue capacity */
+    private int capacity;
+
+    /** Policy applied when the queue is full */
+    private DropPolicy policy;
+
+    /** Index of the next frame to be taken */
+    private AtomicLong head = new AtomicLong();
+
+    /** Index of the next frame to be put, only changed by the producer */
+    private volatile long tail;
+
+    /** Number of dropped frames, only changed by the producer */
+    private volatile long dropCount;
+
+    /** Number of consumers waiting for a frame */
+    private volatile int waiting;
+
+    /** Consumers wait on this object when the queue is empty */
+    private final Object lock = new Object();
+
+    /**
+     * Creates a frame queue.
+     * @param capacity maximum number of queued frames. Ignored if the
+     *   policy is {@link DropPolicy#LATEST_ONLY LATEST_ONLY}.
+     * @param policy the policy applied when the queue is full
+     * @throws IllegalArgumentException if <code>capacity</code> is less
+     *   than one or <code>policy</code> is <code>null</code>.
+     */
+    public FrameQueue(int capacity, DropPolicy policy) {
+        if (policy == null) throw new IllegalArgumentException("policy");
+        if (policy == DropPolicy.LATEST_ONLY) capacity = 1;
+        if (capacity < 1) throw new IllegalArgumentException("capacity");
+        this.capacity = capacity;
+        this.policy = policy;
+        slots = new AtomicReferenceArray(capacity);
+    }
+
+    /**
+     * Gets the maximum number of frames this queue can hold.
+     * @return The queue capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the policy applied when the queue is full.
+     * @return The drop policy.
+     */
+    public DropPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gets the number of frames currently in the queue.
+     * @return The queue depth.
+     */
+    public int getDepth() {
+        long depth = tail - head.get();
+        return (depth > 0) ? (int)depth : 0;
+    }
+
+    /**
+     * Gets the total number of frames put into the queue, including
+     * the dropped ones.
+     * @return Number of frames put into the queue.
+     */
+    public long getPutCount() {
+        return tail + (policy == DropPolicy.DROP_NEWEST ? dropCount : 0);
+    }
+
+    /**
+     * Gets the number of frames dropped because the queue was full.
+     * @return Number of dropped frames.
+     */
+    public long getDropCount() {
+        return dropCount;
+    }
+
+    /**
+     * Puts a frame into the queue. Must only be invoked by one thread
+     * at a time.
+     * @param frame the frame to queue
+     */
+    public void putFrame(RawFrame frame) {
+        long t = tail;
+        long h = head.get();
+        while (t - h >= capacity) {
+            if (policy == DropPolicy.DROP_NEWEST) {
+                dropCount++;
+                frame.release();
+                return;
+            }
+            // Drop the oldest frame, unless a consumer takes it first
+            if (head.compareAndSet(h, h+1)) {
+                RawFrame old = (RawFrame)slots.getAndSet(index(h), null);
+                dropCount++;
+                if (old != null) old.release();
+                break;
+            }
+            h = head.get();
+        }
+
+        // The slot may still be occupied by a frame which a consumer has
+        // claimed but hasn't picked up yet
+        int i = index(t);
+        while (!slots.compareAndSet(i, null, frame)) {
+            Thread.yield();
+        }
+        tail = t + 1;
+
+        if (waiting > 0) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest frame from the queue, if there's any. The caller
+     * becomes the owner of the frame and should release it when done.
+     * @return The oldest frame, <code>null</code> if the queue is empty.
+     */
+    public RawFrame poll() {
+        while (true) {
+            long h = head.get();
+            if (h >= tail) {
+                return null;
+            }
+            if (head.compareAndSet(h, h+1)) {
+                return (RawFrame)slots.getAndSet(index(h), null);
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest frame from the queue, waiting if necessary until
+     * a frame becomes available or the timeout expires.
+     * @param timeout the maximum time to wait, in milliseconds. Zero
+     *   means wait forever.
+     * @return The oldest frame, <code>null</code> if the timeout has
+     *   expired.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public RawFrame poll(long timeout) throws InterruptedException {
+        RawFrame frame = poll();
+        if (frame == null) {
+            long deadline = System.currentTimeMillis() + timeout;
+            synchronized (lock) {
+                waiting++;
+                try {
+                    while ((frame = poll()) == null) {
+                        if (timeout == 0) {
+                            lock.wait();
+                        } else {
+                            long delay = deadline - System.currentTimeMillis();
+                            if (delay <= 0) break;
+                            lock.wait(delay);
+                        }
+                    }
+                } finally {
+                    waiting--;
+                }
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Takes the oldest frame from the queue, waiting if necessary until
+     * a frame becomes available.
+     * @return The oldest frame.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public RawFrame take() throws InterruptedException {
+        return poll(0);
+    }
+
+    /**
+     * Releases all queued frames.
+     */
+    public void clear() {
+        RawFrame frame;
+        while ((frame = poll()) != null) {
+            frame.release();
+        }
+    }
+
+    /**
+     * Maps sequential index into the ring index.
+     * @param i sequential index
+     * @return The ring index.
+     */
+    private int index(long i) {
+        return (int)(i % capacity);
+    }
+}
@@ -0,0 +1,79 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Limits the total frame rate of one or more {@link CaptureEngine}s.
+ * Sharing one limiter between the engines capturing from the devices
+ * attached to the same USB host controller (or PCIe link) keeps the
+ * total bandwidth below what the link can carry. Each grab reserves the
+ * next time slot; the slots are handed out first come, first served.
+ *
+ * @see CaptureEngine#setRateLimiter
+ * @see GrabberManager
+ * @since 3.28.1
+ */
+public class FrameRateLimiter {
+
+    /** Nanoseconds per second */
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /** Minimum interval between the frames, in nanoseconds */
+    private long interval;
+
+    /** The next available time slot */
+    private long next;
+
+    /**
+     * Creates a frame rate limiter.
+     * @param maxFps the maximum total number of frames per second
+     * @throws IllegalArgumentException if <code>maxFps</code> is not
+     *   positive.
+     */
+    public FrameRateLimiter(float maxFps) {
+        setMaxFps(maxFps);
+        next = System.nanoTime();
+    }
+
+    /**
+     * Changes the frame rate limit.
+     * @param maxFps the maximum total number of frames per second
+     * @throws IllegalArgumentException if <code>maxFps</code> is not
+     *   positive.
+     */
+    public synchronized void setMaxFps(float maxFps) {
+        if (!(maxFps > 0)) throw new IllegalArgumentException("maxFps");
+        interval = (long)(NANOS_PER_SECOND / maxFps);
+    }
+
+    /**
+     * Gets the frame rate limit.
+     * @return The maximum total number of frames per second.
+     */
+    public synchronized float getMaxFps() {
+        return ((float)NANOS_PER_SECOND) / interval;
+    }
+
+    /**
+     * Reserves the next time slot and waits for it.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        long slot;
+        synchronized (this) {
+            long now = System.nanoTime();
+            slot = (next - now > 0) ? next : now;
+            next = slot + interval;
+        }
+        long delay = slot - System.nanoTime();
+        if (delay > 0) {
+            Thread.sleep(delay / 1000000, (int)(delay % 1000000));
+        }
+    }
+}
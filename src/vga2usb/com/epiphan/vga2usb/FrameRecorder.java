@@ -0,0 +1,442 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+
+/* java.nio */
+import java.nio.MappedByteBuffer;
+
+/* java.nio.channels */
+import java.nio.channels.FileChannel;
+
+/**
+ * Records grabbed frames into a segmented capture file. Each frame is
+ * stored together with its sequence number, timestamp, video mode and
+ * pixel format, see {@link CaptureFile} for the file layout. The frames
+ * can be located by sequence number or time through the
+ * {@link CaptureIndex}.
+ * <p>
+ * The recorder is a {@link FrameSink}: the frames are queued and written
+ * by a separate I/O thread, which takes all the frames that have piled
+ * up while it was busy and commits them together. The caller never waits
+ * for the disk; if the disk can't keep up, new frames are dropped (see
+ * {@link #getDropCount}). The segments are written through memory
+ * mappings of a fixed size and a new segment is started when the current
+ * one is full.
+ * <p>
+ * The index is written when the recorder is {@link #close closed}. Each
+ * batch is committed to the segment header before the next one is
+ * written, so if the recorder never gets closed, e.g. because the
+ * process has crashed, {@link CaptureIndex#read} rebuilds the index from
+ * the segments and the recording can still be played back up to the last
+ * committed batch. Forcing the batches to the disk with {@link #setSync}
+ * extends that to a crash of the operating system.
+ * <p>
+ * Typical usage:
+ * <blockquote><pre>
+ * FrameRecorder recorder = new FrameRecorder(new File("capture"));
+ * CaptureEngine engine = new CaptureEngine(grabber, PixelFormat.RGB24,
+ *     false, recorder);
+ * engine.start();
+ * ...
+ * engine.stop();
+ * recorder.close();
+ * </pre></blockquote>
+ *
+ * @see CaptureIndex
+ * @since 3.28.1
+ */
+public class FrameRecorder implements FrameSink {
+
+    /** Default segment size */
+    public static final long DEFAULT_SEGMENT_SIZE = 256L*1024*1024;
+
+    /** Default number of frames queued for writing */
+    public static final int DEFAULT_QUEUE_DEPTH = 16;
+
+    /** How often the I/O thread checks whether it should exit */
+    private static final long POLL_INTERVAL = 100;
+
+    /** The recording */
+    private File base;
+
+    /** Preferred segment size */
+    private long segmentSize;
+
+    /** Frames waiting to be written */
+    private FrameQueue queue;
+
+    /** The index */
+    private CaptureIndex index = new CaptureIndex();
+
+    /** The I/O thread */
+    private Thread thread;
+
+    /** Set when the recorder is being closed */
+    private volatile boolean closed;
+
+    /** Whether each batch is forced to the disk */
+    private volatile boolean sync;
+
+    /** The current segment file, null if none */
+    private RandomAccessFile file;
+
+    /** Mapping of the current segment */
+    private MappedByteBuffer map;
+
+    /** The current segment number */
+    private int segment = -1;
+
+    /** Frames committed to the current segment */
+    private long segmentFrames;
+
+    /** Number of frames rejected after closing or a failure */
+    private volatile long rejectCount;
+
+    /** Number of recorded frames */
+    private volatile long frameCount;
+
+    /** Number of recorded pixel bytes */
+    private volatile long byteCount;
+
+    /** The error which has stopped the recording */
+    private volatile IOException error;
+
+    /**
+     * Creates a recorder with the default segment size and queue depth.
+     * @param base the recording; segment and index files are named after it
+     * @throws IOException if the first segment can't be created.
+     */
+    public FrameRecorder(File base) throws IOException {
+        this(base, DEFAULT_SEGMENT_SIZE, DEFAULT_QUEUE_DEPTH);
+    }
+
+    /**
+     * Creates a recorder.
+     * @param base the recording; segment and index files are named after it
+     * @param segmentSize preferred size of the segment files. A segment
+     *   is made larger if a single frame doesn't fit into it.
+     * @param queueDepth maximum number of frames waiting to be written
+     * @throws IOException if the first segment can't be created.
+     * @throws IllegalArgumentException if the segment size or the queue
+     *   depth is not positive.
+     */
+    public FrameRecorder(File base, long segmentSize, int queueDepth)
+    throws IOException {
+        if (base == null) throw new NullPointerException("base");
+        if (segmentSize <= CaptureFile.SEGMENT_HEADER_SIZE) {
+            throw new IllegalArgumentException(String.valueOf(segmentSize));
+        }
+        this.base = base;
+        this.segmentSize = segmentSize;
+        this.queue = new FrameQueue(queueDepth, DropPolicy.DROP_NEWEST);
+        deleteRecording();
+        openSegment(0);
+        thread = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "FrameRecorder-" + base.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Enables or disables forcing each batch of frames to the disk. When
+     * disabled (the default), the operating system writes the data back
+     * at its own pace.
+     * @param sync <code>true</code> to force each batch to the disk
+     */
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * Gets the index of this recording. The index grows as the frames
+     * are written.
+     * @return The index.
+     */
+    public CaptureIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the number of frames written so far.
+     * @return Number of recorded frames.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the number of pixel bytes written so far.
+     * @return Number of recorded bytes.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Gets the number of frames which haven't been recorded because the
+     * disk couldn't keep up, or the recorder was closed or has failed.
+     * @return Number of dropped frames.
+     */
+    public long getDropCount() {
+        return queue.getDropCount() + rejectCount;
+    }
+
+    /**
+     * Gets the error which has stopped the recording.
+     * @return The error, <code>null</code> if none.
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * Queues the frame for writing. Never blocks. Must only be invoked by
+     * one thread at a time.
+     * @param frame the frame to record
+     */
+    public void putFrame(RawFrame frame) {
+        if (closed || error != null) {
+            rejectCount++;
+            frame.release();
+        } else {
+            queue.putFrame(frame);
+        }
+    }
+
+    /**
+     * Writes the queued frames, closes the segment and writes the index.
+     * @throws IOException if the recording has failed.
+     */
+    public void close() throws IOException {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+            closed = true;
+        }
+        if (t != null) {
+            try {
+                t.join();
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            queue.clear();
+            try {
+                closeSegment();
+            } catch (IOException x) {
+                if (error == null) error = x;
+            }
+            try {
+                index.write(base);
+            } catch (IOException x) {
+                if (error == null) error = x;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * The I/O loop. Invoked on the I/O thread.
+     */
+    private void writeLoop() {
+        try {
+            while (true) {
+                RawFrame frame = queue.poll(POLL_INTERVAL);
+                if (frame == null) {
+                    if (closed && queue.getDepth() == 0) break;
+                    continue;
+                }
+
+                // Write everything that's ready and commit it at once
+                do {
+                    try {
+                        write(frame);
+                    } finally {
+                        frame.release();
+                    }
+                } while ((frame = queue.poll()) != null);
+                commit();
+            }
+        } catch (InterruptedException x) {
+            // Exit
+        } catch (IOException x) {
+            error = x;
+            queue.clear();
+        }
+    }
+
+    /**
+     * Appends the frame record to the current segment, starting a new
+     * segment if it doesn't fit.
+     * @param frame the frame to write
+     * @throws IOException if an I/O error occurs.
+     */
+    private void write(RawFrame frame) throws IOException {
+        int length = frame.getPixelBufferLength();
+        long recordSize = CaptureFile.getRecordSize(length);
+        if (map.remaining() < recordSize) {
+            commit();
+            openSegment(segment + 1, recordSize);
+        }
+
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int vfreq = 0;
+        VideoMode vm = frame.getVideoMode();
+        if (vm != null) {
+            vfreq = Math.round(vm.getRefreshRate()*1000);
+        }
+        int format = frame.getPixelFormat().getValue();
+        if (frame.isBottomUp()) {
+            format |= Grabber.GRABFRAME_BOTTOM_UP_FLAG;
+        }
+
+        int offset = map.position();
+        map.putInt(CaptureFile.FRAME_MAGIC);
+        map.putInt(CaptureFile.FRAME_HEADER_SIZE);
+        map.putLong(frame.getSequence());
+        map.putLong(frame.getTimestamp());
+        map.putInt(width);
+        map.putInt(height);
+        map.putInt(vfreq);
+        map.putInt(format);
+        map.putInt(length);
+        map.putInt(0);
+        map.put(frame.getByteBuffer());
+        map.position((int)(offset + recordSize));
+
+        index.add(frame.getSequence(), frame.getTimestamp(), segment, offset);
+        segmentFrames++;
+        frameCount++;
+        byteCount += length;
+    }
+
+    /**
+     * Publishes the frames written to the current segment by updating
+     * its header, and forces them to the disk if requested.
+     */
+    private void commit() {
+        map.putLong(CaptureFile.SEGMENT_END_OFFSET, map.position());
+        map.putLong(CaptureFile.SEGMENT_COUNT_OFFSET, segmentFrames);
+        if (sync) {
+            map.force();
+        }
+    }
+
+    /**
+     * Deletes the index and the segments left over from an earlier
+     * recording under the same name, so that they aren't mistaken for
+     * parts of this recording if it is never closed.
+     * @throws IOException if a file can't be deleted.
+     */
+    private void deleteRecording() throws IOException {
+        File file = CaptureFile.getIndexFile(base);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Can't delete " + file);
+        }
+        for (int n=1; ; n++) {
+            file = CaptureFile.getSegmentFile(base, n);
+            if (!file.exists()) {
+                break;
+            } else if (!file.delete()) {
+                throw new IOException("Can't delete " + file);
+            }
+        }
+    }
+
+    /**
+     * Starts a segment of the preferred size.
+     * @param n the segment number
+     * @throws IOException if the segment can't be created.
+     */
+    private void openSegment(int n) throws IOException {
+        openSegment(n, 0);
+    }
+
+    /**
+     * Closes the current segment, if any, and starts a new one.
+     * @param n the segment number
+     * @param minRecord the size of the record that must fit into it
+     * @throws IOException if the segment can't be created.
+     */
+    private void openSegment(int n, long minRecord) throws IOException {
+        closeSegment();
+        long size = Math.max(segmentSize,
+            CaptureFile.SEGMENT_HEADER_SIZE + minRecord);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Frame too large: " + minRecord);
+        }
+        RandomAccessFile f = new RandomAccessFile(
+            CaptureFile.getSegmentFile(base, n), "rw");
+        try {
+            f.setLength(0);
+            map = f.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException x) {
+            f.close();
+            throw x;
+        }
+        file = f;
+        segment = n;
+        segmentFrames = 0;
+        map.putLong(CaptureFile.SEGMENT_MAGIC);
+        map.putInt(CaptureFile.VERSION);
+        map.putInt(CaptureFile.SEGMENT_HEADER_SIZE);
+        map.putInt(n);
+        map.position(CaptureFile.SEGMENT_HEADER_SIZE);
+        commit();
+    }
+
+    /**
+     * Commits and closes the current segment, trimming the unused space.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void closeSegment() throws IOException {
+        if (file != null) {
+            RandomAccessFile f = file;
+            long end = map.position();
+            file = null;
+            commit();
+            map.force();
+            map = null;
+            try {
+                // Fails on some systems while the mapping is still alive
+                f.setLength(end);
+            } catch (IOException x) {
+                // The reader goes by the committed end anyway
+            } finally {
+                f.close();
+            }
+        }
+    }
+
+    /**
+     * Returns a string representation of this object. This method
+     * is intended to be used only for debugging purposes, and the
+     * content and format of the returned string may vary between
+     * implementations. The returned string may be empty but may not
+     * be <code>null</code>.
+     *
+     * @return  A string representation of this object.
+     */
+    public String toString() {
+        return "FrameRecorder[" + base + ", " + frameCount + " frames]";
+    }
+}
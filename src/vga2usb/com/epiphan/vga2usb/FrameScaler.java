@@ -0,0 +1,503 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.util.concurrent */
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Scales raw frames using the algorithms listed in {@link ScaleMode}.
+ * Each algorithm is implemented as a separable filter: the frame is
+ * first scaled horizontally, then vertically. The filter kernels are
+ * computed once for each combination of sizes and mode and reused for
+ * the subsequent frames. When downscaling, the filters (except
+ * {@link ScaleMode#FastBilinear FastBilinear} and the nearest neighbor
+ * ones) are stretched to cover all the source pixels, so that small
+ * thumbnails don't alias. The algorithms are mapped as follows:
+ * <blockquote><pre>
+ * None                     no scaling, the size must not change
+ * NearestNeighbor, Point   nearest pixel
+ * FastBilinear             linear interpolation of two pixels
+ * Bilinear                 triangle filter
+ * WeightedAverage, Area    box filter
+ * Bicubic, BicubLin,
+ * Experimental             cubic convolution (a = -0.5)
+ * Spline                   cubic B-spline
+ * Sinc                     sinc, truncated at 4 pixels
+ * Lanczos                  Lanczos, 3 lobes
+ * </pre></blockquote>
+ * RGB24 and BGR24 frames are scaled as they are; frames in other formats
+ * are converted to RGB24 first. Large frames are split into bands of
+ * rows which are scaled in parallel. The scaler keeps the kernels and
+ * the intermediate buffers between the calls, so it's best to create
+ * one scaler per stream of frames.
+ * <p>
+ * Typical usage:
+ * <blockquote><pre>
+ * FrameScaler scaler = new FrameScaler();
+ * Size size = new Size(1280, 720);
+ * RawFrame scaled = null;
+ * while (...) {
+ *     RawFrame frame = grabber.grabRawFrame(PixelFormat.RGB24, false);
+ *     scaled = scaler.scale(frame, size, ScaleMode.Bicubic, scaled);
+ *     frame.release();
+ *     ...
+ * }
+ * </pre></blockquote>
+ *
+ * @see ScaleMode
+ * @since 3.28.1
+ */
+public class FrameScaler {
+
+    /** Frames with fewer pixels are scaled on the calling thread */
+    private static final int PARALLEL_THRESHOLD = 320*240;
+
+    /** Minimum number of rows per band */
+    private static final int MIN_BAND_HEIGHT = 16;
+
+    /** Fixed point precision of the weights */
+    private static final int WEIGHT_BITS = 14;
+
+    /** Extra precision of the intermediate values */
+    private static final int EXTRA_BITS = 6;
+
+    /** Number of channels */
+    private static final int CHANNELS = 3;
+
+    /** Scales the bands, null to scale on the calling thread */
+    private ExecutorService executor;
+
+    /** Maximum number of bands */
+    private int parallelism;
+
+    /** The last horizontal kernel */
+    private Kernel xKernel;
+
+    /** The last vertical kernel */
+    private Kernel yKernel;
+
+    /** Horizontally scaled rows */
+    private int[] rows;
+
+    /** Source frame converted to RGB24 */
+    private byte[] rgb;
+
+    /** Converts the source frames to RGB24 */
+    private ColorConverter converter;
+
+    /**
+     * Filter weights for one axis.
+     */
+    private static final class Kernel {
+
+        /** Source length */
+        int srcLen;
+
+        /** Destination length */
+        int dstLen;
+
+        /** The scaling algorithm */
+        ScaleMode mode;
+
+        /** Number of source pixels contributing to a destination pixel */
+        int taps;
+
+        /** Source pixel indices, <code>taps</code> per destination pixel */
+        int[] index;
+
+        /** Fixed point weights, <code>taps</code> per destination pixel */
+        int[] weight;
+
+        /** Whether each source pixel contributes to the destination */
+        boolean[] used;
+
+        /**
+         * Computes the kernel.
+         * @param srcLen source length
+         * @param dstLen destination length
+         * @param mode the scaling algorithm
+         */
+        Kernel(int srcLen, int dstLen, ScaleMode mode) {
+            this.srcLen = srcLen;
+            this.dstLen = dstLen;
+            this.mode = mode;
+
+            double scale = (double)dstLen/srcLen;
+            double radius = getRadius(mode);
+            if (radius == 0) {
+                // Nearest neighbor
+                taps = 1;
+                index = new int[dstLen];
+                weight = new int[dstLen];
+                for (int i=0; i<dstLen; i++) {
+                    index[i] = Math.min((int)((i + 0.5)/scale), srcLen-1);
+                    weight[i] = 1 << WEIGHT_BITS;
+                }
+                markUsed();
+                return;
+            }
+
+            // Stretch the filter when downscaling
+            double stretch = 1;
+            if (scale < 1 && mode != ScaleMode.FastBilinear) {
+                stretch = 1/scale;
+            }
+            double support = radius*stretch;
+            taps = (int)Math.ceil(2*support) + 1;
+            index = new int[dstLen*taps];
+            weight = new int[dstLen*taps];
+            double[] w = new double[taps];
+            for (int i=0; i<dstLen; i++) {
+                double center = (i + 0.5)/scale - 0.5;
+                int first = (int)Math.ceil(center - support);
+                double sum = 0;
+                for (int k=0; k<taps; k++) {
+                    w[k] = filter(mode, (first + k - center)/stretch);
+                    sum += w[k];
+                }
+
+                // Normalize, put the rounding error on the biggest weight
+                int total = 0;
+                int biggest = 0;
+                int off = i*taps;
+                for (int k=0; k<taps; k++) {
+                    int j = Math.min(Math.max(first + k, 0), srcLen-1);
+                    int v = (int)Math.round(w[k]/sum*(1 << WEIGHT_BITS));
+                    index[off + k] = j;
+                    weight[off + k] = v;
+                    total += v;
+                    if (Math.abs(v) > Math.abs(weight[off + biggest])) {
+                        biggest = k;
+                    }
+                }
+                weight[off + biggest] += (1 << WEIGHT_BITS) - total;
+            }
+            markUsed();
+        }
+
+        /**
+         * Marks the source pixels which have non-zero weights.
+         */
+        private void markUsed() {
+            used = new boolean[srcLen];
+            for (int i=0; i<index.length; i++) {
+                if (weight[i] != 0) {
+                    used[index[i]] = true;
+                }
+            }
+        }
+
+        /**
+         * Tests whether this kernel can be reused.
+         * @param srcLen source length
+         * @param dstLen destination length
+         * @param mode the scaling algorithm
+         * @return <code>true</code> if the kernel matches the parameters.
+         */
+        boolean matches(int srcLen, int dstLen, ScaleMode mode) {
+            return this.srcLen == srcLen && this.dstLen == dstLen &&
+                this.mode == mode;
+        }
+    }
+
+    /**
+     * Scales a band of rows in one direction.
+     */
+    private final class Band implements Runnable {
+        byte[] src;
+        int srcWidth;
+        byte[] dst;
+        int y0, y1;
+        boolean vertical;
+        Band(byte[] src, int srcWidth, byte[] dst, int y0, int y1,
+             boolean vertical) {
+            this.src = src;
+            this.srcWidth = srcWidth;
+            this.dst = dst;
+            this.y0 = y0;
+            this.y1 = y1;
+            this.vertical = vertical;
+        }
+        public void run() {
+            if (vertical) {
+                scaleColumns(dst, y0, y1);
+            } else {
+                scaleRows(src, srcWidth, y0, y1);
+            }
+        }
+    }
+
+    /**
+     * Creates a scaler which scales large frames in parallel in the
+     * common {@link java.util.concurrent.ForkJoinPool}.
+     */
+    public FrameScaler() {
+        this(RowTasks.getSharedExecutor(),
+            Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a scaler.
+     * @param executor scales the bands of large frames, <code>null</code>
+     *   to scale everything on the calling thread
+     * @param parallelism maximum number of bands a frame is split into
+     */
+    public FrameScaler(ExecutorService executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = (executor == null) ? 1 : Math.max(parallelism, 1);
+        this.converter = new ColorConverter(executor, this.parallelism);
+    }
+
+    /**
+     * Scales the frame into a new frame. The source frame is left intact
+     * and still needs to be released by the caller.
+     * @param src the frame to scale
+     * @param size the size of the scaled frame
+     * @param mode the scaling algorithm
+     * @return The scaled frame, in RGB24 or BGR24 format.
+     * @throws IllegalArgumentException if the size is empty, or the mode
+     *   is {@link ScaleMode#None} and the size differs from the size of
+     *   the source frame.
+     */
+    public RawFrame scale(RawFrame src, Size size, ScaleMode mode) {
+        return scale(src, size, mode, null);
+    }
+
+    /**
+     * Scales the frame, reusing the output frame of the previous call if
+     * its pixel buffer is large enough. The source frame is left intact
+     * and still needs to be released by the caller. The sequence number,
+     * timestamp, video mode and the line order of the source frame are
+     * preserved.
+     * @param src the frame to scale
+     * @param size the size of the scaled frame
+     * @param mode the scaling algorithm
+     * @param reuse the frame to scale into, may be <code>null</code>.
+     *   Must not be a frame obtained from a {@link Grabber}. A
+     *   {@link RawFrame#isDirect direct} frame is never reused: the
+     *   output always goes to a heap frame.
+     * @return Either <code>reuse</code> or a newly allocated heap frame,
+     *   in RGB24 or BGR24 format.
+     * @throws IllegalArgumentException if the size is empty, or the mode
+     *   is {@link ScaleMode#None} and the size differs from the size of
+     *   the source frame.
+     */
+    public synchronized RawFrame scale(RawFrame src, Size size,
+                                       ScaleMode mode, RawFrame reuse) {
+        int sw = src.getWidth();
+        int sh = src.getHeight();
+        int dw = size.getWidth();
+        int dh = size.getHeight();
+        if (dw == 0 || dh == 0) {
+            throw new IllegalArgumentException(String.valueOf(size));
+        }
+        if (mode == ScaleMode.None && (dw != sw || dh != sh)) {
+            throw new IllegalArgumentException(String.valueOf(mode));
+        }
+
+        // Get the source pixels in a 24 bpp format
+        PixelFormat format = src.getPixelFormat();
+        byte[] pixels = src.getPixelBuffer();
+        if (format != PixelFormat.RGB24 && format != PixelFormat.BGR24) {
+            int len = sw*sh*CHANNELS;
+            if (rgb == null || rgb.length < len) {
+                rgb = new byte[len];
+            }
+            converter.convert(src, PixelFormat.RGB24, rgb, 0);
+            pixels = rgb;
+            format = PixelFormat.RGB24;
+        } else if ((long)sw*sh*CHANNELS > src.getPixelBufferLength()) {
+            throw new IllegalArgumentException("Incomplete frame");
+        }
+
+        // Get the output frame
+        int len = dw*dh*CHANNELS;
+        RawFrame dst = reuse;
+        if (dst == null || dst.isDirect() || dst.pixels.length < len) {
+            dst = new RawFrame(dw, dh, format, new byte[len], len);
+        } else {
+            dst.format = format;
+            dst.set(dw, dh, len);
+        }
+        dst.copyStamp(src);
+
+        if (mode == ScaleMode.None) {
+            System.arraycopy(pixels, 0, dst.pixels, 0, len);
+            return dst;
+        }
+
+        if (xKernel == null || !xKernel.matches(sw, dw, mode)) {
+            xKernel = new Kernel(sw, dw, mode);
+        }
+        if (yKernel == null || !yKernel.matches(sh, dh, mode)) {
+            yKernel = new Kernel(sh, dh, mode);
+        }
+        if (rows == null || rows.length < sh*dw*CHANNELS) {
+            rows = new int[sh*dw*CHANNELS];
+        }
+
+        // Horizontal pass over the source rows, then vertical pass over
+        // the destination rows
+        int n = RowTasks.getBandCount(parallelism, (long)sw*sh, sh,
+            PARALLEL_THRESHOLD, MIN_BAND_HEIGHT);
+        Runnable[] bands = new Runnable[n];
+        for (int i=0; i<n; i++) {
+            bands[i] = new Band(pixels, sw, null, sh*i/n, sh*(i+1)/n, false);
+        }
+        RowTasks.run(executor, bands);
+
+        n = RowTasks.getBandCount(parallelism, (long)sw*sh, dh,
+            PARALLEL_THRESHOLD, MIN_BAND_HEIGHT);
+        bands = new Runnable[n];
+        for (int i=0; i<n; i++) {
+            bands[i] = new Band(null, 0, dst.pixels, dh*i/n, dh*(i+1)/n, true);
+        }
+        RowTasks.run(executor, bands);
+        return dst;
+    }
+
+    /**
+     * Scales source rows horizontally into the intermediate buffer.
+     * @param src the source pixels
+     * @param srcWidth the source width
+     * @param y0 first row
+     * @param y1 row after the last one
+     */
+    private void scaleRows(byte[] src, int srcWidth, int y0, int y1) {
+        Kernel k = xKernel;
+        int taps = k.taps;
+        int[] index = k.index;
+        int[] weight = k.weight;
+        int dw = k.dstLen;
+        boolean[] used = yKernel.used;
+        int shift = WEIGHT_BITS - EXTRA_BITS;
+        int round = 1 << (shift - 1);
+        for (int y=y0; y<y1; y++) {
+            if (!used[y]) {
+                // Doesn't contribute to any destination row
+                continue;
+            }
+            int s = y*srcWidth*CHANNELS;
+            int d = y*dw*CHANNELS;
+            for (int x=0, t=0; x<dw; x++, t+=taps) {
+                int c0 = round, c1 = round, c2 = round;
+                for (int i=0; i<taps; i++) {
+                    int p = s + index[t+i]*CHANNELS;
+                    int w = weight[t+i];
+                    c0 += (src[p] & 0xff)*w;
+                    c1 += (src[p+1] & 0xff)*w;
+                    c2 += (src[p+2] & 0xff)*w;
+                }
+                rows[d++] = c0 >> shift;
+                rows[d++] = c1 >> shift;
+                rows[d++] = c2 >> shift;
+            }
+        }
+    }
+
+    /**
+     * Scales the intermediate rows vertically into the destination.
+     * @param dst receives the pixels
+     * @param y0 first destination row
+     * @param y1 row after the last one
+     */
+    private void scaleColumns(byte[] dst, int y0, int y1) {
+        Kernel k = yKernel;
+        int taps = k.taps;
+        int[] index = k.index;
+        int[] weight = k.weight;
+        int lineSize = xKernel.dstLen*CHANNELS;
+        int shift = WEIGHT_BITS + EXTRA_BITS;
+        int round = 1 << (shift - 1);
+        int[] acc = new int[lineSize];
+        for (int y=y0; y<y1; y++) {
+            for (int x=0; x<lineSize; x++) {
+                acc[x] = round;
+            }
+            for (int i=y*taps; i<(y+1)*taps; i++) {
+                int r = index[i]*lineSize;
+                int w = weight[i];
+                if (w == 0) continue;
+                for (int x=0; x<lineSize; x++) {
+                    acc[x] += rows[r + x]*w;
+                }
+            }
+            int d = y*lineSize;
+            for (int x=0; x<lineSize; x++) {
+                int c = acc[x] >> shift;
+                dst[d++] = (byte)((c < 0) ? 0 : (c > 255) ? 255 : c);
+            }
+        }
+    }
+
+    /**
+     * Gets the radius of the filter.
+     * @param mode the scaling algorithm
+     * @return The radius in source pixels, zero for nearest neighbor.
+     */
+    private static double getRadius(ScaleMode mode) {
+        if (mode == ScaleMode.FastBilinear || mode == ScaleMode.Bilinear) {
+            return 1;
+        } else if (mode == ScaleMode.WeightedAverage ||
+                   mode == ScaleMode.Area) {
+            return 0.5;
+        } else if (mode == ScaleMode.Bicubic || mode == ScaleMode.BicubLin ||
+                   mode == ScaleMode.Experimental ||
+                   mode == ScaleMode.Spline) {
+            return 2;
+        } else if (mode == ScaleMode.Lanczos) {
+            return 3;
+        } else if (mode == ScaleMode.Sinc) {
+            return 4;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Evaluates the filter.
+     * @param mode the scaling algorithm
+     * @param x distance from the center, in source pixels
+     * @return The unnormalized weight.
+     */
+    private static double filter(ScaleMode mode, double x) {
+        x = Math.abs(x);
+        if (mode == ScaleMode.FastBilinear || mode == ScaleMode.Bilinear) {
+            return (x < 1) ? 1 - x : 0;
+        } else if (mode == ScaleMode.WeightedAverage ||
+                   mode == ScaleMode.Area) {
+            return (x < 0.5) ? 1 : (x == 0.5) ? 0.5 : 0;
+        } else if (mode == ScaleMode.Spline) {
+            if (x < 1) return (4 - 6*x*x + 3*x*x*x)/6;
+            if (x < 2) return (2 - x)*(2 - x)*(2 - x)/6;
+            return 0;
+        } else if (mode == ScaleMode.Lanczos) {
+            return (x < 3) ? sinc(x)*sinc(x/3) : 0;
+        } else if (mode == ScaleMode.Sinc) {
+            return (x < 4) ? sinc(x) : 0;
+        } else {
+            // Cubic convolution, a = -0.5
+            if (x < 1) return (1.5*x - 2.5)*x*x + 1;
+            if (x < 2) return ((-0.5*x + 2.5)*x - 4)*x + 2;
+            return 0;
+        }
+    }
+
+    /**
+     * Normalized sinc function.
+     * @param x the argument
+     * @return sin(pi*x)/(pi*x)
+     */
+    private static double sinc(double x) {
+        if (x == 0) return 1;
+        double px = Math.PI*x;
+        return Math.sin(px)/px;
+    }
+}
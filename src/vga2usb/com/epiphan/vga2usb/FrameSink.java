@@ -0,0 +1,29 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Receives the frames grabbed by {@link CaptureEngine}.
+ *
+ * @see CaptureEngine
+ * @see FrameQueue
+ * @since 3.28.1
+ */
+public interface FrameSink {
+
+    /**
+     * Accepts the next frame. The sink becomes the owner of the frame
+     * and must {@link RawFrame#release release} it when it's no longer
+     * needed. Invoked on the capture thread, and should therefore return
+     * as soon as possible.
+     *
+     * @param frame the grabbed frame
+     */
+    void putFrame(RawFrame frame);
+}
@@ -13,17 +13,38 @@ import java.awt.Dimension;
 
 /* java.io */
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 
 /* java.net */
 import java.net.InetAddress;
 
+/* java.util */
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Spliterator;
+
+/* java.util.concurrent */
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/* java.util.function */
+import java.util.function.Consumer;
+
+/* java.util.stream */
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * Java interface to Epiphan frame grabbers.
  */
 public class Grabber {
 
-    /** Native implementation */
-    private NativeGrabber nativeGrabber;
+    /** Native implementation, replaced by {@link #instrument} */
+    private volatile NativeGrabber nativeGrabber;
 
     /** Last known video mode */
     private VideoMode videoMode;
@@ -34,13 +55,92 @@ public class Grabber {
     /** Device type */
     private DeviceType deviceType;
 
+    /** Device name, read when the device is opened */
+    private String deviceName;
+
+    /** Serial number, null until it has been read */
+    private volatile String serialNumber;
+
+    /** Properties which never change, read when the device is opened */
+    private volatile Map identity = new HashMap();
+
+    /** Properties sampled between grabs */
+    private volatile PropertyKey[] sampledKeys = {
+        PropertyKey.InputSignalType
+    };
+
+    /** How often the sampled properties are refreshed */
+    private volatile long sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+    /** The latest sample, never null once the device is open */
+    private volatile PropertySnapshot snapshot;
+
+    /** Set while a refresh of the sample is queued or running */
+    private final AtomicBoolean samplePending = new AtomicBoolean();
+
+    /** Incremented whenever a property is set, protected by sampleLock */
+    private int propertyGeneration;
+
+    /** Orders the property changes with the publication of the samples */
+    private final Object sampleLock = new Object();
+
+    /** Pool of frames and pixel buffers */
+    private FramePool framePool = new FramePool();
+
+    /** Serializes the grabs, protects videoMode and grabVM */
+    private final Object grabLock = new Object();
+
+    /** Receives the video mode information from the native grab calls */
+    private int[] grabVM = new int[3];
+
+    /** Frame description used by the frame reuse path */
+    private FrameInfo grabInfo = new FrameInfo();
+
+    /** Sequence number of the last grabbed frame */
+    private long frameSequence;
+
+    /** Picks the wire format, null if the format is fixed */
+    private FormatNegotiator negotiator;
+
+    /** Runs the grabs with a deadline, created when first needed */
+    private ThreadPoolExecutor grabExecutor;
+
+    /** Refreshes the property sample, created when first needed */
+    private ThreadPoolExecutor sampleExecutor;
+
+    /** The grab with a deadline in progress, null if none */
+    private TimedGrab timedGrab;
+
+    /** Set once the device has been closed */
+    private boolean closed;
+
+    /** Set if the device must be closed when timedGrab returns */
+    private boolean closePending;
+
+    /** Protects the fields above and the state of the timed grabs */
+    private final Object workerLock = new Object();
+
     /** Bottom-up flag */
-    private static final int GRABFRAME_BOTTOM_UP_FLAG  = 0x80000000;
+    static final int GRABFRAME_BOTTOM_UP_FLAG  = 0x80000000;
 
-    /** Static initializer */
-    static {
-        System.loadLibrary(VGA2USB.LIBRARY);
-    }
+    /** How long frames() waits before retrying if there's no signal */
+    private static final long NO_SIGNAL_DELAY = 500;
+
+    /** How long the idle grab thread is kept, in seconds */
+    private static final long GRAB_THREAD_KEEP_ALIVE = 60;
+
+    /** Default interval between the property samples, in milliseconds */
+    public static final long DEFAULT_SAMPLE_INTERVAL = 1000;
+
+    /** The properties which never change for a device */
+    private static final PropertyKey[] IDENTITY_KEYS = {
+        PropertyKey.SerialNumber,
+        PropertyKey.ProductName,
+        PropertyKey.DeviceCaps,
+        PropertyKey.KVMCapable,
+        PropertyKey.HardwareCompression,
+        PropertyKey.EDIDSupport
+    };
 
     /**
      * Opens any available VGA2USB device.
@@ -82,20 +182,76 @@ public class Grabber {
         init();
     }
 
+    /**
+     * Creates a grabber on top of the specified implementation. This
+     * allows using the grabbers implemented in Java, such as
+     * {@link SyntheticGrabber}, which don't require the native library.
+     * @param impl the grabber implementation.
+     * @throws IOException if an I/O error occurs
+     * @since 3.28.1
+     */
+    public Grabber(NativeGrabber impl) throws IOException {
+        if (impl == null) throw new NullPointerException("impl");
+        nativeGrabber = impl;
+        init();
+    }
+
     /**
      * Final stage of initialization. Invoked from all constructors.
      * @throws IOException if an I/O error occurs
      */
     private void init() throws IOException {
+        // Read the identity once, so that it never waits for a grab
+        Map map = new HashMap();
+        for (int i=0; i<IDENTITY_KEYS.length; i++) {
+            try {
+                Object value = readProperty(IDENTITY_KEYS[i]);
+                if (value != null) {
+                    map.put(IDENTITY_KEYS[i], value);
+                }
+            } catch (IOException x) {
+                // Will be read from the device when asked for
+            }
+        }
+        identity = map;
+        snapshot = readSnapshot(sampledKeys);
+        try { serialNumber = nativeGrabber.getSN(); }
+        catch (IOException x) {}
+
         kvmCapable = getBooleanProperty(PropertyKey.KVMCapable);
         int typeId = nativeGrabber.getDeviceType();
+        deviceName = nativeGrabber.getDeviceName();
         deviceType = DeviceType.getDeviceType(typeId);
         if (deviceType == DeviceType.UNKNOWN) {
-            String deviceName = nativeGrabber.getDeviceName();
             deviceType = DeviceType.getDeviceType(typeId, deviceName);
         }
     }
 
+    /**
+     * Starts measuring the calls made to the device. Takes effect with
+     * the next call; the calls in progress are not measured.
+     * @return The measurements, the same object if this grabber has
+     *   already been instrumented.
+     * @see InstrumentedGrabber#getStats
+     * @since 3.28.1
+     */
+    public InstrumentedGrabber instrument() {
+        synchronized (grabLock) {
+            if (!(nativeGrabber instanceof InstrumentedGrabber)) {
+                nativeGrabber = new InstrumentedGrabber(nativeGrabber);
+            }
+            return (InstrumentedGrabber)nativeGrabber;
+        }
+    }
+
+    /**
+     * Gets the pool of the frames grabbed by this grabber.
+     * @return The frame pool.
+     */
+    FramePool getFramePool() {
+        return framePool;
+    }
+
     /**
      * Tests whether this grabber is some kind of KVM2USB.
      * @return <code>true</code> if this grabber supports KVM functionality,
@@ -107,19 +263,44 @@ public class Grabber {
     }
 
     /**
-     * Closes the device.
+     * Closes the device. If a grab with a deadline is still waiting for
+     * the device, this method returns immediately and the device is
+     * closed as soon as the grab returns.
      */
     public void close() {
+        synchronized (workerLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (grabExecutor != null) {
+                grabExecutor.shutdown();
+            }
+            if (sampleExecutor != null) {
+                sampleExecutor.shutdown();
+            }
+            if (timedGrab != null) {
+                closePending = true;
+                return;
+            }
+        }
         nativeGrabber.close();
+        framePool.clear();
     }
 
     /**
-     * Gets serial number string for this device.
+     * Gets serial number string for this device. The serial number is
+     * read once and remembered.
      * @return The serial number string.
      * @throws IOException if an I/O error occurs.
      */
     public String getSN() throws IOException {
-        return nativeGrabber.getSN();
+        String sn = serialNumber;
+        if (sn == null) {
+            sn = nativeGrabber.getSN();
+            serialNumber = sn;
+        }
+        return sn;
     }
 
     /**
@@ -130,6 +311,77 @@ public class Grabber {
         return deviceType;
     }
 
+    /**
+     * Gets the name of this frame grabber, as reported by the device
+     * when it was opened.
+     * @return The device name.
+     * @since 3.28.1
+     */
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    /**
+     * Gets the device capabilities, as reported by the device when it
+     * was opened.
+     * @return The capability bits, see {@link PropertyKey#DeviceCaps},
+     *   zero if the device doesn't report them.
+     * @since 3.28.1
+     */
+    public int getDeviceCaps() {
+        Object caps = identity.get(PropertyKey.DeviceCaps);
+        return (caps instanceof Integer) ? ((Integer)caps).intValue() : 0;
+    }
+
+    /**
+     * Selects the properties which are sampled between grabs. The
+     * properties are read on a thread owned by this grabber, in between
+     * the grabs, whenever the last sample is older than the interval and
+     * somebody grabs a frame or asks for the properties. The getters
+     * return the sampled values, however old, instead of reading the
+     * device, so they never wait for a grab in progress. By default
+     * {@link PropertyKey#InputSignalType InputSignalType} is sampled
+     * every {@link #DEFAULT_SAMPLE_INTERVAL} milliseconds. The newly
+     * selected properties appear with the next sample.
+     * @param keys the properties to sample, empty to sample nothing
+     * @param interval the interval between the samples in milliseconds
+     * @throws IllegalArgumentException if the interval is not positive,
+     *   or a property can't be sampled.
+     * @see #getPropertySnapshot
+     * @since 3.28.1
+     */
+    public void setSampledProperties(PropertyKey[] keys, long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException(String.valueOf(interval));
+        }
+        for (int i=0; i<keys.length; i++) {
+            if (keys[i] == null || !isReadable(keys[i].getType())) {
+                throw new IllegalArgumentException(String.valueOf(keys[i]));
+            }
+        }
+        sampledKeys = (PropertyKey[])keys.clone();
+        sampleInterval = interval;
+        requestSample();
+    }
+
+    /**
+     * Gets the latest sample of the properties selected with
+     * {@link #setSampledProperties setSampledProperties}. Never blocks:
+     * the sample is returned as it is, and its
+     * {@link PropertySnapshot#getTimestamp timestamp} tells how old it
+     * is. If it's older than the sampling interval, a refresh is started
+     * in the background.
+     * @return The property snapshot.
+     * @since 3.28.1
+     */
+    public PropertySnapshot getPropertySnapshot() {
+        PropertySnapshot s = snapshot;
+        if (isStale(s)) {
+            requestSample();
+        }
+        return s;
+    }
+
     /**
      * Gets the value of a boolean property.
      * @param key The property key.
@@ -139,6 +391,10 @@ public class Grabber {
      */
     public boolean getBooleanProperty(PropertyKey key) throws IOException {
         if (key != null && key.getType() == PropertyType.BOOL) {
+            Object value = getCachedProperty(key);
+            if (value instanceof Boolean) {
+                return ((Boolean)value).booleanValue();
+            }
             return nativeGrabber.getBooleanProperty(key.getValue());
         } else {
             throw new IllegalArgumentException(String.valueOf(key));
@@ -154,6 +410,10 @@ public class Grabber {
      */
     public String getStringProperty(PropertyKey key) throws IOException {
         if (key != null && key.getType() == PropertyType.STRING) {
+            Object value = getCachedProperty(key);
+            if (value instanceof String) {
+                return (String)value;
+            }
             return nativeGrabber.getStringProperty(key.getValue());
         } else {
             throw new IllegalArgumentException(String.valueOf(key));
@@ -171,6 +431,7 @@ public class Grabber {
         throws IOException {
         if (key != null && key.getType() == PropertyType.STRING) {
             nativeGrabber.setStringProperty(key.getValue(), value);
+            propertyChanged(key);
         } else {
             throw new IllegalArgumentException(String.valueOf(key));
         }
@@ -185,6 +446,10 @@ public class Grabber {
      */
     public int getIntProperty(PropertyKey key) throws IOException {
         if (key != null) {
+            Object value = getCachedProperty(key);
+            if (value instanceof Integer) {
+                return ((Integer)value).intValue();
+            }
             // Native code will check the property type
             return nativeGrabber.getIntProperty(key.getValue());
         } else {
@@ -203,6 +468,7 @@ public class Grabber {
         if (key != null) {
             // Native code will check the property type
             nativeGrabber.setIntProperty(key.getValue(), value);
+            propertyChanged(key);
         } else {
             throw new IllegalArgumentException(String.valueOf(key));
         }
@@ -217,6 +483,10 @@ public class Grabber {
      */
     public int getEnumProperty(PropertyKey key) throws IOException {
         if (key != null) {
+            Object value = getCachedProperty(key);
+            if (value instanceof Integer) {
+                return ((Integer)value).intValue();
+            }
             // Native code will check the property type
             return nativeGrabber.getIntProperty(key.getValue());
         } else {
@@ -236,6 +506,7 @@ public class Grabber {
         if (key != null) {
             // Native code will check the property type
             nativeGrabber.setIntProperty(key.getValue(), value.getValue());
+            propertyChanged(key);
         } else {
             throw new IllegalArgumentException(String.valueOf(key));
         }
@@ -250,6 +521,10 @@ public class Grabber {
      */
     public Size getSizeProperty(PropertyKey key) throws IOException {
         if (key != null && key.getType() == PropertyType.SIZE) {
+            Object value = getCachedProperty(key);
+            if (value instanceof Size) {
+                return (Size)value;
+            }
             int [] size = new int[2];
             nativeGrabber.getSizeProperty(key.getValue(), size);
             return new Size(size[0], size[1]);
@@ -271,6 +546,7 @@ public class Grabber {
             int w = value.getWidth();
             int h = value.getHeight();
             nativeGrabber.setSizeProperty(key.getValue(), w, h);
+            propertyChanged(key);
         } else {
             throw new IllegalArgumentException(String.valueOf(key));
         }
@@ -283,60 +559,353 @@ public class Grabber {
      * @throws IOException if an I/O error occurs.
      */
     public VideoMode detectVideoMode() throws IOException {
-        int [] vm = new int[3];
-        nativeGrabber.detectVideoMode(vm);
-        if (vm[0] != 0 && vm[1] != 0) {
-            videoMode = new VideoMode(vm[0], vm[1], vm[2]);
-        } else {
-            videoMode = null;
+        synchronized (grabLock) {
+            int [] vm = new int[3];
+            nativeGrabber.detectVideoMode(vm);
+            if (vm[0] != 0 && vm[1] != 0) {
+                videoMode = new VideoMode(vm[0], vm[1], vm[2]);
+            } else {
+                videoMode = null;
+            }
+            return videoMode;
         }
-        return videoMode;
     }
 
     /**
      * Grabs a single frame.
+     * The frame can be handed back to this grabber with
+     * {@link Frame#release} once the caller is done with it.
+     * The frame is grabbed in RGB24 format, or in the format picked
+     * according to the {@link #setFormatPolicy format policy}.
+     *
      * @return The captured frame, or <code>null</code> if there's no signal.
      * @throws IOException if an I/O error occurs.
      *
      * @see #grabRawFrame(PixelFormat,boolean)
      */
     public Frame grabFrame() throws IOException {
-        // Note: Frame class only supports RGB24
+        synchronized (grabLock) {
+            if (negotiator != null) {
+                return (Frame)grabAdaptiveFrame(FramePool.FRAME, false);
+            }
+        }
         return grabFrame(PixelFormat.RGB24);
     }
 
     /**
-     * Grabs a single frame.
+     * Grabs a single frame, giving up after the specified time. The
+     * native call runs on a thread owned by this grabber, so the caller
+     * gets control back on time even if the device hangs. If the grab
+     * times out, it's abandoned: the frame it eventually returns is
+     * released and the grab requests queued behind it are skipped.
+     * Otherwise works like {@link #grabFrame()}.
+     *
+     * @param timeout maximum time to wait for the frame
+     * @param unit the unit of <code>timeout</code>
+     * @return The captured frame, or <code>null</code> if there's no signal.
+     * @throws InterruptedIOException if the grab has timed out, or the
+     *   calling thread has been interrupted.
+     * @throws IOException if an I/O error occurs.
+     * @since 3.28.1
+     */
+    public Frame grabFrame(long timeout, TimeUnit unit) throws IOException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return (Frame)grabTimed(FramePool.FRAME, null, false, deadline);
+    }
+
+    /**
+     * Grabs a single frame in the specified pixel format. The image of
+     * the frame shares the pixels with the frame for all formats except
+     * YUYV and UYVY, which are converted to RGB when the image is created.
      * @param format the desired pixel format.
      * @return The captured frame, or <code>null</code> if there's no signal.
      * @throws IOException if an I/O error occurs
+     * @since 3.28.1
      */
-    private Frame grabFrame(PixelFormat format) throws IOException {
-        int[] vm = new int[3];
-        Frame frame = grabFrame(format, vm);
-        if (frame == null || (
-            vm[0] != 0 &&
-            vm[1] != 0 &&
-            videoMode != null &&
-            videoMode.getWidth() != vm[0] &&
-            videoMode.getHeight() != vm[1])) {
+    public Frame grabFrame(PixelFormat format) throws IOException {
+        return (Frame)grabPooledFrame(FramePool.FRAME, format, false);
+    }
 
-            // Possibly, video mode has changed. Force video mode detection
-            // and try again
-            videoMode = null;
-            frame = grabFrame(format, vm);
+    /**
+     * Grabs a single frame. Raw frame is essentially nothing mode than a
+     * byte array. It's up to the caller what to do with it. The frame
+     * can be handed back to this grabber with {@link RawFrame#release}
+     * once the caller is done with it, so that its pixel buffer gets
+     * reused for one of the subsequent frames.
+     *
+     * @param format the desired pixel format.
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     * bottom-up order (default is up-down).
+     * @return Raw captured frame in the requested format,
+     *   or <code>null</code> if there's no signal.
+     * @throws IOException if an I/O error occurs.
+     *
+     * @see #grabFrame()
+     */
+    public RawFrame grabRawFrame(PixelFormat format, boolean bottomUp)
+        throws IOException {
+        return (RawFrame)grabPooledFrame(FramePool.RAW_FRAME, format, bottomUp);
+    }
+
+    /**
+     * Grabs a single frame, giving up at the specified deadline. The
+     * native call runs on a thread owned by this grabber, see
+     * {@link #grabFrame(long,TimeUnit)}.
+     *
+     * @param format the desired pixel format.
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     * bottom-up order (default is up-down).
+     * @param deadline when to give up, as a {@link System#nanoTime} value
+     * @return Raw captured frame in the requested format,
+     *   or <code>null</code> if there's no signal.
+     * @throws InterruptedIOException if the deadline has passed, or the
+     *   calling thread has been interrupted.
+     * @throws IOException if an I/O error occurs.
+     * @since 3.28.1
+     */
+    public RawFrame grabRawFrame(PixelFormat format, boolean bottomUp,
+        long deadline) throws IOException {
+        if (format == null) throw new NullPointerException("format");
+        return (RawFrame)grabTimed(FramePool.RAW_FRAME, format, bottomUp,
+            deadline);
+    }
+
+    /**
+     * Gets the live frames as a stream of RGB24 frames in top-down order.
+     * @return The stream of {@link RawFrame}s.
+     * @see #frames(PixelFormat,boolean)
+     * @since 3.28.1
+     */
+    public Stream<RawFrame> frames() {
+        return frames(PixelFormat.RGB24, false);
+    }
+
+    /**
+     * Gets the live frames as a stream. The stream is lazy: a frame is
+     * grabbed when the stream pipeline asks for the next element, on the
+     * thread which runs the pipeline. While there's no signal, the stream
+     * waits for it. The stream is ordered but infinite and doesn't
+     * split, so it's normally limited with {@link Stream#limit limit} or
+     * {@link Stream#takeWhile takeWhile}. It ends as soon as the thread
+     * running the pipeline is interrupted, with the interrupt status
+     * left set; an I/O error is thrown as
+     * {@link UncheckedIOException}. The frames can be handed back to
+     * this grabber with {@link RawFrame#release}.
+     * <p>
+     * Typical usage:
+     * <blockquote><pre>
+     * grabber.frames(PixelFormat.RGB24, false).limit(100)
+     *     .forEach(RawFrame::release);
+     * </pre></blockquote>
+     *
+     * @param format the desired pixel format.
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     * bottom-up order (default is up-down).
+     * @return The stream of {@link RawFrame}s.
+     * @see ReplayGrabber#frames
+     * @since 3.28.1
+     */
+    public Stream<RawFrame> frames(PixelFormat format, boolean bottomUp) {
+        if (format == null) throw new NullPointerException("format");
+        return StreamSupport.stream(new GrabSpliterator(format, bottomUp),
+            false);
+    }
+
+    /**
+     * Grabs a single frame into a direct (off-heap) buffer. The pixels
+     * are received into a pooled heap buffer and copied into the direct
+     * buffer, so that neither the heap buffer nor the direct buffer is
+     * allocated in the steady state. The frame can be handed back to this
+     * grabber with {@link RawFrame#release} once the caller is done
+     * with it.
+     *
+     * @param format the desired pixel format.
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     * bottom-up order (default is up-down).
+     * @return Captured {@link RawFrame#isDirect direct} frame in the
+     *   requested format, or <code>null</code> if there's no signal.
+     * @throws IOException if an I/O error occurs.
+     * @since 3.28.1
+     */
+    public RawFrame grabDirectFrame(PixelFormat format, boolean bottomUp)
+        throws IOException {
+        return grabDirectFrame(format, bottomUp, null);
+    }
+
+    /**
+     * Sets the policy for picking the wire format of the frames grabbed
+     * by {@link #grabFrame()} and {@link #grabAdaptiveFrame}. When the
+     * link to the device can't carry the frames at the target rate, the
+     * frames are grabbed in a cheaper format; the conversion to RGB is
+     * left until the consumer needs it, see {@link Frame#getImage} and
+     * {@link ColorConverter}.
+     * @param policy the policy, <code>null</code> to always grab RGB24
+     * @since 3.28.1
+     */
+    public void setFormatPolicy(FormatPolicy policy) {
+        int caps = 0;
+        if (policy != null) {
+            try { caps = getIntProperty(PropertyKey.DeviceCaps); }
+            catch (IOException x) {}
+        }
+        synchronized (grabLock) {
+            negotiator = (policy == null) ? null :
+                new FormatNegotiator(policy, caps);
+        }
+    }
+
+    /**
+     * Gets the policy for picking the wire format.
+     * @return The policy, <code>null</code> if none.
+     * @since 3.28.1
+     */
+    public FormatPolicy getFormatPolicy() {
+        synchronized (grabLock) {
+            return (negotiator == null) ? null : negotiator.getPolicy();
+        }
+    }
+
+    /**
+     * Gets the outcome of the wire format negotiation: which format is
+     * currently used and why.
+     * @return The negotiation statistics, <code>null</code> if there's
+     *   no format policy.
+     * @since 3.28.1
+     */
+    public FormatStats getFormatStats() {
+        synchronized (grabLock) {
+            return (negotiator == null) ? null : negotiator.getStats();
+        }
+    }
+
+    /**
+     * Grabs a single frame in the format picked according to the
+     * {@link #setFormatPolicy format policy}, or RGB24 if there's no
+     * policy. The frame can be converted to RGB with
+     * {@link ColorConverter} if necessary.
+     *
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     * bottom-up order (default is up-down).
+     * @return Raw captured frame, or <code>null</code> if there's no signal.
+     * @throws IOException if an I/O error occurs.
+     * @since 3.28.1
+     */
+    public RawFrame grabAdaptiveFrame(boolean bottomUp) throws IOException {
+        synchronized (grabLock) {
+            if (negotiator != null) {
+                return (RawFrame)grabAdaptiveFrame(FramePool.RAW_FRAME,
+                    bottomUp);
+            }
         }
+        return grabRawFrame(PixelFormat.RGB24, bottomUp);
+    }
+
+    /**
+     * Runs a grab on the grab thread and waits for it until the deadline.
+     *
+     * @param type frame class, see {@link FramePool}
+     * @param format the desired pixel format, <code>null</code> to grab
+     *   like {@link #grabFrame()}.
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     * bottom-up order (default is up-down).
+     * @param deadline when to give up, as a {@link System#nanoTime} value
+     * @return The captured frame, or <code>null</code> if there's no signal.
+     * @throws InterruptedIOException if the deadline has passed, or the
+     *   calling thread has been interrupted.
+     * @throws IOException if an I/O error occurs.
+     */
+    private BasicFrame grabTimed(int type, PixelFormat format,
+        boolean bottomUp, long deadline) throws IOException {
+        if (deadline - System.nanoTime() <= 0) {
+            throw new InterruptedIOException("Grab timed out");
+        }
+        TimedGrab grab = new TimedGrab(type, format, bottomUp);
+        synchronized (workerLock) {
+            if (closed) {
+                throw new IOException("Grabber has been closed");
+            }
+            if (grabExecutor == null) {
+                grabExecutor = new ThreadPoolExecutor(1, 1,
+                    GRAB_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue(), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "Grabber-" + Grabber.this);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+                grabExecutor.allowCoreThreadTimeOut(true);
+            }
+            grabExecutor.execute(grab);
+        }
+        return grab.await(deadline);
+    }
+
+    /**
+     * Grabs a single frame in the negotiated format and reports the grab
+     * to the negotiator. Must be invoked under <code>grabLock</code>.
+     *
+     * @param type frame class, see {@link FramePool}
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     * bottom-up order (default is up-down).
+     * @return The captured frame, or <code>null</code> if there's no signal.
+     * @throws IOException if an I/O error occurs.
+     */
+    private BasicFrame grabAdaptiveFrame(int type, boolean bottomUp)
+        throws IOException {
+        long start = System.nanoTime();
+        BasicFrame frame = grabPooledFrame(type, negotiator.getFormat(),
+            bottomUp);
+        negotiator.frameGrabbed((frame == null) ? 0 : frame.length,
+            System.nanoTime() - start, videoMode);
         return frame;
     }
 
     /**
-     * Grabs a single frame.
+     * Grabs a single frame into a frame taken from the frame pool. If
+     * the frame doesn't fit, the video mode has possibly changed, in which
+     * case video mode detection is forced and the grab is repeated once.
+     *
+     * @param type frame class, see {@link FramePool}
+     * @param format the desired pixel format.
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     * bottom-up order (default is up-down).
+     * @return The captured frame, or <code>null</code> if there's no signal.
+     * @throws IOException if an I/O error occurs.
+     */
+    private BasicFrame grabPooledFrame(int type, PixelFormat format,
+                                       boolean bottomUp) throws IOException {
+        synchronized (grabLock) {
+            int[] vm = grabVM;
+            BasicFrame frame = grabPooledFrame(type, format, bottomUp, vm);
+            if (frame == null || isVideoModeChanged(vm)) {
+
+                // Possibly, video mode has changed. Force video mode
+                // detection and try again
+                if (frame != null) frame.release();
+                videoMode = null;
+                frame = grabPooledFrame(type, format, bottomUp, vm);
+            }
+            return frame;
+        }
+    }
+
+    /**
+     * Grabs a single frame into a frame taken from the frame pool.
+     * Must be invoked under <code>grabLock</code>.
+     *
+     * @param type frame class, see {@link FramePool}
      * @param format the desired pixel format.
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     * bottom-up order (default is up-down).
      * @param vm receives the video mode information
      * @return The captured frame, or <code>null</code> if there's no signal.
      * @throws IOException if an I/O error occurs.
      */
-    private Frame grabFrame(PixelFormat format, int[] vm) throws IOException {
+    private BasicFrame grabPooledFrame(int type, PixelFormat format,
+        boolean bottomUp, int[] vm) throws IOException {
+
+        sampleProperties();
 
         // Detect video mode to get an idea how much memory to allocate
         VideoMode mode = videoMode;
@@ -348,84 +917,265 @@ public class Grabber {
             }
         }
 
-        // Allocate buffers
+        int grabFormat = format.getValue();
+        if (bottomUp) grabFormat |= GRABFRAME_BOTTOM_UP_FLAG;
+
+        // Get the buffer from the pool
         int pixelCount = mode.getWidth() * mode.getHeight();
-        byte[] pixels = new byte[pixelCount*format.getBpp()/8];
-        int len = nativeGrabber.grabFrame(format.getValue(), vm, pixels);
+        int size = PixelPacker.getFrameSize(format, mode.getWidth(),
+            mode.getHeight());
+        BasicFrame frame = framePool.get(type, format, size);
+        int len = nativeGrabber.grabFrame(grabFormat, vm, frame.pixels);
 
         if (len > 0 && pixelCount >= (vm[0]*vm[1])) {
-            return new Frame(vm[0], vm[1], format, pixels, len);
+            frame.set(vm[0], vm[1], len);
+            stamp(frame, bottomUp);
+            return frame;
         }
+        frame.release();
         return null;
     }
 
     /**
-     * Grabs a single frame. Raw frame is essentially nothing mode than a
-     * byte array. It's up to the caller what to do with it.
+     * Grabs a single frame into the frame provided by the caller, if the
+     * frame's pixel buffer is large enough. Otherwise, a new frame is
+     * allocated. A frame which has been {@link RawFrame#retain shared}
+     * is never overwritten, since the other holders are still reading
+     * it; a new frame is returned instead, the same as if the buffer
+     * were too small. The caller remains the owner of the frame passed
+     * in, even if a different frame is returned. A
+     * {@link RawFrame#isDirect direct} frame is refilled the same way as
+     * by {@link #grabDirectFrame}.
      *
      * @param format the desired pixel format.
      * @param bottomUp if <code>true</code>, then image lines will be in
      * bottom-up order (default is up-down).
-     * @return Raw captured frame in the requested format,
+     * @param frame the frame to reuse, may be <code>null</code>.
+     * @return Either <code>frame</code> or a newly allocated frame, or
+     *   <code>null</code> if there's no signal.
+     * @throws IOException if an I/O error occurs.
+     * @since 3.28.1
+     */
+    public RawFrame grabRawFrame(PixelFormat format, boolean bottomUp,
+        RawFrame frame) throws IOException {
+        if (frame == null || !frame.isExclusive()) {
+            return grabRawFrame(format, bottomUp);
+        }
+        frame.setShared(false);
+        if (frame.isDirect()) {
+            return grabDirectFrame(format, bottomUp, frame);
+        }
+        synchronized (grabLock) {
+            FrameInfo info = grabRawFrameInto(format, bottomUp,
+                frame.pixels, 0, grabInfo);
+            if (info == null) {
+                return null;
+            } else if (info.isComplete()) {
+                frame.format = format;
+                frame.set(info.getWidth(), info.getHeight(), info.getLength());
+                stamp(frame, bottomUp);
+                return frame;
+            } else {
+                return grabRawFrame(format, bottomUp);
+            }
+        }
+    }
+
+    /**
+     * Grabs a single frame into a direct frame provided by the caller,
+     * staging the pixels through a pooled heap buffer.
+     * @param format the desired pixel format.
+     * @param bottomUp bottom-up flag
+     * @param frame the direct frame to reuse, <code>null</code> to take
+     *   one from the pool
+     * @return Either <code>frame</code> or a newly allocated direct frame,
      *   or <code>null</code> if there's no signal.
      * @throws IOException if an I/O error occurs.
+     */
+    private RawFrame grabDirectFrame(PixelFormat format, boolean bottomUp,
+        RawFrame frame) throws IOException {
+        synchronized (grabLock) {
+            BasicFrame staging = grabPooledFrame(FramePool.RAW_FRAME, format,
+                bottomUp);
+            if (staging == null) {
+                return null;
+            }
+            try {
+                if (frame == null || frame.isReadOnly() ||
+                    staging.length > frame.capacity()) {
+                    frame = (RawFrame)framePool.get(FramePool.DIRECT_FRAME,
+                        format, staging.capacity());
+                }
+                frame.format = format;
+                frame.put(staging.width, staging.height, staging.pixels,
+                    staging.length);
+                frame.copyStamp(staging);
+                return frame;
+            } finally {
+                staging.release();
+            }
+        }
+    }
+
+    /**
+     * Grabs a single frame into the buffer owned by the caller.
+     *
+     * @param format the desired pixel format.
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     * bottom-up order (default is up-down).
+     * @param dst the buffer that receives the pixels.
+     * @param offset offset of the first pixel in <code>dst</code>.
+     * @return The frame description, or <code>null</code> if there's no
+     *   signal.
+     * @throws IOException if an I/O error occurs.
+     * @see #grabRawFrameInto(PixelFormat,boolean,byte[],int,FrameInfo)
+     * @since 3.28.1
+     */
+    public FrameInfo grabRawFrameInto(PixelFormat format, boolean bottomUp,
+        byte[] dst, int offset) throws IOException {
+        return grabRawFrameInto(format, bottomUp, dst, offset, null);
+    }
+
+    /**
+     * Grabs a single frame into the buffer owned by the caller. If the
+     * buffer is too small for the current video mode, nothing is written
+     * and the returned {@link FrameInfo} gives the required size. That
+     * normally happens when the video mode changes in the middle of
+     * the capture. The pixels are written directly into the buffer if
+     * <code>offset</code> is zero, otherwise they are copied from an
+     * intermediate buffer.
      *
-     * @see #grabFrame()
+     * @param format the desired pixel format.
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     * bottom-up order (default is up-down).
+     * @param dst the buffer that receives the pixels.
+     * @param offset offset of the first pixel in <code>dst</code>.
+     * @param info receives the frame description, may be <code>null</code>.
+     * @return <code>info</code> or a newly allocated object if
+     *   <code>info</code> is <code>null</code>, or <code>null</code> if
+     *   there's no signal.
+     * @throws IOException if an I/O error occurs.
+     * @since 3.28.1
      */
-    public RawFrame grabRawFrame(PixelFormat format, boolean bottomUp)
-        throws IOException {
-        int[] vm = new int[3];
-        RawFrame frame = grabRawFrame(format, bottomUp, vm);
-        if (frame == null || (
-            vm[0] != 0 &&
-            vm[1] != 0 &&
-            videoMode != null &&
-            videoMode.getWidth() != vm[0] &&
-            videoMode.getHeight() != vm[1])) {
+    public FrameInfo grabRawFrameInto(PixelFormat format, boolean bottomUp,
+        byte[] dst, int offset, FrameInfo info) throws IOException {
+        if (offset < 0 || offset > dst.length) {
+            throw new IndexOutOfBoundsException(String.valueOf(offset));
+        }
+        if (info == null) {
+            info = new FrameInfo();
+        }
+        synchronized (grabLock) {
+            int[] vm = grabVM;
+            if (!grabInto(format, bottomUp, dst, offset, vm, info) ||
+                (info.isComplete() && isVideoModeChanged(vm))) {
 
-            // Possibly, video mode has changed. Force video mode detection
-            // and try again
-            videoMode = null;
-            frame = grabRawFrame(format, bottomUp, vm);
+                // Possibly, video mode has changed. Force video mode
+                // detection and try again
+                videoMode = null;
+                if (!grabInto(format, bottomUp, dst, offset, vm, info)) {
+                    return null;
+                }
+            }
+            return info;
         }
-        return frame;
     }
 
     /**
-     * Grabs a single frame.
+     * Grabs a single frame into the buffer owned by the caller.
+     * Must be invoked under <code>grabLock</code>.
+     *
      * @param format the desired pixel format.
      * @param bottomUp if <code>true</code>, then image lines will be in
      * bottom-up order (default is up-down).
+     * @param dst the buffer that receives the pixels.
+     * @param offset offset of the first pixel in <code>dst</code>.
      * @param vm receives the video mode information
-     * @return Raw captured frame in the requested format,
-     *   or <code>null</code> if there's no signal.
+     * @param info receives the frame description
+     * @return <code>true</code> if <code>info</code> has been filled in,
+     *   <code>false</code> if there's no signal.
      * @throws IOException if an I/O error occurs.
      */
-    private RawFrame grabRawFrame(PixelFormat format, boolean bottomUp,
-                                  int[] vm) throws IOException {
+    private boolean grabInto(PixelFormat format, boolean bottomUp,
+        byte[] dst, int offset, int[] vm, FrameInfo info) throws IOException {
+
+        sampleProperties();
 
-        // Detect video mode to get an idea how much memory to allocate
         VideoMode mode = videoMode;
         if (mode == null) {
             mode = detectVideoMode();
             if (mode == null) {
                 // No signal
-                return null;
+                return false;
             }
         }
 
+        int pixelCount = mode.getWidth() * mode.getHeight();
+        int size = PixelPacker.getFrameSize(format, mode.getWidth(),
+            mode.getHeight());
+        if (dst.length - offset < size) {
+            info.set(format, mode.getWidth(), mode.getHeight(), 0, size);
+            return true;
+        }
+
         int grabFormat = format.getValue();
         if (bottomUp) grabFormat |= GRABFRAME_BOTTOM_UP_FLAG;
 
-        // Allocate buffers
-        int pixelCount = mode.getWidth() * mode.getHeight();
-        byte[] pixels = new byte[pixelCount*format.getBpp()/8];
-        int len = nativeGrabber.grabFrame(grabFormat, vm, pixels);
+        int len;
+        if (offset == 0) {
+            len = nativeGrabber.grabFrame(grabFormat, vm, dst);
+        } else {
+            BasicFrame tmp = framePool.get(FramePool.RAW_FRAME, format, size);
+            try {
+                len = nativeGrabber.grabFrame(grabFormat, vm, tmp.pixels);
+                if (len > 0) {
+                    System.arraycopy(tmp.pixels, 0, dst, offset, len);
+                }
+            } finally {
+                tmp.release();
+            }
+        }
 
-        if (len > 0 && pixelCount >= (vm[0]*vm[1])) {
-            return new RawFrame(vm[0], vm[1], format, pixels, len);
+        int grabbedCount = vm[0]*vm[1];
+        if (len > 0 && pixelCount >= grabbedCount) {
+            info.set(format, vm[0], vm[1], len, len);
+            return true;
+        } else if (grabbedCount > pixelCount) {
+            // The frame has grown, report the required size
+            videoMode = null;
+            info.set(format, vm[0], vm[1], 0,
+                PixelPacker.getFrameSize(format, vm[0], vm[1]));
+            return true;
         }
-        return null;
+        return false;
+    }
+
+    /**
+     * Assigns the next sequence number, the current time and the current
+     * video mode to a freshly grabbed frame. Must be invoked under
+     * <code>grabLock</code>.
+     * @param frame the grabbed frame
+     * @param bottomUp the line order of the frame
+     */
+    private void stamp(BasicFrame frame, boolean bottomUp) {
+        frame.sequence = ++frameSequence;
+        frame.timestamp = System.currentTimeMillis();
+        frame.videoMode = videoMode;
+        frame.bottomUp = bottomUp;
+    }
+
+    /**
+     * Checks whether the video mode reported by the last grab differs
+     * from the last known video mode.
+     * @param vm the video mode information returned by the native grab
+     * @return <code>true</code> if the video mode has changed.
+     */
+    private boolean isVideoModeChanged(int[] vm) {
+        return vm[0] != 0 &&
+            vm[1] != 0 &&
+            videoMode != null && (
+            videoMode.getWidth() != vm[0] ||
+            videoMode.getHeight() != vm[1]);
     }
 
     /**
@@ -492,6 +1242,393 @@ public class Grabber {
         }
     }
 
+    /**
+     * Grabs the frames of a live stream, see {@link #frames}.
+     */
+    private final class GrabSpliterator implements Spliterator<RawFrame> {
+
+        /** The pixel format */
+        private PixelFormat format;
+
+        /** Bottom-up flag */
+        private boolean bottomUp;
+
+        /**
+         * Creates a spliterator.
+         * @param format the pixel format
+         * @param bottomUp the bottom-up flag
+         */
+        GrabSpliterator(PixelFormat format, boolean bottomUp) {
+            this.format = format;
+            this.bottomUp = bottomUp;
+        }
+
+        /**
+         * Grabs the next frame and passes it to the action. Waits while
+         * there's no signal. The interrupt status is checked before each
+         * grab and is left set.
+         * @param action receives the frame
+         * @return <code>false</code> if the thread has been interrupted.
+         * @throws UncheckedIOException if an I/O error occurs.
+         */
+        public boolean tryAdvance(Consumer<? super RawFrame> action) {
+            try {
+                RawFrame frame = null;
+                while (frame == null) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return false;
+                    }
+                    frame = grabRawFrame(format, bottomUp);
+                    if (frame == null) {
+                        Thread.sleep(NO_SIGNAL_DELAY);
+                    }
+                }
+                action.accept(frame);
+                return true;
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (IOException x) {
+                throw new UncheckedIOException(x);
+            }
+        }
+
+        /**
+         * Live frames can't be split.
+         * @return <code>null</code>.
+         */
+        public Spliterator<RawFrame> trySplit() {
+            return null;
+        }
+
+        /**
+         * The number of frames is unknown.
+         * @return <code>Long.MAX_VALUE</code>.
+         */
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * Gets the characteristics of the frame stream.
+         * @return The characteristics.
+         */
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+
+    /**
+     * A grab with a deadline. Runs on the grab thread, the caller waits
+     * for it in {@link #await}. All the state is protected by workerLock.
+     */
+    private final class TimedGrab implements Runnable {
+
+        /** Frame class, see {@link FramePool} */
+        private int type;
+
+        /** The pixel format, null to grab like {@link #grabFrame()} */
+        private PixelFormat format;
+
+        /** Bottom-up flag */
+        private boolean bottomUp;
+
+        /** The grabbed frame */
+        private BasicFrame frame;
+
+        /** The error thrown by the grab */
+        private IOException error;
+
+        /** The unchecked exception thrown by the grab */
+        private RuntimeException failure;
+
+        /** Set when the grab has completed */
+        private boolean done;
+
+        /** Set when the caller has stopped waiting */
+        private boolean abandoned;
+
+        /**
+         * Creates a grab request.
+         * @param type frame class, see {@link FramePool}
+         * @param format the pixel format, <code>null</code> for default
+         * @param bottomUp the bottom-up flag
+         */
+        TimedGrab(int type, PixelFormat format, boolean bottomUp) {
+            this.type = type;
+            this.format = format;
+            this.bottomUp = bottomUp;
+        }
+
+        /**
+         * Grabs the frame. Invoked on the grab thread.
+         */
+        public void run() {
+            synchronized (workerLock) {
+                if (abandoned || closed) {
+                    done = true;
+                    workerLock.notifyAll();
+                    return;
+                }
+                timedGrab = this;
+            }
+            BasicFrame f = null;
+            IOException e = null;
+            RuntimeException r = null;
+            try {
+                f = (format == null) ? grabFrame() :
+                    grabPooledFrame(type, format, bottomUp);
+            } catch (IOException x) {
+                e = x;
+            } catch (RuntimeException x) {
+                r = x;
+            }
+            boolean closeNow;
+            synchronized (workerLock) {
+                timedGrab = null;
+                closeNow = closePending;
+                closePending = false;
+                if (abandoned && f != null) {
+                    f.release();
+                    f = null;
+                }
+                frame = f;
+                error = e;
+                failure = r;
+                done = true;
+                workerLock.notifyAll();
+            }
+            if (closeNow) {
+                nativeGrabber.close();
+                framePool.clear();
+            }
+        }
+
+        /**
+         * Waits for the grab to complete.
+         * @param deadline when to give up, as a {@link System#nanoTime}
+         *   value
+         * @return The captured frame, or <code>null</code> if there's no
+         *   signal.
+         * @throws InterruptedIOException if the deadline has passed, or
+         *   the calling thread has been interrupted.
+         * @throws IOException if the grab has failed.
+         */
+        BasicFrame await(long deadline) throws IOException {
+            synchronized (workerLock) {
+                try {
+                    long left = deadline - System.nanoTime();
+                    while (!done && left > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(workerLock, left);
+                        left = deadline - System.nanoTime();
+                    }
+                } catch (InterruptedException x) {
+                    abandoned = true;
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted");
+                }
+                if (!done) {
+                    abandoned = true;
+                    throw new InterruptedIOException("Grab timed out");
+                }
+                if (error != null) throw error;
+                if (failure != null) throw failure;
+                return frame;
+            }
+        }
+    }
+
+    /**
+     * Starts refreshing the property sample if it's out of date. Invoked
+     * by the grabbing thread before each grab, with grabLock held. The
+     * properties are read by the sampling thread once the grab is over,
+     * so the grab isn't delayed.
+     */
+    private void sampleProperties() {
+        if (isStale(snapshot)) {
+            requestSample();
+        }
+    }
+
+    /**
+     * Tests whether the sample is due to be refreshed.
+     * @param s the sample
+     * @return <code>true</code> if the sample is older than the interval.
+     */
+    private boolean isStale(PropertySnapshot s) {
+        return s == null || (sampledKeys.length > 0 &&
+            System.currentTimeMillis() - s.getTimestamp() >= sampleInterval);
+    }
+
+    /**
+     * Queues a refresh of the property sample on the sampling thread,
+     * unless one is already queued or running. The sampling thread reads
+     * the properties under grabLock, i.e. in between the grabs. A sample
+     * which overlaps a property change may hold the old value, so it's
+     * discarded and another one is taken.
+     */
+    private void requestSample() {
+        if (!samplePending.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (workerLock) {
+            if (closed) {
+                samplePending.set(false);
+                return;
+            }
+            if (sampleExecutor == null) {
+                sampleExecutor = new ThreadPoolExecutor(1, 1,
+                    GRAB_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue(), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "Grabber-sampler-" +
+                                Grabber.this);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+                sampleExecutor.allowCoreThreadTimeOut(true);
+            }
+            sampleExecutor.execute(new Runnable() {
+                public void run() {
+                    boolean discarded = false;
+                    try {
+                        synchronized (grabLock) {
+                            synchronized (workerLock) {
+                                if (closed) return;
+                            }
+                            int generation;
+                            synchronized (sampleLock) {
+                                generation = propertyGeneration;
+                            }
+                            PropertySnapshot s = readSnapshot(sampledKeys);
+                            synchronized (sampleLock) {
+                                if (generation == propertyGeneration) {
+                                    snapshot = s;
+                                } else {
+                                    discarded = true;
+                                }
+                            }
+                        }
+                    } finally {
+                        samplePending.set(false);
+                    }
+                    if (discarded) {
+                        requestSample();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads the sampled properties. The properties which can't be read
+     * are left out.
+     * @param keys the properties to read
+     * @return The new sample.
+     */
+    private PropertySnapshot readSnapshot(PropertyKey[] keys) {
+        PropertyKey[] read = new PropertyKey[keys.length];
+        Map values = new HashMap();
+        int n = 0;
+        for (int i=0; i<keys.length; i++) {
+            try {
+                values.put(keys[i], readProperty(keys[i]));
+                read[n++] = keys[i];
+            } catch (IOException x) {
+                // Leave it out
+            }
+        }
+        if (n < read.length) {
+            PropertyKey[] tmp = new PropertyKey[n];
+            System.arraycopy(read, 0, tmp, 0, n);
+            read = tmp;
+        }
+        return new PropertySnapshot(System.currentTimeMillis(), read, values);
+    }
+
+    /**
+     * Gets the remembered value of a property. A sampled value is used
+     * however old it is, and a refresh is started if it's out of date.
+     * @param key the property key
+     * @return The value, <code>null</code> if it's not known.
+     */
+    private Object getCachedProperty(PropertyKey key) {
+        Object value = identity.get(key);
+        if (value == null) {
+            PropertySnapshot s = snapshot;
+            if (s != null) {
+                value = s.getValue(key);
+                if (value != null && isStale(s)) {
+                    requestSample();
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Forgets the remembered value of a property which has been changed.
+     * Invoked after the new value has been set on the device. A sample
+     * which was started before that is discarded when it completes.
+     * @param key the property key
+     */
+    private void propertyChanged(PropertyKey key) {
+        boolean sampled = false;
+        synchronized (sampleLock) {
+            propertyGeneration++;
+            Map map = identity;
+            if (map.containsKey(key)) {
+                map = new HashMap(map);
+                map.remove(key);
+                identity = map;
+            }
+            PropertySnapshot s = snapshot;
+            if (s != null && s.contains(key)) {
+                // Read from the device until the next sample
+                snapshot = s.remove(key);
+                sampled = true;
+            }
+        }
+        if (sampled) {
+            requestSample();
+        }
+    }
+
+    /**
+     * Tests whether properties of this type can be remembered.
+     * @param type the property type
+     * @return <code>true</code> if {@link #readProperty} supports it.
+     */
+    private static boolean isReadable(PropertyType type) {
+        return type == PropertyType.BOOL || type == PropertyType.STRING ||
+            type == PropertyType.SIZE || type == PropertyType.INT8 ||
+            type == PropertyType.INT16 || type == PropertyType.INT32 ||
+            type == PropertyType.ENUM;
+    }
+
+    /**
+     * Reads a property from the device.
+     * @param key the property key
+     * @return Boolean, Integer, String or Size, depending on the type.
+     * @throws IOException if an I/O error occurs.
+     */
+    private Object readProperty(PropertyKey key) throws IOException {
+        PropertyType type = key.getType();
+        int k = key.getValue();
+        if (type == PropertyType.BOOL) {
+            return Boolean.valueOf(nativeGrabber.getBooleanProperty(k));
+        } else if (type == PropertyType.STRING) {
+            return nativeGrabber.getStringProperty(k);
+        } else if (type == PropertyType.SIZE) {
+            int [] size = new int[2];
+            nativeGrabber.getSizeProperty(k, size);
+            return new Size(size[0], size[1]);
+        } else {
+            return Integer.valueOf(nativeGrabber.getIntProperty(k));
+        }
+    }
+
     /**
      * Invoked when this object is being garbage collected
      * @throws Throwable any exception that occurs during finalization
@@ -511,9 +1648,7 @@ public class Grabber {
      * @return  A string representation of this object.
      */
     public String toString() {
-        String sn = null;
-        try { sn = getSN(); }
-        catch (IOException x) {}
+        String sn = serialNumber;
         if (sn != null) {
             return getDeviceType() + " [" + sn + "]";
         } else {
@@ -0,0 +1,390 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.IOException;
+
+/* java.util */
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* java.util.concurrent */
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Captures from many frame grabbers at once. The manager opens the
+ * devices concurrently, runs a {@link CaptureEngine} for each of them
+ * and passes the frames to a per-device {@link FrameBroadcaster}, to
+ * which the consumers subscribe. An optional {@link FrameRateLimiter}
+ * caps the total frame rate of all devices.
+ * <p>
+ * Typical usage:
+ * <blockquote><pre>
+ * GrabberManager manager = new GrabberManager(PixelFormat.RGB24, false);
+ * manager.openAll(32);
+ * manager.setMaxTotalFps(240);
+ * Grabber[] grabbers = manager.getGrabbers();
+ * for (int i=0; i&lt;grabbers.length; i++) {
+ *     FrameQueue queue = manager.getBroadcaster(grabbers[i]).subscribe(
+ *         4, DropPolicy.DROP_OLDEST, 1);
+ *     ...
+ * }
+ * manager.start();
+ * ...
+ * manager.close();
+ * </pre></blockquote>
+ *
+ * @see CaptureEngine
+ * @see FrameBroadcaster
+ * @since 3.28.1
+ */
+public class GrabberManager {
+
+    /** Maximum number of devices opened in parallel */
+    private static final int MAX_OPEN_THREADS = 16;
+
+    /** The pixel format */
+    private PixelFormat format;
+
+    /** Bottom-up flag */
+    private boolean bottomUp;
+
+    /** Managed devices in the order they have been added */
+    private List devices = new ArrayList();
+
+    /** Maps grabbers to devices */
+    private Map deviceMap = new HashMap();
+
+    /** Creates the capture threads, null for the default */
+    private ThreadFactory threadFactory;
+
+    /** Caps the total frame rate, null if unlimited */
+    private FrameRateLimiter rateLimiter;
+
+    /** Whether the capture is running */
+    private boolean started;
+
+    /**
+     * A managed device.
+     */
+    private static final class Device {
+
+        /** The grabber */
+        Grabber grabber;
+
+        /** Distributes the frames to the consumers */
+        FrameBroadcaster broadcaster;
+
+        /** Captures the frames */
+        CaptureEngine engine;
+
+        /**
+         * Creates a managed device.
+         * @param grabber the grabber
+         * @param format the pixel format
+         * @param bottomUp bottom-up flag
+         */
+        Device(Grabber grabber, PixelFormat format, boolean bottomUp) {
+            this.grabber = grabber;
+            this.broadcaster = new FrameBroadcaster();
+            this.engine = new CaptureEngine(grabber, format, bottomUp,
+                broadcaster);
+        }
+    }
+
+    /**
+     * Opens a device, see {@link GrabberManager#openAll}.
+     */
+    private class Opener implements Callable {
+
+        /** The device id */
+        private int id;
+
+        /**
+         * Creates an opener.
+         * @param id the device id
+         */
+        Opener(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Opens the device. Anything but an {@link IOException} is passed
+         * through to {@link GrabberManager#openAll}.
+         * @return The grabber, <code>null</code> if there's no such device.
+         */
+        public Object call() {
+            try {
+                return openGrabber(id);
+            } catch (IOException x) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Creates a manager without devices.
+     * @param format the pixel format to capture in
+     * @param bottomUp if <code>true</code>, then image lines will be in
+     *   bottom-up order (default is up-down).
+     */
+    public GrabberManager(PixelFormat format, boolean bottomUp) {
+        if (format == null) throw new NullPointerException("format");
+        this.format = format;
+        this.bottomUp = bottomUp;
+    }
+
+    /**
+     * Opens a device. The default implementation opens the local device
+     * with the specified id. Subclasses may override this method to open
+     * other kinds of devices.
+     * @param id which device to open
+     * @return The opened grabber.
+     * @throws IOException if the device can't be opened
+     */
+    protected Grabber openGrabber(int id) throws IOException {
+        return new Grabber(id);
+    }
+
+    /**
+     * Enumerates and opens the devices. Device ids from zero to
+     * <code>maxDevices-1</code> are probed in parallel; the ones that
+     * can't be opened, i.e. for which {@link #openGrabber} throws an
+     * {@link IOException}, are skipped. If {@link #openGrabber} fails
+     * in any other way, that failure is rethrown once all probes have
+     * completed; the devices that did open are added to the manager
+     * nevertheless, so that {@link #close} closes them.
+     * @param maxDevices the number of device ids to probe
+     * @return Number of opened devices.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws RuntimeException if {@link #openGrabber} has thrown one.
+     * @throws Error if {@link #openGrabber} has thrown one.
+     */
+    public int openAll(int maxDevices) throws InterruptedException {
+        if (maxDevices <= 0) {
+            return 0;
+        }
+        List tasks = new ArrayList(maxDevices);
+        for (int i=0; i<maxDevices; i++) {
+            tasks.add(new Opener(i));
+        }
+        int nthreads = Math.min(maxDevices, MAX_OPEN_THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(nthreads);
+        int count = 0;
+        Throwable failure = null;
+        try {
+            List results = executor.invokeAll(tasks);
+            for (int i=0; i<results.size(); i++) {
+                try {
+                    Grabber grabber = (Grabber)((Future)results.get(i)).get();
+                    if (grabber != null) {
+                        add(grabber);
+                        count++;
+                    }
+                } catch (ExecutionException x) {
+                    if (failure == null) {
+                        failure = x.getCause();
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException)failure;
+        } else if (failure instanceof Error) {
+            throw (Error)failure;
+        }
+        return count;
+    }
+
+    /**
+     * Adds an opened grabber to this manager. If the capture is running,
+     * it's started for this grabber too.
+     * @param grabber the grabber to add
+     * @throws IllegalArgumentException if the grabber is already managed.
+     */
+    public synchronized void add(Grabber grabber) {
+        if (deviceMap.containsKey(grabber)) {
+            throw new IllegalArgumentException(String.valueOf(grabber));
+        }
+        Device device = new Device(grabber, format, bottomUp);
+        device.engine.setThreadFactory(threadFactory);
+        device.engine.setRateLimiter(rateLimiter);
+        devices.add(device);
+        deviceMap.put(grabber, device);
+        if (started) {
+            try {
+                device.engine.start();
+            } catch (IOException x) {
+                // Engine remains stopped, see getEngine().isRunning()
+            }
+        }
+    }
+
+    /**
+     * Gets the managed grabbers.
+     * @return The managed grabbers, in the order they have been added.
+     */
+    public synchronized Grabber[] getGrabbers() {
+        Grabber[] grabbers = new Grabber[devices.size()];
+        for (int i=0; i<grabbers.length; i++) {
+            grabbers[i] = ((Device)devices.get(i)).grabber;
+        }
+        return grabbers;
+    }
+
+    /**
+     * Gets the broadcaster for the specified grabber. Consumers subscribe
+     * to it to receive the frames.
+     * @param grabber a managed grabber
+     * @return The broadcaster.
+     * @throws IllegalArgumentException if the grabber is not managed.
+     */
+    public FrameBroadcaster getBroadcaster(Grabber grabber) {
+        return getDevice(grabber).broadcaster;
+    }
+
+    /**
+     * Gets the capture engine for the specified grabber.
+     * @param grabber a managed grabber
+     * @return The capture engine.
+     * @throws IllegalArgumentException if the grabber is not managed.
+     */
+    public CaptureEngine getEngine(Grabber grabber) {
+        return getDevice(grabber).engine;
+    }
+
+    /**
+     * Sets the factory which creates the capture threads. Takes effect
+     * the next time the capture is started.
+     * @param factory the thread factory, <code>null</code> for the default.
+     */
+    public synchronized void setThreadFactory(ThreadFactory factory) {
+        threadFactory = factory;
+        for (int i=0; i<devices.size(); i++) {
+            ((Device)devices.get(i)).engine.setThreadFactory(factory);
+        }
+    }
+
+    /**
+     * Caps the total frame rate of all managed devices.
+     * @param maxFps maximum total number of frames per second, zero or
+     *   negative for no limit.
+     */
+    public synchronized void setMaxTotalFps(float maxFps) {
+        if (maxFps > 0) {
+            if (rateLimiter == null) {
+                rateLimiter = new FrameRateLimiter(maxFps);
+            } else {
+                rateLimiter.setMaxFps(maxFps);
+            }
+        } else {
+            rateLimiter = null;
+        }
+        for (int i=0; i<devices.size(); i++) {
+            ((Device)devices.get(i)).engine.setRateLimiter(rateLimiter);
+        }
+    }
+
+    /**
+     * Starts the capture on all managed devices.
+     * @return Number of devices on which the capture has been started.
+     */
+    public synchronized int start() {
+        int count = 0;
+        started = true;
+        for (int i=0; i<devices.size(); i++) {
+            try {
+                ((Device)devices.get(i)).engine.start();
+                count++;
+            } catch (IOException x) {
+                // Skip this device
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stops the capture on all managed devices and waits for the capture
+     * threads to exit.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void stop() throws InterruptedException {
+        Device[] all;
+        synchronized (this) {
+            started = false;
+            all = (Device[])devices.toArray(new Device[devices.size()]);
+        }
+        for (int i=0; i<all.length; i++) {
+            all[i].engine.stop();
+        }
+    }
+
+    /**
+     * Stops the capture and closes all managed devices.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void close() throws InterruptedException {
+        stop();
+        Device[] all;
+        synchronized (this) {
+            all = (Device[])devices.toArray(new Device[devices.size()]);
+            devices.clear();
+            deviceMap.clear();
+        }
+        for (int i=0; i<all.length; i++) {
+            all[i].grabber.close();
+        }
+    }
+
+    /**
+     * Gets the throughput of the specified device.
+     * @param grabber a managed grabber
+     * @return The capture statistics of the device.
+     * @throws IllegalArgumentException if the grabber is not managed.
+     */
+    public CaptureStats getStats(Grabber grabber) {
+        return getDevice(grabber).engine.getStats();
+    }
+
+    /**
+     * Gets the aggregate throughput of all managed devices.
+     * @return The combined capture statistics.
+     */
+    public synchronized CaptureStats getStats() {
+        CaptureStats total = new CaptureStats(0, 0, 0, 0);
+        for (int i=0; i<devices.size(); i++) {
+            total = total.add(((Device)devices.get(i)).engine.getStats());
+        }
+        return total;
+    }
+
+    /**
+     * Finds the device for the specified grabber.
+     * @param grabber a managed grabber
+     * @return The device.
+     * @throws IllegalArgumentException if the grabber is not managed.
+     */
+    private synchronized Device getDevice(Grabber grabber) {
+        Device device = (Device)deviceMap.get(grabber);
+        if (device == null) {
+            throw new IllegalArgumentException(String.valueOf(grabber));
+        }
+        return device;
+    }
+}
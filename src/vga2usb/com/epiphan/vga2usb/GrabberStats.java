@@ -0,0 +1,161 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Activity of a grabber measured by {@link InstrumentedGrabber}, as of
+ * the moment this object was created.
+ *
+ * @see InstrumentedGrabber#getStats
+ * @since 3.28.1
+ */
+public final class GrabberStats {
+
+    private long frameCount;
+    private long nullFrameCount;
+    private long byteCount;
+    private long modeChangeCount;
+    private long elapsed;
+    private LatencySnapshot grabLatency;
+    private LatencySnapshot detectLatency;
+    private LatencySnapshot propertyLatency;
+    private LatencySnapshot ps2Latency;
+
+    /**
+     * Creates a <code>GrabberStats</code> object.
+     * @param frames number of grabbed frames
+     * @param nullFrames number of grab calls which returned no frame
+     * @param bytes number of grabbed bytes
+     * @param modeChanges number of video mode changes
+     * @param elapsed measurement time in milliseconds
+     * @param grab latencies of the grab calls
+     * @param detect latencies of the video mode detection calls
+     * @param property latencies of the property calls
+     * @param ps2 latencies of the PS/2 calls
+     */
+    GrabberStats(long frames, long nullFrames, long bytes, long modeChanges,
+                 long elapsed, LatencySnapshot grab, LatencySnapshot detect,
+                 LatencySnapshot property, LatencySnapshot ps2) {
+        this.frameCount = frames;
+        this.nullFrameCount = nullFrames;
+        this.byteCount = bytes;
+        this.modeChangeCount = modeChanges;
+        this.elapsed = elapsed;
+        this.grabLatency = grab;
+        this.detectLatency = detect;
+        this.propertyLatency = property;
+        this.ps2Latency = ps2;
+    }
+
+    /**
+     * Gets the number of grabbed frames.
+     * @return The number of grabbed frames.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the number of grab calls which returned no frame, normally
+     * because there was no signal.
+     * @return The number of empty grabs.
+     */
+    public long getNullFrameCount() {
+        return nullFrameCount;
+    }
+
+    /**
+     * Gets the number of grabbed bytes.
+     * @return The number of grabbed bytes.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Gets the number of times the video mode has changed, including the
+     * loss and the return of the signal.
+     * @return The number of video mode changes.
+     */
+    public long getModeChangeCount() {
+        return modeChangeCount;
+    }
+
+    /**
+     * Gets the measurement time.
+     * @return The measurement time in milliseconds.
+     */
+    public long getElapsedTime() {
+        return elapsed;
+    }
+
+    /**
+     * Gets the average number of frames per second.
+     * @return Frames per second, zero if nothing has been measured.
+     */
+    public float getFrameRate() {
+        return (elapsed > 0) ? (frameCount * 1000.0f) / elapsed : 0;
+    }
+
+    /**
+     * Gets the average number of bytes per second.
+     * @return Bytes per second, zero if nothing has been measured.
+     */
+    public float getByteRate() {
+        return (elapsed > 0) ? (byteCount * 1000.0f) / elapsed : 0;
+    }
+
+    /**
+     * Gets the latencies of the grab calls.
+     * @return The latency distribution.
+     */
+    public LatencySnapshot getGrabLatency() {
+        return grabLatency;
+    }
+
+    /**
+     * Gets the latencies of the video mode detection calls.
+     * @return The latency distribution.
+     */
+    public LatencySnapshot getDetectLatency() {
+        return detectLatency;
+    }
+
+    /**
+     * Gets the latencies of the calls reading or changing the device
+     * properties and grab parameters.
+     * @return The latency distribution.
+     */
+    public LatencySnapshot getPropertyLatency() {
+        return propertyLatency;
+    }
+
+    /**
+     * Gets the latencies of the calls sending PS/2 packets.
+     * @return The latency distribution.
+     */
+    public LatencySnapshot getPS2Latency() {
+        return ps2Latency;
+    }
+
+    /**
+     * Returns a string representation of this object. This method
+     * is intended to be used only for debugging purposes, and the
+     * content and format of the returned string may vary between
+     * implementations. The returned string may be empty but may not
+     * be <code>null</code>.
+     *
+     * @return  A string representation of this object.
+     */
+    public String toString() {
+        return frameCount + " frames, " + nullFrameCount + " empty, " +
+            byteCount + " bytes, " + modeChangeCount + " mode changes, " +
+            elapsed + " ms; grab " + grabLatency;
+    }
+}
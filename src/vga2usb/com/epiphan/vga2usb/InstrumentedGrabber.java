@@ -0,0 +1,404 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.IOException;
+
+/* java.util.concurrent.atomic */
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the calls made to another {@link NativeGrabber}. The latency
+ * of every grab, video mode detection, property and PS/2 call is
+ * recorded in a histogram, and the grabbed frames, bytes, empty grabs
+ * and video mode changes are counted. Recording takes two clock reads
+ * and a few atomic increments per call and never allocates memory, so
+ * it's cheap enough to leave on in production.
+ * <p>
+ * Any grabber can be instrumented with {@link Grabber#instrument}:
+ * <blockquote><pre>
+ * InstrumentedGrabber stats = grabber.instrument();
+ * ...
+ * GrabberStats s = stats.getStats();
+ * System.out.println(s.getFrameRate() + " fps, grab p99 " +
+ *     s.getGrabLatency().getPercentile(99)/1000 + " us");
+ * </pre></blockquote>
+ *
+ * @see GrabberStats
+ * @since 3.28.1
+ */
+public class InstrumentedGrabber implements NativeGrabber {
+
+    /** Refresh rate changes not counted as mode changes, in mHz */
+    private static final int VFREQ_TOLERANCE = 500;
+
+    /** The measured grabber */
+    private NativeGrabber impl;
+
+    /** Latencies of the grab calls */
+    private LatencyRecorder grabLatency = new LatencyRecorder();
+
+    /** Latencies of the video mode detection calls */
+    private LatencyRecorder detectLatency = new LatencyRecorder();
+
+    /** Latencies of the property calls */
+    private LatencyRecorder propertyLatency = new LatencyRecorder();
+
+    /** Latencies of the PS/2 calls */
+    private LatencyRecorder ps2Latency = new LatencyRecorder();
+
+    /** Number of grabbed frames */
+    private AtomicLong frameCount = new AtomicLong();
+
+    /** Number of grab calls which returned no frame */
+    private AtomicLong nullFrameCount = new AtomicLong();
+
+    /** Number of grabbed bytes */
+    private AtomicLong byteCount = new AtomicLong();
+
+    /** Number of video mode changes */
+    private AtomicLong modeChangeCount = new AtomicLong();
+
+    /** The last video mode, see {@link #packMode} */
+    private AtomicLong lastMode = new AtomicLong(-1);
+
+    /** When the measurement has started */
+    private volatile long startTime = System.currentTimeMillis();
+
+    /**
+     * Creates an instrumented grabber.
+     * @param impl the grabber to measure
+     */
+    public InstrumentedGrabber(NativeGrabber impl) {
+        if (impl == null) throw new NullPointerException("impl");
+        this.impl = impl;
+    }
+
+    /**
+     * Gets the measured grabber.
+     * @return The grabber the calls are passed to.
+     */
+    public NativeGrabber getGrabber() {
+        return impl;
+    }
+
+    /**
+     * Gets the measurements since the grabber was instrumented or the
+     * measurements were reset.
+     * @return The grabber statistics.
+     */
+    public GrabberStats getStats() {
+        return new GrabberStats(frameCount.get(), nullFrameCount.get(),
+            byteCount.get(), modeChangeCount.get(),
+            System.currentTimeMillis() - startTime,
+            grabLatency.getSnapshot(), detectLatency.getSnapshot(),
+            propertyLatency.getSnapshot(), ps2Latency.getSnapshot());
+    }
+
+    /**
+     * Forgets all measurements and starts over.
+     */
+    public void reset() {
+        grabLatency.reset();
+        detectLatency.reset();
+        propertyLatency.reset();
+        ps2Latency.reset();
+        frameCount.set(0);
+        nullFrameCount.set(0);
+        byteCount.set(0);
+        modeChangeCount.set(0);
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Closes the device.
+     */
+    public void close() {
+        impl.close();
+    }
+
+    /**
+     * Gets serial number string for this device.
+     * @return The serial number string
+     * @throws IOException if an I/O error occurs
+     */
+    public String getSN() throws IOException {
+        long start = System.nanoTime();
+        try {
+            return impl.getSN();
+        } finally {
+            propertyLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Detects the video mode.
+     * @param vm receives video mode description
+     * @throws IOException if an I/O error occurs
+     */
+    public void detectVideoMode(int[] vm) throws IOException {
+        long start = System.nanoTime();
+        try {
+            impl.detectVideoMode(vm);
+        } finally {
+            detectLatency.record(System.nanoTime() - start);
+        }
+        checkMode(vm);
+    }
+
+    /**
+     * Grabs a frame.
+     * @param format the pixel format and flags
+     * @param vm receives video mode description
+     * @param buf receives the pixels
+     * @return Number of bytes written into the buffer.
+     * @throws IOException if an I/O error occurs
+     */
+    public int grabFrame(int format, int[] vm, byte[] buf)
+    throws IOException {
+        long start = System.nanoTime();
+        int len;
+        try {
+            len = impl.grabFrame(format, vm, buf);
+        } finally {
+            grabLatency.record(System.nanoTime() - start);
+        }
+        if (len > 0) {
+            frameCount.incrementAndGet();
+            byteCount.addAndGet(len);
+            checkMode(vm);
+        } else {
+            nullFrameCount.incrementAndGet();
+        }
+        return len;
+    }
+
+    /**
+     * Gets the device type for this grabber.
+     * @return The device type
+     */
+    public int getDeviceType() {
+        return impl.getDeviceType();
+    }
+
+    /**
+     * Gets the device name for this grabber.
+     * @return The device name
+     */
+    public String getDeviceName() {
+        return impl.getDeviceName();
+    }
+
+    /**
+     * Gets a boolean property.
+     * @param key The property key
+     * @return The property value
+     * @throws IOException if an I/O error occurs
+     */
+    public boolean getBooleanProperty(int key) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return impl.getBooleanProperty(key);
+        } finally {
+            propertyLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Gets a string property.
+     * @param key The property key
+     * @return The property value
+     * @throws IOException if an I/O error occurs
+     */
+    public String getStringProperty(int key) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return impl.getStringProperty(key);
+        } finally {
+            propertyLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sets a string property.
+     * @param key The property key
+     * @param value The property value
+     * @throws IOException if an I/O error occurs
+     */
+    public void setStringProperty(int key, String value) throws IOException {
+        long start = System.nanoTime();
+        try {
+            impl.setStringProperty(key, value);
+        } finally {
+            propertyLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Gets an integer property.
+     * @param key The property key
+     * @return The property value
+     * @throws IOException if an I/O error occurs
+     */
+    public int getIntProperty(int key) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return impl.getIntProperty(key);
+        } finally {
+            propertyLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sets an integer property.
+     * @param key The property key
+     * @param value The property value
+     * @throws IOException if an I/O error occurs
+     */
+    public void setIntProperty(int key, int value) throws IOException {
+        long start = System.nanoTime();
+        try {
+            impl.setIntProperty(key, value);
+        } finally {
+            propertyLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Gets a size property.
+     * @param key The property key
+     * @param value Receives the size packed into an array of size 2.
+     * @throws IOException if an I/O error occurs
+     */
+    public void getSizeProperty(int key, int [] value) throws IOException {
+        long start = System.nanoTime();
+        try {
+            impl.getSizeProperty(key, value);
+        } finally {
+            propertyLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sets a size property.
+     * @param key The property key
+     * @param w the width
+     * @param h the height
+     * @throws IOException if an I/O error occurs
+     */
+    public void setSizeProperty(int key, int w, int h) throws IOException {
+        long start = System.nanoTime();
+        try {
+            impl.setSizeProperty(key, w, h);
+        } finally {
+            propertyLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sends a PS/2 packet.
+     * @param type packet type (keyboard vs mouse)
+     * @param data the packet data
+     * @throws IOException if an I/O error occurs
+     */
+    public void sendPS2(short type, byte [] data) throws IOException {
+        long start = System.nanoTime();
+        try {
+            impl.sendPS2(type, data);
+        } finally {
+            ps2Latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Gets VGA capture parameters.
+     * @param params receives the parameters
+     * @throws IOException if an I/O error occurs
+     */
+    public void getGrabParameters(int [] params) throws IOException {
+        long start = System.nanoTime();
+        try {
+            impl.getGrabParameters(params);
+        } finally {
+            propertyLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sets VGA capture parameters.
+     * @param params the parameters
+     * @throws IOException if an I/O error occurs
+     */
+    public void setGrabParameters(int [] params) throws IOException {
+        long start = System.nanoTime();
+        try {
+            impl.setGrabParameters(params);
+        } finally {
+            propertyLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Prepares the grabber for capture with maximum possible frame rate.
+     * @throws IOException if an I/O error occurs
+     */
+    public void start() throws IOException {
+        impl.start();
+    }
+
+    /**
+     * Signals that maximum possible frame rate is no longer required.
+     * @throws IOException if an I/O error occurs
+     */
+    public void stop() throws IOException {
+        impl.stop();
+    }
+
+    /**
+     * Counts a video mode change.
+     * @param vm the video mode reported by the grabber
+     */
+    private void checkMode(int[] vm) {
+        long mode = packMode(vm);
+        long last = lastMode.get();
+        if (last != mode && (last == -1 ||
+            (mode >>> 32) != (last >>> 32) ||
+            Math.abs((int)mode - (int)last) > VFREQ_TOLERANCE)) {
+            if (lastMode.compareAndSet(last, mode) && last != -1) {
+                modeChangeCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Packs a video mode into a single value: 16 bits of width, 16 bits
+     * of height and 32 bits of refresh rate.
+     * @param vm width, height and refresh rate in mHz
+     * @return The packed video mode.
+     */
+    private static long packMode(int[] vm) {
+        return ((long)(vm[0] & 0xffff) << 48) |
+            ((long)(vm[1] & 0xffff) << 32) |
+            (vm[2] & 0xffffffffL);
+    }
+
+    /**
+     * Returns a string representation of this object. This method
+     * is intended to be used only for debugging purposes, and the
+     * content and format of the returned string may vary between
+     * implementations. The returned string may be empty but may not
+     * be <code>null</code>.
+     *
+     * @return  A string representation of this object.
+     */
+    public String toString() {
+        return "InstrumentedGrabber[" + impl + "]";
+    }
+}
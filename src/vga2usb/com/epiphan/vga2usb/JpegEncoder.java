@@ -0,0 +1,605 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.awt.color */
+import java.awt.color.ColorSpace;
+
+/* java.awt.image */
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+
+/* java.io */
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/* java.util */
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/* java.util.concurrent */
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/* javax.imageio */
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Encodes frames as JPEG on a pool of worker threads. Each worker keeps
+ * its own {@link ImageWriter}, output buffer and conversion buffer, so
+ * encoding a frame allocates little more than the resulting image. The
+ * 24 bpp formats are encoded straight from the frame pixels; the other
+ * formats are converted to 24 bpp first.
+ * <p>
+ * Frames are submitted through {@link Stream}s. Each stream has its own
+ * quality and delivers the images to its {@link JpegSink} in the order
+ * the frames were submitted, even though several frames of the stream
+ * may be encoded in parallel. A stream never blocks the capture thread:
+ * while all the workers are busy with its frames, the new frames are
+ * dropped. Typical usage:
+ * <blockquote><pre>
+ * JpegEncoder encoder = new JpegEncoder();
+ * FrameSink stream = encoder.newStream(sink, 0.8f);
+ * new CaptureEngine(grabber, PixelFormat.BGR24, false, stream).start();
+ * ...
+ * encoder.close();
+ * </pre></blockquote>
+ *
+ * @see JpegSink
+ * @since 3.28.1
+ */
+public class JpegEncoder {
+
+    /** Default JPEG quality */
+    public static final float DEFAULT_QUALITY = 0.75f;
+
+    /** Initial size of the output buffers */
+    private static final int INITIAL_BUFFER_SIZE = 65536;
+
+    /** Component color model for 24 bpp images */
+    private static final ColorModel COMPONENT_MODEL = new ComponentColorModel(
+        ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false,
+        ColorModel.OPAQUE, DataBuffer.TYPE_BYTE);
+
+    /** Band offsets of RGB24 pixels */
+    private static final int[] RGB24_OFFSETS = {0, 1, 2};
+
+    /** Band offsets of BGR24 pixels */
+    private static final int[] BGR24_OFFSETS = {2, 1, 0};
+
+    /** Runs the encoding */
+    private ExecutorService executor;
+
+    /** Whether the executor has been created by this encoder */
+    private boolean ownExecutor;
+
+    /** Maximum number of frames of a stream encoded in parallel */
+    private int parallelism;
+
+    /** The encoding state of each thread */
+    private ThreadLocal context = new ThreadLocal();
+
+    /** All encoding contexts, disposed when the encoder is closed */
+    private List contexts = new ArrayList();
+
+    /** Converts the frames which are not in a 24 bpp format */
+    private ColorConverter converter;
+
+    /** When this encoder was created */
+    private long startTime = System.currentTimeMillis();
+
+    /** Number of encoded frames */
+    private long frameCount;
+
+    /** Number of bytes produced */
+    private long byteCount;
+
+    /** Number of dropped frames */
+    private long dropCount;
+
+    /** Total encoding time in nanoseconds */
+    private long encodeTime;
+
+    /**
+     * The encoding state of a thread.
+     */
+    private static final class Context {
+
+        /** The JPEG writer, null once disposed */
+        ImageWriter writer;
+
+        /** Its parameters */
+        ImageWriteParam param;
+
+        /** Receives the encoded data */
+        ByteArrayOutputStream out;
+
+        /** Holds converted or flipped pixels */
+        byte[] pixels;
+
+        /**
+         * Creates an encoding context.
+         * @throws IOException if there's no JPEG writer.
+         */
+        Context() throws IOException {
+            Iterator i = ImageIO.getImageWritersByFormatName("jpeg");
+            if (!i.hasNext()) {
+                throw new IOException("No JPEG writer");
+            }
+            writer = (ImageWriter)i.next();
+            param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            out = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        }
+
+        /**
+         * Gets the pixel buffer, growing it if necessary.
+         * @param size the required size
+         * @return The pixel buffer.
+         */
+        byte[] getPixels(int size) {
+            if (pixels == null || pixels.length < size) {
+                pixels = new byte[size];
+            }
+            return pixels;
+        }
+    }
+
+    /**
+     * Encodes a frame of a stream, see {@link Stream#putFrame}.
+     */
+    private static final class Task implements Runnable {
+
+        /** The stream */
+        private Stream stream;
+
+        /** The frame */
+        private RawFrame frame;
+
+        /** Position of the frame in the stream */
+        private long index;
+
+        /**
+         * Creates a task.
+         * @param stream the stream
+         * @param frame the frame to encode
+         * @param index position of the frame in the stream
+         */
+        Task(Stream stream, RawFrame frame, long index) {
+            this.stream = stream;
+            this.frame = frame;
+            this.index = index;
+        }
+
+        /**
+         * Encodes the frame and passes it on.
+         */
+        public void run() {
+            JpegImage image = null;
+            try {
+                image = stream.encoder.encode(frame, stream.quality);
+            } catch (IOException x) {
+                // Keep the order, skip the image
+            } finally {
+                frame.release();
+            }
+            stream.done(index, image);
+        }
+    }
+
+    /**
+     * A sequence of frames encoded with the same quality and delivered
+     * in order. Created by {@link JpegEncoder#newStream newStream}.
+     */
+    public static final class Stream implements FrameSink {
+
+        /** The encoder */
+        private JpegEncoder encoder;
+
+        /** Receives the images */
+        private JpegSink sink;
+
+        /** JPEG quality */
+        private volatile float quality;
+
+        /** Images waiting for the preceding ones, indexed by position */
+        private JpegImage[] done;
+
+        /** Whether the image at this position is complete */
+        private boolean[] ready;
+
+        /** Position of the next submitted frame */
+        private long submitted;
+
+        /** Position of the next delivered image */
+        private long delivered;
+
+        /** Whether a worker thread is delivering the images */
+        private boolean delivering;
+
+        /** Number of dropped frames */
+        private volatile long dropCount;
+
+        /**
+         * Creates a stream.
+         * @param encoder the encoder
+         * @param sink receives the images
+         * @param quality JPEG quality
+         */
+        Stream(JpegEncoder encoder, JpegSink sink, float quality) {
+            this.encoder = encoder;
+            this.sink = sink;
+            this.quality = quality;
+            done = new JpegImage[encoder.parallelism];
+            ready = new boolean[encoder.parallelism];
+        }
+
+        /**
+         * Sets the JPEG quality. Takes effect with the next frame.
+         * @param quality the quality, from 0 (worst) to 1 (best)
+         * @throws IllegalArgumentException if the quality is out of range.
+         */
+        public void setQuality(float quality) {
+            checkQuality(quality);
+            this.quality = quality;
+        }
+
+        /**
+         * Gets the JPEG quality.
+         * @return The quality, from 0 (worst) to 1 (best).
+         */
+        public float getQuality() {
+            return quality;
+        }
+
+        /**
+         * Gets the number of frames of this stream dropped because the
+         * encoder was busy.
+         * @return Number of dropped frames.
+         */
+        public long getDropCount() {
+            return dropCount;
+        }
+
+        /**
+         * Submits the frame for encoding. Never blocks: if as many frames
+         * of this stream as there are workers are being encoded, the frame
+         * is dropped.
+         * @param frame the frame to encode
+         */
+        public void putFrame(RawFrame frame) {
+            long index;
+            synchronized (this) {
+                if (submitted - delivered >= done.length) {
+                    index = -1;
+                } else {
+                    index = submitted++;
+                }
+            }
+            if (index < 0) {
+                drop(frame);
+                return;
+            }
+            try {
+                encoder.executor.execute(new Task(this, frame, index));
+            } catch (RejectedExecutionException x) {
+                drop(frame);
+                done(index, null);
+            }
+        }
+
+        /**
+         * Drops a frame.
+         * @param frame the frame
+         */
+        private void drop(RawFrame frame) {
+            frame.release();
+            dropCount++;
+            encoder.dropped();
+        }
+
+        /**
+         * Completes a frame and delivers the images which are next in
+         * line. Invoked on the worker threads. The sink is invoked without
+         * holding the stream lock, so that a slow sink doesn't block
+         * {@link #putFrame}. Only one thread delivers at a time, which
+         * keeps the images in order; if another thread is delivering, it
+         * picks up this image too.
+         * @param index position of the frame in the stream
+         * @param image the image, null if the frame couldn't be encoded
+         */
+        void done(long index, JpegImage image) {
+            synchronized (this) {
+                int slot = (int)(index % done.length);
+                done[slot] = image;
+                ready[slot] = true;
+                if (delivering) {
+                    return;
+                }
+                delivering = true;
+            }
+            boolean finished = false;
+            try {
+                JpegImage next;
+                while ((next = takeNext()) != null) {
+                    sink.putImage(next);
+                }
+                finished = true;
+            } finally {
+                if (!finished) {
+                    synchronized (this) {
+                        delivering = false;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Takes the next image to deliver. Skips the frames which couldn't
+         * be encoded. When there's nothing to deliver, the calling thread
+         * stops being the deliverer.
+         * @return The image, <code>null</code> if the next one isn't ready.
+         */
+        private synchronized JpegImage takeNext() {
+            while (submitted > delivered) {
+                int slot = (int)(delivered % done.length);
+                if (!ready[slot]) {
+                    break;
+                }
+                JpegImage next = done[slot];
+                done[slot] = null;
+                ready[slot] = false;
+                delivered++;
+                if (next != null) {
+                    return next;
+                }
+            }
+            delivering = false;
+            return null;
+        }
+    }
+
+    /**
+     * Creates an encoder with a worker thread per processor.
+     */
+    public JpegEncoder() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an encoder with its own worker threads.
+     * @param threads number of worker threads
+     * @throws IllegalArgumentException if <code>threads</code> is less
+     *   than one.
+     */
+    public JpegEncoder(int threads) {
+        this(Executors.newFixedThreadPool(checkThreads(threads),
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "JpegEncoder");
+                    t.setDaemon(true);
+                    return t;
+                }
+            }), threads);
+        ownExecutor = true;
+    }
+
+    /**
+     * Creates an encoder which runs on the specified executor. The
+     * executor is not shut down when the encoder is closed.
+     * @param executor runs the encoding
+     * @param parallelism maximum number of frames of a stream encoded
+     *   in parallel
+     * @throws IllegalArgumentException if <code>parallelism</code> is less
+     *   than one.
+     */
+    public JpegEncoder(ExecutorService executor, int parallelism) {
+        if (executor == null) throw new NullPointerException("executor");
+        this.executor = executor;
+        this.parallelism = checkThreads(parallelism);
+    }
+
+    /**
+     * Creates a stream of frames encoded with the specified quality.
+     * @param sink receives the images, in order
+     * @param quality the quality, from 0 (worst) to 1 (best)
+     * @return The stream, which accepts the frames to encode.
+     * @throws IllegalArgumentException if the quality is out of range.
+     */
+    public Stream newStream(JpegSink sink, float quality) {
+        if (sink == null) throw new NullPointerException("sink");
+        checkQuality(quality);
+        return new Stream(this, sink, quality);
+    }
+
+    /**
+     * Encodes a frame on the calling thread. The frame is left intact and
+     * still needs to be released by the caller.
+     * @param frame the frame to encode
+     * @param quality the quality, from 0 (worst) to 1 (best)
+     * @return The encoded image.
+     * @throws IOException if the frame can't be encoded.
+     * @throws IllegalArgumentException if the quality is out of range.
+     */
+    public JpegImage encode(RawFrame frame, float quality) throws IOException {
+        checkQuality(quality);
+        Context ctx = (Context)context.get();
+        if (ctx == null) {
+            ctx = new Context();
+            synchronized (this) {
+                contexts.add(ctx);
+            }
+            context.set(ctx);
+        }
+
+        long start = System.nanoTime();
+        int w = frame.getWidth();
+        int h = frame.getHeight();
+        PixelFormat format = frame.getPixelFormat();
+        byte[] pixels;
+        if (format != PixelFormat.RGB24 && format != PixelFormat.BGR24) {
+            pixels = ctx.getPixels(w*h*3);
+            getConverter().convert(frame, PixelFormat.BGR24, pixels, 0);
+            format = PixelFormat.BGR24;
+        } else if (frame.isDirect()) {
+            // ImageIO needs a heap array, stage the off-heap pixels
+            pixels = ctx.getPixels(w*h*3);
+            frame.getByteBuffer().get(pixels, 0, w*h*3);
+        } else {
+            pixels = frame.getPixelBuffer();
+        }
+        if (frame.isBottomUp()) {
+            byte[] flipped = ctx.getPixels(w*h*3);
+            flip(pixels, flipped, w*3, h);
+            pixels = flipped;
+        }
+
+        PixelInterleavedSampleModel sm = new PixelInterleavedSampleModel(
+            DataBuffer.TYPE_BYTE, w, h, 3, 3*w,
+            (format == PixelFormat.RGB24) ? RGB24_OFFSETS : BGR24_OFFSETS);
+        BufferedImage image = new BufferedImage(COMPONENT_MODEL,
+            Raster.createWritableRaster(sm,
+            new DataBufferByte(pixels, w*h*3), null), false, null);
+        synchronized (ctx) {
+            if (ctx.writer == null) {
+                throw new IOException("Encoder is closed");
+            }
+            ctx.param.setCompressionQuality(quality);
+            ctx.out.reset();
+            ImageOutputStream ios = new MemoryCacheImageOutputStream(ctx.out);
+            try {
+                ctx.writer.setOutput(ios);
+                ctx.writer.write(null, new IIOImage(image, null, null),
+                    ctx.param);
+            } finally {
+                ctx.writer.setOutput(null);
+                ios.close();
+            }
+        }
+        byte[] data = ctx.out.toByteArray();
+        long elapsed = System.nanoTime() - start;
+        synchronized (this) {
+            frameCount++;
+            byteCount += data.length;
+            encodeTime += elapsed;
+        }
+        return new JpegImage(data, frame);
+    }
+
+    /**
+     * Gets the throughput of this encoder since it was created.
+     * @return The encoder statistics.
+     */
+    public synchronized EncoderStats getStats() {
+        return new EncoderStats(frameCount, byteCount, dropCount, encodeTime,
+            System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Stops the worker threads if the encoder has created them, and
+     * releases the JPEG writers. The frames submitted after that are
+     * dropped.
+     */
+    public void close() {
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+        Context[] all;
+        synchronized (this) {
+            all = (Context[])contexts.toArray(new Context[contexts.size()]);
+            contexts.clear();
+        }
+        for (int i=0; i<all.length; i++) {
+            synchronized (all[i]) {
+                all[i].writer.dispose();
+                all[i].writer = null;
+            }
+        }
+    }
+
+    /**
+     * Counts a dropped frame.
+     */
+    synchronized void dropped() {
+        dropCount++;
+    }
+
+    /**
+     * Gets the color converter, creating it if necessary.
+     * @return The color converter.
+     */
+    private synchronized ColorConverter getConverter() {
+        if (converter == null) {
+            converter = new ColorConverter();
+        }
+        return converter;
+    }
+
+    /**
+     * Copies the lines in reverse order.
+     * @param src the source pixels
+     * @param dst receives the flipped pixels, may be the same as
+     *   <code>src</code>
+     * @param stride number of bytes per line
+     * @param h number of lines
+     */
+    private static void flip(byte[] src, byte[] dst, int stride, int h) {
+        if (src == dst) {
+            byte[] tmp = new byte[stride];
+            for (int y=0; y<h/2; y++) {
+                int a = y*stride;
+                int b = (h-1-y)*stride;
+                System.arraycopy(src, a, tmp, 0, stride);
+                System.arraycopy(src, b, dst, a, stride);
+                System.arraycopy(tmp, 0, dst, b, stride);
+            }
+        } else {
+            for (int y=0; y<h; y++) {
+                System.arraycopy(src, y*stride, dst, (h-1-y)*stride, stride);
+            }
+        }
+    }
+
+    /**
+     * Validates the JPEG quality.
+     * @param quality the quality
+     * @throws IllegalArgumentException if the quality is out of range.
+     */
+    private static void checkQuality(float quality) {
+        if (!(quality >= 0 && quality <= 1)) {
+            throw new IllegalArgumentException(String.valueOf(quality));
+        }
+    }
+
+    /**
+     * Validates the number of threads.
+     * @param threads the number of threads
+     * @return The same number.
+     * @throws IllegalArgumentException if it's less than one.
+     */
+    private static int checkThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.valueOf(threads));
+        }
+        return threads;
+    }
+}
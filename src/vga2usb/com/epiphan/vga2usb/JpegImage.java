@@ -0,0 +1,95 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * A frame encoded as JPEG by {@link JpegEncoder}. Carries the sequence
+ * number and timestamp of the frame it was encoded from. The encoded
+ * data may be shared by several consumers and must not be modified.
+ *
+ * @see JpegEncoder
+ * @since 3.28.1
+ */
+public final class JpegImage {
+
+    private byte[] data;
+    private int width;
+    private int height;
+    private long sequence;
+    private long timestamp;
+
+    /**
+     * Creates a <code>JpegImage</code> object.
+     * @param data the JPEG data
+     * @param frame the frame the image was encoded from
+     */
+    JpegImage(byte[] data, BasicFrame frame) {
+        this.data = data;
+        this.width = frame.getWidth();
+        this.height = frame.getHeight();
+        this.sequence = frame.getSequence();
+        this.timestamp = frame.getTimestamp();
+    }
+
+    /**
+     * Gives the caller direct access to the JPEG data.
+     * @return The complete JPEG file.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Gets the image width.
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the image height.
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the sequence number of the frame this image was encoded from.
+     * @return The frame sequence number.
+     * @see RawFrame#getSequence
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the timestamp of the frame this image was encoded from.
+     * @return Milliseconds since the epoch.
+     * @see RawFrame#getTimestamp
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns a string representation of this object. This method
+     * is intended to be used only for debugging purposes, and the
+     * content and format of the returned string may vary between
+     * implementations. The returned string may be empty but may not
+     * be <code>null</code>.
+     *
+     * @return  A string representation of this object.
+     */
+    public String toString() {
+        return width + "x" + height + " #" + sequence + ", " +
+            data.length + " bytes";
+    }
+}
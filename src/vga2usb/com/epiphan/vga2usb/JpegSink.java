@@ -0,0 +1,27 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Receives the images encoded by a {@link JpegEncoder.Stream}.
+ *
+ * @see JpegEncoder
+ * @since 3.28.1
+ */
+public interface JpegSink {
+
+    /**
+     * Accepts the next image. The images arrive in the order the frames
+     * were submitted. Invoked on an encoder thread, and should therefore
+     * return as soon as possible.
+     *
+     * @param image the encoded image
+     */
+    void putImage(JpegImage image);
+}
@@ -0,0 +1,203 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.util */
+import java.util.Arrays;
+
+/**
+ * Extracts the distinct screens, such as presentation slides, from a
+ * stream of frames. A frame is passed on to the downstream sink when the
+ * screen has changed and then stayed unchanged for a number of frames;
+ * all other frames are released. Small changes, such as the moving mouse
+ * pointer or a blinking text cursor, are ignored: a frame counts as
+ * changed only if the fraction of the changed tiles (see
+ * {@link ChangeDetector}) exceeds the threshold. Changes which each stay
+ * under the threshold still add up: once the tiles changed since the
+ * last keyframe exceed the threshold, the screen counts as changed too,
+ * so that typing, drawing or a slide which is built up bit by bit
+ * produces keyframes.
+ * <p>
+ * The frames passed on keep their sequence numbers and timestamps, which
+ * tell when each screen appeared. Typical usage:
+ * <blockquote><pre>
+ * FrameRecorder slides = new FrameRecorder(new File("slides"));
+ * KeyframeExtractor extractor = new KeyframeExtractor(slides, 15, 0.01f);
+ * new CaptureEngine(grabber, PixelFormat.RGB24, false, extractor).start();
+ * </pre></blockquote>
+ *
+ * @see ChangeDetector
+ * @since 3.28.1
+ */
+public class KeyframeExtractor implements FrameSink {
+
+    /** Receives the keyframes */
+    private FrameSink sink;
+
+    /** Finds the changes */
+    private ChangeDetector detector;
+
+    /** Number of unchanged frames that make a screen stable */
+    private int stableFrames;
+
+    /** Fraction of changed tiles above which a frame counts as changed */
+    private float threshold;
+
+    /** Whether the screen has changed since the last keyframe */
+    private boolean pending;
+
+    /** Number of consecutive unchanged frames */
+    private int stableCount;
+
+    /** Tiles changed since the last keyframe, row by row */
+    private boolean[] drift;
+
+    /** Number of tiles set in <code>drift</code> */
+    private int driftCount;
+
+    /** Number of frames seen */
+    private volatile long frameCount;
+
+    /** Number of keyframes passed on */
+    private volatile long keyframeCount;
+
+    /** Timestamp of the last keyframe */
+    private volatile long lastKeyframeTime;
+
+    /**
+     * Creates a keyframe extractor with the default tile size.
+     * @param sink receives the keyframes
+     * @param stableFrames number of unchanged frames after a change that
+     *   make the new screen a keyframe
+     * @param threshold fraction of the tiles, from 0 to 1, which may
+     *   change without the frame counting as changed
+     * @throws IllegalArgumentException if <code>stableFrames</code> is
+     *   negative or <code>threshold</code> is out of range.
+     */
+    public KeyframeExtractor(FrameSink sink, int stableFrames,
+                             float threshold) {
+        this(sink, stableFrames, threshold, new ChangeDetector());
+    }
+
+    /**
+     * Creates a keyframe extractor.
+     * @param sink receives the keyframes
+     * @param stableFrames number of unchanged frames after a change that
+     *   make the new screen a keyframe
+     * @param threshold fraction of the tiles, from 0 to 1, which may
+     *   change without the frame counting as changed
+     * @param detector finds the changed tiles
+     * @throws IllegalArgumentException if <code>stableFrames</code> is
+     *   negative or <code>threshold</code> is out of range.
+     */
+    public KeyframeExtractor(FrameSink sink, int stableFrames,
+                             float threshold, ChangeDetector detector) {
+        if (sink == null) throw new NullPointerException("sink");
+        if (detector == null) throw new NullPointerException("detector");
+        if (stableFrames < 0) {
+            throw new IllegalArgumentException(String.valueOf(stableFrames));
+        }
+        if (!(threshold >= 0 && threshold < 1)) {
+            throw new IllegalArgumentException(String.valueOf(threshold));
+        }
+        this.sink = sink;
+        this.stableFrames = stableFrames;
+        this.threshold = threshold;
+        this.detector = detector;
+    }
+
+    /**
+     * Gets the number of frames seen so far.
+     * @return Number of frames.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the number of keyframes passed on so far.
+     * @return Number of keyframes.
+     */
+    public long getKeyframeCount() {
+        return keyframeCount;
+    }
+
+    /**
+     * Gets the timestamp of the last keyframe.
+     * @return Milliseconds since the epoch, zero if there was none.
+     */
+    public long getLastKeyframeTime() {
+        return lastKeyframeTime;
+    }
+
+    /**
+     * Examines the frame and either passes it on or releases it. Must
+     * only be invoked by one thread at a time.
+     * @param frame the next frame
+     */
+    public void putFrame(RawFrame frame) {
+        frameCount++;
+        ChangeMap changes = detector.detect(frame);
+        if (changes.isReset() || changes.getDirtyFraction() > threshold) {
+            pending = true;
+            stableCount = 0;
+        } else if (!pending && accumulate(changes)) {
+            pending = true;
+            stableCount = 0;
+        } else {
+            stableCount++;
+        }
+        if (pending && stableCount >= stableFrames) {
+            pending = false;
+            clearDrift();
+            keyframeCount++;
+            lastKeyframeTime = frame.getTimestamp();
+            sink.putFrame(frame);
+        } else {
+            frame.release();
+        }
+    }
+
+    /**
+     * Adds the changed tiles to the ones changed since the last keyframe.
+     * @param changes the changes of the current frame
+     * @return <code>true</code> if the tiles changed since the last
+     *   keyframe exceed the threshold.
+     */
+    private boolean accumulate(ChangeMap changes) {
+        int columns = changes.getColumns();
+        int rows = changes.getRows();
+        int total = columns*rows;
+        if (drift == null || drift.length != total) {
+            drift = new boolean[total];
+            driftCount = 0;
+        }
+        if (!changes.isUnchanged()) {
+            for (int row=0, i=0; row<rows; row++) {
+                for (int col=0; col<columns; col++, i++) {
+                    if (!drift[i] && changes.isDirty(col, row)) {
+                        drift[i] = true;
+                        driftCount++;
+                    }
+                }
+            }
+        }
+        return total > 0 && (float)driftCount/total > threshold;
+    }
+
+    /**
+     * Forgets the tiles changed since the last keyframe.
+     */
+    private void clearDrift() {
+        if (driftCount > 0) {
+            Arrays.fill(drift, false);
+            driftCount = 0;
+        }
+    }
+}
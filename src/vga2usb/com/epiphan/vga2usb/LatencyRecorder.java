@@ -0,0 +1,149 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.util.concurrent.atomic */
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records a distribution of latencies in a log-linear histogram, in the
+ * manner of HdrHistogram. Each power of two is split into
+ * {@link #SUB_BUCKETS} linear buckets, which keeps the relative error
+ * under 1/{@link #SUB_BUCKETS} over the whole range, from a nanosecond
+ * to {@link #MAX_VALUE}. Recording a value never allocates memory and
+ * never blocks, and may happen on any number of threads at once.
+ *
+ * @see LatencySnapshot
+ */
+final class LatencyRecorder {
+
+    /** Number of bits resolved linearly within each power of two */
+    static final int SUB_BITS = 5;
+
+    /** Number of buckets per power of two */
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** Largest power of two resolved */
+    private static final int MAX_EXPONENT = 40;
+
+    /** Largest value resolved, about 18 minutes in nanoseconds */
+    static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    /** Number of buckets */
+    static final int BUCKET_COUNT =
+        (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    /** Number of values in each bucket */
+    private AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /** Sum of the recorded values */
+    private AtomicLong sum = new AtomicLong();
+
+    /** The smallest recorded value */
+    private AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+    /** The largest recorded value */
+    private AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates an empty recorder.
+     */
+    LatencyRecorder() {
+    }
+
+    /**
+     * Records a value.
+     * @param value the value, negative values are recorded as zero
+     */
+    void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(getIndex(value));
+        sum.addAndGet(value);
+        long m = min.get();
+        while (value < m && !min.compareAndSet(m, value)) {
+            m = min.get();
+        }
+        m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * Forgets all recorded values.
+     */
+    void reset() {
+        for (int i=0; i<BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    /**
+     * Takes a snapshot of the recorded values.
+     * @return The snapshot.
+     */
+    LatencySnapshot getSnapshot() {
+        long[] c = new long[BUCKET_COUNT];
+        long n = 0;
+        for (int i=0; i<BUCKET_COUNT; i++) {
+            n += (c[i] = counts.get(i));
+        }
+        long lo = min.get();
+        return new LatencySnapshot(c, n, sum.get(),
+            (lo == Long.MAX_VALUE) ? 0 : lo, max.get());
+    }
+
+    /**
+     * Finds the bucket of a value.
+     * @param value a non-negative value
+     * @return The bucket index.
+     */
+    static int getIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int)value;
+        }
+        if (value > MAX_VALUE) {
+            return BUCKET_COUNT - 1;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS +
+            (int)((value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Gets the smallest value of a bucket.
+     * @param index the bucket index
+     * @return The smallest value which falls into the bucket.
+     */
+    static long getLowestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = SUB_BUCKETS + (index % SUB_BUCKETS);
+        return sub << (exp - SUB_BITS);
+    }
+
+    /**
+     * Gets the largest value of a bucket.
+     * @param index the bucket index
+     * @return The largest value which falls into the bucket.
+     */
+    static long getHighestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+        return getLowestValue(index) + (1L << (exp - SUB_BITS)) - 1;
+    }
+}
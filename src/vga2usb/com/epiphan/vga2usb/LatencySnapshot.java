@@ -0,0 +1,127 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Distribution of the latencies of a call, as of the moment this object
+ * was created. The latencies are measured in nanoseconds and kept in a
+ * histogram with a relative error of about 3%; the count, minimum,
+ * maximum and mean are exact.
+ *
+ * @see GrabberStats
+ * @since 3.28.1
+ */
+public final class LatencySnapshot {
+
+    private long[] counts;
+    private long count;
+    private long sum;
+    private long min;
+    private long max;
+
+    /**
+     * Creates a <code>LatencySnapshot</code> object.
+     * @param counts number of values in each histogram bucket
+     * @param count total number of values
+     * @param sum sum of the values
+     * @param min the smallest value
+     * @param max the largest value
+     */
+    LatencySnapshot(long[] counts, long count, long sum, long min, long max) {
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Gets the number of calls.
+     * @return The number of calls.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the shortest latency.
+     * @return Nanoseconds, zero if there were no calls.
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * Gets the longest latency.
+     * @return Nanoseconds, zero if there were no calls.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the average latency.
+     * @return Nanoseconds, zero if there were no calls.
+     */
+    public double getMean() {
+        return (count > 0) ? (double)sum / count : 0;
+    }
+
+    /**
+     * Gets the latency which the specified percentage of calls didn't
+     * exceed.
+     * @param percentile the percentage, from 0 to 100
+     * @return Nanoseconds, zero if there were no calls.
+     * @throws IllegalArgumentException if the percentage is out of range.
+     */
+    public long getPercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException(String.valueOf(percentile));
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long)Math.ceil(percentile * count / 100);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i=0; i<counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long value = LatencyRecorder.getHighestValue(i);
+                return Math.max(min, Math.min(value, max));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns a string representation of this object. This method
+     * is intended to be used only for debugging purposes, and the
+     * content and format of the returned string may vary between
+     * implementations. The returned string may be empty but may not
+     * be <code>null</code>.
+     *
+     * @return  A string representation of this object.
+     */
+    public String toString() {
+        return count + " calls, mean " + micros(getMean()) +
+            ", p50 " + micros(getPercentile(50)) +
+            ", p99 " + micros(getPercentile(99)) +
+            ", max " + micros(max);
+    }
+
+    /**
+     * Formats nanoseconds as microseconds.
+     * @param nanos the time in nanoseconds
+     * @return The formatted time.
+     */
+    private static String micros(double nanos) {
+        return Math.round(nanos/100)/10.0 + " us";
+    }
+}
@@ -19,6 +19,11 @@ class LocalGrabber implements NativeGrabber {
     /** Native handle */
     private long handle;
 
+    /** Static initializer */
+    static {
+        System.loadLibrary(VGA2USB.LIBRARY);
+    }
+
     /**
      * Opens a local frame device.
      * @param id which device to open, -1 to open the first available device
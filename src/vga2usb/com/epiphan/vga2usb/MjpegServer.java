@@ -0,0 +1,753 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.IOException;
+
+/* java.net */
+import java.net.InetSocketAddress;
+
+/* java.nio */
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/* java.util */
+import java.util.Iterator;
+
+/**
+ * Embedded HTTP server streaming the frames as Motion JPEG. The server
+ * answers two kinds of requests:
+ * <blockquote><pre>
+ * GET /              multipart/x-mixed-replace stream of JPEG images
+ * GET /stream.mjpg   same as above
+ * GET /snapshot.jpg  a single JPEG image
+ * </pre></blockquote>
+ * Each frame is encoded once, and the same bytes are sent to all
+ * clients. The server never buffers frames for a client: a client which
+ * is still receiving an image when the next one is ready simply skips
+ * ahead to the latest image once it's done. Frames are only encoded
+ * while somebody is watching.
+ * <p>
+ * All connections are served by a single thread using non-blocking I/O,
+ * and the frames are encoded by a {@link JpegEncoder}, so the capture
+ * thread never waits for the network. The server is a {@link FrameSink} and may be
+ * fed by any {@link CaptureEngine} or {@link FrameBroadcaster}, or it can
+ * run its own capture engine. Typical usage:
+ * <blockquote><pre>
+ * MjpegServer server = new MjpegServer(grabber, 8080);
+ * server.start();
+ * ...
+ * server.close();
+ * </pre></blockquote>
+ *
+ * @see CaptureEngine
+ * @since 3.28.1
+ */
+public class MjpegServer implements FrameSink {
+
+    /** Default time allowed for sending the request */
+    public static final long DEFAULT_REQUEST_TIMEOUT = 10000;
+
+    /** Multipart boundary */
+    private static final String BOUNDARY = "frame";
+
+    /** Maximum size of an HTTP request header */
+    private static final int MAX_REQUEST_SIZE = 2048;
+
+    /** How often the server thread wakes up to check the timeouts */
+    private static final long SELECT_TIMEOUT = 1000;
+
+    /** Images older than this are not served as snapshots */
+    private static final long SNAPSHOT_MAX_AGE = 1000;
+
+    /** How long a snapshot request may wait for a frame */
+    private static final long SNAPSHOT_TIMEOUT = 5000;
+
+    /** The response preceding the stream */
+    private static final byte[] STREAM_HEADER = ascii(
+        "HTTP/1.0 200 OK\r\n" +
+        "Cache-Control: no-cache, no-store\r\n" +
+        "Pragma: no-cache\r\n" +
+        "Connection: close\r\n" +
+        "Content-Type: multipart/x-mixed-replace; boundary=" + BOUNDARY +
+        "\r\n\r\n");
+
+    /** Terminates each part */
+    private static final byte[] CRLF = ascii("\r\n");
+
+    /** Response to an unknown path */
+    private static final byte[] NOT_FOUND = errorResponse("404 Not Found");
+
+    /** Response to anything other than GET */
+    private static final byte[] BAD_METHOD =
+        errorResponse("405 Method Not Allowed");
+
+    /** Response to a malformed request */
+    private static final byte[] BAD_REQUEST = errorResponse("400 Bad Request");
+
+    /** Response to a snapshot request if there's no signal */
+    private static final byte[] NO_FRAME =
+        errorResponse("503 Service Unavailable");
+
+    /** Client is sending the request */
+    private static final int STATE_REQUEST = 0;
+
+    /** Client receives the stream */
+    private static final int STATE_STREAM = 1;
+
+    /** Client waits for a snapshot */
+    private static final int STATE_SNAPSHOT = 2;
+
+    /** Client receives the last response */
+    private static final int STATE_CLOSING = 3;
+
+    /** The listening socket */
+    private ServerSocketChannel serverChannel;
+
+    /** Multiplexes the connections */
+    private Selector selector;
+
+    /** Encodes the frames */
+    private JpegEncoder encoder;
+
+    /** Whether the encoder has been created by this server */
+    private boolean ownEncoder;
+
+    /** The stream of encoded frames */
+    private JpegEncoder.Stream stream;
+
+    /** Captures the frames, null if fed from outside */
+    private CaptureEngine engine;
+
+    /** The latest encoded image, null if none */
+    private volatile Part current;
+
+    /** Number of clients waiting for images */
+    private volatile int viewerCount;
+
+    /** Number of connected clients */
+    private volatile int clientCount;
+
+    /** Number of encoded frames */
+    private volatile long encodeCount;
+
+    /** Number of images sent */
+    private volatile long sendCount;
+
+    /** Number of images skipped by the slow clients */
+    private volatile long skipCount;
+
+    /** The server thread */
+    private Thread serverThread;
+
+    /** Set to false to stop the threads */
+    private volatile boolean running;
+
+    /** Time allowed for sending the request, milliseconds */
+    private volatile long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+
+    /**
+     * An encoded image, shared by all clients.
+     */
+    private static final class Part {
+
+        /** Multipart header */
+        final byte[] header;
+
+        /** The image */
+        final JpegImage image;
+
+        /** Position of the image in the stream */
+        final long index;
+
+        /** When the image was encoded */
+        final long time;
+
+        /**
+         * Creates an image part.
+         * @param image the image
+         * @param index position of the image in the stream
+         */
+        Part(JpegImage image, long index) {
+            this.header = ascii("--" + BOUNDARY + "\r\n" +
+                "Content-Type: image/jpeg\r\n" +
+                "Content-Length: " + image.getData().length + "\r\n\r\n");
+            this.image = image;
+            this.index = index;
+            this.time = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * A connected client. Only accessed by the server thread.
+     */
+    private static final class Client {
+
+        /** The connection */
+        final SocketChannel channel;
+
+        /** Receives the request */
+        ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+
+        /** Where the client is in the conversation */
+        int state = STATE_REQUEST;
+
+        /** Data being sent, null if nothing */
+        ByteBuffer[] output;
+
+        /** The last image sent to this client, null if none */
+        Part part;
+
+        /**
+         * When the client has connected, or started waiting for
+         * a snapshot
+         */
+        long waitTime;
+
+        /**
+         * Creates a client.
+         * @param channel the connection
+         */
+        Client(SocketChannel channel) {
+            this.channel = channel;
+            this.waitTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Creates a server which is fed by an external {@link CaptureEngine}
+     * or {@link FrameBroadcaster}. The server starts accepting connections
+     * when it's {@link #start started}.
+     * @param port the port to listen on, zero to pick a free port
+     * @throws IOException if the port can't be bound.
+     */
+    public MjpegServer(int port) throws IOException {
+        this(new InetSocketAddress(port));
+    }
+
+    /**
+     * Creates a server which is fed by an external {@link CaptureEngine}
+     * or {@link FrameBroadcaster}.
+     * @param address the address to listen on
+     * @throws IOException if the address can't be bound.
+     */
+    public MjpegServer(InetSocketAddress address) throws IOException {
+        this(address, null);
+    }
+
+    /**
+     * Creates a server which is fed by an external {@link CaptureEngine}
+     * or {@link FrameBroadcaster}, and shares an encoder with other
+     * servers or consumers.
+     * @param address the address to listen on
+     * @param encoder encodes the frames, <code>null</code> to create
+     *   an encoder with a worker thread per processor
+     * @throws IOException if the address can't be bound.
+     */
+    public MjpegServer(InetSocketAddress address, JpegEncoder encoder)
+        throws IOException {
+        if (address == null) throw new NullPointerException("address");
+        selector = Selector.open();
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException x) {
+            if (serverChannel != null) serverChannel.close();
+            selector.close();
+            throw x;
+        }
+        if (encoder == null) {
+            encoder = new JpegEncoder();
+            ownEncoder = true;
+        }
+        this.encoder = encoder;
+        stream = encoder.newStream(new JpegSink() {
+            public void putImage(JpegImage image) {
+                imageEncoded(image);
+            }
+        }, JpegEncoder.DEFAULT_QUALITY);
+    }
+
+    /**
+     * Creates a server which captures from the specified grabber. The
+     * capture is running while the server is.
+     * @param grabber the grabber to capture from
+     * @param port the port to listen on, zero to pick a free port
+     * @throws IOException if the port can't be bound.
+     */
+    public MjpegServer(Grabber grabber, int port) throws IOException {
+        this(new InetSocketAddress(port));
+        engine = new CaptureEngine(grabber, PixelFormat.BGR24, false, this);
+    }
+
+    /**
+     * Gets the port this server listens on.
+     * @return The port number.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Gets the capture engine run by this server.
+     * @return The capture engine, <code>null</code> if the server is fed
+     *   from outside.
+     */
+    public CaptureEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Sets the JPEG quality. Takes effect with the next frame.
+     * @param quality the quality, from 0 (worst) to 1 (best)
+     * @throws IllegalArgumentException if the quality is out of range.
+     */
+    public void setQuality(float quality) {
+        stream.setQuality(quality);
+    }
+
+    /**
+     * Gets the JPEG quality.
+     * @return The quality, from 0 (worst) to 1 (best).
+     */
+    public float getQuality() {
+        return stream.getQuality();
+    }
+
+    /**
+     * Sets how long a client may take to send its request. A client which
+     * hasn't sent a complete request by then is disconnected, so that idle
+     * connections don't pile up. The timeout is checked about once a
+     * second.
+     * @param timeout the timeout in milliseconds
+     * @throws IllegalArgumentException if the timeout is not positive.
+     */
+    public void setRequestTimeout(long timeout) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException(String.valueOf(timeout));
+        }
+        requestTimeout = timeout;
+    }
+
+    /**
+     * Gets how long a client may take to send its request.
+     * @return The timeout in milliseconds.
+     */
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Gets the number of connected clients.
+     * @return Number of clients.
+     */
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    /**
+     * Gets the number of frames encoded so far.
+     * @return Number of encoded frames.
+     */
+    public long getEncodeCount() {
+        return encodeCount;
+    }
+
+    /**
+     * Gets the number of images sent so far, to all clients.
+     * @return Number of images sent.
+     */
+    public long getSendCount() {
+        return sendCount;
+    }
+
+    /**
+     * Gets the number of images skipped so far because the clients
+     * couldn't keep up.
+     * @return Number of skipped images.
+     */
+    public long getSkipCount() {
+        return skipCount;
+    }
+
+    /**
+     * Starts serving the clients, and the capture if this server runs
+     * its own capture engine. Does nothing if the server is running.
+     * @throws IOException if the capture fails to start.
+     */
+    public synchronized void start() throws IOException {
+        if (serverThread == null) {
+            if (!serverChannel.isOpen()) {
+                throw new IOException("Server is closed");
+            }
+            if (engine != null) {
+                engine.start();
+            }
+            running = true;
+            serverThread = new Thread(new Runnable() {
+                public void run() {
+                    serve();
+                }
+            }, "MjpegServer-" + getPort());
+            serverThread.setDaemon(true);
+            serverThread.start();
+        }
+    }
+
+    /**
+     * Stops the server, disconnects all clients and closes the listening
+     * socket. The server can't be restarted.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void close() throws InterruptedException {
+        Thread t;
+        synchronized (this) {
+            t = serverThread;
+            serverThread = null;
+            running = false;
+        }
+        if (engine != null) {
+            engine.stop();
+        }
+        if (t != null) {
+            selector.wakeup();
+            t.join();
+        }
+        Iterator i = selector.keys().iterator();
+        while (i.hasNext()) {
+            try { ((SelectionKey)i.next()).channel().close(); }
+            catch (IOException x) {}
+        }
+        try { selector.close(); }
+        catch (IOException x) {}
+        try { serverChannel.close(); }
+        catch (IOException x) {}
+        if (ownEncoder) {
+            encoder.close();
+        }
+        current = null;
+    }
+
+    /**
+     * Accepts the next frame for encoding. Never blocks: if the encoder is
+     * busy, the frame is dropped.
+     * @param frame the frame
+     */
+    public void putFrame(RawFrame frame) {
+        if (running && viewerCount > 0) {
+            stream.putFrame(frame);
+        } else {
+            frame.release();
+        }
+    }
+
+    /**
+     * Publishes an encoded image. Invoked on an encoder thread.
+     * @param image the image
+     */
+    private void imageEncoded(JpegImage image) {
+        current = new Part(image, encodeCount++);
+        selector.wakeup();
+    }
+
+    /**
+     * The server loop. Invoked on the server thread.
+     */
+    private void serve() {
+        Part last = null;
+        while (running) {
+            try {
+                selector.select(SELECT_TIMEOUT);
+            } catch (IOException x) {
+                break;
+            }
+            Iterator i = selector.selectedKeys().iterator();
+            while (i.hasNext()) {
+                SelectionKey key = (SelectionKey)i.next();
+                i.remove();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Client client = (Client)key.attachment();
+                        if (key.isReadable()) {
+                            read(key, client);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(key, client);
+                        }
+                    }
+                } catch (IOException x) {
+                    disconnect(key);
+                }
+            }
+            Part part = current;
+            long now = System.currentTimeMillis();
+            boolean newPart = (part != last);
+            last = part;
+            int viewers = 0;
+            i = selector.keys().iterator();
+            while (i.hasNext()) {
+                SelectionKey key = (SelectionKey)i.next();
+                Client client = (Client)key.attachment();
+                if (client == null || !key.isValid()) {
+                    continue;
+                }
+                try {
+                    if (client.state == STATE_STREAM) {
+                        viewers++;
+                        if (newPart && client.output == null) {
+                            sendPart(key, client, part);
+                        }
+                    } else if (client.state == STATE_SNAPSHOT) {
+                        if (newPart && part != null) {
+                            sendSnapshot(key, client, part);
+                        } else if (now - client.waitTime > SNAPSHOT_TIMEOUT) {
+                            send(key, client, NO_FRAME);
+                        } else {
+                            viewers++;
+                        }
+                    } else if (client.state == STATE_REQUEST &&
+                        now - client.waitTime > requestTimeout) {
+                        disconnect(key);
+                    }
+                } catch (IOException x) {
+                    disconnect(key);
+                }
+            }
+            viewerCount = viewers;
+        }
+    }
+
+    /**
+     * Accepts a connection.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                channel.register(selector, SelectionKey.OP_READ,
+                    new Client(channel));
+                clientCount++;
+            } catch (IOException x) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Closes a connection.
+     * @param key the selection key of the connection
+     */
+    private void disconnect(SelectionKey key) {
+        key.cancel();
+        try { key.channel().close(); }
+        catch (IOException x) {}
+        clientCount--;
+    }
+
+    /**
+     * Reads from a client, and handles the request once it's complete.
+     * @param key the selection key of the connection
+     * @param client the client
+     * @throws IOException if an I/O error occurs.
+     */
+    private void read(SelectionKey key, Client client) throws IOException {
+        ByteBuffer buf = client.request;
+        if (client.state != STATE_REQUEST) {
+            // Discard whatever the client sends after the request
+            buf.clear();
+        }
+        if (client.channel.read(buf) < 0) {
+            throw new IOException("Connection closed");
+        }
+        if (client.state != STATE_REQUEST) {
+            return;
+        }
+        byte[] b = buf.array();
+        int end = -1;
+        for (int i=3; i<buf.position() && end < 0; i++) {
+            if (b[i-3] == '\r' && b[i-2] == '\n' &&
+                b[i-1] == '\r' && b[i] == '\n') {
+                end = i;
+            }
+        }
+        if (end < 0) {
+            if (!buf.hasRemaining()) {
+                send(key, client, BAD_REQUEST);
+            }
+            return;
+        }
+        int eol = 0;
+        while (b[eol] != '\r') eol++;
+        String[] line = new String(b, 0, eol, "ISO-8859-1").split(" ");
+        if (line.length != 3 || !line[2].startsWith("HTTP/")) {
+            send(key, client, BAD_REQUEST);
+            return;
+        }
+        if (!line[0].equals("GET")) {
+            send(key, client, BAD_METHOD);
+            return;
+        }
+        String path = line[1];
+        int query = path.indexOf('?');
+        if (query >= 0) path = path.substring(0, query);
+        if (path.equals("/") || path.equals("/stream.mjpg")) {
+            client.state = STATE_STREAM;
+            viewerCount++;
+            client.output = new ByteBuffer[] {
+                ByteBuffer.wrap(STREAM_HEADER)
+            };
+            write(key, client);
+        } else if (path.equals("/snapshot.jpg")) {
+            Part part = current;
+            if (part != null &&
+                System.currentTimeMillis() - part.time < SNAPSHOT_MAX_AGE) {
+                sendSnapshot(key, client, part);
+            } else {
+                client.state = STATE_SNAPSHOT;
+                client.waitTime = System.currentTimeMillis();
+                viewerCount++;
+            }
+        } else {
+            send(key, client, NOT_FOUND);
+        }
+    }
+
+    /**
+     * Writes the pending data to a client. When the client has received
+     * an image, it gets the latest one, if it's newer.
+     * @param key the selection key of the connection
+     * @param client the client
+     * @throws IOException if an I/O error occurs.
+     */
+    private void write(SelectionKey key, Client client) throws IOException {
+        ByteBuffer[] output = client.output;
+        if (output == null) {
+            key.interestOps(SelectionKey.OP_READ);
+            return;
+        }
+        client.channel.write(output);
+        if (output[output.length-1].hasRemaining()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            return;
+        }
+        client.output = null;
+        if (client.state == STATE_CLOSING) {
+            disconnect(key);
+        } else {
+            Part part = current;
+            if (client.state == STATE_STREAM && part != null &&
+                part != client.part) {
+                sendPart(key, client, part);
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    /**
+     * Starts sending the next image of the stream to a client.
+     * @param key the selection key of the connection
+     * @param client the client
+     * @param part the image
+     * @throws IOException if an I/O error occurs.
+     */
+    private void sendPart(SelectionKey key, Client client, Part part)
+        throws IOException {
+        if (client.part != null && part.index > client.part.index + 1) {
+            skipCount += part.index - client.part.index - 1;
+        }
+        client.part = part;
+        client.output = new ByteBuffer[] {
+            ByteBuffer.wrap(part.header),
+            ByteBuffer.wrap(part.image.getData()),
+            ByteBuffer.wrap(CRLF)
+        };
+        sendCount++;
+        write(key, client);
+    }
+
+    /**
+     * Sends a snapshot to a client and closes the connection.
+     * @param key the selection key of the connection
+     * @param client the client
+     * @param part the image
+     * @throws IOException if an I/O error occurs.
+     */
+    private void sendSnapshot(SelectionKey key, Client client, Part part)
+        throws IOException {
+        byte[] header = ascii(
+            "HTTP/1.0 200 OK\r\n" +
+            "Cache-Control: no-cache, no-store\r\n" +
+            "Connection: close\r\n" +
+            "Content-Type: image/jpeg\r\n" +
+            "Content-Length: " + part.image.getData().length + "\r\n\r\n");
+        client.state = STATE_CLOSING;
+        client.part = part;
+        client.output = new ByteBuffer[] {
+            ByteBuffer.wrap(header),
+            ByteBuffer.wrap(part.image.getData())
+        };
+        sendCount++;
+        write(key, client);
+    }
+
+    /**
+     * Sends the response to a client and closes the connection.
+     * @param key the selection key of the connection
+     * @param client the client
+     * @param response the complete response
+     * @throws IOException if an I/O error occurs.
+     */
+    private void send(SelectionKey key, Client client, byte[] response)
+        throws IOException {
+        client.state = STATE_CLOSING;
+        client.output = new ByteBuffer[] { ByteBuffer.wrap(response) };
+        write(key, client);
+    }
+
+    /**
+     * Creates an error response.
+     * @param status the status code and reason
+     * @return The complete response.
+     */
+    private static byte[] errorResponse(String status) {
+        return ascii("HTTP/1.0 " + status + "\r\n" +
+            "Connection: close\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "Content-Length: " + (status.length() + 2) + "\r\n\r\n" +
+            status + "\r\n");
+    }
+
+    /**
+     * Encodes a string as ASCII.
+     * @param s the string
+     * @return The bytes.
+     */
+    private static byte[] ascii(String s) {
+        byte[] b = new byte[s.length()];
+        for (int i=0; i<b.length; i++) {
+            b[i] = (byte)s.charAt(i);
+        }
+        return b;
+    }
+}
@@ -12,9 +12,14 @@ package com.epiphan.vga2usb;
 import java.io.IOException;
 
 /**
- * Native interface to Epiphan frame grabbers.
+ * Native interface to Epiphan frame grabbers. Implemented by the JNI
+ * bindings to local and network frame grabbers, and by the pure Java
+ * grabbers such as {@link SyntheticGrabber}. Applications normally use
+ * {@link Grabber} and don't call these methods directly.
+ *
+ * @see Grabber#Grabber(NativeGrabber)
  */
-interface NativeGrabber {
+public interface NativeGrabber {
 
     /**
      * Calls down to the native code to really close the device.
@@ -22,6 +22,11 @@ class NetworkGrabber implements NativeGrabber {
     /** Native handle */
     private long handle;
 
+    /** Static initializer */
+    static {
+        System.loadLibrary(VGA2USB.LIBRARY);
+    }
+
     /**
      * Opens a network frame grabber.
      * @param address IP address of the device to open
@@ -8,12 +8,20 @@
 
 package com.epiphan.vga2usb;
 
+/* java.util */
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+
 /**
  * Typesafe enumeration of the pixel formats supported by Epiphan
  * frame grabbers.
  */
 public final class PixelFormat extends Enum.Int {
 
+    /* List of known formats */
+    private static List formats;
+
     /**
      * 4 bits per pixel (2 pixels per byte) indexed RGB format. The color
      * table is built according to the following algorithm:
@@ -126,6 +134,22 @@ public final class PixelFormat extends Enum.Int {
      */
     public static final PixelFormat BGR24 = new PixelFormat(0x0800,24,"BGR24");
 
+    /**
+     * Initializes the format list
+     */
+    static {
+        formats = new ArrayList(8);
+        formats.add(RGB4);
+        formats.add(RGB8);
+        formats.add(RGB16);
+        formats.add(RGB24);
+        formats.add(YUYV);
+        formats.add(UYVY);
+        formats.add(BGR16);
+        formats.add(BGR24);
+        Collections.sort(formats);
+    };
+
     /**
      * Number of bits per pixel.
      */
@@ -150,4 +174,16 @@ public final class PixelFormat extends Enum.Int {
     public int getBpp() {
         return bpp;
     }
+
+    /**
+     * Converts native pixel format value into a <tt>PixelFormat</tt> object.
+     * @param value integer value that identifies the pixel format
+     * @return corresponding <code>PixelFormat</code> object, or
+     *   <code>null</code> if the value is unknown
+     * @since 3.28.1
+     */
+    public static PixelFormat getPixelFormat(int value) {
+        int index = search(formats, value);
+        return (index >= 0) ? (PixelFormat)formats.get(index) : null;
+    }
 }
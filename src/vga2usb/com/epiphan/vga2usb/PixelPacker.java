@@ -0,0 +1,174 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/**
+ * Packs 0xRRGGBB pixels into the memory layout of each {@link PixelFormat}.
+ * The layouts are:
+ * <blockquote><pre>
+ * RGB4   two palette indices per byte, the left pixel in the high nibble
+ * RGB8   one palette index per byte
+ * RGB16  little-endian 16-bit word, RRRRRGGG GGGBBBBB
+ * BGR16  little-endian 16-bit word, BBBBBGGG GGGRRRRR
+ * RGB24  R, G, B
+ * BGR24  B, G, R
+ * YUYV   Y0, U, Y1, V (ITU-R BT.601, studio range)
+ * UYVY   U, Y0, V, Y1 (ITU-R BT.601, studio range)
+ * </pre></blockquote>
+ * The palette indices are computed as documented in {@link PixelFormat}.
+ */
+final class PixelPacker {
+
+    /**
+     * Constructor is disabled.
+     */
+    private PixelPacker() {
+        throw new Error("PixelPacker is a collection of static methods");
+    }
+
+    /**
+     * Gets the number of bytes occupied by a line of pixels. A line
+     * always starts on a byte boundary: RGB4 lines are rounded up to a
+     * whole byte, and YUYV and UYVY lines to a whole pixel pair. This is
+     * the line size of every frame, see {@link #getFrameSize}.
+     * @param format the pixel format
+     * @param width number of pixels in the line
+     * @return Number of bytes in the line.
+     */
+    static int getLineSize(PixelFormat format, int width) {
+        if (format == PixelFormat.YUYV || format == PixelFormat.UYVY) {
+            // Pixels come in pairs
+            return ((width + 1)/2)*4;
+        }
+        return (width*format.getBpp() + 7)/8;
+    }
+
+    /**
+     * Gets the number of bytes occupied by a frame.
+     * @param format the pixel format
+     * @param width frame width
+     * @param height frame height
+     * @return Number of bytes in the frame.
+     */
+    static int getFrameSize(PixelFormat format, int width, int height) {
+        return getLineSize(format, width)*height;
+    }
+
+    /**
+     * Packs a line of pixels. For the formats which pack two pixels into
+     * a single unit (RGB4, YUYV, UYVY) an odd trailing pixel is paired
+     * with itself.
+     * @param format the pixel format
+     * @param rgb pixels in 0xRRGGBB form
+     * @param width number of pixels
+     * @param dst receives the packed pixels
+     * @param off offset of the line in <code>dst</code>
+     */
+    static void pack(PixelFormat format, int[] rgb, int width, byte[] dst,
+                     int off) {
+        if (format == PixelFormat.RGB24 || format == PixelFormat.BGR24) {
+            boolean bgr = (format == PixelFormat.BGR24);
+            for (int i=0; i<width; i++) {
+                int p = rgb[i];
+                byte r = (byte)(p >> 16);
+                byte g = (byte)(p >> 8);
+                byte b = (byte)p;
+                dst[off++] = bgr ? b : r;
+                dst[off++] = g;
+                dst[off++] = bgr ? r : b;
+            }
+        } else if (format == PixelFormat.RGB16 ||
+                   format == PixelFormat.BGR16) {
+            boolean bgr = (format == PixelFormat.BGR16);
+            for (int i=0; i<width; i++) {
+                int p = rgb[i];
+                int r = (p >> 19) & 0x1f;
+                int g = (p >> 10) & 0x3f;
+                int b = (p >> 3) & 0x1f;
+                int w = bgr ? ((b << 11) | (g << 5) | r) :
+                              ((r << 11) | (g << 5) | b);
+                dst[off++] = (byte)w;
+                dst[off++] = (byte)(w >> 8);
+            }
+        } else if (format == PixelFormat.RGB8) {
+            for (int i=0; i<width; i++) {
+                dst[off++] = (byte)rgb8(rgb[i]);
+            }
+        } else if (format == PixelFormat.RGB4) {
+            for (int i=0; i<width; i+=2) {
+                int p0 = rgb4(rgb[i]);
+                int p1 = rgb4(rgb[(i+1 < width) ? (i+1) : i]);
+                dst[off++] = (byte)((p0 << 4) | p1);
+            }
+        } else if (format == PixelFormat.YUYV ||
+                   format == PixelFormat.UYVY) {
+            boolean uyvy = (format == PixelFormat.UYVY);
+            for (int i=0; i<width; i+=2) {
+                int p0 = rgb[i];
+                int p1 = rgb[(i+1 < width) ? (i+1) : i];
+                int r = (((p0 >> 16) & 0xff) + ((p1 >> 16) & 0xff)) >> 1;
+                int g = (((p0 >> 8) & 0xff) + ((p1 >> 8) & 0xff)) >> 1;
+                int b = ((p0 & 0xff) + (p1 & 0xff)) >> 1;
+                byte y0 = (byte)luma(p0);
+                byte y1 = (byte)luma(p1);
+                byte u = (byte)(((-38*r - 74*g + 112*b + 128) >> 8) + 128);
+                byte v = (byte)(((112*r - 94*g - 18*b + 128) >> 8) + 128);
+                if (uyvy) {
+                    dst[off++] = u;
+                    dst[off++] = y0;
+                    dst[off++] = v;
+                    dst[off++] = y1;
+                } else {
+                    dst[off++] = y0;
+                    dst[off++] = u;
+                    dst[off++] = y1;
+                    dst[off++] = v;
+                }
+            }
+        } else {
+            throw new IllegalArgumentException(String.valueOf(format));
+        }
+    }
+
+    /**
+     * Computes RGB4 palette index.
+     * @param p pixel in 0xRRGGBB form
+     * @return The palette index.
+     */
+    static int rgb4(int p) {
+        int r = (p >> 16) & 0xff;
+        int g = (p >> 8) & 0xff;
+        int b = p & 0xff;
+        return ((b >> 4) & 8) | ((g >> 5) & 6) | ((r >> 7) & 1);
+    }
+
+    /**
+     * Computes RGB8 palette index.
+     * @param p pixel in 0xRRGGBB form
+     * @return The palette index.
+     */
+    static int rgb8(int p) {
+        int r = (p >> 16) & 0xff;
+        int g = (p >> 8) & 0xff;
+        int b = p & 0xff;
+        return ((b >> 5) & 0x07) | ((g >> 2) & 0x38) | (r & 0xc0);
+    }
+
+    /**
+     * Computes studio range luma.
+     * @param p pixel in 0xRRGGBB form
+     * @return Luma in the [16,235] range.
+     */
+    private static int luma(int p) {
+        int r = (p >> 16) & 0xff;
+        int g = (p >> 8) & 0xff;
+        int b = p & 0xff;
+        return ((66*r + 129*g + 25*b + 128) >> 8) + 16;
+    }
+}
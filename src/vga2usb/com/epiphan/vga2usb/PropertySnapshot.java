@@ -0,0 +1,174 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.util */
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Values of the sampled device properties, as read at one moment. The
+ * grabber refreshes the sample in the background between grabs, so that
+ * reading the properties never waits for a grab in progress. The
+ * {@link #getTimestamp timestamp} tells how old the values are.
+ *
+ * @see Grabber#getPropertySnapshot
+ * @see Grabber#setSampledProperties
+ * @since 3.28.1
+ */
+public final class PropertySnapshot {
+
+    private long timestamp;
+    private PropertyKey[] keys;
+    private Map values;
+
+    /**
+     * Creates a <code>PropertySnapshot</code> object.
+     * @param timestamp when the properties were read
+     * @param keys the properties which have been read
+     * @param values maps the keys to the values: Boolean, Integer, String
+     *   or Size depending on the property type
+     */
+    PropertySnapshot(long timestamp, PropertyKey[] keys, Map values) {
+        this.timestamp = timestamp;
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Gets the time when the properties were read.
+     * @return Milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Gets the properties contained in this snapshot. The properties
+     * which could not be read are not included.
+     * @return The property keys.
+     */
+    public PropertyKey[] getKeys() {
+        return (PropertyKey[])keys.clone();
+    }
+
+    /**
+     * Tests whether the snapshot contains the specified property.
+     * @param key the property key
+     * @return <code>true</code> if the property has been read.
+     */
+    public boolean contains(PropertyKey key) {
+        return values.containsKey(key);
+    }
+
+    /**
+     * Gets the value of a boolean property.
+     * @param key the property key
+     * @return The property value.
+     * @throws IllegalArgumentException if the property is not a boolean
+     *   or is not in the snapshot.
+     */
+    public boolean getBooleanProperty(PropertyKey key) {
+        return ((Boolean)getValue(key, Boolean.class)).booleanValue();
+    }
+
+    /**
+     * Gets the value of an integer or enum property.
+     * @param key the property key
+     * @return The property value.
+     * @throws IllegalArgumentException if the property is not an integer
+     *   or is not in the snapshot.
+     */
+    public int getIntProperty(PropertyKey key) {
+        return ((Integer)getValue(key, Integer.class)).intValue();
+    }
+
+    /**
+     * Gets the value of a string property.
+     * @param key the property key
+     * @return The property value.
+     * @throws IllegalArgumentException if the property is not a string
+     *   or is not in the snapshot.
+     */
+    public String getStringProperty(PropertyKey key) {
+        return (String)getValue(key, String.class);
+    }
+
+    /**
+     * Gets the value of a size property.
+     * @param key the property key
+     * @return The property value.
+     * @throws IllegalArgumentException if the property is not a size
+     *   or is not in the snapshot.
+     */
+    public Size getSizeProperty(PropertyKey key) {
+        return (Size)getValue(key, Size.class);
+    }
+
+    /**
+     * Creates a copy of this snapshot without the specified property.
+     * @param key the property key
+     * @return The new snapshot.
+     */
+    PropertySnapshot remove(PropertyKey key) {
+        int n = 0;
+        for (int i=0; i<keys.length; i++) {
+            if (keys[i] != key) n++;
+        }
+        PropertyKey[] newKeys = new PropertyKey[n];
+        n = 0;
+        for (int i=0; i<keys.length; i++) {
+            if (keys[i] != key) newKeys[n++] = keys[i];
+        }
+        Map newValues = new HashMap(values);
+        newValues.remove(key);
+        return new PropertySnapshot(timestamp, newKeys, newValues);
+    }
+
+    /**
+     * Gets the value of a property.
+     * @param key the property key
+     * @return The property value, <code>null</code> if it's not in the
+     *   snapshot.
+     */
+    Object getValue(PropertyKey key) {
+        return values.get(key);
+    }
+
+    /**
+     * Gets the value of a property of the specified type.
+     * @param key the property key
+     * @param type the expected class of the value
+     * @return The property value, <code>null</code> only for a string.
+     * @throws IllegalArgumentException if the property has a different
+     *   type or is not in the snapshot.
+     */
+    private Object getValue(PropertyKey key, Class type) {
+        Object value = values.get(key);
+        if (type.isInstance(value) ||
+            (value == null && type == String.class &&
+             values.containsKey(key))) {
+            return value;
+        }
+        throw new IllegalArgumentException(String.valueOf(key));
+    }
+
+    /**
+     * Returns a string representation of this object. This method
+     * is intended to be used only for debugging purposes, and the
+     * content and format of the returned string may vary between
+     * implementations. The returned string may be empty but may not
+     * be <code>null</code>.
+     *
+     * @return  A string representation of this object.
+     */
+    public String toString() {
+        return values.toString();
+    }
+}
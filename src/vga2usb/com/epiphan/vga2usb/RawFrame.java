@@ -8,18 +8,47 @@
 
 package com.epiphan.vga2usb;
 
+/* java.io */
+import java.io.IOException;
+
+/* java.nio */
+import java.nio.ByteBuffer;
+
+/* java.nio.channels */
+import java.nio.channels.WritableByteChannel;
+
 /**
  * A single grabbed frame in arbitrary format supported by VGA2USB
  * hardware. Gives the client direct access to the pixel buffer. Unlike
  * the {@link Frame} class, it doesn't provide a convenient way to
  * transform pixels into an {@link java.awt.Image}. It's up to the client
  * to decide what to do with the raw pixels.
+ * <p>
+ * The pixels of a <i>direct</i> frame live outside of the Java heap, in
+ * a direct {@link ByteBuffer} (see {@link Grabber#grabDirectFrame}), or
+ * in a memory-mapped file (see {@link ReplayGrabber#frames}). They can
+ * be passed to a {@link java.nio.channels.FileChannel FileChannel},
+ * {@link java.nio.channels.SocketChannel SocketChannel} or native encoder
+ * through {@link #getByteBuffer} or {@link #writeTo} without copying them
+ * into a Java array, and large frames don't end up as huge objects in the
+ * heap. {@link FrameRecorder}, {@link RawVideoWriter},
+ * {@link SnapshotWriter} and {@link JpegEncoder} read the pixels from the
+ * buffer.
  *
  * @see Frame
  * @see Grabber
  */
 public final class RawFrame extends BasicFrame {
 
+    /** Off-heap pixels, <code>null</code> for a heap frame */
+    private ByteBuffer buffer;
+
+    /** Whether the pixel array holds a copy of the off-heap pixels */
+    private boolean mirrored;
+
+    /** Whether the frame has been handed out to several holders */
+    private volatile boolean shared;
+
     /**
      * Creates a new <code>RawFrame</code>.
      * @param width width of the frame
@@ -32,6 +61,20 @@ public final class RawFrame extends BasicFrame {
         super(width, height, format, pix, len);
     }
 
+    /**
+     * Creates a new direct <code>RawFrame</code>.
+     * @param width width of the frame
+     * @param height height of the frame
+     * @param format pixel format
+     * @param buf the buffer that holds the pixels from position zero
+     * @param len length of the valid pixels
+     */
+    RawFrame(int width, int height, PixelFormat format, ByteBuffer buf,
+             int len) {
+        super(width, height, format, null, len);
+        buffer = buf;
+    }
+
     /**
      * Get the pixel format.
      * @return The pixel format.
@@ -46,14 +89,146 @@ public final class RawFrame extends BasicFrame {
      * conditions. The number of bytes actually containing the pixels is
      * obtained by calling {@link #getPixelBufferLength} method. The rest
      * of the array should be ignored.
+     * <p>
+     * For a {@link #isDirect direct} frame, the pixels are copied into a
+     * heap array the first time this method is invoked. The consumers
+     * which can work with a {@link ByteBuffer} should use
+     * {@link #getByteBuffer} instead.
      *
      * @return Reference to the pixel buffer.
      * @see #getPixelBufferLength
      */
     public byte[] getPixelBuffer() {
+        if (buffer != null) {
+            synchronized (this) {
+                if (!mirrored) {
+                    if (pixels == null || pixels.length < length) {
+                        pixels = new byte[buffer.capacity()];
+                    }
+                    ByteBuffer src = buffer.duplicate();
+                    src.clear();
+                    src.get(pixels, 0, length);
+                    mirrored = true;
+                }
+            }
+        }
         return pixels;
     }
 
+    /**
+     * Tests whether the pixels live outside of the Java heap.
+     * @return <code>true</code> if this is a direct frame.
+     * @since 3.28.1
+     */
+    public boolean isDirect() {
+        return buffer != null;
+    }
+
+    /**
+     * Gives the caller access to the pixels as a {@link ByteBuffer}. For a
+     * {@link #isDirect direct} frame, it's a view of the off-heap memory;
+     * otherwise it wraps the pixel array. The pixels occupy the buffer
+     * from position zero up to its limit. Each call returns a new buffer
+     * object sharing the pixels, so that the callers may change its
+     * position and limit even if the frame is shared between threads.
+     * The buffer is read-only if the frame has been shared by a
+     * {@link FrameBroadcaster} or a {@link FramePublisher}.
+     *
+     * @return The pixels.
+     * @since 3.28.1
+     */
+    public ByteBuffer getByteBuffer() {
+        ByteBuffer buf;
+        if (buffer != null) {
+            buf = buffer.duplicate();
+            buf.clear();
+        } else {
+            buf = ByteBuffer.wrap(pixels);
+        }
+        if (shared) {
+            buf = buf.asReadOnlyBuffer();
+        }
+        buf.limit(length);
+        return buf;
+    }
+
+    /**
+     * Writes the pixels into the channel.
+     *
+     * @param channel the channel to write the pixels into
+     * @return Number of bytes written.
+     * @throws IOException if an I/O error occurs.
+     * @since 3.28.1
+     */
+    public int writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer buf = getByteBuffer();
+        int total = 0;
+        while (buf.hasRemaining()) {
+            total += channel.write(buf);
+        }
+        return total;
+    }
+
+    /**
+     * Copies the pixels from a heap array into the off-heap buffer of
+     * a direct frame.
+     * @param w width of the frame
+     * @param h height of the frame
+     * @param pix the pixels
+     * @param len length of the valid pixels
+     */
+    void put(int w, int h, byte[] pix, int len) {
+        ByteBuffer dst = buffer.duplicate();
+        dst.clear();
+        dst.put(pix, 0, len);
+        set(w, h, len);
+        mirrored = false;
+    }
+
+    /**
+     * Tests whether the pixels can't be overwritten, which is the case
+     * for the frames of a recording.
+     * @return <code>true</code> if the off-heap buffer is read-only.
+     */
+    boolean isReadOnly() {
+        return buffer != null && buffer.isReadOnly();
+    }
+
+    /**
+     * Marks the frame as shared between several holders, or as owned by
+     * a single one again.
+     * @param shared <code>true</code> if the pixels must not be modified
+     */
+    void setShared(boolean shared) {
+        this.shared = shared;
+    }
+
+    /**
+     * Gets the pixels as a heap array, copying them for a direct frame.
+     * @return The pixel array.
+     */
+    byte[] getPixels() {
+        return getPixelBuffer();
+    }
+
+    /**
+     * Returns the size of the pixel buffer.
+     * @return The size of the pixel buffer.
+     */
+    int capacity() {
+        return (buffer != null) ? buffer.capacity() : pixels.length;
+    }
+
+    /**
+     * Clears the state derived from the pixels. Invoked when the frame
+     * is returned to the pool.
+     */
+    void reset() {
+        super.reset();
+        mirrored = false;
+        shared = false;
+    }
+
     /**
      * Returns number of bytes in the pixel buffer that are actually occupied
      * by pixel data. The rest of the buffer should be ignored.
@@ -0,0 +1,661 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/* java.nio */
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streams the frames to an external encoder, typically through a named
+ * pipe. Two stream formats are supported:
+ * <ul>
+ * <li>YUV4MPEG2, with planar 4:2:2 pixels (<code>C422</code>). The YUV
+ * formats are repacked into planes, the others are converted.</li>
+ * <li>Raw video without any headers, with the pixels in the format they
+ * were grabbed in, see {@link #getPixelFormatName}.</li>
+ * </ul>
+ * The writer is a {@link FrameSink}: the frames are queued and written by
+ * a separate I/O thread, which takes all the frames that have piled up
+ * while it was busy and writes them with a single gathering write. Raw
+ * video is written straight from the frame buffers. The caller never
+ * waits for the encoder; if the encoder can't keep up, new frames are
+ * dropped (see {@link #getDropCount}).
+ * <p>
+ * A change of the frame size, pixel format or refresh rate starts a new
+ * segment. A YUV4MPEG2 segment begins with its own stream header, and
+ * most encoders expect each segment in a file or pipe of its own:
+ * <ul>
+ * <li>A writer created for a {@link File} writes each segment into its
+ * own file, see {@link #getSegmentFile}. If the file is a named pipe,
+ * the pipes for the following segments should be created in advance
+ * for the encoder to read from.</li>
+ * <li>A writer created for a stream or channel has a single output that
+ * can hold one segment only. When the format changes, the writer stops
+ * with an {@link IOException} (see {@link #getError}) after writing the
+ * frames of the first segment, rather than sending a stream the encoder
+ * would misread. Subclasses may override {@link #openSegment
+ * openSegment} to provide a new output for each segment instead.</li>
+ * </ul>
+ * Typical usage:
+ * <blockquote><pre>
+ * // ffmpeg -f yuv4mpegpipe -i /tmp/video.fifo ...
+ * RawVideoWriter writer = new RawVideoWriter(new File("/tmp/video.fifo"),
+ *     true);
+ * CaptureEngine engine = new CaptureEngine(grabber, PixelFormat.YUYV,
+ *     false, writer);
+ * engine.start();
+ * ...
+ * engine.stop();
+ * writer.close();
+ * </pre></blockquote>
+ *
+ * @since 3.28.1
+ */
+public class RawVideoWriter implements FrameSink {
+
+    /** Default number of frames queued for writing */
+    public static final int DEFAULT_QUEUE_DEPTH = 8;
+
+    /** How often the I/O thread checks whether it should exit */
+    private static final long POLL_INTERVAL = 100;
+
+    /** Refresh rate changes smaller than this don't start a new segment */
+    private static final float RATE_TOLERANCE = 0.5f;
+
+    /** Frame rate written into the header if it's not known */
+    private static final float DEFAULT_FRAME_RATE = 30;
+
+    /** Precedes each YUV4MPEG2 frame */
+    private static final byte[] FRAME_HEADER = {
+        'F', 'R', 'A', 'M', 'E', '\n'
+    };
+
+    /** The file to open, null if the output was given */
+    private File file;
+
+    /** The output given to the constructor or opened from the file */
+    private WritableByteChannel output;
+
+    /** The current segment, null if none */
+    private WritableByteChannel channel;
+
+    /** Whether to write YUV4MPEG2 */
+    private boolean y4m;
+
+    /** Frame rate for the YUV4MPEG2 header, zero to use the refresh rate */
+    private volatile float frameRate;
+
+    /** Frames waiting to be written */
+    private FrameQueue queue;
+
+    /** The I/O thread */
+    private Thread thread;
+
+    /** Set when the writer is being closed */
+    private volatile boolean closed;
+
+    /** Number of segments started */
+    private volatile int segmentCount;
+
+    /** Frame width of the current segment */
+    private int segmentWidth;
+
+    /** Frame height of the current segment */
+    private int segmentHeight;
+
+    /** Pixel format of the current segment */
+    private PixelFormat segmentFormat;
+
+    /** Refresh rate of the current segment */
+    private float segmentRate;
+
+    /** Frames being written */
+    private RawFrame[] batch;
+
+    /** Number of frames in the batch */
+    private int batchSize;
+
+    /** Buffers being written */
+    private ByteBuffer[] buffers = new ByteBuffer[16];
+
+    /** Number of buffers being written */
+    private int bufferCount;
+
+    /** Planar pixels for each frame of the batch */
+    private byte[][] planes;
+
+    /** Holds a line of 0xRRGGBB pixels during the conversion */
+    private int[] rgbLine;
+
+    /** Holds a line of YUYV pixels during the conversion */
+    private byte[] yuvLine;
+
+    /** Holds a line of a direct frame during the conversion */
+    private byte[] srcLine;
+
+    /** Number of frames rejected after the writer was closed or failed */
+    private volatile long rejectCount;
+
+    /** Number of written frames */
+    private volatile long frameCount;
+
+    /** Number of written bytes */
+    private volatile long byteCount;
+
+    /** The error which has stopped the writer */
+    private volatile IOException error;
+
+    /**
+     * Creates a writer which writes to a file or a named pipe. The file
+     * is opened by the I/O thread when the first frame arrives, so that
+     * the caller doesn't block if nobody is reading from the pipe yet.
+     * @param file the file or named pipe
+     * @param y4m <code>true</code> to write YUV4MPEG2, <code>false</code>
+     *   to write raw video
+     */
+    public RawVideoWriter(File file, boolean y4m) {
+        this(file, null, y4m, DEFAULT_QUEUE_DEPTH);
+        if (file == null) throw new NullPointerException("file");
+    }
+
+    /**
+     * Creates a writer which writes to a stream.
+     * @param out the output stream
+     * @param y4m <code>true</code> to write YUV4MPEG2, <code>false</code>
+     *   to write raw video
+     */
+    public RawVideoWriter(OutputStream out, boolean y4m) {
+        this(Channels.newChannel(out), y4m, DEFAULT_QUEUE_DEPTH);
+    }
+
+    /**
+     * Creates a writer which writes to a channel.
+     * @param channel the output channel, <code>null</code> if
+     *   {@link #openSegment openSegment} is overridden to provide it
+     * @param y4m <code>true</code> to write YUV4MPEG2, <code>false</code>
+     *   to write raw video
+     * @param queueDepth maximum number of frames waiting to be written
+     * @throws IllegalArgumentException if the queue depth is not positive.
+     */
+    public RawVideoWriter(WritableByteChannel channel, boolean y4m,
+                          int queueDepth) {
+        this(null, channel, y4m, queueDepth);
+    }
+
+    /**
+     * Creates a writer.
+     * @param file the file to open, <code>null</code> if none
+     * @param channel the output channel, <code>null</code> if none
+     * @param y4m <code>true</code> to write YUV4MPEG2
+     * @param queueDepth maximum number of frames waiting to be written
+     */
+    private RawVideoWriter(File file, WritableByteChannel channel,
+                           boolean y4m, int queueDepth) {
+        this.file = file;
+        this.output = channel;
+        this.y4m = y4m;
+        this.queue = new FrameQueue(queueDepth, DropPolicy.DROP_NEWEST);
+        this.batch = new RawFrame[queueDepth + 1];
+        this.planes = new byte[batch.length][];
+        thread = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "RawVideoWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the name of the pixel format, as known to FFmpeg, in which the
+     * frames are written as raw video.
+     * @param format the pixel format of the frames
+     * @return The FFmpeg pixel format name, <code>null</code> if there's
+     *   no equivalent.
+     */
+    public static String getPixelFormatName(PixelFormat format) {
+        if (format == PixelFormat.RGB24) {
+            return "rgb24";
+        } else if (format == PixelFormat.BGR24) {
+            return "bgr24";
+        } else if (format == PixelFormat.RGB16) {
+            return "rgb565le";
+        } else if (format == PixelFormat.BGR16) {
+            return "bgr565le";
+        } else if (format == PixelFormat.YUYV) {
+            return "yuyv422";
+        } else if (format == PixelFormat.UYVY) {
+            return "uyvy422";
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Sets the frame rate written into the YUV4MPEG2 headers. Takes effect
+     * with the next segment.
+     * @param fps frames per second, zero to use the refresh rate of the
+     *   video mode
+     */
+    public void setFrameRate(float fps) {
+        frameRate = Math.max(fps, 0);
+    }
+
+    /**
+     * Gets the number of segments started so far.
+     * @return Number of segments.
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Gets the number of frames written so far.
+     * @return Number of written frames.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the number of bytes written so far.
+     * @return Number of written bytes.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Gets the number of frames dropped because the output couldn't keep
+     * up, or because the writer has been closed or has failed.
+     * @return Number of dropped frames.
+     */
+    public long getDropCount() {
+        return queue.getDropCount() + rejectCount;
+    }
+
+    /**
+     * Gets the error which has stopped the writer.
+     * @return The error, <code>null</code> if none.
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * Queues the frame for writing. Never blocks. Must only be invoked by
+     * one thread at a time.
+     * @param frame the frame to write
+     */
+    public void putFrame(RawFrame frame) {
+        if (closed || error != null) {
+            rejectCount++;
+            frame.release();
+        } else {
+            queue.putFrame(frame);
+        }
+    }
+
+    /**
+     * Writes the queued frames and closes the output.
+     * @throws IOException if writing has failed.
+     */
+    public void close() throws IOException {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            thread = null;
+            closed = true;
+        }
+        if (t != null) {
+            try {
+                t.join();
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            queue.clear();
+            try {
+                closeSegment();
+                if (output != null) {
+                    output.close();
+                }
+            } catch (IOException x) {
+                if (error == null) error = x;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Gets the file into which a segment is written. The first segment
+     * goes into the file passed to the constructor, the following ones
+     * into the files named after it with the segment number appended,
+     * e.g. <code>video.fifo</code>, <code>video.fifo.001</code>,
+     * <code>video.fifo.002</code> and so on.
+     * @param n the segment number, starting with zero
+     * @return The file, <code>null</code> if the writer doesn't write to
+     *   a file.
+     */
+    public File getSegmentFile(int n) {
+        if (file == null || n == 0) {
+            return file;
+        }
+        String suffix = Integer.toString(n);
+        while (suffix.length() < 3) suffix = "0" + suffix;
+        return new File(file.getPath() + "." + suffix);
+    }
+
+    /**
+     * Opens the output for a new segment. The default implementation
+     * opens the {@link #getSegmentFile segment file} if the writer was
+     * created for a file. Otherwise, it returns the output passed to the
+     * constructor for the first segment, and fails for the following
+     * ones. Subclasses may override this method to write each segment
+     * into an output of their own choosing. The output of each segment
+     * other than the one passed to the constructor is closed at the end
+     * of the segment. Invoked on the I/O thread.
+     * @param n the segment number, starting with zero
+     * @param frame the first frame of the segment
+     * @return The output.
+     * @throws IOException if the output can't be opened.
+     */
+    protected WritableByteChannel openSegment(int n, RawFrame frame)
+    throws IOException {
+        if (file != null) {
+            return new FileOutputStream(getSegmentFile(n)).getChannel();
+        } else if (output == null) {
+            throw new IOException("No output");
+        } else if (n > 0) {
+            throw new IOException("Video format changed to " +
+                frame.getWidth() + "x" + frame.getHeight() + " " +
+                frame.getPixelFormat() + ", can't start segment " + n +
+                " in a single stream");
+        }
+        return output;
+    }
+
+    /**
+     * The I/O loop. Invoked on the I/O thread.
+     */
+    private void writeLoop() {
+        try {
+            while (true) {
+                RawFrame frame = queue.poll(POLL_INTERVAL);
+                if (frame == null) {
+                    if (closed && queue.getDepth() == 0) break;
+                    continue;
+                }
+
+                // Write everything that's ready at once
+                do {
+                    batch[batchSize++] = frame;
+                    add(frame);
+                } while (batchSize < batch.length &&
+                         (frame = queue.poll()) != null);
+                flush();
+            }
+        } catch (InterruptedException x) {
+            // Exit
+        } catch (IOException x) {
+            error = x;
+            releaseBatch();
+            queue.clear();
+        }
+    }
+
+    /**
+     * Adds a frame to the batch, starting a new segment if necessary.
+     * @param frame the frame, already in the batch
+     * @throws IOException if an I/O error occurs.
+     */
+    private void add(RawFrame frame) throws IOException {
+        VideoMode vm = frame.getVideoMode();
+        float rate = (vm == null) ? 0 : vm.getRefreshRate();
+        if (channel == null ||
+            frame.getWidth() != segmentWidth ||
+            frame.getHeight() != segmentHeight ||
+            frame.getPixelFormat() != segmentFormat ||
+            Math.abs(rate - segmentRate) > RATE_TOLERANCE) {
+
+            // Finish the previous segment without this frame. The frame
+            // goes back into the batch even if that fails, so that it's
+            // released with the batch.
+            batchSize--;
+            try {
+                flush();
+            } finally {
+                batch[batchSize++] = frame;
+            }
+            closeSegment();
+            channel = openSegment(segmentCount, frame);
+            segmentCount++;
+            segmentWidth = frame.getWidth();
+            segmentHeight = frame.getHeight();
+            segmentFormat = frame.getPixelFormat();
+            segmentRate = rate;
+            if (y4m) {
+                addBuffer(ByteBuffer.wrap(createStreamHeader(frame, rate)));
+            }
+        }
+
+        int w = frame.getWidth();
+        int h = frame.getHeight();
+        if (y4m) {
+            int cw = (w + 1)/2;
+            int size = (w + 2*cw)*h;
+            int slot = batchSize - 1;
+            if (planes[slot] == null || planes[slot].length < size) {
+                planes[slot] = new byte[size];
+            }
+            toPlanar(frame, planes[slot]);
+            addBuffer(ByteBuffer.wrap(FRAME_HEADER));
+            addBuffer(ByteBuffer.wrap(planes[slot], 0, size));
+        } else {
+            // Gathered straight from the pixels, off-heap or not
+            ByteBuffer pixels = frame.getByteBuffer();
+            int lineSize = PixelPacker.getLineSize(frame.getPixelFormat(), w);
+            if (frame.isBottomUp()) {
+                for (int y=h-1; y>=0; y--) {
+                    ByteBuffer line = pixels.duplicate();
+                    line.limit((y+1)*lineSize);
+                    line.position(y*lineSize);
+                    addBuffer(line);
+                }
+            } else {
+                pixels.limit(lineSize*h);
+                addBuffer(pixels);
+            }
+        }
+    }
+
+    /**
+     * Writes the batch and releases its frames.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void flush() throws IOException {
+        try {
+            if (bufferCount > 0) {
+                long bytes = 0;
+                for (int i=0; i<bufferCount; i++) {
+                    bytes += buffers[i].remaining();
+                }
+                if (channel instanceof GatheringByteChannel) {
+                    GatheringByteChannel gc = (GatheringByteChannel)channel;
+                    int first = 0;
+                    while (first < bufferCount) {
+                        gc.write(buffers, first, bufferCount - first);
+                        while (first < bufferCount &&
+                               !buffers[first].hasRemaining()) {
+                            first++;
+                        }
+                    }
+                } else {
+                    for (int i=0; i<bufferCount; i++) {
+                        while (buffers[i].hasRemaining()) {
+                            channel.write(buffers[i]);
+                        }
+                    }
+                }
+                frameCount += batchSize;
+                byteCount += bytes;
+            }
+        } finally {
+            for (int i=0; i<bufferCount; i++) {
+                buffers[i] = null;
+            }
+            bufferCount = 0;
+            releaseBatch();
+        }
+    }
+
+    /**
+     * Releases the frames of the batch.
+     */
+    private void releaseBatch() {
+        for (int i=0; i<batchSize; i++) {
+            batch[i].release();
+            batch[i] = null;
+        }
+        batchSize = 0;
+    }
+
+    /**
+     * Adds a buffer to the batch.
+     * @param buffer the buffer to write
+     */
+    private void addBuffer(ByteBuffer buffer) {
+        if (bufferCount == buffers.length) {
+            ByteBuffer[] newBuffers = new ByteBuffer[2*buffers.length];
+            System.arraycopy(buffers, 0, newBuffers, 0, bufferCount);
+            buffers = newBuffers;
+        }
+        buffers[bufferCount++] = buffer;
+    }
+
+    /**
+     * Closes the current segment, unless it's the output shared by all
+     * segments.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void closeSegment() throws IOException {
+        WritableByteChannel c = channel;
+        channel = null;
+        if (c != null && c != output) {
+            c.close();
+        }
+    }
+
+    /**
+     * Creates the YUV4MPEG2 stream header.
+     * @param frame the first frame of the segment
+     * @param rate the refresh rate, zero if unknown
+     * @return The header.
+     */
+    private byte[] createStreamHeader(RawFrame frame, float rate) {
+        float fps = frameRate;
+        if (fps <= 0) fps = rate;
+        if (fps <= 0) fps = DEFAULT_FRAME_RATE;
+        String header = "YUV4MPEG2 W" + frame.getWidth() +
+            " H" + frame.getHeight() +
+            " F" + Math.round(fps*1000) + ":1000 Ip A1:1 C422\n";
+        byte[] b = new byte[header.length()];
+        for (int i=0; i<b.length; i++) {
+            b[i] = (byte)header.charAt(i);
+        }
+        return b;
+    }
+
+    /**
+     * Repacks the frame into planar 4:2:2 in top-down order: the Y plane
+     * followed by the U and V planes of half width.
+     * @param frame the frame
+     * @param dst receives the planes
+     */
+    private void toPlanar(RawFrame frame, byte[] dst) {
+        int w = frame.getWidth();
+        int h = frame.getHeight();
+        int cw = (w + 1)/2;
+        int uPlane = w*h;
+        int vPlane = uPlane + cw*h;
+        PixelFormat format = frame.getPixelFormat();
+        int lineSize = PixelPacker.getLineSize(format, w);
+        // A direct frame is staged through the heap one line at a time
+        ByteBuffer direct = frame.isDirect() ? frame.getByteBuffer() : null;
+        byte[] src = null;
+        if (direct == null) {
+            src = frame.getPixelBuffer();
+        } else {
+            if (srcLine == null || srcLine.length < lineSize) {
+                srcLine = new byte[lineSize];
+            }
+            src = srcLine;
+        }
+        int luma = 0;
+        if (format == PixelFormat.UYVY) {
+            luma = 1;
+        } else if (format != PixelFormat.YUYV) {
+            if (rgbLine == null || rgbLine.length < w) {
+                rgbLine = new int[w];
+                yuvLine = new byte[cw*4];
+            }
+        }
+        for (int y=0; y<h; y++) {
+            int line = frame.isBottomUp() ? (h-1-y) : y;
+            int s = line*lineSize;
+            if (direct != null) {
+                direct.position(s);
+                direct.get(src, 0, lineSize);
+                s = 0;
+            }
+            byte[] yuv = src;
+            if (format != PixelFormat.YUYV && format != PixelFormat.UYVY) {
+                ColorConverter.toInt(format, src, s, w, rgbLine, 0);
+                PixelPacker.pack(PixelFormat.YUYV, rgbLine, w, yuvLine, 0);
+                yuv = yuvLine;
+                s = 0;
+            }
+            int d = y*w;
+            int c = y*cw;
+            int chroma = 1 - luma;
+            for (int x=0; x<w; x+=2, s+=4, c++) {
+                dst[d++] = yuv[s+luma];
+                if (x+1 < w) dst[d++] = yuv[s+luma+2];
+                dst[uPlane+c] = yuv[s+chroma];
+                dst[vPlane+c] = yuv[s+chroma+2];
+            }
+        }
+    }
+
+    /**
+     * Returns a string representation of this object. This method
+     * is intended to be used only for debugging purposes, and the
+     * content and format of the returned string may vary between
+     * implementations. The returned string may be empty but may not
+     * be <code>null</code>.
+     *
+     * @return  A string representation of this object.
+     */
+    public String toString() {
+        return "RawVideoWriter[" + (y4m ? "y4m" : "raw") + ", " +
+            frameCount + " frames, " + segmentCount + " segments]";
+    }
+}
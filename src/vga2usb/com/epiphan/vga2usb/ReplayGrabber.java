@@ -0,0 +1,686 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+
+/* java.nio */
+import java.nio.ByteBuffer;
+
+/* java.nio.channels */
+import java.nio.channels.FileChannel;
+
+/* java.util */
+import java.util.Spliterator;
+
+/* java.util.function */
+import java.util.function.Consumer;
+
+/* java.util.stream */
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Pure Java frame grabber which plays back a recording made by
+ * {@link FrameRecorder}. Doesn't require the native library or any
+ * hardware, which makes it suitable for benchmarking and regression
+ * testing the code downstream of {@link Grabber} against real captured
+ * content.
+ * <p>
+ * The frames are served in the recording order, either at the pace at
+ * which they were recorded or as fast as the caller grabs them, and
+ * optionally in a loop. When the end of a non-looped recording is
+ * reached, the grabber reports that there's no signal. The segments are
+ * memory-mapped; each frame is copied straight from the mapping into the
+ * buffer provided by the caller. Frames can only be grabbed in the pixel
+ * format in which they were recorded, although the line order can be
+ * different.
+ * <p>
+ * Typical usage:
+ * <blockquote><pre>
+ * ReplayGrabber device = new ReplayGrabber(new File("capture"));
+ * device.setRealTime(false);
+ * device.setLoop(true);
+ * Grabber grabber = new Grabber(device);
+ * </pre></blockquote>
+ * For batch analysis, the whole recording is also available as a
+ * {@link #frames stream} of frames, which can be processed in parallel.
+ *
+ * @see FrameRecorder
+ * @see Grabber#Grabber(NativeGrabber)
+ * @since 3.28.1
+ */
+public class ReplayGrabber implements NativeGrabber {
+
+    /** The recording */
+    private File base;
+
+    /** The index */
+    private CaptureIndex index;
+
+    /** Segment mappings, created on demand */
+    private ByteBuffer[] segments;
+
+    /** Index of the next frame to be served */
+    private int position;
+
+    /** Whether the frames are paced as recorded */
+    private boolean realTime = true;
+
+    /** Whether the playback restarts at the end of the recording */
+    private boolean loop;
+
+    /** Timestamp of the frame at which the pacing started, -1 if none */
+    private long paceTimestamp = -1;
+
+    /** When the pacing started, System.nanoTime() */
+    private long paceTime;
+
+    /** Number of frames served */
+    private long grabCount;
+
+    /** Whether the grabber has been closed */
+    private boolean closed;
+
+    /**
+     * Opens a recording for playback.
+     * @param base the recording, as passed to {@link FrameRecorder}
+     * @throws IOException if the recording can't be opened or is empty.
+     */
+    public ReplayGrabber(File base) throws IOException {
+        this.base = base;
+        index = CaptureIndex.read(base);
+        if (index.size() == 0) {
+            throw new IOException("Empty recording: " + base);
+        }
+        int n = index.getSegment(index.size()-1) + 1;
+        segments = new ByteBuffer[n];
+    }
+
+    /**
+     * Gets the index of the recording. Can be used to find the frames to
+     * {@link #seek seek} to.
+     * @return The index.
+     */
+    public CaptureIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Selects whether the frames are served at the pace at which they
+     * were recorded (the default), or as fast as they are grabbed.
+     * @param realTime <code>true</code> to pace the frames as recorded
+     */
+    public synchronized void setRealTime(boolean realTime) {
+        this.realTime = realTime;
+        paceTimestamp = -1;
+    }
+
+    /**
+     * Selects whether the playback restarts from the first frame when the
+     * end of the recording is reached. Off by default.
+     * @param loop <code>true</code> to play the recording in a loop
+     */
+    public synchronized void setLoop(boolean loop) {
+        this.loop = loop;
+    }
+
+    /**
+     * Selects the next frame to be served.
+     * @param i entry index in the {@link #getIndex index}
+     * @throws IndexOutOfBoundsException if there's no such entry.
+     */
+    public synchronized void seek(int i) {
+        if (i < 0 || i >= index.size()) {
+            throw new IndexOutOfBoundsException(String.valueOf(i));
+        }
+        position = i;
+        paceTimestamp = -1;
+    }
+
+    /**
+     * Gets the index of the next frame to be served.
+     * @return The entry index, equal to the index size at the end of
+     *   a non-looped recording.
+     */
+    public synchronized int getPosition() {
+        return position;
+    }
+
+    /**
+     * Gets the number of frames served so far.
+     * @return The number of frames.
+     */
+    public synchronized long getGrabCount() {
+        return grabCount;
+    }
+
+    /**
+     * Gets all the frames of the recording as a stream, in the recording
+     * order. The stream is independent of the playback position and
+     * pacing. The frames are {@link RawFrame#isDirect direct}
+     * {@link RawFrame}s whose read-only pixel buffers are slices of the
+     * mapped segments, so nothing is copied until the pixels are read;
+     * the frames don't have to be released.
+     * The stream is ordered and sized, and splits by index ranges, so
+     * that <code>frames().parallel()</code> spreads the frames over all
+     * processors. A corrupted record is reported by
+     * {@link UncheckedIOException} when the stream reaches it.
+     * <p>
+     * The frames must not be used after the grabber is closed.
+     *
+     * @return The stream of {@link RawFrame}s.
+     * @throws IOException if the grabber has been closed, or a segment
+     *   can't be mapped.
+     * @since 3.28.1
+     */
+    public Stream<RawFrame> frames() throws IOException {
+        int n;
+        int[] segment;
+        long[] offset;
+        ByteBuffer[] mapped;
+        synchronized (this) {
+            checkOpen();
+            n = index.size();
+            segment = new int[n];
+            offset = new long[n];
+            for (int i=0; i<n; i++) {
+                segment[i] = index.getSegment(i);
+                offset[i] = index.getOffset(i);
+                getSegment(segment[i]);
+            }
+            mapped = (ByteBuffer[])segments.clone();
+        }
+        return StreamSupport.stream(new RecordingSpliterator(mapped,
+            segment, offset, 0, n), false);
+    }
+
+    /**
+     * Closes the recording.
+     */
+    public synchronized void close() {
+        closed = true;
+        segments = null;
+    }
+
+    /**
+     * Gets serial number string for this device.
+     * @return The name of the recording
+     * @throws IOException if the device has been closed
+     */
+    public synchronized String getSN() throws IOException {
+        checkOpen();
+        return base.getName();
+    }
+
+    /**
+     * Reports the video mode of the next frame.
+     * @param vm receives video mode description
+     * @throws IOException if the device has been closed or the recording
+     *   is corrupted
+     */
+    public synchronized void detectVideoMode(int[] vm) throws IOException {
+        checkOpen();
+        ByteBuffer record = next();
+        if (record != null) {
+            int offset = record.position();
+            vm[0] = record.getInt(offset + 24);
+            vm[1] = record.getInt(offset + 28);
+            vm[2] = record.getInt(offset + 32);
+        } else {
+            vm[0] = vm[1] = vm[2] = 0;
+        }
+    }
+
+    /**
+     * Copies the next frame into the provided buffer.
+     * @param format desired pixel format
+     * @param vm receives video mode description
+     * @param buf receives the pixels
+     * @return Number of bytes written into the buffer, zero if the end of
+     *   the recording has been reached or the buffer is too small.
+     * @throws IOException if the device has been closed, the recording is
+     *   corrupted, or the frame was recorded in a different pixel format.
+     */
+    public synchronized int grabFrame(int format, int[] vm, byte[] buf)
+        throws IOException {
+        checkOpen();
+        ByteBuffer record = next();
+        if (record == null) {
+            vm[0] = vm[1] = vm[2] = 0;
+            return 0;
+        }
+
+        int offset = record.position();
+        long timestamp = record.getLong(offset + 16);
+        int width = record.getInt(offset + 24);
+        int height = record.getInt(offset + 28);
+        int recorded = record.getInt(offset + 36);
+        int length = record.getInt(offset + 40);
+        vm[0] = width;
+        vm[1] = height;
+        vm[2] = record.getInt(offset + 32);
+
+        int flag = Grabber.GRABFRAME_BOTTOM_UP_FLAG;
+        if ((recorded & ~flag) != (format & ~flag)) {
+            throw new IOException("Recorded in " +
+                PixelFormat.getPixelFormat(recorded & ~flag) +
+                ", requested " + PixelFormat.getPixelFormat(format & ~flag));
+        }
+        if (buf.length < length) {
+            return 0;
+        }
+
+        pace(timestamp);
+        record.position(offset + CaptureFile.FRAME_HEADER_SIZE);
+        if ((recorded & flag) == (format & flag) || height <= 1) {
+            record.get(buf, 0, length);
+        } else {
+            // Same pixels, opposite line order
+            int lineSize = length/height;
+            for (int y=height-1; y>=0; y--) {
+                record.get(buf, y*lineSize, lineSize);
+            }
+        }
+        position++;
+        grabCount++;
+        return length;
+    }
+
+    /**
+     * Locates the record of the next frame, wrapping around at the end of
+     * the recording if looping.
+     * @return A buffer positioned at the frame record, <code>null</code>
+     *   at the end of the recording.
+     * @throws IOException if the recording is corrupted
+     */
+    private ByteBuffer next() throws IOException {
+        if (position >= index.size()) {
+            if (!loop) {
+                return null;
+            }
+            position = 0;
+            paceTimestamp = -1;
+        }
+        int n = index.getSegment(position);
+        return getRecord(getSegment(n), index.getOffset(position), n);
+    }
+
+    /**
+     * Locates a frame record and checks that it fits into the segment.
+     * @param segment the segment mapping
+     * @param offset offset of the record
+     * @param n the segment number
+     * @return A buffer positioned at the frame record.
+     * @throws IOException if the recording is corrupted
+     */
+    private static ByteBuffer getRecord(ByteBuffer segment, long offset,
+                                        int n) throws IOException {
+        if (offset < CaptureFile.SEGMENT_HEADER_SIZE ||
+            offset + CaptureFile.FRAME_HEADER_SIZE > segment.limit() ||
+            segment.getInt((int)offset) != CaptureFile.FRAME_MAGIC) {
+            throw new IOException("Corrupted segment " + n);
+        }
+        int length = segment.getInt((int)offset + 40);
+        if (length < 0 || offset + CaptureFile.FRAME_HEADER_SIZE + length >
+            segment.limit()) {
+            throw new IOException("Corrupted segment " + n);
+        }
+        ByteBuffer record = segment.duplicate();
+        record.position((int)offset);
+        return record;
+    }
+
+    /**
+     * Maps the segment if it hasn't been mapped yet.
+     * @param n the segment number
+     * @return The mapping, limited by the committed end of the segment.
+     * @throws IOException if the segment can't be mapped
+     */
+    private ByteBuffer getSegment(int n) throws IOException {
+        ByteBuffer segment = segments[n];
+        if (segment == null) {
+            File file = CaptureFile.getSegmentFile(base, n);
+            RandomAccessFile f = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = f.getChannel();
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            } finally {
+                f.close();
+            }
+            if (segment.limit() < CaptureFile.SEGMENT_HEADER_SIZE ||
+                segment.getLong(0) != CaptureFile.SEGMENT_MAGIC) {
+                throw new IOException("Not a capture segment: " + file);
+            }
+            long end = segment.getLong(CaptureFile.SEGMENT_END_OFFSET);
+            if (end < CaptureFile.SEGMENT_HEADER_SIZE ||
+                end > segment.limit()) {
+                throw new IOException("Corrupted segment " + n);
+            }
+            segment.limit((int)end);
+            segments[n] = segment;
+        }
+        return segment;
+    }
+
+    /**
+     * Waits until the frame is due, if pacing the frames as recorded.
+     * Returns early, with the interrupt status set, if the calling thread
+     * is interrupted.
+     * @param timestamp the recorded timestamp of the frame
+     */
+    private void pace(long timestamp) {
+        if (realTime) {
+            long now = System.nanoTime();
+            if (paceTimestamp < 0 || timestamp < paceTimestamp) {
+                paceTimestamp = timestamp;
+                paceTime = now;
+            } else {
+                long due = paceTime + (timestamp - paceTimestamp)*1000000;
+                long delay = due - now;
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay/1000000, (int)(delay%1000000));
+                    } catch (InterruptedException x) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits a recording by index ranges, see {@link #frames}. Doesn't
+     * touch the grabber state, so that the ranges can be read in
+     * parallel.
+     */
+    private static final class RecordingSpliterator
+        implements Spliterator<RawFrame> {
+
+        /** Segment mappings */
+        private ByteBuffer[] segments;
+
+        /** Segment number of each frame */
+        private int[] segment;
+
+        /** Record offset of each frame */
+        private long[] offset;
+
+        /** The next frame */
+        private int from;
+
+        /** End of the range, exclusive */
+        private int to;
+
+        /**
+         * Creates a spliterator over a range of frames.
+         * @param segments the segment mappings
+         * @param segment segment number of each frame
+         * @param offset record offset of each frame
+         * @param from the first frame
+         * @param to end of the range, exclusive
+         */
+        RecordingSpliterator(ByteBuffer[] segments, int[] segment,
+                             long[] offset, int from, int to) {
+            this.segments = segments;
+            this.segment = segment;
+            this.offset = offset;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Passes the next frame to the action.
+         * @param action receives the frame
+         * @return <code>false</code> if there are no frames left.
+         */
+        public boolean tryAdvance(Consumer<? super RawFrame> action) {
+            if (from < to) {
+                action.accept(read(from++));
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Passes the remaining frames to the action.
+         * @param action receives the frames
+         */
+        public void forEachRemaining(Consumer<? super RawFrame> action) {
+            while (from < to) {
+                action.accept(read(from++));
+            }
+        }
+
+        /**
+         * Hands the first half of the remaining frames to a new
+         * spliterator.
+         * @return The new spliterator, <code>null</code> if there are
+         *   less than two frames left.
+         */
+        public Spliterator<RawFrame> trySplit() {
+            int mid = (from + to) >>> 1;
+            if (mid <= from) {
+                return null;
+            }
+            Spliterator<RawFrame> prefix = new RecordingSpliterator(segments,
+                segment, offset, from, mid);
+            from = mid;
+            return prefix;
+        }
+
+        /**
+         * Gets the number of frames left.
+         * @return Number of frames.
+         */
+        public long estimateSize() {
+            return to - from;
+        }
+
+        /**
+         * Gets the characteristics of the frame stream.
+         * @return The characteristics.
+         */
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+
+        /**
+         * Creates the frame for the record.
+         * @param i entry index
+         * @return The frame.
+         * @throws UncheckedIOException if the record is corrupted.
+         */
+        private RawFrame read(int i) {
+            int n = segment[i];
+            ByteBuffer record;
+            try {
+                record = getRecord(segments[n], offset[i], n);
+            } catch (IOException x) {
+                throw new UncheckedIOException(x);
+            }
+            int pos = record.position();
+            int width = record.getInt(pos + 24);
+            int height = record.getInt(pos + 28);
+            int vfreq = record.getInt(pos + 32);
+            int recorded = record.getInt(pos + 36);
+            int length = record.getInt(pos + 40);
+            int flag = Grabber.GRABFRAME_BOTTOM_UP_FLAG;
+            record.position(pos + CaptureFile.FRAME_HEADER_SIZE);
+            record.limit(pos + CaptureFile.FRAME_HEADER_SIZE + length);
+            RawFrame frame = new RawFrame(width, height,
+                PixelFormat.getPixelFormat(recorded & ~flag), record.slice(),
+                length);
+            frame.sequence = record.getLong(pos + 8);
+            frame.timestamp = record.getLong(pos + 16);
+            frame.videoMode = new VideoMode(width, height, vfreq);
+            frame.bottomUp = ((recorded & flag) != 0);
+            return frame;
+        }
+    }
+
+    /**
+     * Throws an exception if the device has been closed.
+     * @throws IOException if the device has been closed
+     */
+    private void checkOpen() throws IOException {
+        if (closed) throw new IOException("Device is closed");
+    }
+
+    /**
+     * Gets the device type for this grabber.
+     * @return Zero, the device type is unknown
+     */
+    public int getDeviceType() {
+        return DeviceType.UNKNOWN.getValue();
+    }
+
+    /**
+     * Gets the device name for this grabber.
+     * @return The device name
+     */
+    public String getDeviceName() {
+        return "Replay";
+    }
+
+    /**
+     * Gets the value of the specified boolean property.
+     * @param key The property key
+     * @return <code>false</code>
+     * @throws IOException if the device has been closed
+     */
+    public synchronized boolean getBooleanProperty(int key)
+        throws IOException {
+        checkOpen();
+        return false;
+    }
+
+    /**
+     * Gets the value of the specified string property.
+     * @param key The property key
+     * @return The name of the recording for the serial number,
+     *   <code>null</code> for other properties
+     * @throws IOException if the device has been closed
+     */
+    public synchronized String getStringProperty(int key) throws IOException {
+        checkOpen();
+        return (key == PropertyKey.SerialNumber.getValue()) ?
+            base.getName() : null;
+    }
+
+    /**
+     * Ignores the string property.
+     * @param key The property key
+     * @param value The property value
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void setStringProperty(int key, String value)
+        throws IOException {
+        checkOpen();
+    }
+
+    /**
+     * Gets the value of the specified integer or enum property.
+     * @param key The property key
+     * @return Zero
+     * @throws IOException if the device has been closed
+     */
+    public synchronized int getIntProperty(int key) throws IOException {
+        checkOpen();
+        return 0;
+    }
+
+    /**
+     * Ignores the integer or enum property.
+     * @param key The property key
+     * @param value The property value
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void setIntProperty(int key, int value)
+        throws IOException {
+        checkOpen();
+    }
+
+    /**
+     * Gets the value of the specified size property.
+     * @param key The property key
+     * @param value Receives zero width and height
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void getSizeProperty(int key, int [] value)
+        throws IOException {
+        checkOpen();
+        value[0] = value[1] = 0;
+    }
+
+    /**
+     * Ignores the size property.
+     * @param key The property key
+     * @param w Width
+     * @param h Height
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void setSizeProperty(int key, int w, int h)
+        throws IOException {
+        checkOpen();
+    }
+
+    /**
+     * Ignores the PS/2 packet.
+     * @param type packet type (keyboard vs mouse)
+     * @param data the packet data
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void sendPS2(short type, byte [] data)
+        throws IOException {
+        checkOpen();
+    }
+
+    /**
+     * Leaves the grab parameters unchanged.
+     * @param params an int array that receives the current grab parameters
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void getGrabParameters(int [] params)
+        throws IOException {
+        checkOpen();
+    }
+
+    /**
+     * Ignores the grab parameters.
+     * @param params grab parameters packed into an int array
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void setGrabParameters(int [] params)
+        throws IOException {
+        checkOpen();
+    }
+
+    /**
+     * Restarts the pacing.
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void start() throws IOException {
+        checkOpen();
+        paceTimestamp = -1;
+    }
+
+    /**
+     * Does nothing.
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void stop() throws IOException {
+        checkOpen();
+    }
+}
@@ -0,0 +1,136 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.util.concurrent */
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the bands of rows of a frame in parallel. Shared by the pixel
+ * processing classes, such as {@link ColorConverter}. By default the
+ * bands run in the common {@link ForkJoinPool}, the pool that also runs
+ * parallel streams: a frame converted from within a parallel stream,
+ * e.g. <code>ReplayGrabber.frames().parallel()</code>, then has its bands
+ * run by the waiting worker itself instead of blocking it, and the
+ * pixel work doesn't compete with a second set of threads.
+ */
+final class RowTasks {
+
+    /**
+     * Constructor is disabled.
+     */
+    private RowTasks() {
+        throw new Error("RowTasks is a collection of static methods");
+    }
+
+    /**
+     * Gets the shared executor, which is the common fork/join pool.
+     * @return The shared executor, <code>null</code> on a single
+     *   processor system.
+     */
+    static ExecutorService getSharedExecutor() {
+        if (Runtime.getRuntime().availableProcessors() > 1) {
+            return ForkJoinPool.commonPool();
+        }
+        return null;
+    }
+
+    /**
+     * Decides how many bands to split the rows into.
+     * @param parallelism maximum number of bands
+     * @param pixels number of pixels to process
+     * @param rows number of rows to process
+     * @param minPixels frames with fewer pixels are processed as a single
+     *   band
+     * @param minRows minimum number of rows per band
+     * @return The number of bands.
+     */
+    static int getBandCount(int parallelism, long pixels, int rows,
+                            int minPixels, int minRows) {
+        if (parallelism > 1 && pixels >= minPixels) {
+            return Math.min(parallelism, Math.max(rows/minRows, 1));
+        }
+        return 1;
+    }
+
+    /**
+     * Runs the tasks and waits for them to complete. The first task runs
+     * on the calling thread, the others on the executor.
+     * @param executor runs the tasks, <code>null</code> to run them all on
+     *   the calling thread
+     * @param tasks the tasks to run
+     */
+    static void run(ExecutorService executor, Runnable[] tasks) {
+        if (executor == null || tasks.length == 1) {
+            for (int i=0; i<tasks.length; i++) {
+                tasks[i].run();
+            }
+            return;
+        }
+        if (executor instanceof ForkJoinPool) {
+            run((ForkJoinPool)executor, tasks);
+            return;
+        }
+
+        Future[] futures = new Future[tasks.length-1];
+        for (int i=1; i<tasks.length; i++) {
+            futures[i-1] = executor.submit(tasks[i]);
+        }
+        tasks[0].run();
+        boolean interrupted = false;
+        for (int i=0; i<futures.length; i++) {
+            while (true) {
+                try {
+                    futures[i].get();
+                    break;
+                } catch (InterruptedException x) {
+                    interrupted = true;
+                } catch (ExecutionException x) {
+                    Throwable cause = x.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException)cause;
+                    }
+                    throw new Error(cause);
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the tasks in a fork/join pool and waits for them to complete.
+     * The first task runs on the calling thread. Joining the others
+     * doesn't block a worker of the pool: it runs the tasks which
+     * haven't been picked up yet, so that the call can't starve the pool
+     * even if all its workers are converting frames.
+     * @param pool runs the tasks
+     * @param tasks the tasks to run, at least two
+     */
+    private static void run(ForkJoinPool pool, Runnable[] tasks) {
+        ForkJoinTask[] forks = new ForkJoinTask[tasks.length-1];
+        for (int i=1; i<tasks.length; i++) {
+            ForkJoinTask task = ForkJoinTask.adapt(tasks[i]);
+            if (ForkJoinTask.getPool() == pool) {
+                forks[i-1] = task.fork();
+            } else {
+                forks[i-1] = pool.submit(task);
+            }
+        }
+        tasks[0].run();
+        for (int i=forks.length-1; i>=0; i--) {
+            forks[i].join();
+        }
+    }
+}
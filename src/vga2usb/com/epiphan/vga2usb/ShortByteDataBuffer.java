@@ -0,0 +1,57 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.awt.image */
+import java.awt.image.DataBuffer;
+
+/**
+ * Presents an array of little-endian 16-bit pixels, as delivered by the
+ * grabber in {@link PixelFormat#RGB16} and {@link PixelFormat#BGR16}
+ * formats, as a {@link DataBuffer#TYPE_USHORT} data buffer without
+ * copying the pixels.
+ */
+final class ShortByteDataBuffer extends DataBuffer {
+
+    /** The pixels */
+    private byte[] data;
+
+    /**
+     * Creates a data buffer.
+     * @param data the pixels, two bytes per element
+     * @param size number of elements
+     */
+    ShortByteDataBuffer(byte[] data, int size) {
+        super(TYPE_USHORT, size);
+        this.data = data;
+    }
+
+    /**
+     * Gets an element.
+     * @param bank the bank, must be zero
+     * @param i the element index
+     * @return The element.
+     */
+    public int getElem(int bank, int i) {
+        int k = 2*(i + offset);
+        return (data[k] & 0xff) | ((data[k+1] & 0xff) << 8);
+    }
+
+    /**
+     * Sets an element.
+     * @param bank the bank, must be zero
+     * @param i the element index
+     * @param val the element value
+     */
+    public void setElem(int bank, int i, int val) {
+        int k = 2*(i + offset);
+        data[k] = (byte)val;
+        data[k+1] = (byte)(val >> 8);
+    }
+}
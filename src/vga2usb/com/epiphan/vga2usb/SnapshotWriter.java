@@ -0,0 +1,328 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/* java.nio */
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Saves frames as uncompressed image files without going through
+ * {@link java.awt.image.BufferedImage} and ImageIO. The file consists of
+ * a header and the frame pixels, written with a single gathering write.
+ * The pixels are written straight from the frame buffer whenever the
+ * frame format and line order allow:
+ * <blockquote><pre>
+ * BMP  BGR24 frames, in either line order
+ * PPM  RGB24 frames in top-down order
+ * PAM  RGB24 frames in top-down order
+ * </pre></blockquote>
+ * Other frames are first converted into a buffer kept by the writer.
+ * BMP lines are padded to a multiple of 4 bytes; if the line size isn't
+ * already aligned, the padding is gathered between the lines rather than
+ * copied.
+ * <p>
+ * Typical usage:
+ * <blockquote><pre>
+ * SnapshotWriter writer = new SnapshotWriter();
+ * RawFrame frame = grabber.grabRawFrame(PixelFormat.BGR24, true);
+ * writer.write(frame, new File("snapshot.bmp"));
+ * frame.release();
+ * </pre></blockquote>
+ *
+ * @since 3.28.1
+ */
+public class SnapshotWriter {
+
+    /** Size of the BMP file and info headers */
+    private static final int BMP_HEADER_SIZE = 54;
+
+    /** BMP resolution, 72 dpi in pixels per meter */
+    private static final int BMP_RESOLUTION = 2835;
+
+    /** Source of the BMP line padding */
+    private static final byte[] PADDING = new byte[3];
+
+    /** Windows bitmap */
+    private static final int TYPE_BMP = 0;
+
+    /** Portable pixmap, binary */
+    private static final int TYPE_PPM = 1;
+
+    /** Portable arbitrary map */
+    private static final int TYPE_PAM = 2;
+
+    /** Converts the frames which are not in the right format */
+    private ColorConverter converter;
+
+    /** Holds the converted pixels */
+    private byte[] pixels;
+
+    /** The last header */
+    private byte[] header;
+
+    /** File type of the last header */
+    private int headerType = -1;
+
+    /** Width of the last header */
+    private int headerWidth;
+
+    /** Height of the last header, negative for top-down BMP */
+    private int headerHeight;
+
+    /**
+     * Creates a snapshot writer.
+     */
+    public SnapshotWriter() {
+    }
+
+    /**
+     * Gets the file extension of the format this frame format is saved in
+     * most efficiently.
+     * @param format the frame format
+     * @return <code>"bmp"</code> for {@link PixelFormat#BGR24},
+     *   <code>"ppm"</code> for the others.
+     */
+    public static String getExtension(PixelFormat format) {
+        return (format == PixelFormat.BGR24) ? "bmp" : "ppm";
+    }
+
+    /**
+     * Saves the frame into a file. The file format is selected by the
+     * extension of the file name: <code>.bmp</code>, <code>.ppm</code> or
+     * <code>.pam</code>. The frame is left intact and still needs to be
+     * released by the caller.
+     * @param frame the frame to save
+     * @param file the file to create
+     * @throws IOException if an I/O error occurs.
+     * @throws IllegalArgumentException if the extension is not known.
+     */
+    public void write(RawFrame frame, File file) throws IOException {
+        int type = getType(file.getName());
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            write(frame, out.getChannel(), type);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the frame in BMP format. The frame is left intact and still
+     * needs to be released by the caller.
+     * @param frame the frame to save
+     * @param channel receives the file
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeBmp(RawFrame frame, GatheringByteChannel channel)
+        throws IOException {
+        write(frame, channel, TYPE_BMP);
+    }
+
+    /**
+     * Writes the frame in binary PPM format. The frame is left intact and
+     * still needs to be released by the caller.
+     * @param frame the frame to save
+     * @param channel receives the file
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writePpm(RawFrame frame, GatheringByteChannel channel)
+        throws IOException {
+        write(frame, channel, TYPE_PPM);
+    }
+
+    /**
+     * Writes the frame in PAM format. The frame is left intact and still
+     * needs to be released by the caller.
+     * @param frame the frame to save
+     * @param channel receives the file
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writePam(RawFrame frame, GatheringByteChannel channel)
+        throws IOException {
+        write(frame, channel, TYPE_PAM);
+    }
+
+    /**
+     * Writes the frame.
+     * @param frame the frame to save
+     * @param channel receives the file
+     * @param type the file type
+     * @throws IOException if an I/O error occurs.
+     */
+    private synchronized void write(RawFrame frame,
+                                    GatheringByteChannel channel, int type)
+        throws IOException {
+        int w = frame.getWidth();
+        int h = frame.getHeight();
+        PixelFormat format = (type == TYPE_BMP) ?
+            PixelFormat.BGR24 : PixelFormat.RGB24;
+        ByteBuffer src = frame.getByteBuffer();
+        if (frame.getPixelFormat() != format) {
+            if (pixels == null || pixels.length < w*h*3) {
+                pixels = new byte[w*h*3];
+            }
+            if (converter == null) {
+                converter = new ColorConverter();
+            }
+            converter.convert(frame, format, pixels, 0);
+            src = ByteBuffer.wrap(pixels);
+        } else if (frame.getPixelBufferLength() < w*h*3) {
+            throw new IllegalArgumentException("Incomplete frame");
+        }
+
+        // BMP supports both line orders, the others are top-down only
+        boolean reverse = (type != TYPE_BMP && frame.isBottomUp());
+        int height = (type == TYPE_BMP && !frame.isBottomUp()) ? -h : h;
+        int lineSize = w*3;
+        int pad = (type == TYPE_BMP) ? ((4 - (lineSize & 3)) & 3) : 0;
+        ByteBuffer[] buffers;
+        if (pad == 0 && !reverse) {
+            buffers = new ByteBuffer[] {
+                ByteBuffer.wrap(getHeader(type, w, height)),
+                slice(src, 0, lineSize*h)
+            };
+        } else {
+            int n = (pad == 0) ? 1 : 2;
+            buffers = new ByteBuffer[1 + n*h];
+            buffers[0] = ByteBuffer.wrap(getHeader(type, w, height));
+            for (int y=0; y<h; y++) {
+                int line = reverse ? (h-1-y) : y;
+                buffers[1+n*y] = slice(src, line*lineSize, lineSize);
+                if (pad != 0) {
+                    buffers[2+n*y] = ByteBuffer.wrap(PADDING, 0, pad);
+                }
+            }
+        }
+        writeFully(channel, buffers);
+    }
+
+    /**
+     * Creates a view of a part of the pixels, so that a direct frame is
+     * written straight from the off-heap memory.
+     * @param src the pixels
+     * @param off offset of the first byte
+     * @param len number of bytes
+     * @return The view.
+     */
+    private static ByteBuffer slice(ByteBuffer src, int off, int len) {
+        ByteBuffer buf = src.duplicate();
+        buf.limit(off + len);
+        buf.position(off);
+        return buf;
+    }
+
+    /**
+     * Gets the file header, reusing the last one if it's the same.
+     * @param type the file type
+     * @param w image width
+     * @param h image height, negative for top-down BMP
+     * @return The header.
+     */
+    private byte[] getHeader(int type, int w, int h) {
+        if (type != headerType || w != headerWidth || h != headerHeight) {
+            if (type == TYPE_BMP) {
+                header = createBmpHeader(w, h);
+            } else if (type == TYPE_PPM) {
+                header = ascii("P6\n" + w + " " + h + "\n255\n");
+            } else {
+                header = ascii("P7\nWIDTH " + w + "\nHEIGHT " + h +
+                    "\nDEPTH 3\nMAXVAL 255\nTUPLTYPE RGB\nENDHDR\n");
+            }
+            headerType = type;
+            headerWidth = w;
+            headerHeight = h;
+        }
+        return header;
+    }
+
+    /**
+     * Creates the BMP file and info headers for 24 bpp pixels.
+     * @param w image width
+     * @param h image height, negative for top-down order
+     * @return The header.
+     */
+    private static byte[] createBmpHeader(int w, int h) {
+        int imageSize = ((w*3 + 3) & ~3) * Math.abs(h);
+        ByteBuffer b = ByteBuffer.allocate(BMP_HEADER_SIZE);
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        b.put((byte)'B').put((byte)'M');
+        b.putInt(BMP_HEADER_SIZE + imageSize);
+        b.putInt(0);                    // reserved
+        b.putInt(BMP_HEADER_SIZE);      // offset of the pixels
+        b.putInt(BMP_HEADER_SIZE - 14); // size of the info header
+        b.putInt(w);
+        b.putInt(h);
+        b.putShort((short)1);           // planes
+        b.putShort((short)24);          // bits per pixel
+        b.putInt(0);                    // BI_RGB
+        b.putInt(imageSize);
+        b.putInt(BMP_RESOLUTION);
+        b.putInt(BMP_RESOLUTION);
+        b.putInt(0);                    // colors used
+        b.putInt(0);                    // important colors
+        return b.array();
+    }
+
+    /**
+     * Writes all the buffers, repeating the write until the channel has
+     * taken everything.
+     * @param channel the channel to write to
+     * @param buffers the buffers to write
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void writeFully(GatheringByteChannel channel,
+                                   ByteBuffer[] buffers) throws IOException {
+        int first = 0;
+        while (first < buffers.length) {
+            channel.write(buffers, first, buffers.length - first);
+            while (first < buffers.length && !buffers[first].hasRemaining()) {
+                first++;
+            }
+        }
+    }
+
+    /**
+     * Determines the file type from the file name.
+     * @param name the file name
+     * @return The file type.
+     * @throws IllegalArgumentException if the extension is not known.
+     */
+    private static int getType(String name) {
+        String lower = name.toLowerCase();
+        if (lower.endsWith(".bmp")) {
+            return TYPE_BMP;
+        } else if (lower.endsWith(".ppm")) {
+            return TYPE_PPM;
+        } else if (lower.endsWith(".pam")) {
+            return TYPE_PAM;
+        } else {
+            throw new IllegalArgumentException(name);
+        }
+    }
+
+    /**
+     * Encodes a string as ASCII.
+     * @param s the string
+     * @return The bytes.
+     */
+    private static byte[] ascii(String s) {
+        byte[] b = new byte[s.length()];
+        for (int i=0; i<b.length; i++) {
+            b[i] = (byte)s.charAt(i);
+        }
+        return b;
+    }
+}
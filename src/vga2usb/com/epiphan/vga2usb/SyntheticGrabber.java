@@ -0,0 +1,652 @@
+/****************************************************************************
+ *
+ * $Id$
+ *
+ * Copyright (C) 2026 Epiphan Systems Inc. All rights reserved.
+ *
+ ****************************************************************************/
+
+package com.epiphan.vga2usb;
+
+/* java.io */
+import java.io.IOException;
+
+/* java.util */
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pure Java frame grabber which generates a test pattern. Doesn't require
+ * the native library or any hardware, which makes it suitable for load
+ * testing and benchmarking the code downstream of {@link Grabber}.
+ * <p>
+ * The pattern is a set of vertical color bars with a white band moving
+ * down by a few lines every frame, so that consecutive frames differ.
+ * It's generated in every {@link PixelFormat}, in either line order.
+ * Frames are paced at the configured frame rate.
+ * <p>
+ * The device can be scripted to change the video mode, lose the signal
+ * or slow down after a given number of frames:
+ * <blockquote><pre>
+ * SyntheticGrabber device = new SyntheticGrabber(1920, 1080, 60);
+ * device.scheduleVideoMode(600, 1280, 1024, 75);
+ * device.scheduleSignalLoss(1200, 30);
+ * device.scheduleLatency(1800, 50);
+ * Grabber grabber = new Grabber(device);
+ * </pre></blockquote>
+ *
+ * @see Grabber#Grabber(NativeGrabber)
+ * @since 3.28.1
+ */
+public class SyntheticGrabber implements NativeGrabber {
+
+    /** Color bars */
+    private static final int[] BARS = {
+        0xc0c0c0, 0xc0c000, 0x00c0c0, 0x00c000,
+        0xc000c0, 0xc00000, 0x0000c0, 0x000000
+    };
+
+    /** Height of the moving band */
+    private static final int BAND_HEIGHT = 8;
+
+    /** Event types */
+    private static final int EVENT_VIDEO_MODE = 1;
+    private static final int EVENT_SIGNAL_LOSS = 2;
+    private static final int EVENT_LATENCY = 3;
+
+    /** Number of synthetic grabbers created so far */
+    private static int instanceCount;
+
+    /** Serial number */
+    private String sn;
+
+    /** Device type */
+    private DeviceType deviceType = DeviceType.UNKNOWN;
+
+    /** Current video mode */
+    private int width, height, vfreq;
+
+    /** Frame interval in nanoseconds, zero if not paced */
+    private long frameInterval;
+
+    /** When the next frame is due */
+    private long nextFrameTime;
+
+    /** Whether the signal is present */
+    private boolean signal = true;
+
+    /** Number of calls left until the signal comes back, -1 if never */
+    private long signalLossLeft = -1;
+
+    /** Additional delay per grab, in milliseconds */
+    private long latency;
+
+    /** Number of grab calls */
+    private long grabCount;
+
+    /** Pending events, sorted by frame number */
+    private List events = new ArrayList();
+
+    /** Property values */
+    private Map properties = new HashMap();
+
+    /** Saved grab parameters */
+    private int[] grabParameters;
+
+    /** Cached pattern */
+    private byte[] pattern;
+
+    /** Format of the cached pattern */
+    private int patternFormat;
+
+    /** Cached moving band line */
+    private byte[] band;
+
+    /** Whether the grabber has been closed */
+    private boolean closed;
+
+    /**
+     * A scheduled event.
+     */
+    private static final class Event {
+        long frame;
+        int type;
+        int arg1, arg2, arg3;
+        Event(long frame, int type, int arg1, int arg2, int arg3) {
+            this.frame = frame;
+            this.type = type;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+            this.arg3 = arg3;
+        }
+    }
+
+    /**
+     * Creates a synthetic grabber which delivers frames at the refresh
+     * rate of the video mode.
+     * @param width the width of the video mode
+     * @param height the height of the video mode
+     * @param refreshRate the refresh rate of the video mode in Hz
+     */
+    public SyntheticGrabber(int width, int height, float refreshRate) {
+        this(width, height, refreshRate, nextSerialNumber());
+    }
+
+    /**
+     * Creates a synthetic grabber which delivers frames at the refresh
+     * rate of the video mode.
+     * @param width the width of the video mode
+     * @param height the height of the video mode
+     * @param refreshRate the refresh rate of the video mode in Hz
+     * @param sn the serial number to report
+     */
+    public SyntheticGrabber(int width, int height, float refreshRate,
+                            String sn) {
+        this.sn = sn;
+        setVideoMode(width, height, refreshRate);
+        setFrameRate(refreshRate);
+    }
+
+    /**
+     * Generates the default serial number.
+     * @return The serial number.
+     */
+    private static synchronized String nextSerialNumber() {
+        return "SYN" + (10000 + (++instanceCount));
+    }
+
+    /**
+     * Changes the video mode immediately.
+     * @param width the width of the video mode
+     * @param height the height of the video mode
+     * @param refreshRate the refresh rate of the video mode in Hz
+     * @throws IllegalArgumentException if any argument is not positive.
+     */
+    public synchronized void setVideoMode(int width, int height,
+                                          float refreshRate) {
+        if (width <= 0) throw new IllegalArgumentException("width");
+        if (height <= 0) throw new IllegalArgumentException("height");
+        if (!(refreshRate > 0)) throw new IllegalArgumentException("refresh");
+        this.width = width;
+        this.height = height;
+        this.vfreq = Math.round(refreshRate*1000);
+        pattern = null;
+    }
+
+    /**
+     * Sets the rate at which the frames are delivered.
+     * @param fps frames per second, zero or negative to deliver the
+     *   frames as fast as possible.
+     */
+    public synchronized void setFrameRate(float fps) {
+        frameInterval = (fps > 0) ? (long)(1000000000L/fps) : 0;
+    }
+
+    /**
+     * Turns the signal on or off immediately. Without signal, video mode
+     * detection reports zero width and height, and grabs fail.
+     * @param on <code>true</code> to turn the signal on.
+     */
+    public synchronized void setSignal(boolean on) {
+        signal = on;
+        signalLossLeft = -1;
+    }
+
+    /**
+     * Sets the additional delay added to every grab.
+     * @param millis the delay in milliseconds
+     */
+    public synchronized void setLatency(long millis) {
+        latency = Math.max(0, millis);
+    }
+
+    /**
+     * Sets the device type reported to the {@link Grabber}. Must be
+     * invoked before the grabber is created.
+     * @param type the device type
+     */
+    public synchronized void setDeviceType(DeviceType type) {
+        deviceType = (type == null) ? DeviceType.UNKNOWN : type;
+    }
+
+    /**
+     * Changes the video mode before the specified grab.
+     * @param frame the number of the grab call, starting with zero
+     * @param width the width of the new video mode
+     * @param height the height of the new video mode
+     * @param refreshRate the refresh rate of the new video mode in Hz
+     */
+    public void scheduleVideoMode(long frame, int width, int height,
+                                  float refreshRate) {
+        schedule(new Event(frame, EVENT_VIDEO_MODE, width, height,
+            Math.round(refreshRate*1000)));
+    }
+
+    /**
+     * Turns the signal off before the specified grab. The signal comes
+     * back after the specified number of grab and video mode detection
+     * calls (the {@link Grabber} only detects the video mode while there's
+     * no signal).
+     * @param frame the number of the grab call, starting with zero
+     * @param duration number of calls without signal
+     */
+    public void scheduleSignalLoss(long frame, int duration) {
+        schedule(new Event(frame, EVENT_SIGNAL_LOSS, duration, 0, 0));
+    }
+
+    /**
+     * Changes the additional delay added to every grab, starting with the
+     * specified grab.
+     * @param frame the number of the grab call, starting with zero
+     * @param millis the delay in milliseconds
+     */
+    public void scheduleLatency(long frame, int millis) {
+        schedule(new Event(frame, EVENT_LATENCY, millis, 0, 0));
+    }
+
+    /**
+     * Gets the number of grab calls made so far.
+     * @return The number of grab calls.
+     */
+    public synchronized long getGrabCount() {
+        return grabCount;
+    }
+
+    /**
+     * Adds an event to the script.
+     * @param event the event to add
+     */
+    private synchronized void schedule(Event event) {
+        int i = events.size();
+        while (i > 0 && ((Event)events.get(i-1)).frame > event.frame) i--;
+        events.add(i, event);
+    }
+
+    /**
+     * Applies the events scheduled for the current grab.
+     */
+    private void runEvents() {
+        while (!events.isEmpty()) {
+            Event event = (Event)events.get(0);
+            if (event.frame > grabCount) break;
+            events.remove(0);
+            switch (event.type) {
+            case EVENT_VIDEO_MODE:
+                width = event.arg1;
+                height = event.arg2;
+                vfreq = event.arg3;
+                pattern = null;
+                break;
+            case EVENT_SIGNAL_LOSS:
+                signal = false;
+                signalLossLeft = event.arg1;
+                break;
+            case EVENT_LATENCY:
+                latency = event.arg1;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Counts a call made without signal, turns the signal back on when
+     * the scheduled signal loss is over.
+     */
+    private void countSignalLoss() {
+        if (signalLossLeft > 0 && --signalLossLeft == 0) {
+            signal = true;
+            signalLossLeft = -1;
+        }
+    }
+
+    /**
+     * Closes the device.
+     */
+    public synchronized void close() {
+        closed = true;
+        pattern = null;
+        band = null;
+    }
+
+    /**
+     * Gets serial number string for this device.
+     * @return The serial number string
+     * @throws IOException if the device has been closed
+     */
+    public synchronized String getSN() throws IOException {
+        checkOpen();
+        return sn;
+    }
+
+    /**
+     * Reports the current video mode.
+     * @param vm receives video mode description
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void detectVideoMode(int[] vm) throws IOException {
+        checkOpen();
+        runEvents();
+        if (signal) {
+            vm[0] = width;
+            vm[1] = height;
+            vm[2] = vfreq;
+        } else {
+            vm[0] = vm[1] = vm[2] = 0;
+            countSignalLoss();
+        }
+    }
+
+    /**
+     * Generates a single frame into the provided buffer.
+     * @param format desired pixel format
+     * @param vm receives video mode description
+     * @param buf receives the pixels
+     * @return Number of bytes written into the buffer, zero if there's
+     *   no signal or the buffer is too small.
+     * @throws IOException if the device has been closed
+     */
+    public synchronized int grabFrame(int format, int[] vm, byte[] buf)
+        throws IOException {
+        checkOpen();
+        runEvents();
+        grabCount++;
+        pace();
+        if (!signal) {
+            vm[0] = vm[1] = vm[2] = 0;
+            countSignalLoss();
+            return 0;
+        }
+
+        vm[0] = width;
+        vm[1] = height;
+        vm[2] = vfreq;
+
+        int size = preparePattern(format);
+        if (buf.length < size) {
+            return 0;
+        }
+
+        // Copy the pattern and draw the band
+        System.arraycopy(pattern, 0, buf, 0, size);
+        int lineSize = band.length;
+        int y = (int)((grabCount*4) % height);
+        for (int i=0; i<BAND_HEIGHT && y+i < height; i++) {
+            int line = y + i;
+            if ((format & Grabber.GRABFRAME_BOTTOM_UP_FLAG) != 0) {
+                line = height - line - 1;
+            }
+            System.arraycopy(band, 0, buf, line*lineSize, lineSize);
+        }
+        return size;
+    }
+
+    /**
+     * Waits until the next frame is due, then sleeps for the configured
+     * latency. Returns early, with the interrupt status set, if the
+     * calling thread is interrupted.
+     */
+    private void pace() {
+        long delay = 0;
+        if (frameInterval > 0) {
+            long now = System.nanoTime();
+            if (nextFrameTime - now > 0) {
+                delay = nextFrameTime - now;
+                nextFrameTime += frameInterval;
+            } else {
+                nextFrameTime = now + frameInterval;
+            }
+        }
+        delay += latency * 1000000;
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay/1000000, (int)(delay%1000000));
+            } catch (InterruptedException x) {
+                // Deliver the frame early, let the caller see the interrupt
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Generates the pattern for the current video mode, if necessary.
+     * @param format the requested format, including the flags
+     * @return Size of the frame in bytes.
+     * @throws IOException if the format is not supported
+     */
+    private int preparePattern(int format) throws IOException {
+        PixelFormat pf = getPixelFormat(format);
+        int lineSize = PixelPacker.getLineSize(pf, width);
+        int size = lineSize*height;
+        if (pattern == null || patternFormat != format ||
+            pattern.length != size) {
+            int[] rgb = new int[width];
+            byte[] line = new byte[lineSize];
+            byte[] pix = new byte[size];
+            for (int y=0; y<height; y++) {
+                // Darken the bars towards the bottom of the screen
+                int shade = 256 - (y*128)/height;
+                for (int x=0; x<width; x++) {
+                    int c = BARS[(x*BARS.length)/width];
+                    int r = (((c >> 16) & 0xff)*shade) >> 8;
+                    int g = (((c >> 8) & 0xff)*shade) >> 8;
+                    int b = ((c & 0xff)*shade) >> 8;
+                    rgb[x] = (r << 16) | (g << 8) | b;
+                }
+                PixelPacker.pack(pf, rgb, width, line, 0);
+                int row = y;
+                if ((format & Grabber.GRABFRAME_BOTTOM_UP_FLAG) != 0) {
+                    row = height - y - 1;
+                }
+                System.arraycopy(line, 0, pix, row*lineSize, lineSize);
+            }
+            for (int x=0; x<width; x++) {
+                rgb[x] = 0xffffff;
+            }
+            band = new byte[lineSize];
+            PixelPacker.pack(pf, rgb, width, band, 0);
+            pattern = pix;
+            patternFormat = format;
+        }
+        return size;
+    }
+
+    /**
+     * Maps native pixel format value into <code>PixelFormat</code>.
+     * @param format the requested format, including the flags
+     * @return The pixel format.
+     * @throws IOException if the format is not supported
+     */
+    private static PixelFormat getPixelFormat(int format) throws IOException {
+        int value = format & ~Grabber.GRABFRAME_BOTTOM_UP_FLAG;
+        PixelFormat pf = PixelFormat.getPixelFormat(value);
+        if (pf != null) {
+            return pf;
+        }
+        throw new IOException("Unsupported pixel format " + value);
+    }
+
+    /**
+     * Throws an exception if the device has been closed.
+     * @throws IOException if the device has been closed
+     */
+    private void checkOpen() throws IOException {
+        if (closed) throw new IOException("Device is closed");
+    }
+
+    /**
+     * Gets the device type for this grabber.
+     * @return The device type
+     */
+    public synchronized int getDeviceType() {
+        return deviceType.getValue();
+    }
+
+    /**
+     * Gets the device name for this grabber.
+     * @return The device name
+     */
+    public synchronized String getDeviceName() {
+        return (deviceType == DeviceType.UNKNOWN) ? "Synthetic" :
+            deviceType.getDescription();
+    }
+
+    /**
+     * Gets the value of the specified boolean property.
+     * @param key The property key
+     * @return The property value, <code>false</code> if not set
+     * @throws IOException if the device has been closed
+     */
+    public synchronized boolean getBooleanProperty(int key)
+        throws IOException {
+        checkOpen();
+        Object value = properties.get(Integer.valueOf(key));
+        return (value instanceof Boolean) && ((Boolean)value).booleanValue();
+    }
+
+    /**
+     * Gets the value of the specified string property.
+     * @param key The property key
+     * @return The property value, <code>null</code> if not set
+     * @throws IOException if the device has been closed
+     */
+    public synchronized String getStringProperty(int key) throws IOException {
+        checkOpen();
+        if (key == PropertyKey.SerialNumber.getValue()) {
+            return sn;
+        }
+        Object value = properties.get(Integer.valueOf(key));
+        return (value instanceof String) ? (String)value : null;
+    }
+
+    /**
+     * Sets the value of the specified string property.
+     * @param key The property key
+     * @param value The property value
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void setStringProperty(int key, String value)
+        throws IOException {
+        checkOpen();
+        properties.put(Integer.valueOf(key), value);
+    }
+
+    /**
+     * Gets the value of the specified integer or enum property.
+     * @param key The property key
+     * @return The property value, zero if not set
+     * @throws IOException if the device has been closed
+     */
+    public synchronized int getIntProperty(int key) throws IOException {
+        checkOpen();
+        Object value = properties.get(Integer.valueOf(key));
+        return (value instanceof Integer) ? ((Integer)value).intValue() : 0;
+    }
+
+    /**
+     * Sets the value of the specified integer or enum property.
+     * @param key The property key
+     * @param value The property value
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void setIntProperty(int key, int value)
+        throws IOException {
+        checkOpen();
+        properties.put(Integer.valueOf(key), Integer.valueOf(value));
+    }
+
+    /**
+     * Gets the value of the specified size property.
+     * @param key The property key
+     * @param value Receives the size packed into an array of size 2.
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void getSizeProperty(int key, int [] value)
+        throws IOException {
+        checkOpen();
+        Object size = properties.get(Integer.valueOf(key));
+        if (size instanceof Size) {
+            value[0] = ((Size)size).getWidth();
+            value[1] = ((Size)size).getHeight();
+        } else {
+            value[0] = value[1] = 0;
+        }
+    }
+
+    /**
+     * Sets the value of the specified size property.
+     * @param key The property key
+     * @param w Width
+     * @param h Height
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void setSizeProperty(int key, int w, int h)
+        throws IOException {
+        checkOpen();
+        properties.put(Integer.valueOf(key), new Size(w, h));
+    }
+
+    /**
+     * Sets the value of a boolean property. Useful for simulating
+     * the capabilities of a particular device.
+     * @param key The property key
+     * @param value The property value
+     */
+    public synchronized void setBooleanProperty(PropertyKey key,
+                                                boolean value) {
+        properties.put(Integer.valueOf(key.getValue()), Boolean.valueOf(value));
+    }
+
+    /**
+     * Ignores the PS/2 packet.
+     * @param type packet type (keyboard vs mouse)
+     * @param data the packet data
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void sendPS2(short type, byte [] data)
+        throws IOException {
+        checkOpen();
+    }
+
+    /**
+     * Gets VGA capture parameters.
+     * @param params an int array that receives the current grab parameters
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void getGrabParameters(int [] params)
+        throws IOException {
+        checkOpen();
+        if (grabParameters != null) {
+            System.arraycopy(grabParameters, 0, params, 0,
+                Math.min(grabParameters.length, params.length));
+        }
+    }
+
+    /**
+     * Sets VGA capture parameters.
+     * @param params grab parameters packed into an int array
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void setGrabParameters(int [] params)
+        throws IOException {
+        checkOpen();
+        grabParameters = (int[])params.clone();
+    }
+
+    /**
+     * Does nothing.
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void start() throws IOException {
+        checkOpen();
+    }
+
+    /**
+     * Does nothing.
+     * @throws IOException if the device has been closed
+     */
+    public synchronized void stop() throws IOException {
+        checkOpen();
+    }
+}